@@ -7,11 +7,8 @@ import com.google.common.net.InetAddresses;
 import com.mozilla.secops.parser.Event;
 import com.mozilla.secops.parser.Normalized;
 import java.io.IOException;
-import java.net.InetAddress;
-import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.Enumeration;
-import java.util.regex.Pattern;
 import javax.naming.NamingEnumeration;
 import javax.naming.NamingException;
 import javax.naming.directory.Attribute;
@@ -49,42 +46,15 @@ public class CidrUtil {
    * <p>This function attempts to also perform a forward DNS query on the hostname returned by the
    * reverse DNS query and ensures the IP address matches what was supplied as a function argument.
    *
+   * <p>Lookups are performed using the shared {@link DnsVerifier}, so results are cached. A lookup
+   * that does not complete within the verifier timeout is treated as not matching.
+   *
    * @param ip IP address
    * @param pattern Regular expression to match against
    * @return True if hostname matches pattern, false otherwise
    */
   public static Boolean resolvedCanonicalHostMatches(String ip, String pattern) {
-    Pattern p = Pattern.compile(pattern);
-
-    InetAddress addr;
-    try {
-      addr = InetAddress.getByName(ip);
-    } catch (UnknownHostException exc) {
-      return false;
-    }
-    String hn = addr.getCanonicalHostName();
-    if (hn.equals(ip)) {
-      // If the returned value is the original address, the lookup operation could not be
-      // completed, so just return false.
-      return false;
-    }
-
-    InetAddress[] rlist;
-    try {
-      rlist = InetAddress.getAllByName(hn);
-    } catch (UnknownHostException exc) {
-      return false;
-    }
-
-    for (InetAddress r : rlist) {
-      if (r.equals(addr)) {
-        if (p.matcher(hn).matches()) {
-          return true;
-        }
-      }
-    }
-
-    return false;
+    return DnsVerifier.getDefault().hostMatches(ip, pattern);
   }
 
   /**
@@ -112,43 +82,12 @@ public class CidrUtil {
     return new DoFn<Event, Event>() {
       private static final long serialVersionUID = 1L;
 
-      private final String resourcePath;
-      private final Boolean addCp;
-      private final Boolean addInternal;
+      private final String resourcePath = path;
       private CidrUtil cidrs;
 
-      {
-        if ((flags & CIDRUTIL_FILE) == CIDRUTIL_FILE) {
-          resourcePath = path;
-        } else {
-          resourcePath = null;
-        }
-        if ((flags & CIDRUTIL_CLOUDPROVIDERS) == CIDRUTIL_CLOUDPROVIDERS) {
-          addCp = true;
-        } else {
-          addCp = false;
-        }
-        if ((flags & CIDRUTIL_INTERNAL) == CIDRUTIL_INTERNAL) {
-          addInternal = true;
-        } else {
-          addInternal = false;
-        }
-      }
-
       @Setup
       public void setup() throws IOException {
-        if (resourcePath != null) {
-          cidrs = new CidrUtil(resourcePath);
-        } else {
-          cidrs = new CidrUtil();
-        }
-        if (addCp) {
-          cidrs.loadGcpSubnets();
-          cidrs.loadAwsSubnets();
-        }
-        if (addInternal) {
-          cidrs.loadInternalSubnets();
-        }
+        cidrs = CidrUtil.fromExclusionFlags(flags, resourcePath);
       }
 
       @ProcessElement
@@ -168,6 +107,34 @@ public class CidrUtil {
     };
   }
 
+  /**
+   * Create a new {@link CidrUtil} populated according to an exclusion bitmask
+   *
+   * <p>The flags parameter uses the same bitmask semantics as {@link
+   * #excludeNormalizedSourceAddresses}.
+   *
+   * @param flags Option bitmask
+   * @param path Resource path or GCS URL to load subnets from for {@value #CIDRUTIL_FILE}
+   * @return Populated {@link CidrUtil}
+   * @throws IOException IOException
+   */
+  public static CidrUtil fromExclusionFlags(int flags, String path) throws IOException {
+    CidrUtil ret;
+    if ((flags & CIDRUTIL_FILE) == CIDRUTIL_FILE) {
+      ret = new CidrUtil(path);
+    } else {
+      ret = new CidrUtil();
+    }
+    if ((flags & CIDRUTIL_CLOUDPROVIDERS) == CIDRUTIL_CLOUDPROVIDERS) {
+      ret.loadGcpSubnets();
+      ret.loadAwsSubnets();
+    }
+    if ((flags & CIDRUTIL_INTERNAL) == CIDRUTIL_INTERNAL) {
+      ret.loadInternalSubnets();
+    }
+    return ret;
+  }
+
   /**
    * Return true if address is within the cidr
    *
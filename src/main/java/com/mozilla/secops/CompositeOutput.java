@@ -1,13 +1,24 @@
 package com.mozilla.secops;
 
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.joda.JodaModule;
 import com.google.api.services.bigquery.model.TableRow;
 import com.google.gson.Gson;
+import com.mozilla.secops.alert.Alert;
 import com.mozilla.secops.alert.AlertConfiguration;
+import com.mozilla.secops.alert.AlertFormatter;
 import com.mozilla.secops.alert.AlertIO;
+import com.mozilla.secops.alert.AlertLatency;
+import java.util.Map;
+import org.apache.beam.sdk.io.Compression;
 import org.apache.beam.sdk.io.TextIO;
 import org.apache.beam.sdk.io.gcp.bigquery.BigQueryIO;
 import org.apache.beam.sdk.io.gcp.pubsub.PubsubIO;
 import org.apache.beam.sdk.transforms.DoFn;
+import org.apache.beam.sdk.transforms.MapElements;
 import org.apache.beam.sdk.transforms.PTransform;
 import org.apache.beam.sdk.transforms.ParDo;
 import org.apache.beam.sdk.transforms.windowing.FixedWindows;
@@ -24,23 +35,132 @@ import org.slf4j.LoggerFactory;
 public abstract class CompositeOutput {
   private CompositeOutput() {}
 
+  private static final Logger log = LoggerFactory.getLogger(CompositeOutput.class);
+
   /**
-   * Return a new composite output transform that can be used as the final stage in a pipeline.
+   * Convert {@link Alert} objects into {@link TableRow} objects
    *
-   * <p>{@link OutputOptions} can be used to configure the output phase.
+   * <p>The resulting row has the same fields as the JSON representation of the alert, but is
+   * converted without serializing the alert to a string.
+   */
+  public static class AlertToTableRow extends DoFn<Alert, TableRow> {
+    private static final long serialVersionUID = 1L;
+
+    private transient ObjectMapper mapper;
+
+    @Setup
+    public void setup() {
+      mapper = new ObjectMapper();
+      mapper.registerModule(new JodaModule());
+      mapper.configure(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, false);
+      mapper.setSerializationInclusion(Include.NON_NULL);
+    }
+
+    @ProcessElement
+    public void processElement(ProcessContext c) {
+      TableRow r = new TableRow();
+      try {
+        r.putAll(mapper.convertValue(c.element(), new TypeReference<Map<String, Object>>() {}));
+      } catch (IllegalArgumentException exc) {
+        log.error("alert conversion failed: {}", exc.getMessage());
+        return;
+      }
+      c.output(r);
+    }
+  }
+
+  /**
+   * Windowed file output
    *
-   * @param options {@link OutputOptions} used to configure returned {@link PTransform}.
-   * @return Configured {@link PTransform}
+   * <p>Input is divided into fixed windows, and the elements in each window are written as lines to
+   * the configured number of shards using the configured compression. A shard count of 0 leaves
+   * sharding to the runner, which is only supported for bounded input.
    */
-  public static PTransform<PCollection<String>, PDone> withOptions(OutputOptions options) {
-    final String outputFile = options.getOutputFile();
-    final String outputBigQuery = options.getOutputBigQuery();
-    final String[] outputPubsub = options.getOutputPubsub();
-    final String outputSqs = options.getOutputSqs();
-    final String[] outputIprepd = options.getOutputIprepd();
-    final String project = options.getProject();
-    Logger log = LoggerFactory.getLogger(CompositeOutput.class);
+  public static class FileSink extends PTransform<PCollection<String>, PDone> {
+    private static final long serialVersionUID = 1L;
 
+    private static final Compression[] SUPPORTED_COMPRESSION =
+        new Compression[] {
+          Compression.UNCOMPRESSED, Compression.GZIP, Compression.BZIP2, Compression.DEFLATE
+        };
+
+    private final String path;
+    private final int shards;
+    private final Compression compression;
+    private final Duration windowSize;
+
+    /**
+     * Return compression from name
+     *
+     * @param name Compression name, one of uncompressed, gzip, bzip2, or deflate
+     * @return Compression
+     */
+    public static Compression compressionFromName(String name) {
+      for (Compression c : SUPPORTED_COMPRESSION) {
+        if (c.name().equalsIgnoreCase(name)) {
+          return c;
+        }
+      }
+      throw new IllegalArgumentException(String.format("unsupported compression %s", name));
+    }
+
+    /**
+     * Return file sink configured in options
+     *
+     * @param options {@link OutputOptions}
+     * @return FileSink, or null if file output is not configured
+     */
+    public static FileSink fromOptions(OutputOptions options) {
+      if (options.getOutputFile() == null) {
+        return null;
+      }
+      return new FileSink(
+          options.getOutputFile(),
+          options.getOutputFileShards(),
+          compressionFromName(options.getOutputFileCompression()),
+          Duration.standardMinutes(options.getOutputFileWindowMinutes()));
+    }
+
+    /**
+     * Initialize new {@link FileSink}
+     *
+     * @param path Output path prefix
+     * @param shards Number of shards per window, 0 for runner determined sharding
+     * @param compression Compression
+     * @param windowSize Window size
+     */
+    public FileSink(String path, int shards, Compression compression, Duration windowSize) {
+      if (shards < 0) {
+        throw new IllegalArgumentException("output file shards must not be negative");
+      }
+      if (windowSize.getMillis() <= 0) {
+        throw new IllegalArgumentException("output file window size must be positive");
+      }
+      this.path = path;
+      this.shards = shards;
+      this.compression = compression;
+      this.windowSize = windowSize;
+    }
+
+    @Override
+    public PDone expand(PCollection<String> input) {
+      if (shards == 0 && input.isBounded() == PCollection.IsBounded.UNBOUNDED) {
+        throw new IllegalArgumentException(
+            "runner determined output file sharding requires bounded input");
+      }
+      return input
+          .apply("window output file", Window.<String>into(FixedWindows.of(windowSize)))
+          .apply(
+              "write output file",
+              TextIO.write()
+                  .to(path)
+                  .withWindowedWrites()
+                  .withNumShards(shards)
+                  .withCompression(compression));
+    }
+  }
+
+  private static AlertConfiguration alertConfiguration(OutputOptions options) {
     AlertConfiguration alertcfg = new AlertConfiguration();
     if (options.getOutputAlertTemplates() != null) {
       for (String tmpl : options.getOutputAlertTemplates()) {
@@ -51,7 +171,7 @@ public abstract class CompositeOutput {
     alertcfg.setSmtpRelay(options.getOutputAlertSmtpRelay());
     alertcfg.setEmailCatchall(options.getOutputAlertEmailCatchall());
     alertcfg.setEmailFrom(options.getOutputAlertEmailFrom());
-    alertcfg.setGcpProject(project);
+    alertcfg.setGcpProject(options.getProject());
     alertcfg.setSlackToken(options.getOutputAlertSlackToken());
     alertcfg.setSlackCatchall(options.getOutputAlertSlackCatchall());
     alertcfg.setGcsTemplateBasePath(options.getOutputAlertGcsTemplateBasePath());
@@ -72,17 +192,59 @@ public abstract class CompositeOutput {
     } else {
       log.info("no alert state management configured");
     }
+    return alertcfg;
+  }
+
+  private static void writeStrings(
+      PCollection<String> input,
+      FileSink fileSink,
+      String[] outputPubsub,
+      String outputSqs,
+      String project) {
+    if (fileSink != null) {
+      input.apply(fileSink);
+    }
+    if (outputPubsub != null) {
+      for (String s : outputPubsub) {
+        input.apply(PubsubIO.writeStrings().to(s));
+      }
+    }
+    if (outputSqs != null) {
+      input.apply(SqsIO.write(outputSqs, project));
+    }
+  }
+
+  private static void writeBigQuery(PCollection<TableRow> input, String outputBigQuery) {
+    input.apply(
+        BigQueryIO.writeTableRows()
+            .to(outputBigQuery)
+            .withCreateDisposition(BigQueryIO.Write.CreateDisposition.CREATE_NEVER)
+            .withWriteDisposition(BigQueryIO.Write.WriteDisposition.WRITE_APPEND));
+  }
+
+  /**
+   * Return a new composite output transform that can be used as the final stage in a pipeline.
+   *
+   * <p>{@link OutputOptions} can be used to configure the output phase.
+   *
+   * @param options {@link OutputOptions} used to configure returned {@link PTransform}.
+   * @return Configured {@link PTransform}
+   */
+  public static PTransform<PCollection<String>, PDone> withOptions(OutputOptions options) {
+    final FileSink fileSink = FileSink.fromOptions(options);
+    final String outputBigQuery = options.getOutputBigQuery();
+    final String[] outputPubsub = options.getOutputPubsub();
+    final String outputSqs = options.getOutputSqs();
+    final String[] outputIprepd = options.getOutputIprepd();
+    final String project = options.getProject();
+    AlertConfiguration alertcfg = alertConfiguration(options);
 
     return new PTransform<PCollection<String>, PDone>() {
       private static final long serialVersionUID = 1L;
 
       @Override
       public PDone expand(PCollection<String> input) {
-        if (outputFile != null) {
-          input
-              .apply(Window.<String>into(FixedWindows.of(Duration.standardMinutes(5L))))
-              .apply(TextIO.write().to(outputFile).withWindowedWrites().withNumShards(1));
-        }
+        writeStrings(input, fileSink, outputPubsub, outputSqs, project);
         if (outputBigQuery != null) {
           PCollection<TableRow> bqdata =
               input.apply(
@@ -97,23 +259,11 @@ public abstract class CompositeOutput {
                           c.output(r);
                         }
                       }));
-          bqdata.apply(
-              BigQueryIO.writeTableRows()
-                  .to(outputBigQuery)
-                  .withCreateDisposition(BigQueryIO.Write.CreateDisposition.CREATE_NEVER)
-                  .withWriteDisposition(BigQueryIO.Write.WriteDisposition.WRITE_APPEND));
-        }
-        if (outputPubsub != null) {
-          for (String s : outputPubsub) {
-            input.apply(PubsubIO.writeStrings().to(s));
-          }
+          writeBigQuery(bqdata, outputBigQuery);
         }
         if (outputIprepd != null) {
           input.apply(IprepdIO.writeSpecs(outputIprepd, project));
         }
-        if (outputSqs != null) {
-          input.apply(SqsIO.write(outputSqs, project));
-        }
         if (alertcfg.isConfigured()) {
           input.apply(AlertIO.write(alertcfg));
         }
@@ -121,4 +271,66 @@ public abstract class CompositeOutput {
       }
     };
   }
+
+  /**
+   * Return a new composite output transform for {@link Alert} objects that can be used as the final
+   * stage in a pipeline.
+   *
+   * <p>This is equivalent to converting alerts to JSON and using {@link #withOptions}, but each
+   * output converts the alert directly into the form it requires. Alerts are only serialized to
+   * JSON if a file, Pub/Sub, or SQS output is configured, and are not parsed again by outputs that
+   * operate on alerts.
+   *
+   * <p>Latency of delivery to each output is recorded using {@link AlertLatency}, and if alert
+   * tracing is enabled the output stage is added to the alert trace.
+   *
+   * @param options {@link OutputOptions} used to configure returned {@link PTransform}.
+   * @return Configured {@link PTransform}
+   */
+  public static PTransform<PCollection<Alert>, PDone> alertsWithOptions(OutputOptions options) {
+    final FileSink fileSink = FileSink.fromOptions(options);
+    final String outputBigQuery = options.getOutputBigQuery();
+    final String[] outputPubsub = options.getOutputPubsub();
+    final String outputSqs = options.getOutputSqs();
+    final String[] outputIprepd = options.getOutputIprepd();
+    final String project = options.getProject();
+    final boolean trace = options.getOutputAlertTrace();
+    AlertConfiguration alertcfg = alertConfiguration(options);
+
+    return new PTransform<PCollection<Alert>, PDone>() {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      public PDone expand(PCollection<Alert> alerts) {
+        PCollection<Alert> input = alerts;
+        if (trace) {
+          input = alerts.apply("alert output trace", ParDo.of(new AlertLatency.OutputFn(true)));
+        }
+        if (fileSink != null || outputPubsub != null || outputSqs != null) {
+          writeStrings(
+              input
+                  .apply("alert string latency", ParDo.of(new AlertLatency.SinkFn()))
+                  .apply("alert to json", MapElements.via(new AlertFormatter.AlertToString())),
+              fileSink,
+              outputPubsub,
+              outputSqs,
+              project);
+        }
+        if (outputBigQuery != null) {
+          writeBigQuery(
+              input
+                  .apply("alert bigquery latency", ParDo.of(new AlertLatency.SinkFn()))
+                  .apply("alert to table row", ParDo.of(new AlertToTableRow())),
+              outputBigQuery);
+        }
+        if (outputIprepd != null) {
+          input.apply(IprepdIO.writeAlerts(outputIprepd, project));
+        }
+        if (alertcfg.isConfigured()) {
+          input.apply(AlertIO.writeAlerts(alertcfg));
+        }
+        return PDone.in(input.getPipeline());
+      }
+    };
+  }
 }
@@ -0,0 +1,387 @@
+package com.mozilla.secops;
+
+import com.google.common.net.InetAddresses;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.LongSupplier;
+import java.util.regex.Pattern;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Forward confirmed reverse DNS verification service
+ *
+ * <p>For a given IP address, a reverse lookup is performed and the returned hostname is then
+ * resolved again to confirm it maps back to the original address. Confirmed hostnames and failed
+ * verifications are cached with separate TTLs, and patterns used to match hostnames are compiled
+ * once.
+ *
+ * <p>Lookups are performed asynchronously on a bounded pool of resolver threads, and concurrent
+ * requests for the same address share a single lookup. {@link #verify} waits for at most a
+ * per-query timeout, and returns {@link Result#UNKNOWN} if the lookup has not completed, so a slow
+ * lookup is never reported as a failed verification. {@link #hostMatches} and {@link
+ * #verifiedHostname} are bounded by the same timeout. A lookup that times out is not cancelled, as
+ * it may be shared with other callers, and is allowed to complete in the background and populate
+ * the cache.
+ *
+ * <p>The actual lookups are performed by a {@link Resolver}, which can be replaced to allow use
+ * without network access.
+ */
+public class DnsVerifier {
+  /** Default TTL for confirmed hostnames, in milliseconds */
+  public static final long DEFAULT_POSITIVE_TTL = 3600000L;
+  /** Default TTL for failed verifications, in milliseconds */
+  public static final long DEFAULT_NEGATIVE_TTL = 300000L;
+  /** Default per-query timeout, in milliseconds */
+  public static final long DEFAULT_TIMEOUT = 2000L;
+  /** Default number of resolver threads */
+  public static final int DEFAULT_PARALLELISM = 8;
+  /** Maximum number of cached results before the cache is pruned */
+  public static final int MAX_CACHE_ENTRIES = 50000;
+
+  /** Result of a verification */
+  public enum Result {
+    /** Forward confirmed hostname matches pattern */
+    VERIFIED,
+    /** Verification failed, or the forward confirmed hostname does not match pattern */
+    NOT_VERIFIED,
+    /** Lookup did not complete within the timeout */
+    UNKNOWN
+  }
+
+  /** Performs DNS lookups on behalf of {@link DnsVerifier} */
+  public interface Resolver {
+    /**
+     * Reverse lookup of address
+     *
+     * @param addr Address
+     * @return Hostname, or null if the address could not be resolved
+     * @throws UnknownHostException UnknownHostException
+     */
+    String reverse(InetAddress addr) throws UnknownHostException;
+
+    /**
+     * Forward lookup of hostname
+     *
+     * @param hostname Hostname
+     * @return Addresses hostname resolves to
+     * @throws UnknownHostException UnknownHostException
+     */
+    InetAddress[] forward(String hostname) throws UnknownHostException;
+  }
+
+  /** {@link Resolver} using the system resolver via {@link InetAddress} */
+  public static class SystemResolver implements Resolver {
+    /** {@inheritDoc} */
+    public String reverse(InetAddress addr) {
+      String hn = addr.getCanonicalHostName();
+      if (hn.equals(addr.getHostAddress())) {
+        // If the returned value is the original address, the lookup operation could not be
+        // completed
+        return null;
+      }
+      return hn;
+    }
+
+    /** {@inheritDoc} */
+    public InetAddress[] forward(String hostname) throws UnknownHostException {
+      return InetAddress.getAllByName(hostname);
+    }
+  }
+
+  private static class CacheEntry {
+    private final String hostname;
+    private final long expires;
+
+    CacheEntry(String hostname, long expires) {
+      this.hostname = hostname;
+      this.expires = expires;
+    }
+  }
+
+  private static DnsVerifier defaultVerifier;
+
+  private final Resolver resolver;
+  private final long positiveTtl;
+  private final long negativeTtl;
+  private final long timeout;
+  private final ExecutorService executor;
+  private final ConcurrentHashMap<String, CacheEntry> cache;
+  private final ConcurrentHashMap<String, CompletableFuture<String>> pending;
+  private final ConcurrentHashMap<String, Pattern> patterns;
+  private final Logger log;
+  private LongSupplier clock;
+
+  /**
+   * Get shared per-JVM verifier
+   *
+   * @return DnsVerifier
+   */
+  public static synchronized DnsVerifier getDefault() {
+    if (defaultVerifier == null) {
+      defaultVerifier = new DnsVerifier(new SystemResolver());
+    }
+    return defaultVerifier;
+  }
+
+  /**
+   * Replace the shared per-JVM verifier
+   *
+   * <p>Primarily intended for tests, to install a verifier using an alternate {@link Resolver}.
+   * If null, the next call to {@link #getDefault} will create a new verifier using the system
+   * resolver.
+   *
+   * @param verifier DnsVerifier, or null to reset
+   */
+  public static synchronized void setDefault(DnsVerifier verifier) {
+    if (defaultVerifier != null) {
+      defaultVerifier.shutdown();
+    }
+    defaultVerifier = verifier;
+  }
+
+  /**
+   * Verify the forward confirmed hostname for the address matches the pattern
+   *
+   * <p>Blocks for at most the configured timeout.
+   *
+   * @param ip IP address
+   * @param pattern Regular expression to match against
+   * @return Result, {@link Result#UNKNOWN} if the lookup did not complete in time
+   */
+  public Result verify(String ip, String pattern) {
+    String hn;
+    try {
+      hn = hostname(ip);
+    } catch (TimeoutException exc) {
+      log.warn("dns verification of {} timed out", ip);
+      return Result.UNKNOWN;
+    }
+    return matches(hn, pattern) ? Result.VERIFIED : Result.NOT_VERIFIED;
+  }
+
+  /**
+   * Return true if the forward confirmed hostname for the address matches the pattern
+   *
+   * <p>Blocks for at most the configured timeout. A lookup that does not complete in time is
+   * treated as not matching, see {@link #verify} to distinguish this from a failed verification.
+   *
+   * @param ip IP address
+   * @param pattern Regular expression to match against
+   * @return True if hostname matches pattern, false otherwise
+   */
+  public boolean hostMatches(String ip, String pattern) {
+    return verify(ip, pattern) == Result.VERIFIED;
+  }
+
+  /**
+   * Return the forward confirmed hostname for an address
+   *
+   * <p>Blocks for at most the configured timeout.
+   *
+   * @param ip IP address
+   * @return Hostname, or null if verification failed or did not complete in time
+   */
+  public String verifiedHostname(String ip) {
+    try {
+      return hostname(ip);
+    } catch (TimeoutException exc) {
+      log.warn("dns verification of {} timed out", ip);
+      return null;
+    }
+  }
+
+  private boolean matches(String hostname, String pattern) {
+    if (hostname == null) {
+      return false;
+    }
+    return patterns.computeIfAbsent(pattern, Pattern::compile).matcher(hostname).matches();
+  }
+
+  /**
+   * Return the forward confirmed hostname for an address
+   *
+   * <p>Blocks for at most the configured timeout.
+   *
+   * @param ip IP address
+   * @return Hostname, or null if verification failed
+   * @throws TimeoutException If the lookup did not complete in time, or the wait was interrupted
+   */
+  private String hostname(String ip) throws TimeoutException {
+    if (ip == null) {
+      return null;
+    }
+    CacheEntry ent = cache.get(ip);
+    if (ent != null && ent.expires > clock.getAsLong()) {
+      return ent.hostname;
+    }
+    CompletableFuture<String> f = lookup(ip);
+    try {
+      return f.get(timeout, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException exc) {
+      Thread.currentThread().interrupt();
+      throw new TimeoutException("interrupted");
+    } catch (ExecutionException exc) {
+      return null;
+    }
+  }
+
+  /**
+   * Start verification of a set of addresses without waiting for results
+   *
+   * <p>Can be used to issue lookups for a batch of addresses in parallel prior to calling {@link
+   * #hostMatches} for each.
+   *
+   * @param ips IP addresses
+   */
+  public void prefetch(Collection<String> ips) {
+    long now = clock.getAsLong();
+    for (String ip : ips) {
+      if (ip == null) {
+        continue;
+      }
+      CacheEntry ent = cache.get(ip);
+      if (ent != null && ent.expires > now) {
+        continue;
+      }
+      lookup(ip);
+    }
+  }
+
+  private CompletableFuture<String> lookup(String ip) {
+    CompletableFuture<String> f = pending.get(ip);
+    if (f != null) {
+      return f;
+    }
+    CompletableFuture<String> nf = new CompletableFuture<>();
+    f = pending.putIfAbsent(ip, nf);
+    if (f != null) {
+      return f;
+    }
+    try {
+      executor.execute(
+          () -> {
+            String hn = null;
+            try {
+              hn = resolveAndConfirm(ip);
+            } finally {
+              store(ip, hn);
+              pending.remove(ip);
+              nf.complete(hn);
+            }
+          });
+    } catch (RejectedExecutionException exc) {
+      pending.remove(ip);
+      nf.complete(null);
+    }
+    return nf;
+  }
+
+  private void store(String ip, String hostname) {
+    if (cache.size() >= MAX_CACHE_ENTRIES) {
+      long now = clock.getAsLong();
+      cache.values().removeIf(e -> e.expires <= now);
+      if (cache.size() >= MAX_CACHE_ENTRIES) {
+        cache.clear();
+      }
+    }
+    long ttl = hostname != null ? positiveTtl : negativeTtl;
+    cache.put(ip, new CacheEntry(hostname, clock.getAsLong() + ttl));
+  }
+
+  private String resolveAndConfirm(String ip) {
+    InetAddress addr;
+    try {
+      addr = InetAddresses.forString(ip);
+    } catch (IllegalArgumentException exc) {
+      return null;
+    }
+    try {
+      String hn = resolver.reverse(addr);
+      if (hn == null) {
+        return null;
+      }
+      for (InetAddress r : resolver.forward(hn)) {
+        if (r.equals(addr)) {
+          return hn;
+        }
+      }
+    } catch (UnknownHostException exc) {
+      return null;
+    } catch (RuntimeException exc) {
+      log.warn("dns verification of {} failed: {}", ip, exc.getMessage());
+      return null;
+    }
+    return null;
+  }
+
+  /**
+   * Set the time source used for cache expiry
+   *
+   * @param clock Supplier returning current time in milliseconds
+   */
+  void setClock(LongSupplier clock) {
+    this.clock = clock;
+  }
+
+  /** Stop resolver threads */
+  public void shutdown() {
+    executor.shutdownNow();
+  }
+
+  /**
+   * Initialize new {@link DnsVerifier} with default settings
+   *
+   * @param resolver Resolver to use for lookups
+   */
+  public DnsVerifier(Resolver resolver) {
+    this(
+        resolver,
+        DEFAULT_POSITIVE_TTL,
+        DEFAULT_NEGATIVE_TTL,
+        DEFAULT_TIMEOUT,
+        DEFAULT_PARALLELISM);
+  }
+
+  /**
+   * Initialize new {@link DnsVerifier}
+   *
+   * @param resolver Resolver to use for lookups
+   * @param positiveTtl TTL for confirmed hostnames in milliseconds
+   * @param negativeTtl TTL for failed verifications in milliseconds
+   * @param timeout Maximum time to wait for a single query in milliseconds
+   * @param parallelism Maximum number of concurrent lookups
+   */
+  public DnsVerifier(
+      Resolver resolver, long positiveTtl, long negativeTtl, long timeout, int parallelism) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("parallelism must be at least 1");
+    }
+    this.resolver = resolver;
+    this.positiveTtl = positiveTtl;
+    this.negativeTtl = negativeTtl;
+    this.timeout = timeout;
+    executor =
+        Executors.newFixedThreadPool(
+            parallelism,
+            r -> {
+              Thread t = new Thread(r, "dns-verifier");
+              t.setDaemon(true);
+              return t;
+            });
+    cache = new ConcurrentHashMap<>();
+    pending = new ConcurrentHashMap<>();
+    patterns = new ConcurrentHashMap<>();
+    log = LoggerFactory.getLogger(DnsVerifier.class);
+    clock = System::currentTimeMillis;
+  }
+}
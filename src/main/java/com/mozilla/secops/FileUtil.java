@@ -1,8 +1,10 @@
 package com.mozilla.secops;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Scanner;
 
 /** Various utilities for file IO */
@@ -11,16 +13,28 @@ public class FileUtil {
    * Read file from specified path, returning an {@link ArrayList} containing an item for each line
    *
    * <p>Lines beginning with a # character are treated as comments and not returned in the result
-   * set.
+   * set. Content is fetched and split through the {@link ResourceRegistry}, so each path is only
+   * fetched once per JVM.
    *
    * @param path Resource path or GCS URL to read file from
    * @throws IOException IOException
    * @return {@link ArrayList} containing line items
    */
   public static ArrayList<String> fileReadLines(String path) throws IOException {
-    InputStream in = getStreamFromPath(path);
+    return new ArrayList<>(
+        ResourceRegistry.getParsed(
+            path, "lines", buf -> Collections.unmodifiableList(readLines(buf))));
+  }
+
+  /**
+   * Split content into lines, excluding lines beginning with a # character
+   *
+   * @param buf Content
+   * @return {@link ArrayList} containing line items
+   */
+  static ArrayList<String> readLines(byte[] buf) {
     ArrayList<String> ret = new ArrayList<>();
-    Scanner s = new Scanner(in).useDelimiter("\\n");
+    Scanner s = new Scanner(new ByteArrayInputStream(buf)).useDelimiter("\\n");
     while (s.hasNext()) {
       String n = s.next();
       if (n.startsWith("#")) {
@@ -34,25 +48,14 @@ public class FileUtil {
   /**
    * Read file from specified path, returning an {@link InputStream} for processing
    *
-   * <p>This supports both resource path and GCS URL to read from
+   * <p>This supports both resource path and GCS URL to read from. Content is fetched through the
+   * {@link ResourceRegistry}, so each path is only fetched once per JVM.
    *
    * @param path Resource path or GCS URL to read file from
    * @throws IOException IOException
    * @return {@link InputStream} for reading resource
    */
   public static InputStream getStreamFromPath(String path) throws IOException {
-    InputStream in;
-    if (path == null || path.isEmpty()) {
-      throw new IOException("attempt to load file with null or empty path");
-    }
-    if (GcsUtil.isGcsUrl(path)) {
-      in = GcsUtil.fetchInputStreamContent(path);
-    } else {
-      in = FileUtil.class.getResourceAsStream(path);
-    }
-    if (in == null) {
-      throw new IOException(String.format("failed to read file from path %s", path));
-    }
-    return in;
+    return new ByteArrayInputStream(ResourceRegistry.fetch(path));
   }
 }
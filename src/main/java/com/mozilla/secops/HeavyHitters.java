@@ -0,0 +1,314 @@
+package com.mozilla.secops;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.CoderException;
+import org.apache.beam.sdk.coders.CoderRegistry;
+import org.apache.beam.sdk.coders.CustomCoder;
+import org.apache.beam.sdk.coders.VarIntCoder;
+import org.apache.beam.sdk.metrics.Counter;
+import org.apache.beam.sdk.metrics.Metrics;
+import org.apache.beam.sdk.transforms.Combine;
+import org.apache.beam.sdk.transforms.Combine.CombineFn;
+import org.apache.beam.sdk.transforms.Count;
+import org.apache.beam.sdk.transforms.DoFn;
+import org.apache.beam.sdk.transforms.PTransform;
+import org.apache.beam.sdk.transforms.ParDo;
+import org.apache.beam.sdk.values.KV;
+import org.apache.beam.sdk.values.PCollection;
+import org.apache.beam.sdk.values.PCollectionView;
+
+/**
+ * Exact per-element counts for elements occurring more than a threshold number of times
+ *
+ * <p>Produces the same result as {@link Count#perElement()} followed by a filter for counts greater
+ * than the threshold, but without shuffling every distinct element. A count-min sketch of the input
+ * is built per window using a combiner, so each worker only ships a sketch of its partial input.
+ * The sketch is used as a side input to select candidate elements whose estimated count exceeds the
+ * threshold, and only candidates are counted exactly.
+ *
+ * <p>A count-min sketch never underestimates, so every element with a true count above the
+ * threshold is a candidate and the result is exact. Elements that collide in the sketch with heavy
+ * elements may also be selected as candidates; they are removed by the exact count. The sketch
+ * width should be chosen so the number of elements in a window divided by the width is well below
+ * the threshold, otherwise most elements become candidates and no shuffle is saved.
+ *
+ * <p>Since candidates are only selected once the sketch for the window is complete, this should
+ * only be used with the default trigger.
+ */
+public class HeavyHitters extends PTransform<PCollection<String>, PCollection<KV<String, Long>>> {
+  private static final long serialVersionUID = 1L;
+
+  /** Default number of rows in sketch */
+  public static final int DEFAULT_DEPTH = 4;
+
+  static final String CANDIDATES = "heavy_hitter_candidates";
+  static final String FILTERED = "heavy_hitter_filtered";
+
+  private final long threshold;
+  private final int width;
+  private final int depth;
+  private final String namespace;
+
+  /** Count-min sketch of string elements, using conservative update */
+  public static class CountMinSketch implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private static final HashFunction hash = Hashing.murmur3_128();
+
+    private final int width;
+    private final int depth;
+    private final int[] cells;
+
+    private int index(long h, int row) {
+      int h1 = (int) h;
+      int h2 = (int) (h >>> 32);
+      return ((h1 + row * h2) & Integer.MAX_VALUE) % width;
+    }
+
+    /**
+     * Add element to sketch
+     *
+     * @param element Element
+     */
+    public void add(String element) {
+      long h = hash.hashString(element, StandardCharsets.UTF_8).asLong();
+      int min = estimate(h);
+      // Conservative update, only increment the cells that determine the estimate
+      for (int i = 0; i < depth; i++) {
+        int idx = i * width + index(h, i);
+        if (cells[idx] == min) {
+          cells[idx]++;
+        }
+      }
+    }
+
+    private int estimate(long h) {
+      int min = Integer.MAX_VALUE;
+      for (int i = 0; i < depth; i++) {
+        min = Math.min(min, cells[i * width + index(h, i)]);
+      }
+      return min;
+    }
+
+    /**
+     * Return estimated count for element
+     *
+     * <p>The estimate is never less than the number of times the element was added.
+     *
+     * @param element Element
+     * @return Estimated count
+     */
+    public long estimate(String element) {
+      return estimate(hash.hashString(element, StandardCharsets.UTF_8).asLong());
+    }
+
+    /**
+     * Merge another sketch into this sketch
+     *
+     * @param other Sketch with identical dimensions
+     */
+    public void merge(CountMinSketch other) {
+      if (other.width != width || other.depth != depth) {
+        throw new IllegalArgumentException("sketch dimensions do not match");
+      }
+      for (int i = 0; i < cells.length; i++) {
+        cells[i] += other.cells[i];
+      }
+    }
+
+    /**
+     * Initialize new {@link CountMinSketch}
+     *
+     * @param width Number of cells per row
+     * @param depth Number of rows
+     */
+    public CountMinSketch(int width, int depth) {
+      if (width <= 0 || depth <= 0) {
+        throw new IllegalArgumentException("sketch dimensions must be positive");
+      }
+      this.width = width;
+      this.depth = depth;
+      cells = new int[width * depth];
+    }
+  }
+
+  /**
+   * Coder for {@link CountMinSketch}
+   *
+   * <p>Only non-zero cells are encoded, so sketches built from small bundles of input remain small.
+   */
+  public static class CountMinSketchCoder extends CustomCoder<CountMinSketch> {
+    private static final long serialVersionUID = 1L;
+
+    private static final VarIntCoder intCoder = VarIntCoder.of();
+
+    @Override
+    public void encode(CountMinSketch value, OutputStream outStream) throws IOException {
+      intCoder.encode(value.width, outStream);
+      intCoder.encode(value.depth, outStream);
+      int n = 0;
+      for (int c : value.cells) {
+        if (c != 0) {
+          n++;
+        }
+      }
+      intCoder.encode(n, outStream);
+      int last = 0;
+      for (int i = 0; i < value.cells.length; i++) {
+        if (value.cells[i] != 0) {
+          intCoder.encode(i - last, outStream);
+          intCoder.encode(value.cells[i], outStream);
+          last = i;
+        }
+      }
+    }
+
+    @Override
+    public CountMinSketch decode(InputStream inStream) throws IOException {
+      CountMinSketch ret = new CountMinSketch(intCoder.decode(inStream), intCoder.decode(inStream));
+      int n = intCoder.decode(inStream);
+      int idx = 0;
+      for (int i = 0; i < n; i++) {
+        idx += intCoder.decode(inStream);
+        if (idx < 0 || idx >= ret.cells.length) {
+          throw new CoderException("sketch cell index out of range");
+        }
+        ret.cells[idx] = intCoder.decode(inStream);
+      }
+      return ret;
+    }
+
+    /**
+     * Return coder
+     *
+     * @return CountMinSketchCoder
+     */
+    public static CountMinSketchCoder of() {
+      return new CountMinSketchCoder();
+    }
+  }
+
+  /** {@link CombineFn} building a {@link CountMinSketch} from string elements */
+  public static class SketchFn extends CombineFn<String, CountMinSketch, CountMinSketch> {
+    private static final long serialVersionUID = 1L;
+
+    private final int width;
+    private final int depth;
+
+    @Override
+    public CountMinSketch createAccumulator() {
+      return new CountMinSketch(width, depth);
+    }
+
+    @Override
+    public CountMinSketch addInput(CountMinSketch sketch, String input) {
+      sketch.add(input);
+      return sketch;
+    }
+
+    @Override
+    public CountMinSketch mergeAccumulators(Iterable<CountMinSketch> sketches) {
+      CountMinSketch merged = createAccumulator();
+      for (CountMinSketch s : sketches) {
+        merged.merge(s);
+      }
+      return merged;
+    }
+
+    @Override
+    public CountMinSketch extractOutput(CountMinSketch sketch) {
+      return sketch;
+    }
+
+    @Override
+    public CustomCoder<CountMinSketch> getAccumulatorCoder(
+        CoderRegistry registry, Coder<String> inputCoder) {
+      return CountMinSketchCoder.of();
+    }
+
+    @Override
+    public CustomCoder<CountMinSketch> getDefaultOutputCoder(
+        CoderRegistry registry, Coder<String> inputCoder) {
+      return CountMinSketchCoder.of();
+    }
+
+    /**
+     * Initialize new {@link SketchFn}
+     *
+     * @param width Number of cells per row
+     * @param depth Number of rows
+     */
+    public SketchFn(int width, int depth) {
+      this.width = width;
+      this.depth = depth;
+    }
+  }
+
+  /**
+   * Initialize new {@link HeavyHitters}
+   *
+   * @param threshold Output elements with a count greater than threshold
+   * @param width Number of cells per sketch row
+   * @param depth Number of sketch rows
+   * @param namespace Metrics namespace
+   */
+  public HeavyHitters(long threshold, int width, int depth, String namespace) {
+    if (width <= 0 || depth <= 0) {
+      throw new IllegalArgumentException("sketch dimensions must be positive");
+    }
+    this.threshold = threshold;
+    this.width = width;
+    this.depth = depth;
+    this.namespace = namespace;
+  }
+
+  @Override
+  public PCollection<KV<String, Long>> expand(PCollection<String> input) {
+    final PCollectionView<CountMinSketch> sketchView =
+        input.apply(
+            "heavy hitter sketch", Combine.globally(new SketchFn(width, depth)).asSingletonView());
+
+    return input
+        .apply(
+            "heavy hitter candidates",
+            ParDo.of(
+                    new DoFn<String, String>() {
+                      private static final long serialVersionUID = 1L;
+
+                      private final Counter candidates = Metrics.counter(namespace, CANDIDATES);
+                      private final Counter filtered = Metrics.counter(namespace, FILTERED);
+
+                      @ProcessElement
+                      public void processElement(ProcessContext c) {
+                        if (c.sideInput(sketchView).estimate(c.element()) <= threshold) {
+                          filtered.inc();
+                          return;
+                        }
+                        candidates.inc();
+                        c.output(c.element());
+                      }
+                    })
+                .withSideInputs(sketchView))
+        .apply("heavy hitter exact count", Count.<String>perElement())
+        .apply(
+            "heavy hitter threshold",
+            ParDo.of(
+                new DoFn<KV<String, Long>, KV<String, Long>>() {
+                  private static final long serialVersionUID = 1L;
+
+                  @ProcessElement
+                  public void processElement(ProcessContext c) {
+                    if (c.element().getValue() > threshold) {
+                      c.output(c.element());
+                    }
+                  }
+                }));
+  }
+}
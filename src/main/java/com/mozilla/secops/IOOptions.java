@@ -1,4 +1,6 @@
 package com.mozilla.secops;
 
+import com.mozilla.secops.window.GlobalTriggersOptions;
+
 /** Interface to allow for passing both input and output options to a class or function. */
-public interface IOOptions extends OutputOptions, InputOptions {}
+public interface IOOptions extends OutputOptions, InputOptions, GlobalTriggersOptions {}
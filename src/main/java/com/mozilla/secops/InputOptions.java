@@ -56,12 +56,36 @@ public interface InputOptions extends PipelineOptions, PubsubOptions, GcpOptions
 
   void setInputFile(String[] value);
 
+  @Description("Read file inputs in replay mode; extract event timestamps from each line")
+  @Default.Boolean(false)
+  Boolean getInputFileReplay();
+
+  void setInputFileReplay(Boolean value);
+
+  @Description("With replay mode; top level JSON field containing event timestamp")
+  @Default.String("timestamp")
+  String getInputFileReplayTimestampField();
+
+  void setInputFileReplayTimestampField(String value);
+
+  @Description("With replay mode; event time replayed per unit of wall clock time, 0 for no limit")
+  @Default.Double(0)
+  Double getInputFileReplaySpeed();
+
+  void setInputFileReplaySpeed(Double value);
+
   @Description(
       "Read from Kinesis (multiple allowed); stream:key:secret:region (supports RuntimeSecrets)")
   String[] getInputKinesis();
 
   void setInputKinesis(String[] value);
 
+  @Description(
+      "Generate synthetic input; format:rate[:max], format is glb, nginx, fxaauth or cloudtrail")
+  String getInputSynthetic();
+
+  void setInputSynthetic(String value);
+
   @Description("Path to load Maxmind City database; resource path, gcs path")
   String getMaxmindCityDbPath();
 
@@ -88,6 +112,12 @@ public interface InputOptions extends PipelineOptions, PubsubOptions, GcpOptions
 
   void setIdentityManagerPath(String value);
 
+  @Description(
+      "Additional resources to fetch on worker startup (multiple allowed); resource path, gcs path")
+  String[] getPrefetchResourcePaths();
+
+  void setPrefetchResourcePaths(String[] value);
+
   @Description("Install parser fast matcher; substring")
   String getParserFastMatcher();
 
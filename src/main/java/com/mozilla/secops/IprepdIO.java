@@ -4,6 +4,8 @@ import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.mozilla.secops.alert.Alert;
+import com.mozilla.secops.alert.AlertIO;
+import com.mozilla.secops.alert.AlertLatency;
 import com.mozilla.secops.alert.AlertMeta;
 import com.mozilla.secops.crypto.RuntimeSecrets;
 import com.mozilla.secops.state.DatastoreStateInterface;
@@ -284,6 +286,20 @@ public class IprepdIO {
     return new Write(iprepdSpecs, project);
   }
 
+  /**
+   * Return {@link PTransform} to emit violations for {@link Alert} objects to one or more instances
+   * of iprepd
+   *
+   * <p>See {@link #writeSpecs} for the specification format.
+   *
+   * @param iprepdSpecs String[] of iprepd input specifications
+   * @param project GCP project name, only required if decrypting apiKey via cloudkms
+   * @return IO transform
+   */
+  public static TypedWrite writeAlerts(String[] iprepdSpecs, String project) {
+    return new TypedWrite(iprepdSpecs, project);
+  }
+
   /**
    * Write violation messages to iprepd based on submitted {@link Alert} JSON strings
    *
@@ -328,19 +344,49 @@ public class IprepdIO {
 
     @Override
     public PDone expand(PCollection<String> input) {
-      input.apply(ParDo.of(new WriteFn(this)));
+      input
+          .apply("parse alerts", ParDo.of(new AlertIO.ParseAlerts()))
+          .apply(new TypedWrite(iprepdSpecs, project));
       return PDone.in(input.getPipeline());
     }
   }
 
-  private static class WriteFn extends DoFn<String, Void> {
+  /**
+   * Write violation messages to iprepd based on submitted {@link Alert} objects
+   *
+   * <p>Any {@link Alert} that can be converted into a {@link Violation} will be submitted to iprepd
+   * as a violation message for the source address, other alerts are ignored.
+   */
+  public static class TypedWrite extends PTransform<PCollection<Alert>, PDone> {
+    private static final long serialVersionUID = 1L;
+    private final String[] iprepdSpecs;
+    private final String project;
+
+    /**
+     * Create new iprepd write transform
+     *
+     * @param iprepdSpecs String[] of iprepd input specifications
+     * @param project GCP project name, can be null if no cloudkms is required for secrets
+     */
+    public TypedWrite(String[] iprepdSpecs, String project) {
+      this.iprepdSpecs = iprepdSpecs;
+      this.project = project;
+    }
+
+    @Override
+    public PDone expand(PCollection<Alert> input) {
+      input.apply(ParDo.of(new WriteFn(iprepdSpecs, project)));
+      return PDone.in(input.getPipeline());
+    }
+  }
+
+  private static class WriteFn extends DoFn<Alert, Void> {
     private static final long serialVersionUID = 1L;
 
-    private final Write wTransform;
     private Logger log;
     private HttpClient httpClient;
-    private String[] iprepdSpecs;
-    private String project;
+    private final String[] iprepdSpecs;
+    private final String project;
 
     /** Writer initial connection timeout */
     public final int WRITER_TIMEOUT_CONNECTION = 5000;
@@ -352,12 +398,14 @@ public class IprepdIO {
     public final int WRITER_TIMEOUT_SOCKET = 5000;
 
     private Counter violationWrites = Metrics.counter(METRICS_NAMESPACE, VIOLATION_WRITES_METRIC);
+    private final AlertLatency latency = new AlertLatency(false);
 
     private static HashMap<String, String> decrypted = new HashMap<String, String>();
     private static ReentrantLock decryptedLock = new ReentrantLock();
 
-    public WriteFn(Write wTransform) {
-      this.wTransform = wTransform;
+    public WriteFn(String[] iprepdSpecs, String project) {
+      this.iprepdSpecs = iprepdSpecs;
+      this.project = project;
     }
 
     @Setup
@@ -372,9 +420,6 @@ public class IprepdIO {
               .build();
       httpClient = HttpClientBuilder.create().setDefaultRequestConfig(rc).build();
 
-      project = wTransform.getProject();
-      iprepdSpecs = wTransform.getIprepdSpecs();
-
       decryptedLock.lock();
       try {
         for (String i : iprepdSpecs) {
@@ -387,15 +432,9 @@ public class IprepdIO {
 
     @ProcessElement
     public void processElement(ProcessContext c) {
-      String el = c.element();
-
-      // See if we can convert this incoming element into an alert and subsequently into a
-      // violation, if this is successful we can escalate it to iprepd
-      Alert a = Alert.fromJSON(el);
-      if (a == null) {
-        log.error("alert deserialization failed for {}", el);
-        return;
-      }
+      // See if we can convert this incoming alert into a violation, if this is successful we can
+      // escalate it to iprepd
+      Alert a = c.element();
 
       String iprepdExempt = a.getMetadataValue(AlertMeta.Key.IPREPD_EXEMPT);
       if (iprepdExempt != null && iprepdExempt.equals("true")) {
@@ -473,6 +512,7 @@ public class IprepdIO {
           }
         }
       }
+      latency.sink(a, c.timestamp(), System.currentTimeMillis());
     }
   }
 
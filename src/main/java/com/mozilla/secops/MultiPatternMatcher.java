@@ -0,0 +1,447 @@
+package com.mozilla.secops;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Match a string against a list of regular expressions
+ *
+ * <p>Intended as a replacement for loops that test a string against each {@link Pattern} in a
+ * list. Each pattern is analyzed when the matcher is created to extract a literal substring that
+ * must be present in any input the pattern matches. The literals for all patterns are compiled into
+ * a single Aho-Corasick automaton, and a single pass over the input identifies the set of patterns
+ * that could possibly match. Only those candidates are then evaluated using {@link
+ * java.util.regex}.
+ *
+ * <p>Patterns from which a required literal cannot be safely extracted (for example top level
+ * alternation, inline flags or unsupported escapes) are always evaluated.
+ *
+ * <p>All matching uses {@link java.util.regex.Matcher#matches} semantics, and where results are
+ * ordered they are returned in the order the patterns were supplied.
+ */
+public class MultiPatternMatcher implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  private static final int MIN_LITERAL_LENGTH = 2;
+
+  private final String[] patternStrings;
+  private final Pattern[] patterns;
+
+  // Indices of patterns that must always be evaluated
+  private final int[] unfiltered;
+
+  // Aho-Corasick automaton; per state sorted transition keys and target states, failure links,
+  // and pattern indices whose literal ends at the state (including via failure links)
+  private final char[][] keys;
+  private final int[][] next;
+  private final int[] fail;
+  private final int[][] out;
+
+  /**
+   * Initialize new {@link MultiPatternMatcher}
+   *
+   * @param patterns Regular expressions, in evaluation order
+   * @throws PatternSyntaxException PatternSyntaxException
+   */
+  public MultiPatternMatcher(Collection<String> patterns) throws PatternSyntaxException {
+    this(patterns.toArray(new String[0]));
+  }
+
+  /**
+   * Return matcher for patterns read from a file, one pattern per line
+   *
+   * <p>The matcher is cached in the {@link ResourceRegistry} and shared with other callers loading
+   * the same content.
+   *
+   * @param path Resource path or GCS URL to read patterns from
+   * @return MultiPatternMatcher
+   * @throws IOException IOException
+   * @throws PatternSyntaxException PatternSyntaxException
+   */
+  public static MultiPatternMatcher fromPath(String path)
+      throws IOException, PatternSyntaxException {
+    return ResourceRegistry.getParsed(
+        path,
+        MultiPatternMatcher.class.getName(),
+        buf -> new MultiPatternMatcher(FileUtil.readLines(buf)));
+  }
+
+  /**
+   * Initialize new {@link MultiPatternMatcher}
+   *
+   * @param patterns Regular expressions, in evaluation order
+   * @throws PatternSyntaxException PatternSyntaxException
+   */
+  public MultiPatternMatcher(String[] patterns) throws PatternSyntaxException {
+    patternStrings = Arrays.copyOf(patterns, patterns.length);
+    this.patterns = new Pattern[patterns.length];
+
+    ArrayList<TreeMap<Character, Integer>> trie = new ArrayList<>();
+    ArrayList<ArrayList<Integer>> terminal = new ArrayList<>();
+    trie.add(new TreeMap<>());
+    terminal.add(new ArrayList<>());
+    ArrayList<Integer> unf = new ArrayList<>();
+
+    for (int i = 0; i < patterns.length; i++) {
+      this.patterns[i] = Pattern.compile(patterns[i]);
+      String lit = requiredLiteral(patterns[i]);
+      if (lit == null) {
+        unf.add(i);
+        continue;
+      }
+      int state = 0;
+      for (int j = 0; j < lit.length(); j++) {
+        Integer n = trie.get(state).get(lit.charAt(j));
+        if (n == null) {
+          n = trie.size();
+          trie.add(new TreeMap<>());
+          terminal.add(new ArrayList<>());
+          trie.get(state).put(lit.charAt(j), n);
+        }
+        state = n;
+      }
+      terminal.get(state).add(i);
+    }
+    unfiltered = unf.stream().mapToInt(Integer::intValue).toArray();
+
+    int cnt = trie.size();
+    keys = new char[cnt][];
+    next = new int[cnt][];
+    fail = new int[cnt];
+    out = new int[cnt][];
+    for (int s = 0; s < cnt; s++) {
+      TreeMap<Character, Integer> t = trie.get(s);
+      keys[s] = new char[t.size()];
+      next[s] = new int[t.size()];
+      int j = 0;
+      for (Map.Entry<Character, Integer> entry : t.entrySet()) {
+        keys[s][j] = entry.getKey();
+        next[s][j] = entry.getValue();
+        j++;
+      }
+    }
+
+    // Breadth first traversal to compute failure links and merged outputs
+    ArrayDeque<Integer> queue = new ArrayDeque<>();
+    out[0] = terminal.get(0).stream().mapToInt(Integer::intValue).toArray();
+    for (int j = 0; j < next[0].length; j++) {
+      fail[next[0][j]] = 0;
+      queue.add(next[0][j]);
+    }
+    while (!queue.isEmpty()) {
+      int s = queue.poll();
+      ArrayList<Integer> o = new ArrayList<>(terminal.get(s));
+      for (int x : out[fail[s]]) {
+        o.add(x);
+      }
+      out[s] = o.stream().mapToInt(Integer::intValue).toArray();
+      for (int j = 0; j < keys[s].length; j++) {
+        int t = next[s][j];
+        int f = fail[s];
+        int g;
+        while ((g = transition(f, keys[s][j])) == -1 && f != 0) {
+          f = fail[f];
+        }
+        fail[t] = (g == -1 || g == t) ? 0 : g;
+        queue.add(t);
+      }
+    }
+  }
+
+  private int transition(int state, char c) {
+    int idx = Arrays.binarySearch(keys[state], c);
+    return idx < 0 ? -1 : next[state][idx];
+  }
+
+  /**
+   * Return the patterns that could match the input, based on the literal prefilter
+   *
+   * @param input Input string
+   * @return Candidate flags indexed by pattern
+   */
+  private boolean[] candidates(String input) {
+    boolean[] ret = new boolean[patterns.length];
+    for (int i : unfiltered) {
+      ret[i] = true;
+    }
+    if (keys.length == 1) {
+      return ret;
+    }
+    int state = 0;
+    for (int i = 0; i < input.length(); i++) {
+      char c = input.charAt(i);
+      int n;
+      while ((n = transition(state, c)) == -1 && state != 0) {
+        state = fail[state];
+      }
+      state = n == -1 ? 0 : n;
+      for (int x : out[state]) {
+        ret[x] = true;
+      }
+    }
+    return ret;
+  }
+
+  /**
+   * Return index of first pattern that matches input
+   *
+   * @param input Input string
+   * @return Index of pattern in the order supplied, or -1 if no pattern matches
+   */
+  public int firstMatch(String input) {
+    if (input == null) {
+      return -1;
+    }
+    boolean[] cand = candidates(input);
+    for (int i = 0; i < cand.length; i++) {
+      if (cand[i] && patterns[i].matcher(input).matches()) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Return indices of all patterns that match input
+   *
+   * @param input Input string
+   * @return Indices of matching patterns in the order supplied, empty if no pattern matches
+   */
+  public int[] allMatches(String input) {
+    if (input == null) {
+      return new int[0];
+    }
+    boolean[] cand = candidates(input);
+    int[] buf = new int[cand.length];
+    int cnt = 0;
+    for (int i = 0; i < cand.length; i++) {
+      if (cand[i] && patterns[i].matcher(input).matches()) {
+        buf[cnt++] = i;
+      }
+    }
+    return Arrays.copyOf(buf, cnt);
+  }
+
+  /**
+   * Return true if any pattern matches input
+   *
+   * @param input Input string
+   * @return Boolean
+   */
+  public boolean matchesAny(String input) {
+    return firstMatch(input) != -1;
+  }
+
+  /**
+   * Return number of patterns in matcher
+   *
+   * @return Pattern count
+   */
+  public int size() {
+    return patterns.length;
+  }
+
+  /**
+   * Return pattern at index
+   *
+   * @param index Index
+   * @return Regular expression string
+   */
+  public String getPattern(int index) {
+    return patternStrings[index];
+  }
+
+  /**
+   * Return number of patterns that are not covered by the literal prefilter
+   *
+   * @return Count of patterns always evaluated
+   */
+  public int unfilteredCount() {
+    return unfiltered.length;
+  }
+
+  /**
+   * Extract the longest literal substring that must occur in any string matched by a pattern
+   *
+   * <p>The analysis is conservative; only literal characters that appear outside of groups and
+   * character classes and are not made optional by a quantifier are considered. If the pattern
+   * contains constructs that cannot be safely analyzed, null is returned.
+   *
+   * @param regex Regular expression
+   * @return Required literal, or null if one could not be extracted
+   */
+  static String requiredLiteral(String regex) {
+    String best = "";
+    StringBuilder run = new StringBuilder();
+    boolean lastLiteral = false;
+    int depth = 0;
+    int len = regex.length();
+
+    for (int i = 0; i < len; i++) {
+      char c = regex.charAt(i);
+      if (depth > 0) {
+        // Content of groups is not considered, but nesting and escapes still need to be tracked
+        switch (c) {
+          case '\\':
+            if (i + 1 < len && regex.charAt(i + 1) == 'Q') {
+              return null;
+            }
+            i++;
+            break;
+          case '[':
+            i = skipClass(regex, i);
+            if (i == -1) {
+              return null;
+            }
+            break;
+          case '(':
+            if (inlineFlags(regex, i)) {
+              return null;
+            }
+            depth++;
+            break;
+          case ')':
+            depth--;
+            break;
+          default:
+            break;
+        }
+        continue;
+      }
+      switch (c) {
+        case '|':
+          return null;
+        case '(':
+          if (inlineFlags(regex, i)) {
+            return null;
+          }
+          depth++;
+          best = longer(best, run);
+          lastLiteral = false;
+          break;
+        case ')':
+          return null;
+        case '[':
+          i = skipClass(regex, i);
+          if (i == -1) {
+            return null;
+          }
+          best = longer(best, run);
+          lastLiteral = false;
+          break;
+        case '.':
+        case '^':
+        case '$':
+          best = longer(best, run);
+          lastLiteral = false;
+          break;
+        case '*':
+        case '?':
+        case '{':
+          if (lastLiteral) {
+            run.setLength(run.length() - 1);
+          }
+          best = longer(best, run);
+          lastLiteral = false;
+          if (c == '{') {
+            i = regex.indexOf('}', i);
+            if (i == -1) {
+              return null;
+            }
+          }
+          i = skipQuantifierSuffix(regex, i);
+          break;
+        case '+':
+          best = longer(best, run);
+          lastLiteral = false;
+          i = skipQuantifierSuffix(regex, i);
+          break;
+        case '\\':
+          if (i + 1 >= len) {
+            return null;
+          }
+          char e = regex.charAt(++i);
+          if (Character.isLetterOrDigit(e)) {
+            if ("dDwWsSbBAzZGhHvV".indexOf(e) == -1) {
+              return null;
+            }
+            best = longer(best, run);
+            lastLiteral = false;
+          } else {
+            run.append(e);
+            lastLiteral = true;
+          }
+          break;
+        default:
+          run.append(c);
+          lastLiteral = true;
+          break;
+      }
+    }
+    if (depth != 0) {
+      return null;
+    }
+    best = longer(best, run);
+    if (best.length() < MIN_LITERAL_LENGTH) {
+      return null;
+    }
+    return best;
+  }
+
+  private static String longer(String best, StringBuilder run) {
+    String ret = best;
+    if (run.length() > best.length()) {
+      ret = run.toString();
+    }
+    run.setLength(0);
+    return ret;
+  }
+
+  private static boolean inlineFlags(String regex, int i) {
+    if (i + 2 < regex.length() && regex.charAt(i + 1) == '?') {
+      char f = regex.charAt(i + 2);
+      return Character.isLetter(f) || f == '-';
+    }
+    return false;
+  }
+
+  private static int skipQuantifierSuffix(String regex, int i) {
+    if (i + 1 < regex.length() && (regex.charAt(i + 1) == '?' || regex.charAt(i + 1) == '+')) {
+      return i + 1;
+    }
+    return i;
+  }
+
+  private static int skipClass(String regex, int i) {
+    int j = i + 1;
+    if (j < regex.length() && regex.charAt(j) == '^') {
+      j++;
+    }
+    if (j < regex.length() && regex.charAt(j) == ']') {
+      j++;
+    }
+    int nest = 0;
+    for (; j < regex.length(); j++) {
+      char c = regex.charAt(j);
+      if (c == '\\') {
+        j++;
+      } else if (c == '[') {
+        nest++;
+      } else if (c == ']') {
+        if (nest == 0) {
+          return j;
+        }
+        nest--;
+      }
+    }
+    return -1;
+  }
+}
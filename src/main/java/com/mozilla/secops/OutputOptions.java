@@ -1,5 +1,6 @@
 package com.mozilla.secops;
 
+import com.mozilla.secops.alert.Alert;
 import org.apache.beam.sdk.extensions.gcp.options.GcpOptions;
 import org.apache.beam.sdk.options.Default;
 import org.apache.beam.sdk.options.Description;
@@ -20,6 +21,24 @@ public interface OutputOptions extends PipelineOptions, GcpOptions {
 
   void setOutputFile(String value);
 
+  @Description("With file output; shards per window, 0 for runner determined (bounded input only)")
+  @Default.Integer(1)
+  Integer getOutputFileShards();
+
+  void setOutputFileShards(Integer value);
+
+  @Description("With file output; compression, one of uncompressed, gzip, bzip2, deflate")
+  @Default.String("uncompressed")
+  String getOutputFileCompression();
+
+  void setOutputFileCompression(String value);
+
+  @Description("With file output; window size for output files in minutes")
+  @Default.Integer(5)
+  Integer getOutputFileWindowMinutes();
+
+  void setOutputFileWindowMinutes(Integer value);
+
   @Description("Write output to BigQuery; BigQuery table specification")
   String getOutputBigQuery();
 
@@ -89,6 +108,26 @@ public interface OutputOptions extends PipelineOptions, GcpOptions {
 
   void setMonitoredResourceIndicator(String value);
 
+  @Description("Include trace of alert stage timestamps in alert metadata")
+  @Default.Boolean(false)
+  Boolean getOutputAlertTrace();
+
+  void setOutputAlertTrace(Boolean value);
+
+  @Description("Delay before merging and notifying related alerts; seconds")
+  @Default.Integer(60)
+  Integer getAlertNotifyMergeDelaySeconds();
+
+  void setAlertNotifyMergeDelaySeconds(Integer value);
+
+  @Description(
+      "Merge and notify related alerts once this many are pending, or after the merge delay;"
+          + " 0 to merge on delay only")
+  @Default.Integer(0)
+  Integer getAlertNotifyMergeElementCount();
+
+  void setAlertNotifyMergeElementCount(Integer value);
+
   @Description("Use memcached alert state; hostname of memcached server")
   String getAlertStateMemcachedHost();
 
@@ -130,4 +169,8 @@ public interface OutputOptions extends PipelineOptions, GcpOptions {
   public static PTransform<PCollection<String>, PDone> compositeOutput(OutputOptions o) {
     return CompositeOutput.withOptions(o);
   }
+
+  public static PTransform<PCollection<Alert>, PDone> compositeAlertOutput(OutputOptions o) {
+    return CompositeOutput.alertsWithOptions(o);
+  }
 }
@@ -0,0 +1,28 @@
+package com.mozilla.secops;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import org.apache.beam.sdk.harness.JvmInitializer;
+import org.apache.beam.sdk.options.PipelineOptions;
+
+/**
+ * Prefetch configured resources into the {@link ResourceRegistry} when a worker starts
+ *
+ * <p>Fetches the GeoIP databases, identity manager configuration, and any paths specified using
+ * {@link InputOptions#getPrefetchResourcePaths()} in parallel before the worker begins processing,
+ * so transforms loading these resources during setup do not each fetch them in turn.
+ */
+public class ResourcePrefetcher implements JvmInitializer {
+  @Override
+  public void beforeProcessing(PipelineOptions options) {
+    InputOptions o = options.as(InputOptions.class);
+    ArrayList<String> paths = new ArrayList<>();
+    paths.add(o.getMaxmindCityDbPath());
+    paths.add(o.getMaxmindIspDbPath());
+    paths.add(o.getIdentityManagerPath());
+    if (o.getPrefetchResourcePaths() != null) {
+      paths.addAll(Arrays.asList(o.getPrefetchResourcePaths()));
+    }
+    ResourceRegistry.prefetch(paths);
+  }
+}
@@ -0,0 +1,241 @@
+package com.mozilla.secops;
+
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Process wide registry of resources loaded from resource paths or GCS URLs
+ *
+ * <p>Many transforms load the same configuration artifacts (e.g., GeoIP databases, identity manager
+ * configuration, pattern lists) independently during setup, and each DoFn instance on a worker
+ * would otherwise fetch the same object again. The registry fetches the content for each distinct
+ * path once per JVM, and concurrent requests for a path that is being fetched wait for the
+ * in-progress fetch. Paths can also be fetched in parallel ahead of use with {@link #prefetch}.
+ *
+ * <p>Parsed forms of content can be cached with {@link #getParsed}, keyed by a parser identifier
+ * and a hash of the content, so the same content is only parsed once even if it is loaded from
+ * multiple paths. Parsed objects are shared, so should only be cached if they are not modified by
+ * callers. Once parsed, the raw content for the path is released.
+ *
+ * <p>Failed fetches are not cached, and will be retried on the next request for the path.
+ * Successful fetches are retained for the life of the JVM, so changes to the underlying object are
+ * not observed until the worker restarts.
+ */
+public final class ResourceRegistry {
+  private static final int PREFETCH_THREADS = 8;
+
+  private static final Logger log = LoggerFactory.getLogger(ResourceRegistry.class);
+
+  private static final ConcurrentHashMap<String, CompletableFuture<byte[]>> content =
+      new ConcurrentHashMap<>();
+  private static final ConcurrentHashMap<String, String> contentHashes = new ConcurrentHashMap<>();
+  private static final ConcurrentHashMap<String, Object> parsed = new ConcurrentHashMap<>();
+  private static final ConcurrentHashMap<String, Long> loadTimings = new ConcurrentHashMap<>();
+
+  /**
+   * Parser for resource content
+   *
+   * @param <T> Parsed type
+   */
+  @FunctionalInterface
+  public interface ContentParser<T> {
+    /**
+     * Parse content
+     *
+     * @param buf Content
+     * @return Parsed form
+     * @throws IOException IOException
+     */
+    T parse(byte[] buf) throws IOException;
+  }
+
+  private static void checkPath(String path) throws IOException {
+    if (path == null || path.isEmpty()) {
+      throw new IOException("attempt to load file with null or empty path");
+    }
+  }
+
+  private static byte[] load(String path) throws IOException {
+    long start = System.currentTimeMillis();
+    byte[] ret;
+    if (GcsUtil.isGcsUrl(path)) {
+      ret = GcsUtil.fetchContent(path);
+    } else {
+      try (InputStream in = ResourceRegistry.class.getResourceAsStream(path)) {
+        ret = in == null ? null : ByteStreams.toByteArray(in);
+      }
+    }
+    if (ret == null) {
+      throw new IOException(String.format("failed to read file from path %s", path));
+    }
+    long elapsed = System.currentTimeMillis() - start;
+    loadTimings.put(path, elapsed);
+    log.info("loaded {} ({} bytes) in {} ms", path, ret.length, elapsed);
+    return ret;
+  }
+
+  /**
+   * Fetch content for path, returning cached content if it has already been fetched
+   *
+   * @param path Resource path or GCS URL
+   * @return Content
+   * @throws IOException IOException
+   */
+  public static byte[] fetch(String path) throws IOException {
+    checkPath(path);
+    CompletableFuture<byte[]> f = new CompletableFuture<>();
+    CompletableFuture<byte[]> existing = content.putIfAbsent(path, f);
+    if (existing != null) {
+      try {
+        return existing.join();
+      } catch (CompletionException exc) {
+        if (exc.getCause() instanceof IOException) {
+          throw (IOException) exc.getCause();
+        }
+        throw exc;
+      }
+    }
+    try {
+      byte[] ret = load(path);
+      f.complete(ret);
+      return ret;
+    } catch (IOException | RuntimeException exc) {
+      content.remove(path, f);
+      f.completeExceptionally(exc);
+      throw exc;
+    }
+  }
+
+  /**
+   * Fetch content for a set of paths in parallel
+   *
+   * <p>Returns once all fetches have completed. Errors are logged, and the failed paths will be
+   * fetched again when requested.
+   *
+   * @param paths Resource paths or GCS URLs, null or empty entries are ignored
+   */
+  public static void prefetch(Collection<String> paths) {
+    ArrayList<String> pending = new ArrayList<>();
+    for (String p : new LinkedHashSet<>(paths)) {
+      if (p != null && !p.isEmpty() && !content.containsKey(p) && !contentHashes.containsKey(p)) {
+        pending.add(p);
+      }
+    }
+    if (pending.isEmpty()) {
+      return;
+    }
+    ExecutorService executor =
+        Executors.newFixedThreadPool(Math.min(pending.size(), PREFETCH_THREADS));
+    try {
+      long start = System.currentTimeMillis();
+      ArrayList<CompletableFuture<Void>> fetches = new ArrayList<>();
+      for (String p : pending) {
+        fetches.add(
+            CompletableFuture.runAsync(
+                () -> {
+                  try {
+                    fetch(p);
+                  } catch (IOException exc) {
+                    log.error("prefetch of {} failed: {}", p, exc.getMessage());
+                  }
+                },
+                executor));
+      }
+      CompletableFuture.allOf(fetches.toArray(new CompletableFuture<?>[0])).join();
+      log.info(
+          "prefetched {} resources in {} ms", pending.size(), System.currentTimeMillis() - start);
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  /**
+   * Return parsed form of content for path
+   *
+   * <p>The parsed form is cached using the parser identifier and a hash of the content, and the
+   * same object is returned to all callers requesting the same content with the same parser.
+   *
+   * @param <T> Parsed type
+   * @param path Resource path or GCS URL
+   * @param parserId Identifier for parser, distinct for each parser producing a different type
+   * @param parser Parser
+   * @return Parsed form
+   * @throws IOException IOException
+   */
+  @SuppressWarnings("unchecked")
+  public static <T> T getParsed(String path, String parserId, ContentParser<T> parser)
+      throws IOException {
+    checkPath(path);
+    String hash = contentHashes.get(path);
+    if (hash != null) {
+      Object ret = parsed.get(parserId + ":" + hash);
+      if (ret != null) {
+        return (T) ret;
+      }
+    }
+
+    byte[] buf = fetch(path);
+    hash = Hashing.sha256().hashBytes(buf).toString();
+    String key = parserId + ":" + hash;
+    Object ret;
+    try {
+      ret =
+          parsed.computeIfAbsent(
+              key,
+              k -> {
+                long start = System.currentTimeMillis();
+                try {
+                  Object r = parser.parse(buf);
+                  log.info(
+                      "parsed {} using {} in {} ms",
+                      path,
+                      parserId,
+                      System.currentTimeMillis() - start);
+                  return r;
+                } catch (IOException exc) {
+                  throw new UncheckedIOException(exc);
+                }
+              });
+    } catch (UncheckedIOException exc) {
+      throw exc.getCause();
+    }
+    contentHashes.put(path, hash);
+    content.remove(path);
+    return (T) ret;
+  }
+
+  /**
+   * Return time taken to fetch each path that has been loaded
+   *
+   * @return Map of path to load time in milliseconds
+   */
+  public static Map<String, Long> getLoadTimings() {
+    return Collections.unmodifiableMap(new HashMap<>(loadTimings));
+  }
+
+  /** Remove all cached content, parsed forms and timings */
+  public static void clear() {
+    content.clear();
+    contentHashes.clear();
+    parsed.clear();
+    loadTimings.clear();
+  }
+
+  private ResourceRegistry() {}
+}
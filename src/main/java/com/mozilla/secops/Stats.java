@@ -1,11 +1,13 @@
 package com.mozilla.secops;
 
 import java.io.Serializable;
+import java.util.Map;
 import java.util.UUID;
 import org.apache.beam.sdk.transforms.Combine;
 import org.apache.beam.sdk.transforms.Combine.CombineFn;
 import org.apache.beam.sdk.transforms.PTransform;
 import org.apache.beam.sdk.transforms.View;
+import org.apache.beam.sdk.values.KV;
 import org.apache.beam.sdk.values.PCollection;
 import org.apache.beam.sdk.values.PCollectionView;
 import org.slf4j.Logger;
@@ -218,6 +220,23 @@ public class Stats extends PTransform<PCollection<Long>, PCollection<Stats.Stats
         .apply("stats view", View.<StatsOutput>asSingleton().withDefaultValue(new StatsOutput()));
   }
 
+  /**
+   * Execute the transform per key, returning a {@link PCollectionView} suitable for use as a side
+   * input
+   *
+   * <p>Statistics are calculated independently for the values associated with each key, and the
+   * resulting view maps each key to its {@link StatsOutput}.
+   *
+   * @param input Keyed input data set
+   * @return {@link PCollectionView} representing results of analysis
+   */
+  public static PCollectionView<Map<String, StatsOutput>> getPerKeyView(
+      PCollection<KV<String, Long>> input) {
+    return input
+        .apply("per-key stats transform", Combine.perKey(new StatsCombiner()))
+        .apply("per-key stats view", View.<String, StatsOutput>asMap());
+  }
+
   @Override
   public PCollection<StatsOutput> expand(PCollection<Long> input) {
     return input.apply("stats", Combine.globally(new StatsCombiner()).withoutDefaults());
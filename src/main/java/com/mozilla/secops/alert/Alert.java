@@ -7,13 +7,19 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.joda.JodaModule;
 import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.UnaryOperator;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 
@@ -38,28 +44,147 @@ public class Alert implements Serializable {
   private String category;
   private String payload;
   private DateTime timestamp;
-  private ArrayList<AlertMeta> metadata;
-  private ReentrantLock metaLock;
+  private transient volatile Metadata metadata;
   private AlertSeverity severity;
 
+  // The serialized form retains the layout used before metadata was indexed, where metadata was an
+  // ArrayList guarded by a ReentrantLock, so alerts encoded by either layout can be read by both
+  private static final ObjectStreamField[] serialPersistentFields = {
+    new ObjectStreamField("alertId", UUID.class),
+    new ObjectStreamField("summary", String.class),
+    new ObjectStreamField("category", String.class),
+    new ObjectStreamField("payload", String.class),
+    new ObjectStreamField("timestamp", DateTime.class),
+    new ObjectStreamField("metadata", ArrayList.class),
+    new ObjectStreamField("metaLock", ReentrantLock.class),
+    new ObjectStreamField("severity", AlertSeverity.class)
+  };
+
+  private static final AtomicReferenceFieldUpdater<Alert, Metadata> metadataUpdater =
+      AtomicReferenceFieldUpdater.newUpdater(Alert.class, Metadata.class, "metadata");
+
+  /**
+   * Immutable snapshot of alert metadata
+   *
+   * <p>Entries are kept in insertion order, which is the order they are serialized in. The first
+   * value set for each standard key is indexed by key, and the first value for each custom key is
+   * indexed by key string, so lookups do not need to scan the entries.
+   *
+   * <p>Modifications return a new snapshot, so readers (including serialization) always observe a
+   * consistent set of entries without locking.
+   */
+  private static final class Metadata {
+    private static final Metadata EMPTY =
+        new Metadata(new AlertMeta[0], new EnumMap<>(AlertMeta.Key.class), new HashMap<>());
+
+    private final AlertMeta[] entries;
+    private final EnumMap<AlertMeta.Key, String> values;
+    private final HashMap<String, String> customValues;
+
+    private static Metadata of(Iterable<AlertMeta> entries) {
+      Metadata ret = EMPTY;
+      for (AlertMeta m : entries) {
+        ret = ret.with(m.getKey(), m.getValue());
+      }
+      return ret;
+    }
+
+    private String get(AlertMeta.Key key) {
+      return values.get(key.getCanonical());
+    }
+
+    private String get(String key) {
+      AlertMeta.Key k = AlertMeta.Key.fromKey(key);
+      return k != null ? values.get(k) : customValues.get(key);
+    }
+
+    private Metadata with(String key, String value) {
+      AlertMeta[] e = Arrays.copyOf(entries, entries.length + 1);
+      e[entries.length] = new AlertMeta(key, value);
+      AlertMeta.Key k = AlertMeta.Key.fromKey(key);
+      if (k != null) {
+        if (values.containsKey(k)) {
+          return new Metadata(e, values, customValues);
+        }
+        EnumMap<AlertMeta.Key, String> v = new EnumMap<>(values);
+        v.put(k, value);
+        return new Metadata(e, v, customValues);
+      }
+      if (customValues.containsKey(key)) {
+        return new Metadata(e, values, customValues);
+      }
+      HashMap<String, String> c = new HashMap<>(customValues);
+      c.put(key, value);
+      return new Metadata(e, values, c);
+    }
+
+    private Metadata set(AlertMeta.Key key, String value) {
+      AlertMeta.Key k = key.getCanonical();
+      if (!values.containsKey(k)) {
+        return with(key.getKey(), value);
+      }
+      AlertMeta[] e = entries.clone();
+      for (int i = 0; i < e.length; i++) {
+        if (e[i].getKey().equals(key.getKey())) {
+          e[i] = new AlertMeta(key.getKey(), value);
+          break;
+        }
+      }
+      EnumMap<AlertMeta.Key, String> v = new EnumMap<>(values);
+      v.put(k, value);
+      return new Metadata(e, v, customValues);
+    }
+
+    private Metadata(
+        AlertMeta[] entries,
+        EnumMap<AlertMeta.Key, String> values,
+        HashMap<String, String> customValues) {
+      this.entries = entries;
+      this.values = values;
+      this.customValues = customValues;
+    }
+  }
+
   /** Construct new alert object */
   public Alert() {
     alertId = UUID.randomUUID();
     timestamp = new DateTime(DateTimeZone.UTC);
-    metadata = new ArrayList<AlertMeta>();
-    metaLock = new ReentrantLock();
+    metadata = Metadata.EMPTY;
     severity = AlertSeverity.INFORMATIONAL;
   }
 
+  private void updateMetadata(UnaryOperator<Metadata> update) {
+    Metadata cur;
+    do {
+      cur = metadata;
+    } while (!metadataUpdater.compareAndSet(this, cur, update.apply(cur)));
+  }
+
   private void writeObject(ObjectOutputStream o) throws IOException {
-    // Override default writeObject to acquire metadata mutex to ensure we don't have
-    // other threads adjusting metadata during object serialization
-    metaLock.lock();
-    try {
-      o.defaultWriteObject();
-    } finally {
-      metaLock.unlock();
-    }
+    ObjectOutputStream.PutField f = o.putFields();
+    f.put("alertId", alertId);
+    f.put("summary", summary);
+    f.put("category", category);
+    f.put("payload", payload);
+    f.put("timestamp", timestamp);
+    // Only the metadata entries are written, the index is rebuilt when read
+    f.put("metadata", new ArrayList<AlertMeta>(Arrays.asList(metadata.entries)));
+    f.put("metaLock", new ReentrantLock());
+    f.put("severity", severity);
+    o.writeFields();
+  }
+
+  @SuppressWarnings("unchecked")
+  private void readObject(ObjectInputStream i) throws IOException, ClassNotFoundException {
+    ObjectInputStream.GetField f = i.readFields();
+    alertId = (UUID) f.get("alertId", null);
+    summary = (String) f.get("summary", null);
+    category = (String) f.get("category", null);
+    payload = (String) f.get("payload", null);
+    timestamp = (DateTime) f.get("timestamp", null);
+    ArrayList<AlertMeta> m = (ArrayList<AlertMeta>) f.get("metadata", null);
+    metadata = m != null ? Metadata.of(m) : Metadata.EMPTY;
+    severity = (AlertSeverity) f.get("severity", null);
   }
 
   /**
@@ -85,9 +210,9 @@ public class Alert implements Serializable {
    */
   public String assemblePayload() {
     String ret = getPayload();
-    ArrayList<AlertMeta> meta = getMetadata();
+    AlertMeta[] meta = metadata.entries;
 
-    if (meta != null) {
+    if (meta.length > 0) {
       ret = ret + "\n\nAlert metadata:\n";
       for (AlertMeta m : meta) {
         ret = ret + String.format("%s = %s\n", m.getKey(), m.getValue());
@@ -187,12 +312,7 @@ public class Alert implements Serializable {
    * @return Value string, null if not found
    */
   public String getMetadataValue(AlertMeta.Key key) {
-    for (AlertMeta m : metadata) {
-      if (m.getKey().equals(key.getKey())) {
-        return m.getValue();
-      }
-    }
-    return null;
+    return metadata.get(key);
   }
 
   /**
@@ -205,12 +325,7 @@ public class Alert implements Serializable {
    * @return Value string, null if not found
    */
   public String getCustomMetadataValue(String key) {
-    for (AlertMeta m : metadata) {
-      if (m.getKey().equals(key)) {
-        return m.getValue();
-      }
-    }
-    return null;
+    return metadata.get(key);
   }
 
   /**
@@ -227,31 +342,28 @@ public class Alert implements Serializable {
     if (!key.validate(value)) {
       return false;
     }
-    metaLock.lock();
-    try {
-      for (AlertMeta m : metadata) {
-        if (m.getKey().equals(key.getKey())) {
-          m.setValue(value);
-          return true;
-        }
-      }
-      metadata.add(new AlertMeta(key.getKey(), value));
-    } finally {
-      metaLock.unlock();
-    }
+    updateMetadata(m -> m.set(key, value));
     return true;
   }
 
   /**
    * Get alert metadata
    *
+   * <p>Returns a copy of the metadata entries; changes to the returned list or entries do not
+   * modify the alert.
+   *
    * @return Alert metadata
    */
   public ArrayList<AlertMeta> getMetadata() {
-    if (metadata.size() == 0) {
+    AlertMeta[] entries = metadata.entries;
+    if (entries.length == 0) {
       return null;
     }
-    return metadata;
+    ArrayList<AlertMeta> ret = new ArrayList<>(entries.length);
+    for (AlertMeta m : entries) {
+      ret.add(new AlertMeta(m.getKey(), m.getValue()));
+    }
+    return ret;
   }
 
   /**
@@ -261,7 +373,7 @@ public class Alert implements Serializable {
    */
   @JsonProperty("metadata")
   public void setMetadata(ArrayList<AlertMeta> metadata) {
-    this.metadata = metadata;
+    this.metadata = metadata == null ? Metadata.EMPTY : Metadata.of(metadata);
   }
 
   /**
@@ -275,15 +387,7 @@ public class Alert implements Serializable {
     if (!key.validate(value)) {
       return false;
     }
-    // Pick up metadata mutex here to prevent ConcurrentModification exception if object is
-    // serialized while we are appending to the metadata, see local implementation of
-    // writeObject
-    metaLock.lock();
-    try {
-      metadata.add(new AlertMeta(key.getKey(), value));
-    } finally {
-      metaLock.unlock();
-    }
+    updateMetadata(m -> m.with(key.getKey(), value));
     return true;
   }
 
@@ -314,15 +418,7 @@ public class Alert implements Serializable {
    * @param value Value to set
    */
   public void addCustomMetadata(String key, String value) {
-    // Pick up metadata mutex here to prevent ConcurrentModification exception if object is
-    // serialized while we are appending to the metadata, see local implementation of
-    // writeObject
-    metaLock.lock();
-    try {
-      metadata.add(new AlertMeta(key, value));
-    } finally {
-      metaLock.unlock();
-    }
+    updateMetadata(m -> m.with(key, value));
   }
 
   /**
@@ -532,7 +628,7 @@ public class Alert implements Serializable {
   public HashMap<String, Object> generateTemplateVariables() {
     HashMap<String, Object> v = new HashMap<String, Object>();
     v.put("alert", this);
-    for (AlertMeta m : metadata) {
+    for (AlertMeta m : metadata.entries) {
       v.put(m.getKey(), m.getValue());
     }
     return v;
@@ -7,7 +7,11 @@ import com.mozilla.secops.parser.GeoIP;
 import org.apache.beam.sdk.transforms.DoFn;
 import org.apache.beam.sdk.transforms.SimpleFunction;
 
-/** {@link DoFn} for normalization and supplemental enrichment of {@link Alert} objects */
+/**
+ * {@link DoFn} for normalization and supplemental enrichment of {@link Alert} objects
+ *
+ * <p>Emission latency for each alert is recorded using {@link AlertLatency}.
+ */
 public class AlertFormatter extends DoFn<Alert, Alert> {
   private static final long serialVersionUID = 1L;
 
@@ -15,6 +19,7 @@ public class AlertFormatter extends DoFn<Alert, Alert> {
   private String[] addressFields;
   private String maxmindCityDbPath;
   private String maxmindIspDbPath;
+  private AlertLatency latency;
   private GeoIP geoip;
 
   /**
@@ -40,6 +45,7 @@ public class AlertFormatter extends DoFn<Alert, Alert> {
     monitoredResourceIndicator = options.getMonitoredResourceIndicator();
     maxmindCityDbPath = options.getMaxmindCityDbPath();
     maxmindIspDbPath = options.getMaxmindIspDbPath();
+    latency = new AlertLatency(options.getOutputAlertTrace());
   }
 
   /**
@@ -54,6 +60,7 @@ public class AlertFormatter extends DoFn<Alert, Alert> {
     this.monitoredResourceIndicator = monitoredResourceIndicator;
     this.maxmindCityDbPath = maxmindCityDbPath;
     this.maxmindIspDbPath = maxmindIspDbPath;
+    latency = new AlertLatency(false);
   }
 
   /**
@@ -140,6 +147,7 @@ public class AlertFormatter extends DoFn<Alert, Alert> {
     }
 
     addGeoIPData(a, geoip);
+    latency.formatted(a, c.timestamp(), System.currentTimeMillis());
     c.output(a);
   }
 }
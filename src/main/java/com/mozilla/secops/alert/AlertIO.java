@@ -1,5 +1,6 @@
 package com.mozilla.secops.alert;
 
+import com.mozilla.secops.OutputOptions;
 import com.mozilla.secops.window.GlobalTriggers;
 import freemarker.template.MalformedTemplateNameException;
 import freemarker.template.TemplateNotFoundException;
@@ -10,6 +11,7 @@ import org.apache.beam.sdk.transforms.DoFn;
 import org.apache.beam.sdk.transforms.GroupByKey;
 import org.apache.beam.sdk.transforms.PTransform;
 import org.apache.beam.sdk.transforms.ParDo;
+import org.apache.beam.sdk.transforms.windowing.TimestampCombiner;
 import org.apache.beam.sdk.values.KV;
 import org.apache.beam.sdk.values.PCollection;
 import org.apache.beam.sdk.values.PDone;
@@ -33,6 +35,33 @@ public class AlertIO {
     return new Write(cfg);
   }
 
+  /**
+   * Return {@link PTransform} to handle alerting output from {@link Alert} objects
+   *
+   * @param cfg AlertConfiguration
+   * @return IO transform
+   */
+  public static TypedWrite writeAlerts(AlertConfiguration cfg) {
+    return new TypedWrite(cfg);
+  }
+
+  /** Convert {@link Alert} JSON strings into {@link Alert} objects, dropping invalid input */
+  public static class ParseAlerts extends DoFn<String, Alert> {
+    private static final long serialVersionUID = 1L;
+
+    private static final Logger log = LoggerFactory.getLogger(ParseAlerts.class);
+
+    @ProcessElement
+    public void processElement(ProcessContext c) {
+      Alert a = Alert.fromJSON(c.element());
+      if (a == null) {
+        log.error("alert deserialization failed for {}", c.element());
+        return;
+      }
+      c.output(a);
+    }
+  }
+
   /**
    * Merge related alerts together using any set alert notify merge metadata prior to emitting
    * notifications.
@@ -40,29 +69,43 @@ public class AlertIO {
   public static class AlertNotifyMerge extends PTransform<PCollection<String>, PCollection<Alert>> {
     private static final long serialVersionUID = 1L;
 
-    private Logger log;
-
-    /** Static initializer for {@link AlertNotifyMerge} */
-    public AlertNotifyMerge() {
-      log = LoggerFactory.getLogger(AlertNotifyMerge.class);
+    @Override
+    public PCollection<Alert> expand(PCollection<String> col) {
+      return col.apply("parse alerts", ParDo.of(new ParseAlerts()))
+          .apply(new TypedAlertNotifyMerge());
     }
+  }
+
+  /**
+   * Merge related {@link Alert} objects together using any set alert notify merge metadata prior to
+   * emitting notifications.
+   */
+  public static class TypedAlertNotifyMerge
+      extends PTransform<PCollection<Alert>, PCollection<Alert>> {
+    private static final long serialVersionUID = 1L;
+
+    /** Global triggers stage name for alert notify merge */
+    public static final String NOTIFY_MERGE_STAGE = "alert_notify_merge";
 
     @Override
-    public PCollection<Alert> expand(PCollection<String> col) {
-      return col.apply("window for alert merge", new GlobalTriggers<String>(60))
+    public PCollection<Alert> expand(PCollection<Alert> col) {
+      OutputOptions options = col.getPipeline().getOptions().as(OutputOptions.class);
+      return col.apply(
+              "window for alert merge",
+              new GlobalTriggers<Alert>(60)
+                  .withStage(NOTIFY_MERGE_STAGE)
+                  .withTimestampCombiner(TimestampCombiner.EARLIEST)
+                  .withDelaySeconds(options.getAlertNotifyMergeDelaySeconds())
+                  .withElementCount(options.getAlertNotifyMergeElementCount()))
           .apply(
               "extract merge keys",
               ParDo.of(
-                  new DoFn<String, KV<String, Alert>>() {
+                  new DoFn<Alert, KV<String, Alert>>() {
                     private static final long serialVersionUID = 1L;
 
                     @ProcessElement
                     public void processElement(ProcessContext c) {
-                      Alert a = Alert.fromJSON(c.element());
-                      if (a == null) {
-                        log.error("alert deserialization failed for {}", c.element());
-                        return;
-                      }
+                      Alert a = c.element();
                       String key = a.getNotifyMergeKey();
                       if (key == null) {
                         key = UUID.randomUUID().toString();
@@ -71,6 +114,9 @@ public class AlertIO {
                     }
                   }))
           .apply(GroupByKey.<String, Alert>create())
+          .apply(
+              "alert merge pane metrics",
+              ParDo.of(new GlobalTriggers.PaneMetricsFn<String, Alert>(NOTIFY_MERGE_STAGE)))
           .apply(
               "merge alerts",
               ParDo.of(
@@ -137,7 +183,31 @@ public class AlertIO {
 
     @Override
     public PDone expand(PCollection<String> input) {
-      input.apply(new AlertNotifyMerge()).apply(ParDo.of(new WriteFn(this)));
+      input.apply("parse alerts", ParDo.of(new ParseAlerts())).apply(new TypedWrite(cfg));
+      return PDone.in(input.getPipeline());
+    }
+  }
+
+  /**
+   * Handle alerting output for {@link Alert} objects based on the contents of the alerting messages
+   * such as included metadata and severity.
+   */
+  public static class TypedWrite extends PTransform<PCollection<Alert>, PDone> {
+    private static final long serialVersionUID = 1L;
+    private final AlertConfiguration cfg;
+
+    /**
+     * Create new alert handler transform
+     *
+     * @param cfg Alerting configuration
+     */
+    public TypedWrite(AlertConfiguration cfg) {
+      this.cfg = cfg;
+    }
+
+    @Override
+    public PDone expand(PCollection<Alert> input) {
+      input.apply(new TypedAlertNotifyMerge()).apply(ParDo.of(new WriteFn(cfg)));
       return PDone.in(input.getPipeline());
     }
   }
@@ -145,16 +215,15 @@ public class AlertIO {
   private static class WriteFn extends DoFn<Alert, Void> {
     private static final long serialVersionUID = 1L;
 
-    private final Write wTransform;
     private Logger log;
 
     private AlertConfiguration cfg;
     private AlertMailer mailer;
     private AlertSlack slack;
+    private final AlertLatency latency = new AlertLatency(false);
 
-    public WriteFn(Write wTransform) {
-      this.wTransform = wTransform;
-      cfg = wTransform.getAlertConfiguration();
+    public WriteFn(AlertConfiguration cfg) {
+      this.cfg = cfg;
     }
 
     @Setup
@@ -247,6 +316,8 @@ public class AlertIO {
           }
         }
       }
+
+      latency.sink(a, c.timestamp(), System.currentTimeMillis());
     }
   }
 }
@@ -0,0 +1,217 @@
+package com.mozilla.secops.alert;
+
+import java.io.Serializable;
+import org.apache.beam.sdk.metrics.Distribution;
+import org.apache.beam.sdk.metrics.Metrics;
+import org.apache.beam.sdk.transforms.DoFn;
+import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
+import org.apache.beam.sdk.transforms.windowing.GlobalWindow;
+import org.joda.time.Instant;
+
+/**
+ * Latency instrumentation for alerts moving from analysis to output
+ *
+ * <p>Distributions are recorded in the {@link #METRICS_NAMESPACE} namespace. When an alert is
+ * formatted, the delay between the element timestamp of the alert and the current time is recorded
+ * as {@link #METRIC_EMIT_LAG}. For alerts generated from windowed analysis the element timestamp is
+ * the end of the window, so this measures time from window close to alert emission. Each output
+ * sink records the delay between the element timestamp and the current time as {@link
+ * #METRIC_WINDOW_SINK_LAG} once it has written the alert, or immediately before the alert is handed
+ * to the sink where the write is performed by a Beam IO transform. Element timestamps that are not
+ * set, or that are the end of the global window, are ignored.
+ *
+ * <p>If tracing is enabled, each stage is also recorded in the {@link AlertMeta.Key#TRACE} metadata
+ * of the alert, as a comma separated list of stage=milliseconds entries (e.g.,
+ * "window=1577836800000,formatted=1577836805123,output=1577836805410"), and sinks also record the
+ * delay since the alert was formatted as {@link #METRIC_SINK_LAG}. Alerts are not modified unless
+ * tracing is enabled.
+ */
+public class AlertLatency implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  /** Metrics namespace */
+  public static final String METRICS_NAMESPACE = "alert_latency";
+
+  /** Distribution name for delay between alert element timestamp and formatting */
+  public static final String METRIC_EMIT_LAG = "window_to_emit_ms";
+
+  /** Distribution name for delay between formatting and output, for traced alerts */
+  public static final String METRIC_SINK_LAG = "emit_to_sink_ms";
+
+  /** Distribution name for delay between alert element timestamp and output */
+  public static final String METRIC_WINDOW_SINK_LAG = "window_to_sink_ms";
+
+  /** Trace stage for alert element timestamp */
+  public static final String STAGE_WINDOW = "window";
+
+  /** Trace stage for alert formatting */
+  public static final String STAGE_FORMATTED = "formatted";
+
+  /** Trace stage for alert output */
+  public static final String STAGE_OUTPUT = "output";
+
+  private final boolean trace;
+  private final Distribution emitLag = Metrics.distribution(METRICS_NAMESPACE, METRIC_EMIT_LAG);
+  private final Distribution sinkLag = Metrics.distribution(METRICS_NAMESPACE, METRIC_SINK_LAG);
+  private final Distribution windowSinkLag =
+      Metrics.distribution(METRICS_NAMESPACE, METRIC_WINDOW_SINK_LAG);
+
+  /** {@link DoFn} adding the output stage to the alert trace prior to fan out to outputs */
+  public static class OutputFn extends DoFn<Alert, Alert> {
+    private static final long serialVersionUID = 1L;
+
+    private final AlertLatency latency;
+
+    /**
+     * Initialize new {@link OutputFn}
+     *
+     * @param trace True to record output stage in alert trace
+     */
+    public OutputFn(boolean trace) {
+      latency = new AlertLatency(trace);
+    }
+
+    @ProcessElement
+    public void processElement(ProcessContext c) {
+      Alert a = c.element();
+      latency.output(a, System.currentTimeMillis());
+      c.output(a);
+    }
+  }
+
+  /**
+   * {@link DoFn} recording sink latency for alerts immediately before they are handed to a sink
+   *
+   * <p>Used for outputs written by a Beam IO transform, where the write itself cannot be
+   * instrumented. Alerts are passed through unmodified.
+   */
+  public static class SinkFn extends DoFn<Alert, Alert> {
+    private static final long serialVersionUID = 1L;
+
+    private final AlertLatency latency = new AlertLatency(false);
+
+    @ProcessElement
+    public void processElement(ProcessContext c) {
+      latency.sink(c.element(), c.timestamp(), System.currentTimeMillis());
+      c.output(c.element());
+    }
+  }
+
+  /**
+   * Add a stage to the alert trace
+   *
+   * <p>If the stage is already present in the trace, its timestamp is replaced.
+   *
+   * @param a Alert
+   * @param stage Stage name
+   * @param millis Stage timestamp in milliseconds since the epoch
+   */
+  public static void addStage(Alert a, String stage, long millis) {
+    String buf = a.getMetadataValue(AlertMeta.Key.TRACE);
+    String entry = stage + "=" + millis;
+    if (buf == null) {
+      a.setMetadataValue(AlertMeta.Key.TRACE, entry);
+      return;
+    }
+    String[] entries = buf.split(",");
+    for (int i = 0; i < entries.length; i++) {
+      if (entries[i].startsWith(stage + "=")) {
+        entries[i] = entry;
+        a.setMetadataValue(AlertMeta.Key.TRACE, String.join(",", entries));
+        return;
+      }
+    }
+    a.setMetadataValue(AlertMeta.Key.TRACE, buf + "," + entry);
+  }
+
+  private static boolean hasTimestamp(Instant timestamp) {
+    return timestamp != null
+        && timestamp.isAfter(BoundedWindow.TIMESTAMP_MIN_VALUE)
+        && timestamp.isBefore(GlobalWindow.INSTANCE.maxTimestamp());
+  }
+
+  /**
+   * Return timestamp recorded for a stage in the alert trace
+   *
+   * @param a Alert
+   * @param stage Stage name
+   * @return Timestamp in milliseconds since the epoch, or null if stage was not recorded
+   */
+  public static Long getStage(Alert a, String stage) {
+    String buf = a.getMetadataValue(AlertMeta.Key.TRACE);
+    if (buf == null) {
+      return null;
+    }
+    for (String entry : buf.split(",")) {
+      int idx = entry.indexOf('=');
+      if (idx == stage.length() && entry.startsWith(stage)) {
+        try {
+          return Long.parseLong(entry.substring(idx + 1));
+        } catch (NumberFormatException exc) {
+          return null;
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Record formatting of an alert
+   *
+   * @param a Alert
+   * @param timestamp Element timestamp of alert
+   * @param now Current time in milliseconds since the epoch
+   */
+  public void formatted(Alert a, Instant timestamp, long now) {
+    boolean hasTimestamp = hasTimestamp(timestamp);
+    if (hasTimestamp) {
+      emitLag.update(now - timestamp.getMillis());
+    }
+    if (trace) {
+      if (hasTimestamp) {
+        addStage(a, STAGE_WINDOW, timestamp.getMillis());
+      }
+      addStage(a, STAGE_FORMATTED, now);
+    }
+  }
+
+  /**
+   * Record output of an alert in the alert trace, if tracing is enabled
+   *
+   * @param a Alert
+   * @param now Current time in milliseconds since the epoch
+   */
+  public void output(Alert a, long now) {
+    if (trace) {
+      addStage(a, STAGE_OUTPUT, now);
+    }
+  }
+
+  /**
+   * Record delivery of an alert to a sink
+   *
+   * <p>The alert is not modified.
+   *
+   * @param a Alert
+   * @param timestamp Element timestamp of alert
+   * @param now Current time in milliseconds since the epoch
+   */
+  public void sink(Alert a, Instant timestamp, long now) {
+    if (hasTimestamp(timestamp)) {
+      windowSinkLag.update(now - timestamp.getMillis());
+    }
+    Long formatted = getStage(a, STAGE_FORMATTED);
+    if (formatted != null) {
+      sinkLag.update(now - formatted);
+    }
+  }
+
+  /**
+   * Initialize new {@link AlertLatency}
+   *
+   * @param trace True to record stages in alert trace metadata
+   */
+  public AlertLatency(boolean trace) {
+    this.trace = trace;
+  }
+}
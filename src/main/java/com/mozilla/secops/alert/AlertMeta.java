@@ -8,6 +8,7 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -207,6 +208,7 @@ public class AlertMeta implements Serializable {
     TIME_DELTA_SECONDS("time_delta_seconds"),
     TOTAL_ADDRESS_COUNT("total_address_count"),
     TOTAL_ALERT_COUNT("total_alert_count"),
+    TRACE("trace"),
     UID("uid", true),
     USERAGENT("useragent"),
     USERNAME("username"),
@@ -265,6 +267,41 @@ public class AlertMeta implements Serializable {
     private AssociatedKeyLinkage[] associatedKeys;
     private ValueType valueType;
 
+    private static final HashMap<String, Key> keysByName = new HashMap<>();
+
+    // The first key declared using the same key string, used to index metadata values
+    private Key canonical;
+
+    static {
+      for (Key k : values()) {
+        keysByName.putIfAbsent(k.key, k);
+      }
+      for (Key k : values()) {
+        k.canonical = keysByName.get(k.key);
+      }
+    }
+
+    /**
+     * Return the first declared key using the same key string as this key
+     *
+     * @return Key
+     */
+    Key getCanonical() {
+      return canonical;
+    }
+
+    /**
+     * Return key for a metadata key string
+     *
+     * <p>If more than one key uses the same string, the key declared first is returned.
+     *
+     * @param key Metadata key string
+     * @return Key, or null if the string is not a standard key
+     */
+    public static Key fromKey(String key) {
+      return keysByName.get(key);
+    }
+
     /**
      * Return the string that will be used as the metadata key
      *
@@ -1,6 +1,11 @@
 package com.mozilla.secops.alert;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
+import java.util.UUID;
+import org.apache.beam.sdk.coders.CustomCoder;
 import org.apache.beam.sdk.state.StateSpec;
 import org.apache.beam.sdk.state.StateSpecs;
 import org.apache.beam.sdk.state.TimeDomain;
@@ -9,6 +14,7 @@ import org.apache.beam.sdk.state.TimerSpec;
 import org.apache.beam.sdk.state.TimerSpecs;
 import org.apache.beam.sdk.state.ValueState;
 import org.apache.beam.sdk.transforms.DoFn;
+import org.apache.beam.sdk.util.VarInt;
 import org.apache.beam.sdk.values.KV;
 import org.joda.time.Duration;
 import org.joda.time.Instant;
@@ -25,11 +31,30 @@ import org.slf4j.LoggerFactory;
  *
  * <p>This implementation uses state, so care should be taken to ensure the collection being
  * suppressed is windowed into windows that are appropriate for the state expiration value.
+ *
+ * <p>For high key cardinality, a compact mode is available. In compact mode state is encoded using
+ * {@link AlertSuppressionStateCoder}, and the state expiry timer for a key is only reset if the
+ * existing timer would fire before the state requires, with timers aligned to the granularity so
+ * expiry is batched. Compact mode can optionally also use a per-worker time decayed approximate membership
+ * filter to skip reading state for keys that have not recently been seen. A negative result from
+ * the filter is treated as no existing state, and an additional alert may be emitted for the key.
+ * This can happen if a key moves between workers, and also on the same worker, as the filter decays
+ * on processing time while suppression compares alert timestamps, so the two can disagree when
+ * processing is delayed or alerts arrive out of order. Alerts are never suppressed as a result of
+ * the filter.
  */
 public class AlertSuppressor extends DoFn<KV<String, Alert>, Alert> {
   private static final long serialVersionUID = 1L;
 
+  /** Expected insertions per generation for the approximate membership filter */
+  public static final int MEMBERSHIP_EXPECTED_INSERTIONS = 100000;
+
+  /** False positive probability for the approximate membership filter */
+  public static final double MEMBERSHIP_FPP = 0.01;
+
   private final Long expiry;
+  private final Long timerGranularity;
+  private final String membershipFilterId;
   protected Logger log;
 
   /** Internal class for alert suppression state */
@@ -48,10 +73,76 @@ public class AlertSuppressor extends DoFn<KV<String, Alert>, Alert> {
 
     /** Timestamp */
     public Instant timestamp;
+
+    /**
+     * Time the expiry timer was last set in milliseconds
+     *
+     * <p>Only maintained in compact mode.
+     */
+    public Long timerUpdated;
+  }
+
+  /**
+   * Compact coder for {@link AlertSuppressionState}
+   *
+   * <p>The key is not encoded, as it is always the key the state is stored under.
+   */
+  public static class AlertSuppressionStateCoder extends CustomCoder<AlertSuppressionState> {
+    private static final long serialVersionUID = 1L;
+
+    private static final int FLAG_COUNT = 0x01;
+    private static final int FLAG_TIMER = 0x02;
+
+    private static final AlertSuppressionStateCoder INSTANCE = new AlertSuppressionStateCoder();
+
+    /**
+     * Return coder instance
+     *
+     * @return AlertSuppressionStateCoder
+     */
+    public static AlertSuppressionStateCoder of() {
+      return INSTANCE;
+    }
+
+    @Override
+    public void encode(AlertSuppressionState value, OutputStream os) throws IOException {
+      int flags = 0;
+      if (value.count != null) {
+        flags |= FLAG_COUNT;
+      }
+      if (value.timerUpdated != null) {
+        flags |= FLAG_TIMER;
+      }
+      os.write(flags);
+      VarInt.encode(value.timestamp.getMillis(), os);
+      if (value.count != null) {
+        VarInt.encode(value.count, os);
+      }
+      if (value.timerUpdated != null) {
+        VarInt.encode(value.timerUpdated, os);
+      }
+    }
+
+    @Override
+    public AlertSuppressionState decode(InputStream is) throws IOException {
+      int flags = is.read();
+      if (flags == -1) {
+        throw new IOException("unexpected end of alert suppression state");
+      }
+      AlertSuppressionState ret = new AlertSuppressionState();
+      ret.timestamp = new Instant(VarInt.decodeLong(is));
+      if ((flags & FLAG_COUNT) != 0) {
+        ret.count = VarInt.decodeInt(is);
+      }
+      if ((flags & FLAG_TIMER) != 0) {
+        ret.timerUpdated = VarInt.decodeLong(is);
+      }
+      return ret;
+    }
   }
 
   @StateId("counter")
-  private final StateSpec<ValueState<AlertSuppressionState>> counterState = StateSpecs.value();
+  private final StateSpec<ValueState<AlertSuppressionState>> counterState;
 
   @TimerId("expiryState")
   private final TimerSpec counterExpiry = TimerSpecs.timer(TimeDomain.PROCESSING_TIME);
@@ -64,6 +155,28 @@ public class AlertSuppressor extends DoFn<KV<String, Alert>, Alert> {
   public AlertSuppressor(Long expiry) {
     log = LoggerFactory.getLogger(AlertSuppressor.class);
     this.expiry = expiry * 1000; // Convert to milliseconds for comparison
+    timerGranularity = null;
+    membershipFilterId = null;
+    counterState = StateSpecs.value();
+  }
+
+  /**
+   * Initialize new AlertSuppressor in compact mode
+   *
+   * @param expiry State expiry timer in seconds
+   * @param timerGranularity Granularity for expiry timer updates in seconds
+   * @param approximateMembership If true, use approximate membership filter to skip state reads
+   */
+  public AlertSuppressor(Long expiry, Long timerGranularity, boolean approximateMembership) {
+    log = LoggerFactory.getLogger(AlertSuppressor.class);
+    if (timerGranularity == null || timerGranularity <= 0) {
+      throw new IllegalArgumentException("timer granularity must be positive");
+    }
+    this.expiry = expiry * 1000;
+    this.timerGranularity = timerGranularity * 1000;
+    // All deserialized instances of this DoFn on a worker share the same filter
+    membershipFilterId = approximateMembership ? UUID.randomUUID().toString() : null;
+    counterState = StateSpecs.value(AlertSuppressionStateCoder.of());
   }
 
   private Boolean isExpired(AlertSuppressionState ss, AlertSuppressionState newss) {
@@ -78,11 +191,63 @@ public class AlertSuppressor extends DoFn<KV<String, Alert>, Alert> {
     return true;
   }
 
-  private void updateTimer(Timer timer) {
-    // Update the expiry timer for the state entry. This is only used to clear old state we
-    // don't want anymore, so to be safe set it to one minute beyond the actual expiry time
-    // for the entry.
-    timer.offset(Duration.millis(expiry + 60000L)).setRelative();
+  /**
+   * Update the expiry timer for the state entry
+   *
+   * @param timer Timer
+   * @param ss Existing state, null if none
+   * @param newss State that will be written, updated with the time of the last timer update
+   * @return True if the timer was updated
+   */
+  private boolean updateTimer(
+      Timer timer, AlertSuppressionState ss, AlertSuppressionState newss) {
+    // The timer is only used to clear old state we don't want anymore, so to be safe set it to
+    // one minute beyond the actual expiry time for the entry.
+    if (timerGranularity == null) {
+      timer.offset(Duration.millis(expiry + 60000L)).setRelative();
+      return true;
+    }
+
+    // In compact mode, the update can be skipped if the timer set at the last update already fires
+    // no earlier than this update requires. Targets are rounded up to the next multiple of the
+    // granularity after the full expiry, so timers set within the same granularity fire together
+    // and most updates do not need to reset the timer.
+    //
+    // Timer.align is not used here, as the aligned target is always within one period of the
+    // current time regardless of the offset. The rounded target is instead converted to an offset
+    // so the timer remains relative to the processing time of the runner.
+    long now = System.currentTimeMillis();
+    Long target =
+        compactTimerTarget(ss != null ? ss.timerUpdated : null, now, expiry, timerGranularity);
+    if (target == null) {
+      newss.timerUpdated = ss.timerUpdated;
+      return false;
+    }
+    timer.offset(Duration.millis(target - now)).setRelative();
+    newss.timerUpdated = now;
+    return true;
+  }
+
+  /**
+   * Return the target for a compact mode expiry timer, or null if the existing timer suffices
+   *
+   * @param timerUpdated Time the existing timer was set, null if none
+   * @param now Current time in milliseconds
+   * @param expiry Expiry in milliseconds
+   * @param granularity Timer granularity in milliseconds
+   * @return Timer target in milliseconds, or null if the existing timer fires late enough
+   */
+  static Long compactTimerTarget(Long timerUpdated, long now, long expiry, long granularity) {
+    if (timerUpdated != null
+        && roundUp(timerUpdated + expiry + 60000L, granularity) >= now + expiry + 60000L) {
+      return null;
+    }
+    return roundUp(now + expiry + 60000L, granularity);
+  }
+
+  private static long roundUp(long v, long granularity) {
+    long rem = v % granularity;
+    return rem == 0 ? v : v + granularity - rem;
   }
 
   @OnTimer("expiryState")
@@ -107,21 +272,34 @@ public class AlertSuppressor extends DoFn<KV<String, Alert>, Alert> {
       newss.count = new Integer(a.getMetadataValue(AlertMeta.Key.COUNT));
     }
 
-    AlertSuppressionState ss = counter.read();
+    AlertSuppressionState ss = null;
+    if (membershipFilterId != null) {
+      DecayingMembershipFilter filter =
+          DecayingMembershipFilter.forId(
+              membershipFilterId, expiry, MEMBERSHIP_EXPECTED_INSERTIONS, MEMBERSHIP_FPP);
+      // If the key has not been seen recently, skip reading state and treat it as new
+      if (filter.mightContainAndPut(key)) {
+        ss = counter.read();
+      }
+    } else {
+      ss = counter.read();
+    }
+    if (ss != null) {
+      ss.key = key;
+    }
 
     if (ss == null) {
       // This is a new alert, set values in state and emit
+      updateTimer(counterExpiry, null, newss);
       counter.write(newss);
-      updateTimer(counterExpiry);
       c.output(a);
       return;
     }
 
-    updateTimer(counterExpiry);
-
     if (isExpired(ss, newss)) {
       // If the state data is too old for consideration, update state with new information
       // and emit the alert
+      updateTimer(counterExpiry, ss, newss);
       counter.write(newss);
       c.output(a);
       return;
@@ -136,8 +314,13 @@ public class AlertSuppressor extends DoFn<KV<String, Alert>, Alert> {
       if (!newss.timestamp.equals(ss.timestamp)) {
         log.info("suppressing additional alert for {}", key);
       }
+      if (updateTimer(counterExpiry, ss, ss) && timerGranularity != null) {
+        // Record the timer update in compact mode
+        counter.write(ss);
+      }
       return;
     }
+    updateTimer(counterExpiry, ss, newss);
     counter.write(newss);
     c.output(a);
   }
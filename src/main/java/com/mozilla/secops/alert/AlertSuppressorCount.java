@@ -23,6 +23,17 @@ public class AlertSuppressorCount extends AlertSuppressor {
     super(expiry);
   }
 
+  /**
+   * Initialize new AlertSuppressorCount in compact mode
+   *
+   * @param expiry State expiry timer in seconds
+   * @param timerGranularity Granularity for expiry timer updates in seconds
+   * @param approximateMembership If true, use approximate membership filter to skip state reads
+   */
+  public AlertSuppressorCount(Long expiry, Long timerGranularity, boolean approximateMembership) {
+    super(expiry, timerGranularity, approximateMembership);
+  }
+
   @Override
   protected Boolean shouldSuppress(AlertSuppressionState ss, AlertSuppressionState newss) {
     if ((ss.count == null) || (newss.count == null)) {
@@ -0,0 +1,98 @@
+package com.mozilla.secops.alert;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Time decayed approximate membership filter
+ *
+ * <p>Keys are tracked in two generations of Bloom filters. The current generation receives new
+ * keys, and is moved to the previous generation when the decay interval elapses. A key that was
+ * added is reported as present for at least the decay interval after it was last added, and no
+ * longer than twice the interval.
+ *
+ * <p>Filters are shared per JVM by identifier.
+ */
+class DecayingMembershipFilter {
+  private static final ConcurrentHashMap<String, DecayingMembershipFilter> filters =
+      new ConcurrentHashMap<>();
+
+  private final long intervalMillis;
+  private final int expectedInsertions;
+  private final double fpp;
+  private LongSupplier clock;
+
+  private BloomFilter<CharSequence> current;
+  private BloomFilter<CharSequence> previous;
+  private long rotated;
+
+  /**
+   * Get shared filter for identifier, creating it if required
+   *
+   * @param id Filter identifier
+   * @param intervalMillis Decay interval in milliseconds
+   * @param expectedInsertions Expected insertions per generation
+   * @param fpp False positive probability
+   * @return DecayingMembershipFilter
+   */
+  static DecayingMembershipFilter forId(
+      String id, long intervalMillis, int expectedInsertions, double fpp) {
+    return filters.computeIfAbsent(
+        id, k -> new DecayingMembershipFilter(intervalMillis, expectedInsertions, fpp));
+  }
+
+  private BloomFilter<CharSequence> newFilter() {
+    return BloomFilter.create(
+        Funnels.stringFunnel(StandardCharsets.UTF_8), expectedInsertions, fpp);
+  }
+
+  /**
+   * Test if a key may have been added within the decay interval, and add it
+   *
+   * @param key Key
+   * @return False if the key has definitely not been added within the decay interval
+   */
+  synchronized boolean mightContainAndPut(String key) {
+    long now = clock.getAsLong();
+    if (now - rotated >= intervalMillis) {
+      previous = current;
+      current = newFilter();
+      rotated = now;
+    }
+    boolean ret = current.mightContain(key) || previous.mightContain(key);
+    current.put(key);
+    return ret;
+  }
+
+  /**
+   * Set the time source used for decay
+   *
+   * @param clock Supplier returning current time in milliseconds
+   */
+  void setClock(LongSupplier clock) {
+    this.clock = clock;
+    rotated = clock.getAsLong();
+  }
+
+  /**
+   * Initialize new {@link DecayingMembershipFilter}
+   *
+   * @param intervalMillis Decay interval in milliseconds
+   * @param expectedInsertions Expected insertions per generation
+   * @param fpp False positive probability
+   */
+  DecayingMembershipFilter(long intervalMillis, int expectedInsertions, double fpp) {
+    if (intervalMillis <= 0) {
+      throw new IllegalArgumentException("decay interval must be positive");
+    }
+    this.intervalMillis = intervalMillis;
+    this.expectedInsertions = expectedInsertions;
+    this.fpp = fpp;
+    current = newFilter();
+    previous = newFilter();
+    setClock(System::currentTimeMillis);
+  }
+}
@@ -1,6 +1,6 @@
 package com.mozilla.secops.alert;
 
-import com.mozilla.secops.GcsUtil;
+import com.mozilla.secops.ResourceRegistry;
 import freemarker.cache.ByteArrayTemplateLoader;
 import freemarker.cache.ClassTemplateLoader;
 import freemarker.cache.MultiTemplateLoader;
@@ -63,7 +63,12 @@ public class TemplateManager {
   private ByteArrayTemplateLoader loadTemplatesFromGCS(String basePath) {
     ByteArrayTemplateLoader baTemplateLoader = new ByteArrayTemplateLoader();
     for (String tmpl : registeredTemplates) {
-      byte[] templateContents = GcsUtil.fetchContent(String.format("%s%s", basePath, tmpl));
+      byte[] templateContents;
+      try {
+        templateContents = ResourceRegistry.fetch(String.format("%s%s", basePath, tmpl));
+      } catch (IOException exc) {
+        templateContents = null;
+      }
       // If we don't find the template, we just don't set it. This is done so that the
       // ClassTemplateLoader has a chance to try and find the template if it's not in GCS.
       if (templateContents != null) {
@@ -3,6 +3,7 @@ package com.mozilla.secops.amo;
 import com.mozilla.secops.DocumentingTransform;
 import com.mozilla.secops.IprepdIO;
 import com.mozilla.secops.MiscUtil;
+import com.mozilla.secops.MultiPatternMatcher;
 import com.mozilla.secops.alert.Alert;
 import com.mozilla.secops.alert.AlertMeta;
 import com.mozilla.secops.parser.AmoDocker;
@@ -11,8 +12,6 @@ import com.mozilla.secops.parser.Payload;
 import com.mozilla.secops.window.GlobalTriggers;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import org.apache.beam.sdk.transforms.DoFn;
 import org.apache.beam.sdk.transforms.PTransform;
 import org.apache.beam.sdk.transforms.ParDo;
@@ -54,7 +53,7 @@ public class AddonMatcher extends PTransform<PCollection<Event>, PCollection<Ale
   }
 
   private static class MatchCriteria {
-    public Pattern pattern;
+    public String pattern;
     public Integer minBytes;
     public Integer maxBytes;
   }
@@ -69,10 +68,12 @@ public class AddonMatcher extends PTransform<PCollection<Event>, PCollection<Ale
                   private static final long serialVersionUID = 1L;
 
                   private ArrayList<MatchCriteria> criteria;
+                  private MultiPatternMatcher criteriaMatcher;
 
                   @Setup
                   public void setup() {
                     criteria = new ArrayList<MatchCriteria>();
+                    ArrayList<String> pbuf = new ArrayList<>();
                     if (matchCriteria != null) {
                       for (String s : matchCriteria) {
                         String parts[] = s.split(":");
@@ -81,12 +82,14 @@ public class AddonMatcher extends PTransform<PCollection<Event>, PCollection<Ale
                               "invalid format for addon match criteria, must be <regex>:<minbytes>:<maxbytes>");
                         }
                         MatchCriteria c = new MatchCriteria();
-                        c.pattern = Pattern.compile(parts[0]);
+                        c.pattern = parts[0];
                         c.minBytes = new Integer(parts[1]);
                         c.maxBytes = new Integer(parts[2]);
                         criteria.add(c);
+                        pbuf.add(c.pattern);
                       }
                     }
+                    criteriaMatcher = new MultiPatternMatcher(pbuf);
                   }
 
                   @ProcessElement
@@ -103,49 +106,47 @@ public class AddonMatcher extends PTransform<PCollection<Event>, PCollection<Ale
                       return;
                     }
 
-                    for (MatchCriteria crit : criteria) {
-                      Matcher m = crit.pattern.matcher(d.getFileName());
-                      if (m.matches()) {
-                        if ((d.getBytes() < crit.minBytes) || (d.getBytes() > crit.maxBytes)) {
-                          continue;
-                        }
-                        Alert alert = new Alert();
-                        alert.setCategory("amo");
-                        alert.setSubcategory("amo_abuse_matched_addon");
-                        alert.setNotifyMergeKey("amo_abuse_matched_addon");
-                        alert.addMetadata(AlertMeta.Key.SOURCEADDRESS, d.getRemoteIp());
-                        // If we got an email address with the event, add it to the alert; we also
-                        // add the normalized email equivalents
-                        if (d.getFxaEmail() != null) {
-                          String email = d.getFxaEmail();
-                          ArrayList<String> buf = new ArrayList<>();
-                          buf.add(email);
-                          String nb = MiscUtil.normalizeEmailPlus(email);
-                          if (!email.equals(nb)) {
-                            buf.add(nb);
-                          }
-                          nb = MiscUtil.normalizeEmailPlusDotStrip(email);
-                          if (!email.equals(nb)) {
-                            buf.add(nb);
-                          }
-                          alert.addMetadata(AlertMeta.Key.EMAIL, buf);
-                        }
-                        alert.addMetadata(AlertMeta.Key.ADDON_FILENAME, d.getFileName());
-                        alert.addMetadata(AlertMeta.Key.ADDON_SIZE, d.getBytes().toString());
-                        String summary =
-                            String.format(
-                                "%s suspected malicious addon submission from %s",
-                                monitoredResource, d.getRemoteIp());
-                        if (d.getFxaEmail() != null) {
-                          summary = summary + ", " + d.getFxaEmail();
+                    for (int i : criteriaMatcher.allMatches(d.getFileName())) {
+                      MatchCriteria crit = criteria.get(i);
+                      if ((d.getBytes() < crit.minBytes) || (d.getBytes() > crit.maxBytes)) {
+                        continue;
+                      }
+                      Alert alert = new Alert();
+                      alert.setCategory("amo");
+                      alert.setSubcategory("amo_abuse_matched_addon");
+                      alert.setNotifyMergeKey("amo_abuse_matched_addon");
+                      alert.addMetadata(AlertMeta.Key.SOURCEADDRESS, d.getRemoteIp());
+                      // If we got an email address with the event, add it to the alert; we also
+                      // add the normalized email equivalents
+                      if (d.getFxaEmail() != null) {
+                        String email = d.getFxaEmail();
+                        ArrayList<String> buf = new ArrayList<>();
+                        buf.add(email);
+                        String nb = MiscUtil.normalizeEmailPlus(email);
+                        if (!email.equals(nb)) {
+                          buf.add(nb);
                         }
-                        alert.setSummary(summary);
-                        if (suppressRecovery != null) {
-                          IprepdIO.addMetadataSuppressRecovery(suppressRecovery, alert);
+                        nb = MiscUtil.normalizeEmailPlusDotStrip(email);
+                        if (!email.equals(nb)) {
+                          buf.add(nb);
                         }
-                        c.output(alert);
-                        return;
+                        alert.addMetadata(AlertMeta.Key.EMAIL, buf);
                       }
+                      alert.addMetadata(AlertMeta.Key.ADDON_FILENAME, d.getFileName());
+                      alert.addMetadata(AlertMeta.Key.ADDON_SIZE, d.getBytes().toString());
+                      String summary =
+                          String.format(
+                              "%s suspected malicious addon submission from %s",
+                              monitoredResource, d.getRemoteIp());
+                      if (d.getFxaEmail() != null) {
+                        summary = summary + ", " + d.getFxaEmail();
+                      }
+                      alert.setSummary(summary);
+                      if (suppressRecovery != null) {
+                        IprepdIO.addMetadataSuppressRecovery(suppressRecovery, alert);
+                      }
+                      c.output(alert);
+                      return;
                     }
                   }
                 }));
@@ -3,6 +3,7 @@ package com.mozilla.secops.amo;
 import com.mozilla.secops.DocumentingTransform;
 import com.mozilla.secops.IprepdIO;
 import com.mozilla.secops.MiscUtil;
+import com.mozilla.secops.MultiPatternMatcher;
 import com.mozilla.secops.alert.Alert;
 import com.mozilla.secops.alert.AlertMeta;
 import com.mozilla.secops.parser.AmoDocker;
@@ -11,8 +12,6 @@ import com.mozilla.secops.parser.Payload;
 import com.mozilla.secops.window.GlobalTriggers;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import org.apache.beam.sdk.transforms.DoFn;
 import org.apache.beam.sdk.transforms.GroupByKey;
 import org.apache.beam.sdk.transforms.PTransform;
@@ -85,16 +84,13 @@ public class AddonMultiIpLogin extends PTransform<PCollection<Event>, PCollectio
                 new DoFn<Event, KV<String, String>>() {
                   private static final long serialVersionUID = 1L;
 
-                  private ArrayList<Pattern> exceptRe;
+                  private MultiPatternMatcher exceptRe;
 
                   @Setup
                   public void setup() {
-                    exceptRe = new ArrayList<Pattern>();
-                    if (acctExceptions != null) {
-                      for (String i : acctExceptions) {
-                        exceptRe.add(Pattern.compile(i));
-                      }
-                    }
+                    exceptRe =
+                        new MultiPatternMatcher(
+                            acctExceptions != null ? acctExceptions : new String[0]);
                   }
 
                   @ProcessElement
@@ -120,11 +116,8 @@ public class AddonMultiIpLogin extends PTransform<PCollection<Event>, PCollectio
                     }
 
                     // Filter certain accounts
-                    for (Pattern i : exceptRe) {
-                      Matcher m = i.matcher(d.getFxaEmail());
-                      if (m.matches()) {
-                        return;
-                      }
+                    if (exceptRe.matchesAny(d.getFxaEmail())) {
+                      return;
                     }
 
                     String buf = "login";
@@ -157,18 +150,14 @@ public class AddonMultiIpLogin extends PTransform<PCollection<Event>, PCollectio
                   private static final long serialVersionUID = 1L;
 
                   private Logger log;
-                  private ArrayList<Pattern> aggRe;
+                  private MultiPatternMatcher aggRe;
 
                   @Setup
                   public void setup() {
                     log = LoggerFactory.getLogger(AddonMultiIpLogin.class);
 
-                    aggRe = new ArrayList<Pattern>();
-                    if (aggMatchers != null) {
-                      for (String i : aggMatchers) {
-                        aggRe.add(Pattern.compile(i));
-                      }
-                    }
+                    aggRe =
+                        new MultiPatternMatcher(aggMatchers != null ? aggMatchers : new String[0]);
                   }
 
                   @ProcessElement
@@ -214,14 +203,7 @@ public class AddonMultiIpLogin extends PTransform<PCollection<Event>, PCollectio
                       return;
                     }
 
-                    boolean aggMatch = false;
-                    for (Pattern i : aggRe) {
-                      Matcher m = i.matcher(c.element().getKey());
-                      if (m.matches()) {
-                        aggMatch = true;
-                        break;
-                      }
-                    }
+                    boolean aggMatch = aggRe.matchesAny(c.element().getKey());
 
                     // If it did not match the aggressive match list, also check the IP count
                     if (!aggMatch) {
@@ -2,15 +2,14 @@ package com.mozilla.secops.amo;
 
 import com.mozilla.secops.DocumentingTransform;
 import com.mozilla.secops.IprepdIO;
+import com.mozilla.secops.MultiPatternMatcher;
 import com.mozilla.secops.alert.Alert;
 import com.mozilla.secops.alert.AlertMeta;
 import com.mozilla.secops.parser.AmoDocker;
 import com.mozilla.secops.parser.Event;
 import com.mozilla.secops.parser.Payload;
 import com.mozilla.secops.window.GlobalTriggers;
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.regex.Pattern;
 import org.apache.beam.sdk.transforms.DoFn;
 import org.apache.beam.sdk.transforms.Flatten;
 import org.apache.beam.sdk.transforms.PTransform;
@@ -103,16 +102,13 @@ public class FxaAccountAbuseNewVersion extends PTransform<PCollection<Event>, PC
                     new DoFn<Event, Alert>() {
                       private static final long serialVersionUID = 1L;
 
-                      private ArrayList<Pattern> banAccountsPat;
+                      private MultiPatternMatcher banAccountsPat;
 
                       @Setup
                       public void setup() {
-                        banAccountsPat = new ArrayList<Pattern>();
-                        if (banAccounts != null) {
-                          for (String x : banAccounts) {
-                            banAccountsPat.add(Pattern.compile(x));
-                          }
-                        }
+                        banAccountsPat =
+                            new MultiPatternMatcher(
+                                banAccounts != null ? banAccounts : new String[0]);
                       }
 
                       @ProcessElement
@@ -129,13 +125,7 @@ public class FxaAccountAbuseNewVersion extends PTransform<PCollection<Event>, PC
                         }
 
                         // Compare profile against configured ban patterns
-                        boolean configuredBan = false;
-                        for (Pattern p : banAccountsPat) {
-                          if (p.matcher(d.getFxaEmail()).matches()) {
-                            configuredBan = true;
-                            break;
-                          }
-                        }
+                        boolean configuredBan = banAccountsPat.matchesAny(d.getFxaEmail());
 
                         if (configuredBan) {
                           Alert alert = new Alert();
@@ -1,6 +1,7 @@
 package com.mozilla.secops.authprofile;
 
 import com.mozilla.secops.CidrUtil;
+import com.mozilla.secops.DnsVerifier;
 import com.mozilla.secops.DocumentingTransform;
 import com.mozilla.secops.IOOptions;
 import com.mozilla.secops.Minfraud;
@@ -45,9 +46,9 @@ import org.apache.beam.sdk.transforms.DoFn;
 import org.apache.beam.sdk.transforms.Filter;
 import org.apache.beam.sdk.transforms.Flatten;
 import org.apache.beam.sdk.transforms.GroupByKey;
-import org.apache.beam.sdk.transforms.MapElements;
 import org.apache.beam.sdk.transforms.PTransform;
 import org.apache.beam.sdk.transforms.ParDo;
+import org.apache.beam.sdk.transforms.windowing.TimestampCombiner;
 import org.apache.beam.sdk.values.KV;
 import org.apache.beam.sdk.values.PCollection;
 import org.apache.beam.sdk.values.PCollectionList;
@@ -70,6 +71,9 @@ public class AuthProfile implements Serializable {
   private static final String SLACK_TEMPLATE = "slack/authprofile.ftlh";
   private static final String[] ALERT_TEMPLATES = new String[] {EMAIL_TEMPLATE, SLACK_TEMPLATE};
 
+  /** Global triggers stage name for state analysis */
+  public static final String STATE_ANALYZE_STAGE = "authprofile_state_analyze";
+
   private static IdentityManager globalIdm;
   private static Instant globalIdmLoaded;
   private static ReentrantLock globalIdmLock = new ReentrantLock();
@@ -578,6 +582,19 @@ public class AuthProfile implements Serializable {
 
       ArrayList<String> seenKnownAddresses = new ArrayList<>();
 
+      // Start hostname verification for any GCP audit events from addresses outside the known GCP
+      // subnets, so lookups for the group are resolved in parallel rather than one at a time
+      ArrayList<String> gcpVerify = new ArrayList<>();
+      for (Event e : events) {
+        if ((e.getPayloadType().equals(Payload.PayloadType.GCPAUDIT))
+            && (!cidrGcp.contains(e.getNormalized().getSourceAddress()))) {
+          gcpVerify.add(e.getNormalized().getSourceAddress());
+        }
+      }
+      if (!gcpVerify.isEmpty()) {
+        DnsVerifier.getDefault().prefetch(gcpVerify);
+      }
+
       for (Event e : events) {
         Alert a = AuthProfile.createBaseAlert(e, contactEmail, docLink);
         a.setSubcategory("state_analyze");
@@ -1032,8 +1049,16 @@ public class AuthProfile implements Serializable {
           alertList.and(
               filteredEvents
                   .apply("extract identity", ParDo.of(new ExtractIdentity(options)))
-                  .apply("window for state analyze", new GlobalTriggers<KV<String, Event>>(60))
+                  .apply(
+                      "window for state analyze",
+                      new GlobalTriggers<KV<String, Event>>(60)
+                          .withStage(STATE_ANALYZE_STAGE)
+                          .withTimestampCombiner(TimestampCombiner.EARLIEST))
                   .apply("state analyze gbk", GroupByKey.<String, Event>create())
+                  .apply(
+                      "state analyze pane metrics",
+                      ParDo.of(
+                          new GlobalTriggers.PaneMetricsFn<String, Event>(STATE_ANALYZE_STAGE)))
                   .apply("state analyze", ParDo.of(new StateAnalyze(options)))
                   .apply("state analyze rewindow for output", new GlobalTriggers<Alert>(5)));
     }
@@ -1092,8 +1117,7 @@ public class AuthProfile implements Serializable {
     }
     processInput(input, options)
         .apply("output format", ParDo.of(new AlertFormatter(options)))
-        .apply("output convert", MapElements.via(new AlertFormatter.AlertToString()))
-        .apply("output", OutputOptions.compositeOutput(options));
+        .apply("output", OutputOptions.compositeAlertOutput(options));
 
     p.run();
   }
@@ -1,13 +1,13 @@
 package com.mozilla.secops.authprofile;
 
 import com.mozilla.secops.DocumentingTransform;
+import com.mozilla.secops.MultiPatternMatcher;
 import com.mozilla.secops.alert.Alert;
 import com.mozilla.secops.alert.AlertMeta;
 import com.mozilla.secops.authprofile.AuthProfile.AuthProfileOptions;
 import com.mozilla.secops.parser.Event;
 import com.mozilla.secops.parser.Normalized;
 import java.util.Arrays;
-import java.util.regex.Pattern;
 import org.apache.beam.sdk.transforms.DoFn;
 import org.apache.beam.sdk.transforms.Flatten;
 import org.apache.beam.sdk.transforms.PTransform;
@@ -44,7 +44,7 @@ public class CritObjectAnalyze
   private String altEscalateChannel;
 
   private Logger log;
-  private Pattern[] critObjectPat;
+  private MultiPatternMatcher critObjectPat;
 
   /**
    * Initialize new critical object analysis
@@ -77,10 +77,7 @@ public class CritObjectAnalyze
     }
     log = LoggerFactory.getLogger(CritObjectAnalyze.class);
     if (critObjects != null) {
-      critObjectPat = new Pattern[critObjects.length];
-      for (int i = 0; i < critObjects.length; i++) {
-        critObjectPat[i] = Pattern.compile(critObjects[i]);
-      }
+      critObjectPat = new MultiPatternMatcher(critObjects);
     }
   }
 
@@ -186,13 +183,7 @@ public class CritObjectAnalyze
                           return;
                         }
 
-                        String matchobj = null;
-                        for (Pattern p : critObjectPat) {
-                          if (p.matcher(o).matches()) {
-                            matchobj = o;
-                          }
-                        }
-                        if (matchobj == null) {
+                        if (!critObjectPat.matchesAny(o)) {
                           return;
                         }
 
@@ -3,21 +3,58 @@ package com.mozilla.secops.authstate;
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonValue;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.mozilla.secops.GeoUtil;
 import com.mozilla.secops.state.StateCursor;
 import com.mozilla.secops.state.StateException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.AbstractMap;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.function.LongPredicate;
 import org.joda.time.DateTime;
-
-/** Manages and stores authentication state information for a given user identity. */
+import org.joda.time.DateTimeZone;
+
+/**
+ * Manages and stores authentication state information for a given user identity.
+ *
+ * <p>Entries are held in parallel primitive arrays ordered by entry timestamp, so the latest
+ * entries can be accessed without sorting.
+ *
+ * <p>When serialized with Jackson, the model is written as a single string value containing a
+ * versioned binary encoding of the model. Models stored using the earlier JSON object form are
+ * still accepted when reading.
+ */
 public class AuthStateModel {
+  /** Current version of the compact serialized form */
+  public static final byte ENCODING_VERSION = 2;
+
+  // Version 1 of the compact form wrote strings using DataOutputStream.writeUTF, which is limited
+  // to 65535 encoded bytes; it is still accepted when reading
+  private static final byte ENCODING_VERSION_UTF = 1;
+
+  private static final int FLAG_LOCATION = 0x01;
+  private static final int FLAG_USERAGENT = 0x02;
+
   private String subject;
-  private Map<String, ModelEntry> entries;
+
+  // Entries, ordered by ascending timestamp; latitude and longitude are NaN if unknown
+  private int size;
+  private String[] addresses;
+  private long[] timestamps;
+  private double[] latitudes;
+  private double[] longitudes;
+  private String[] userAgents;
 
   /** Response to {@link AuthStateModel} GeoVelocity analysis request */
   public static class GeoVelocityResponse {
@@ -285,33 +322,147 @@ public class AuthStateModel {
     if (timestamp == null) {
       timestamp = new DateTime();
     }
-    ModelEntry ent = entries.get(request.ipAddress);
-    if (ent == null) { // New entry for this user model
-      ent = new ModelEntry();
-      ent.setTimestamp(timestamp);
-      ent.setLatitude(request.latitude);
-      ent.setLongitude(request.longitude);
-      ent.setUserAgent(request.userAgent);
-      entries.put(request.ipAddress, ent);
-      return true;
-    }
-
-    // Known entry, update it
-    ent.setTimestamp(timestamp);
-    ent.setLatitude(request.latitude);
-    ent.setLongitude(request.longitude);
-    ent.setUserAgent(request.userAgent);
-    return false;
+    int i = indexOf(request.ipAddress);
+    if (i != -1) {
+      remove(i);
+    }
+    insert(
+        request.ipAddress,
+        timestamp.getMillis(),
+        request.latitude,
+        request.longitude,
+        request.userAgent);
+    return i == -1;
+  }
+
+  private int indexOf(String address) {
+    for (int i = 0; i < size; i++) {
+      if (addresses[i].equals(address)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private void remove(int i) {
+    int n = size - i - 1;
+    System.arraycopy(addresses, i + 1, addresses, i, n);
+    System.arraycopy(timestamps, i + 1, timestamps, i, n);
+    System.arraycopy(latitudes, i + 1, latitudes, i, n);
+    System.arraycopy(longitudes, i + 1, longitudes, i, n);
+    System.arraycopy(userAgents, i + 1, userAgents, i, n);
+    size--;
+    addresses[size] = null;
+    userAgents[size] = null;
+  }
+
+  private void insert(String address, long ts, Double latitude, Double longitude, String ua) {
+    if (size == addresses.length) {
+      int ncap = Math.max(4, size * 2);
+      addresses = Arrays.copyOf(addresses, ncap);
+      timestamps = Arrays.copyOf(timestamps, ncap);
+      latitudes = Arrays.copyOf(latitudes, ncap);
+      longitudes = Arrays.copyOf(longitudes, ncap);
+      userAgents = Arrays.copyOf(userAgents, ncap);
+    }
+    // Insert after any entries with an equal timestamp, so the most recent update sorts last
+    int i = size;
+    while (i > 0 && timestamps[i - 1] > ts) {
+      i--;
+    }
+    int n = size - i;
+    System.arraycopy(addresses, i, addresses, i + 1, n);
+    System.arraycopy(timestamps, i, timestamps, i + 1, n);
+    System.arraycopy(latitudes, i, latitudes, i + 1, n);
+    System.arraycopy(longitudes, i, longitudes, i + 1, n);
+    System.arraycopy(userAgents, i, userAgents, i + 1, n);
+    addresses[i] = address;
+    timestamps[i] = ts;
+    latitudes[i] = latitude == null ? Double.NaN : latitude;
+    longitudes[i] = longitude == null ? Double.NaN : longitude;
+    userAgents[i] = ua;
+    size++;
+  }
+
+  private static Double boxCoordinate(double v) {
+    return Double.isNaN(v) ? null : v;
+  }
+
+  private ModelEntry entryAt(int i) {
+    ModelEntry ret = new ModelEntry();
+    ret.setTimestamp(new DateTime(timestamps[i], DateTimeZone.UTC));
+    ret.setLatitude(boxCoordinate(latitudes[i]));
+    ret.setLongitude(boxCoordinate(longitudes[i]));
+    ret.setUserAgent(userAgents[i]);
+    return ret;
+  }
+
+  /**
+   * Get number of entries in model
+   *
+   * @return int
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Remove entries from the model based on entry timestamp
+   *
+   * @param predicate Predicate applied to entry timestamp in milliseconds, true to remove entry
+   */
+  public void removeEntriesIf(LongPredicate predicate) {
+    int j = 0;
+    for (int i = 0; i < size; i++) {
+      if (predicate.test(timestamps[i])) {
+        continue;
+      }
+      addresses[j] = addresses[i];
+      timestamps[j] = timestamps[i];
+      latitudes[j] = latitudes[i];
+      longitudes[j] = longitudes[i];
+      userAgents[j] = userAgents[i];
+      j++;
+    }
+    Arrays.fill(addresses, j, size, null);
+    Arrays.fill(userAgents, j, size, null);
+    size = j;
+  }
+
+  /**
+   * Remove all but the latest entries from the model
+   *
+   * @param count Number of entries to retain
+   */
+  public void retainLatest(int count) {
+    if (size <= count) {
+      return;
+    }
+    int drop = size - count;
+    System.arraycopy(addresses, drop, addresses, 0, count);
+    System.arraycopy(timestamps, drop, timestamps, 0, count);
+    System.arraycopy(latitudes, drop, latitudes, 0, count);
+    System.arraycopy(longitudes, drop, longitudes, 0, count);
+    System.arraycopy(userAgents, drop, userAgents, 0, count);
+    Arrays.fill(addresses, count, size, null);
+    Arrays.fill(userAgents, count, size, null);
+    size = count;
   }
 
   /**
    * Get entries associated with model
    *
+   * <p>The returned map is a copy ordered by entry timestamp; modifications to it are not reflected
+   * in the model.
+   *
    * @return Map of model entries
    */
-  @JsonProperty("entries")
   public Map<String, ModelEntry> getEntries() {
-    return entries;
+    LinkedHashMap<String, ModelEntry> ret = new LinkedHashMap<>();
+    for (int i = 0; i < size; i++) {
+      ret.put(addresses[i], entryAt(i));
+    }
+    return ret;
   }
 
   /**
@@ -320,7 +471,25 @@ public class AuthStateModel {
    * @param entries Map
    */
   public void setEntries(Map<String, ModelEntry> entries) {
-    this.entries = entries;
+    clearEntries();
+    for (Map.Entry<String, ModelEntry> e : entries.entrySet()) {
+      ModelEntry me = e.getValue();
+      insert(
+          e.getKey(),
+          me.getTimestamp().getMillis(),
+          me.getLatitude(),
+          me.getLongitude(),
+          me.getUserAgent());
+    }
+  }
+
+  private void clearEntries() {
+    size = 0;
+    addresses = new String[0];
+    timestamps = new long[0];
+    latitudes = new double[0];
+    longitudes = new double[0];
+    userAgents = new String[0];
   }
 
   /**
@@ -328,7 +497,6 @@ public class AuthStateModel {
    *
    * @return Subject string
    */
-  @JsonProperty("subject")
   public String getSubject() {
     return subject;
   }
@@ -342,6 +510,164 @@ public class AuthStateModel {
     this.subject = subject;
   }
 
+  /**
+   * Encode model in compact serialized form
+   *
+   * <p>The encoding is a version byte followed by the subject and entries, base64 encoded. Strings
+   * are written as a length followed by UTF-8 bytes.
+   *
+   * @return Encoded model
+   */
+  @JsonValue
+  public String toCompact() {
+    ByteArrayOutputStream buf = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(buf)) {
+      out.writeByte(ENCODING_VERSION);
+      writeNullableString(out, subject);
+      out.writeInt(size);
+      for (int i = 0; i < size; i++) {
+        int flags = 0;
+        if (!Double.isNaN(latitudes[i]) && !Double.isNaN(longitudes[i])) {
+          flags |= FLAG_LOCATION;
+        }
+        if (userAgents[i] != null) {
+          flags |= FLAG_USERAGENT;
+        }
+        writeString(out, addresses[i]);
+        out.writeLong(timestamps[i]);
+        out.writeByte(flags);
+        if ((flags & FLAG_LOCATION) != 0) {
+          out.writeDouble(latitudes[i]);
+          out.writeDouble(longitudes[i]);
+        }
+        if ((flags & FLAG_USERAGENT) != 0) {
+          writeString(out, userAgents[i]);
+        }
+      }
+    } catch (IOException exc) {
+      // Not expected when writing to a byte array
+      throw new RuntimeException(exc.getMessage());
+    }
+    return Base64.getEncoder().encodeToString(buf.toByteArray());
+  }
+
+  /**
+   * Decode model from compact serialized form
+   *
+   * @param input Encoded model
+   * @return AuthStateModel
+   * @throws IOException IOException
+   */
+  public static AuthStateModel fromCompact(String input) throws IOException {
+    byte[] raw;
+    try {
+      raw = Base64.getDecoder().decode(input);
+    } catch (IllegalArgumentException exc) {
+      throw new IOException("invalid auth state encoding");
+    }
+    try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(raw))) {
+      byte version = in.readByte();
+      if (version != ENCODING_VERSION && version != ENCODING_VERSION_UTF) {
+        throw new IOException(String.format("unsupported auth state encoding version %d", version));
+      }
+      AuthStateModel ret = new AuthStateModel(readNullableString(in, version));
+      int cnt = in.readInt();
+      for (int i = 0; i < cnt; i++) {
+        String address = readString(in, version);
+        long ts = in.readLong();
+        int flags = in.readByte();
+        Double latitude = null;
+        Double longitude = null;
+        String ua = null;
+        if ((flags & FLAG_LOCATION) != 0) {
+          latitude = in.readDouble();
+          longitude = in.readDouble();
+        }
+        if ((flags & FLAG_USERAGENT) != 0) {
+          ua = readString(in, version);
+        }
+        ret.insert(address, ts, latitude, longitude, ua);
+      }
+      return ret;
+    }
+  }
+
+  private static void writeString(DataOutputStream out, String v) throws IOException {
+    byte[] b = v.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(b.length);
+    out.write(b);
+  }
+
+  private static String readString(DataInputStream in, byte version) throws IOException {
+    if (version == ENCODING_VERSION_UTF) {
+      return in.readUTF();
+    }
+    int len = in.readInt();
+    if (len < 0 || len > in.available()) {
+      throw new IOException("invalid auth state string length");
+    }
+    byte[] b = new byte[len];
+    in.readFully(b);
+    return new String(b, StandardCharsets.UTF_8);
+  }
+
+  private static void writeNullableString(DataOutputStream out, String v) throws IOException {
+    out.writeBoolean(v != null);
+    if (v != null) {
+      writeString(out, v);
+    }
+  }
+
+  private static String readNullableString(DataInputStream in, byte version) throws IOException {
+    return in.readBoolean() ? readString(in, version) : null;
+  }
+
+  /**
+   * Deserialize model from Jackson
+   *
+   * <p>Accepts either the compact serialized form, or the JSON object form used by earlier
+   * versions.
+   *
+   * @param node Serialized model
+   * @return AuthStateModel
+   * @throws IOException IOException
+   */
+  @JsonCreator(mode = JsonCreator.Mode.DELEGATING)
+  public static AuthStateModel fromJsonNode(JsonNode node) throws IOException {
+    if (node.isTextual()) {
+      return fromCompact(node.asText());
+    }
+    if (!node.isObject()) {
+      throw new IOException("invalid auth state model");
+    }
+    AuthStateModel ret = new AuthStateModel(node.path("subject").textValue());
+    JsonNode entries = node.path("entries");
+    Iterator<Map.Entry<String, JsonNode>> it = entries.fields();
+    while (it.hasNext()) {
+      Map.Entry<String, JsonNode> e = it.next();
+      JsonNode v = e.getValue();
+      JsonNode ts = v.path("timestamp");
+      long millis;
+      if (ts.isNumber()) {
+        millis = ts.asLong();
+      } else if (ts.isTextual()) {
+        millis = new DateTime(ts.asText(), DateTimeZone.UTC).getMillis();
+      } else {
+        throw new IOException("auth state model entry missing timestamp");
+      }
+      JsonNode lat = v.path("latitude");
+      JsonNode lon = v.path("longitude");
+      JsonNode ua = v.path("useragent");
+      ret.insert(
+          e.getKey(),
+          millis,
+          lat.isNumber() ? lat.asDouble() : null,
+          lon.isNumber() ? lon.asDouble() : null,
+          ua.isTextual() ? ua.asText() : null);
+    }
+    return ret;
+  }
+
   /**
    * Retrieve state object for user
    *
@@ -390,43 +716,30 @@ public class AuthStateModel {
    * @return GeoVelocityResponse or null
    */
   public GeoVelocityResponse geoVelocityAnalyzeLatest(Double maxKmPerSecond) {
-    ArrayList<AbstractMap.SimpleEntry<String, ModelEntry>> ent = timeSortedEntries();
-
-    int s = ent.size();
-    if (s <= 1) {
+    if (size <= 1) {
       return null;
     }
 
-    AbstractMap.SimpleEntry<String, ModelEntry> prev = ent.get(s - 2);
-    AbstractMap.SimpleEntry<String, ModelEntry> cur = ent.get(s - 1);
+    int prev = size - 2;
+    int cur = size - 1;
 
     // Make sure we have long/lat for both entries
-    if ((prev.getValue().getLatitude() == null)
-        || (prev.getValue().getLongitude() == null)
-        || (cur.getValue().getLatitude() == null)
-        || (cur.getValue().getLongitude() == null)) {
+    if (Double.isNaN(latitudes[prev])
+        || Double.isNaN(longitudes[prev])
+        || Double.isNaN(latitudes[cur])
+        || Double.isNaN(longitudes[cur])) {
       return null;
     }
 
     Double kmdist =
         GeoUtil.kmBetweenTwoPoints(
-            prev.getValue().getLatitude(),
-            prev.getValue().getLongitude(),
-            cur.getValue().getLatitude(),
-            cur.getValue().getLongitude());
-
-    long td =
-        (cur.getValue().getTimestamp().getMillis() / 1000)
-            - (prev.getValue().getTimestamp().getMillis() / 1000);
-
-    if ((kmdist / td) > maxKmPerSecond) {
-      return new GeoVelocityResponse(td, kmdist, true)
-          .withPreviousSource(prev.getKey())
-          .withCurrentSource(cur.getKey());
-    }
-    return new GeoVelocityResponse(td, kmdist, false)
-        .withPreviousSource(prev.getKey())
-        .withCurrentSource(cur.getKey());
+            latitudes[prev], longitudes[prev], latitudes[cur], longitudes[cur]);
+
+    long td = (timestamps[cur] / 1000) - (timestamps[prev] / 1000);
+
+    return new GeoVelocityResponse(td, kmdist, (kmdist / td) > maxKmPerSecond)
+        .withPreviousSource(addresses[prev])
+        .withCurrentSource(addresses[cur]);
   }
 
   /**
@@ -436,26 +749,9 @@ public class AuthStateModel {
    */
   public ArrayList<AbstractMap.SimpleEntry<String, ModelEntry>> timeSortedEntries() {
     ArrayList<AbstractMap.SimpleEntry<String, ModelEntry>> ret = new ArrayList<>();
-    for (Map.Entry<String, ModelEntry> entry : entries.entrySet()) {
-      ret.add(new AbstractMap.SimpleEntry<String, ModelEntry>(entry.getKey(), entry.getValue()));
-    }
-    Collections.sort(
-        ret,
-        new Comparator<AbstractMap.SimpleEntry<String, ModelEntry>>() {
-          @Override
-          public int compare(
-              AbstractMap.SimpleEntry<String, ModelEntry> lhs,
-              AbstractMap.SimpleEntry<String, ModelEntry> rhs) {
-            DateTime lhsd = lhs.getValue().getTimestamp();
-            DateTime rhsd = rhs.getValue().getTimestamp();
-            if (lhsd.isAfter(rhsd)) {
-              return 1;
-            } else if (lhsd.isBefore(rhsd)) {
-              return -1;
-            }
-            return 0;
-          }
-        });
+    for (int i = 0; i < size; i++) {
+      ret.add(new AbstractMap.SimpleEntry<String, ModelEntry>(addresses[i], entryAt(i)));
+    }
     return ret;
   }
 
@@ -464,9 +760,9 @@ public class AuthStateModel {
    *
    * @param subject Subject user name
    */
-  @JsonCreator
-  public AuthStateModel(@JsonProperty("subject") String subject) {
+  @JsonCreator(mode = JsonCreator.Mode.DISABLED)
+  public AuthStateModel(String subject) {
     this.subject = subject;
-    entries = new HashMap<String, ModelEntry>();
+    clearEntries();
   }
 }
@@ -1,7 +1,5 @@
 package com.mozilla.secops.authstate;
 
-import java.util.Iterator;
-import java.util.Map;
 import org.joda.time.DateTimeUtils;
 
 /**
@@ -29,16 +27,7 @@ public class PruningStrategyEntryAge implements PruningStrategy {
    * <p>Implementation of method of {@link PruningStrategyEntryAge}
    */
   public void pruneState(AuthStateModel s) {
-    Map<String, AuthStateModel.ModelEntry> entries = s.getEntries();
-
-    Iterator<?> it = entries.entrySet().iterator();
-    while (it.hasNext()) {
-      Map.Entry<?, ?> p = (Map.Entry) it.next();
-      AuthStateModel.ModelEntry me = (AuthStateModel.ModelEntry) p.getValue();
-      long mts = me.getTimestamp().getMillis() / 1000;
-      if ((DateTimeUtils.currentTimeMillis() / 1000) - mts > entryAgePruningSeconds) {
-        it.remove();
-      }
-    }
+    long now = DateTimeUtils.currentTimeMillis() / 1000;
+    s.removeEntriesIf(ts -> now - (ts / 1000) > entryAgePruningSeconds);
   }
 }
@@ -16,6 +16,7 @@ import com.mozilla.secops.parser.Payload;
 import com.mozilla.secops.window.GlobalTriggers;
 import java.io.IOException;
 import java.io.Serializable;
+import java.util.Collection;
 import java.util.regex.PatternSyntaxException;
 import org.apache.beam.sdk.Pipeline;
 import org.apache.beam.sdk.options.Default;
@@ -23,12 +24,9 @@ import org.apache.beam.sdk.options.Description;
 import org.apache.beam.sdk.options.PipelineOptions;
 import org.apache.beam.sdk.options.PipelineOptionsFactory;
 import org.apache.beam.sdk.transforms.DoFn;
-import org.apache.beam.sdk.transforms.Flatten;
-import org.apache.beam.sdk.transforms.MapElements;
 import org.apache.beam.sdk.transforms.PTransform;
 import org.apache.beam.sdk.transforms.ParDo;
 import org.apache.beam.sdk.values.PCollection;
-import org.apache.beam.sdk.values.PCollectionList;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -114,37 +112,68 @@ public class AwsBehavior implements Serializable {
 
                     @ProcessElement
                     public void processElement(ProcessContext c) {
-                      Event e = c.element();
-                      Alert alert = new Alert();
-
-                      alert.setSeverity(Alert.AlertSeverity.CRITICAL);
-                      alert.setCategory("awsbehavior");
-
-                      Cloudtrail ct = e.getPayload();
-                      String alertSummary =
-                          String.format("%s by %s", cm.getDescription(), ct.getUser());
-                      alert.addMetadata(AlertMeta.Key.USERNAME, ct.getUser());
-                      if (cm.getResource() != null) {
-                        alertSummary =
-                            String.format(
-                                "%s for %s", alertSummary, ct.getResource(cm.getResource()));
-                        alert.addMetadata(AlertMeta.Key.RESOURCE, ct.getResource(cm.getResource()));
-                      }
-                      alert.setSummary(alertSummary);
-
-                      if (!alert.hasCorrectFields()) {
-                        throw new IllegalArgumentException("alert has invalid field configuration");
-                      }
-
-                      c.output(alert);
+                      c.output(createAlert(cm, c.element()));
                     }
                   }));
     }
   }
 
   /**
-   * High level transform for invoking each of the matcher transforms after reading in the config
-   * with {@link CloudtrailMatcherManager}
+   * Evaluate all {@link CloudtrailMatcher} rules against each event in a single pass
+   *
+   * <p>Emits an {@link Alert} for each rule that matches an event, identical to the alerts that
+   * would be generated by applying a {@link Matcher} for each rule.
+   */
+  public static class MatcherSetFn extends DoFn<Event, Alert> {
+    private static final long serialVersionUID = 1L;
+
+    private final CloudtrailMatcherSet set;
+
+    /**
+     * Initialize new MatcherSetFn
+     *
+     * @param cms Matchers to evaluate
+     */
+    public MatcherSetFn(Collection<CloudtrailMatcher> cms) {
+      set = new CloudtrailMatcherSet(cms);
+    }
+
+    @ProcessElement
+    public void processElement(ProcessContext c) {
+      Event e = c.element();
+      for (CloudtrailMatcher cm : set.matches(e)) {
+        c.output(createAlert(cm, e));
+      }
+    }
+  }
+
+  private static Alert createAlert(CloudtrailMatcher cm, Event e) {
+    Alert alert = new Alert();
+
+    alert.setSeverity(Alert.AlertSeverity.CRITICAL);
+    alert.setCategory("awsbehavior");
+
+    Cloudtrail ct = e.getPayload();
+    String alertSummary = String.format("%s by %s", cm.getDescription(), ct.getUser());
+    alert.addMetadata(AlertMeta.Key.USERNAME, ct.getUser());
+    if (cm.getResource() != null) {
+      alertSummary = String.format("%s for %s", alertSummary, ct.getResource(cm.getResource()));
+      alert.addMetadata(AlertMeta.Key.RESOURCE, ct.getResource(cm.getResource()));
+    }
+    alert.setSummary(alertSummary);
+
+    if (!alert.hasCorrectFields()) {
+      throw new IllegalArgumentException("alert has invalid field configuration");
+    }
+    return alert;
+  }
+
+  /**
+   * High level transform for evaluating each configured matcher after reading in the config with
+   * {@link CloudtrailMatcherManager}
+   *
+   * <p>All matchers are evaluated in a single {@link MatcherSetFn}, rather than applying a {@link
+   * Matcher} transform per rule.
    */
   public static class Matchers extends PTransform<PCollection<Event>, PCollection<Alert>> {
     private static final long serialVersionUID = 1L;
@@ -174,12 +203,8 @@ public class AwsBehavior implements Serializable {
 
     @Override
     public PCollection<Alert> expand(PCollection<Event> col) {
-      PCollectionList<Alert> alerts = PCollectionList.empty(col.getPipeline());
-      for (CloudtrailMatcher cm : cmmanager.getEventMatchers()) {
-        alerts = alerts.and(col.apply(cm.getDescription(), new Matcher(cm)));
-      }
-      PCollection<Alert> ret = alerts.apply(Flatten.<Alert>pCollections());
-      return ret;
+      return col.apply(
+          "cloudtrail matchers", ParDo.of(new MatcherSetFn(cmmanager.getEventMatchers())));
     }
   }
 
@@ -208,8 +233,7 @@ public class AwsBehavior implements Serializable {
 
     alerts
         .apply(ParDo.of(new AlertFormatter(options)))
-        .apply(MapElements.via(new AlertFormatter.AlertToString()))
-        .apply("output", OutputOptions.compositeOutput(options));
+        .apply("output", OutputOptions.compositeAlertOutput(options));
 
     p.run();
   }
@@ -7,6 +7,8 @@ import com.mozilla.secops.parser.EventFilterRule;
 import com.mozilla.secops.parser.Payload;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Set;
 import java.util.regex.PatternSyntaxException;
 
 /** Translates a JSON object into an EventFilter and context for any resulting matches. */
@@ -30,10 +32,26 @@ public class CloudtrailMatcher implements Serializable {
    */
   public EventFilterRule toEventFilterRule()
       throws UnknownStringPropertyException, PatternSyntaxException {
+    return toEventFilterRule(Collections.emptySet());
+  }
+
+  /**
+   * Converts {@link CloudtrailMatcher} into an {@link EventFilterRule}, omitting some fields
+   *
+   * @param exclude Field names to omit from the rule
+   * @return {@link EventFilterRule}
+   * @throws UnknownStringPropertyException UnknownStringPropertyException
+   * @throws PatternSyntaxException PatternSyntaxException
+   */
+  EventFilterRule toEventFilterRule(Set<String> exclude)
+      throws UnknownStringPropertyException, PatternSyntaxException {
     EventFilterRule rule = new EventFilterRule();
     rule.wantSubtype(Payload.PayloadType.CLOUDTRAIL);
     for (ArrayList<String> fieldMatcher : fields) {
       EventFilterPayload.StringProperty sp = fieldToStringProperty(fieldMatcher.get(0));
+      if (exclude.contains(fieldMatcher.get(0))) {
+        continue;
+      }
       rule.addPayloadFilter(
           new EventFilterPayload(Cloudtrail.class).withStringRegexMatch(sp, fieldMatcher.get(1)));
     }
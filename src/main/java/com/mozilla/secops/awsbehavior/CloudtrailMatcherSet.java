@@ -0,0 +1,182 @@
+package com.mozilla.secops.awsbehavior;
+
+import com.mozilla.secops.parser.Cloudtrail;
+import com.mozilla.secops.parser.Event;
+import com.mozilla.secops.parser.EventFilterPayload;
+import com.mozilla.secops.parser.EventFilterRule;
+import com.mozilla.secops.parser.Payload;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Evaluate a set of {@link CloudtrailMatcher} against an event in a single pass
+ *
+ * <p>The eventName and eventSource criteria of each matcher are indexed by value. The first time
+ * a given eventName or eventSource is seen, the set of matchers that can match that value is
+ * computed and cached, so for subsequent events with the same value only the matchers that are
+ * candidates for both the eventName and the eventSource of the event have their remaining criteria
+ * evaluated. Since the number of distinct values for these fields is small, most matchers are
+ * never evaluated for a given event.
+ *
+ * <p>Results are identical to applying {@link CloudtrailMatcher#toEventFilterRule} for each
+ * matcher individually. Matchers that cannot be converted into a rule never match, and an error is
+ * logged when the set is created.
+ */
+public class CloudtrailMatcherSet implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  private static final String EVENTNAME_FIELD = "eventName";
+  private static final String EVENTSOURCE_FIELD = "eventSource";
+
+  /** Maximum number of distinct values cached per index before the index is reset */
+  public static final int MAX_INDEX_ENTRIES = 10000;
+
+  private final CloudtrailMatcher[] matchers;
+  private final BitSet valid;
+  private final Pattern[][] namePatterns;
+  private final Pattern[][] sourcePatterns;
+  private final EventFilterRule[] residual;
+
+  private transient HashMap<String, BitSet> nameIndex;
+  private transient HashMap<String, BitSet> sourceIndex;
+
+  /**
+   * Initialize new {@link CloudtrailMatcherSet}
+   *
+   * @param cms Matchers, in the order results should be returned
+   */
+  public CloudtrailMatcherSet(Collection<CloudtrailMatcher> cms) {
+    Logger log = LoggerFactory.getLogger(CloudtrailMatcherSet.class);
+    HashSet<String> indexed = new HashSet<>(Arrays.asList(EVENTNAME_FIELD, EVENTSOURCE_FIELD));
+
+    matchers = cms.toArray(new CloudtrailMatcher[0]);
+    valid = new BitSet(matchers.length);
+    namePatterns = new Pattern[matchers.length][];
+    sourcePatterns = new Pattern[matchers.length][];
+    residual = new EventFilterRule[matchers.length];
+
+    for (int i = 0; i < matchers.length; i++) {
+      CloudtrailMatcher cm = matchers[i];
+      ArrayList<Pattern> np = new ArrayList<>();
+      ArrayList<Pattern> sp = new ArrayList<>();
+      try {
+        boolean hasResidual = false;
+        for (ArrayList<String> f : cm.getFields()) {
+          if (f.get(0).equals(EVENTNAME_FIELD)) {
+            np.add(Pattern.compile(f.get(1)));
+          } else if (f.get(0).equals(EVENTSOURCE_FIELD)) {
+            sp.add(Pattern.compile(f.get(1)));
+          } else {
+            hasResidual = true;
+          }
+        }
+        // Always convert the rule, even if only indexed fields are present, so unknown fields
+        // are detected
+        EventFilterRule rule = cm.toEventFilterRule(indexed);
+        if (hasResidual) {
+          residual[i] = rule;
+        }
+      } catch (CloudtrailMatcher.UnknownStringPropertyException exc) {
+        log.error(
+            "CloudtrailMatcher with the description '{}' threw an UnknownStringPropertyException: {}",
+            cm.getDescription(),
+            exc.getMessage());
+        continue;
+      } catch (PatternSyntaxException exc) {
+        log.error(
+            "CloudtrailMatcher with the description '{}' threw an PatternSyntaxException: {}",
+            cm.getDescription(),
+            exc.getMessage());
+        continue;
+      }
+      namePatterns[i] = np.toArray(new Pattern[0]);
+      sourcePatterns[i] = sp.toArray(new Pattern[0]);
+      valid.set(i);
+    }
+  }
+
+  /**
+   * Return number of matchers in set
+   *
+   * @return Matcher count
+   */
+  public int size() {
+    return matchers.length;
+  }
+
+  /**
+   * Return all matchers in the set that match an event
+   *
+   * @param e Event
+   * @return Matching matchers in the order supplied, empty if none match
+   */
+  public ArrayList<CloudtrailMatcher> matches(Event e) {
+    ArrayList<CloudtrailMatcher> ret = new ArrayList<>();
+    if (e.getPayloadType() != Payload.PayloadType.CLOUDTRAIL) {
+      return ret;
+    }
+    if (nameIndex == null) {
+      nameIndex = new HashMap<>();
+      sourceIndex = new HashMap<>();
+    }
+    Cloudtrail ct = e.getPayload();
+    BitSet names =
+        candidates(
+            nameIndex,
+            namePatterns,
+            ct.eventStringValue(EventFilterPayload.StringProperty.CLOUDTRAIL_EVENTNAME));
+    if (names.isEmpty()) {
+      return ret;
+    }
+    BitSet sources =
+        candidates(
+            sourceIndex,
+            sourcePatterns,
+            ct.eventStringValue(EventFilterPayload.StringProperty.CLOUDTRAIL_EVENTSOURCE));
+    for (int i = names.nextSetBit(0); i >= 0; i = names.nextSetBit(i + 1)) {
+      if (!sources.get(i)) {
+        continue;
+      }
+      if (residual[i] == null || residual[i].matches(e)) {
+        ret.add(matchers[i]);
+      }
+    }
+    return ret;
+  }
+
+  private BitSet candidates(HashMap<String, BitSet> index, Pattern[][] patterns, String value) {
+    BitSet ret = index.get(value);
+    if (ret != null) {
+      return ret;
+    }
+    if (index.size() >= MAX_INDEX_ENTRIES) {
+      index.clear();
+    }
+    ret = new BitSet(matchers.length);
+    for (int i = valid.nextSetBit(0); i >= 0; i = valid.nextSetBit(i + 1)) {
+      if (allMatch(patterns[i], value)) {
+        ret.set(i);
+      }
+    }
+    index.put(value, ret);
+    return ret;
+  }
+
+  private static boolean allMatch(Pattern[] patterns, String value) {
+    for (Pattern p : patterns) {
+      if (value == null || !p.matcher(value).matches()) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
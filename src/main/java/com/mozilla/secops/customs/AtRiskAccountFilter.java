@@ -0,0 +1,248 @@
+package com.mozilla.secops.customs;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+import com.mozilla.secops.state.StateException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Approximate membership prefilter for at risk account state
+ *
+ * <p>Holds a Bloom filter of the keys present in at risk account state, which is rebuilt from state
+ * at a fixed interval. A negative result from {@link #mightContain} means the key was not present
+ * in state when the filter was last built, and the state lookup can be skipped.
+ *
+ * <p>Filters are shared per JVM by identifier using {@link #forId}, so state is scanned once per
+ * worker rather than once per DoFn instance. Rebuilds run asynchronously on a background thread,
+ * and lookups never wait for a rebuild.
+ *
+ * <p>The filter fails open. If it has not yet been built, the last rebuild failed, or the last
+ * successful build is older than twice the rebuild interval, all keys are treated as probable hits.
+ *
+ * <p>Keys written to state by the status comparator between rebuilds are registered with {@link
+ * #recordAddition}, and are visible to all filters in the same JVM immediately. Keys written on
+ * other workers are picked up at the next rebuild, so a lookup for such a key can be skipped for up
+ * to the rebuild interval after it was written. The rebuild interval therefore bounds how long a
+ * newly at risk account can go unreported, and should be chosen accordingly.
+ */
+public class AtRiskAccountFilter {
+  /** Minimum expected insertions used to size the filter */
+  public static final int MIN_EXPECTED_INSERTIONS = 1000;
+
+  private static final ConcurrentHashMap<String, Long> recentAdditions =
+      new ConcurrentHashMap<>();
+  private static final ConcurrentHashMap<String, AtRiskAccountFilter> filters =
+      new ConcurrentHashMap<>();
+  private static final ExecutorService rebuildExecutor =
+      Executors.newSingleThreadExecutor(
+          r -> {
+            Thread t = new Thread(r, "at-risk-account-filter-rebuild");
+            t.setDaemon(true);
+            return t;
+          });
+
+  /** Loads the complete set of keys present in state */
+  public interface KeyLoader {
+    /**
+     * Load keys
+     *
+     * @return All keys currently present in state
+     * @throws StateException StateException
+     */
+    Collection<String> loadKeys() throws StateException;
+  }
+
+  private final KeyLoader loader;
+  private final long rebuildIntervalMillis;
+  private final double fpp;
+  private final Logger log;
+  private LongSupplier clock;
+  private Executor executor;
+
+  private volatile BloomFilter<CharSequence> filter;
+  private volatile long builtAt;
+  private volatile boolean lastRebuildFailed;
+  private volatile long lastAttempt;
+  private volatile boolean rebuildAttempted;
+  private final AtomicBoolean rebuilding = new AtomicBoolean();
+
+  // Rebuilds run outside of any DoFn, so results are queued and reported to metrics by the next
+  // lookup; each entry is the key count and elapsed time, or null for a failed rebuild
+  private final ConcurrentLinkedQueue<Optional<long[]>> rebuildResults =
+      new ConcurrentLinkedQueue<>();
+
+  /**
+   * Register a key that was added to state
+   *
+   * @param key Key
+   */
+  public static void recordAddition(String key) {
+    recentAdditions.put(key, System.currentTimeMillis());
+  }
+
+  /**
+   * Get shared filter for identifier, creating it if required
+   *
+   * @param id Filter identifier
+   * @param loader Loader used to fetch keys from state, used only if the filter is created
+   * @param rebuildIntervalMillis Interval between rebuilds in milliseconds
+   * @param fpp Desired false positive probability
+   * @return AtRiskAccountFilter
+   */
+  public static AtRiskAccountFilter forId(
+      String id, KeyLoader loader, long rebuildIntervalMillis, double fpp) {
+    return filters.computeIfAbsent(
+        id, k -> new AtRiskAccountFilter(loader, rebuildIntervalMillis, fpp));
+  }
+
+  /**
+   * Return true if the key may be present in state
+   *
+   * <p>Starts an asynchronous rebuild if the rebuild interval has elapsed.
+   *
+   * @param key Key
+   * @param metrics Metrics
+   * @return False if the key is definitely not present, true otherwise
+   */
+  public boolean mightContain(String key, CustomsMetrics.AtRiskAccountFilterMetrics metrics) {
+    long now = clock.getAsLong();
+    if ((!rebuildAttempted || now - lastAttempt >= rebuildIntervalMillis)
+        && rebuilding.compareAndSet(false, true)) {
+      lastAttempt = now;
+      rebuildAttempted = true;
+      try {
+        executor.execute(
+            () -> {
+              try {
+                rebuild(now);
+              } finally {
+                rebuilding.set(false);
+              }
+            });
+      } catch (RejectedExecutionException exc) {
+        rebuilding.set(false);
+      }
+    }
+    reportRebuilds(metrics);
+
+    BloomFilter<CharSequence> f = filter;
+    boolean ret =
+        f == null
+            || lastRebuildFailed
+            || now - builtAt >= 2 * rebuildIntervalMillis
+            || f.mightContain(key)
+            || recentAdditions.containsKey(key);
+    if (ret) {
+      metrics.lookupForwarded();
+    } else {
+      metrics.lookupSkipped();
+    }
+    return ret;
+  }
+
+  /**
+   * Report that a forwarded lookup found no entry in state
+   *
+   * @param metrics Metrics
+   */
+  public void reportMiss(CustomsMetrics.AtRiskAccountFilterMetrics metrics) {
+    metrics.falsePositive();
+  }
+
+  private void reportRebuilds(CustomsMetrics.AtRiskAccountFilterMetrics metrics) {
+    Optional<long[]> r;
+    while ((r = rebuildResults.poll()) != null) {
+      if (r.isPresent()) {
+        metrics.rebuilt(r.get()[0], r.get()[1]);
+      } else {
+        metrics.rebuildFailed();
+      }
+    }
+  }
+
+  private void rebuild(long now) {
+    long start = System.currentTimeMillis();
+    Collection<String> keys;
+    try {
+      keys = loader.loadKeys();
+    } catch (StateException | RuntimeException exc) {
+      log.error("error rebuilding at risk account filter: {}", exc.getMessage());
+      lastRebuildFailed = true;
+      rebuildResults.add(Optional.empty());
+      return;
+    }
+    BloomFilter<CharSequence> nf =
+        BloomFilter.create(
+            Funnels.stringFunnel(StandardCharsets.UTF_8),
+            Math.max(keys.size(), MIN_EXPECTED_INSERTIONS),
+            fpp);
+    for (String k : keys) {
+      nf.put(k);
+    }
+    filter = nf;
+    builtAt = now;
+    lastRebuildFailed = false;
+
+    // Additions recorded well before this rebuild are now covered by state
+    long cutoff = System.currentTimeMillis() - (2 * rebuildIntervalMillis);
+    recentAdditions.values().removeIf(t -> t < cutoff);
+
+    long elapsed = System.currentTimeMillis() - start;
+    rebuildResults.add(Optional.of(new long[] {keys.size(), elapsed}));
+    log.info("rebuilt at risk account filter with {} entries in {}ms", keys.size(), elapsed);
+  }
+
+  /**
+   * Set the time source used to schedule rebuilds
+   *
+   * @param clock Supplier returning current time in milliseconds
+   */
+  void setClock(LongSupplier clock) {
+    this.clock = clock;
+  }
+
+  /**
+   * Set the executor used to run rebuilds
+   *
+   * @param executor Executor
+   */
+  void setExecutor(Executor executor) {
+    this.executor = executor;
+  }
+
+  /**
+   * Initialize new {@link AtRiskAccountFilter}
+   *
+   * <p>Most callers should use {@link #forId} to share a filter.
+   *
+   * @param loader Loader used to fetch keys from state
+   * @param rebuildIntervalMillis Interval between rebuilds in milliseconds
+   * @param fpp Desired false positive probability
+   */
+  public AtRiskAccountFilter(KeyLoader loader, long rebuildIntervalMillis, double fpp) {
+    if (rebuildIntervalMillis <= 0) {
+      throw new IllegalArgumentException("rebuild interval must be positive");
+    }
+    if (fpp <= 0.0 || fpp >= 1.0) {
+      throw new IllegalArgumentException("false positive probability must be between 0 and 1");
+    }
+    this.loader = loader;
+    this.rebuildIntervalMillis = rebuildIntervalMillis;
+    this.fpp = fpp;
+    log = LoggerFactory.getLogger(AtRiskAccountFilter.class);
+    clock = System::currentTimeMillis;
+    executor = rebuildExecutor;
+  }
+}
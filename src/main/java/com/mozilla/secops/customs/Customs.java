@@ -316,6 +316,23 @@ public class Customs implements Serializable {
 
     void setEscalateLoginFailureAtRiskAccount(Boolean value);
 
+    @Description(
+        "Enable the at risk account prefilter, rebuilt at this interval in seconds; accounts "
+            + "added by other workers may be missed until the next rebuild; 0 to disable; "
+            + "CustomsLoginFailureForAtRiskAccount")
+    @Default.Integer(0)
+    Integer getLoginFailureAtRiskAccountFilterRebuildSeconds();
+
+    void setLoginFailureAtRiskAccountFilterRebuildSeconds(Integer value);
+
+    @Description(
+        "False positive probability for the at risk account prefilter; "
+            + "CustomsLoginFailureForAtRiskAccount")
+    @Default.Double(0.01)
+    Double getLoginFailureAtRiskAccountFilterFpp();
+
+    void setLoginFailureAtRiskAccountFilterFpp(Double value);
+
     @Description("Enable velocity analysis; CustomsVelocity")
     @Default.Boolean(false)
     Boolean getEnableVelocityDetector();
@@ -398,6 +415,35 @@ public class Customs implements Serializable {
 
     void setEnablePrivateRelayForward(Boolean value);
 
+    @Description(
+        "Only pass fixed window feature panes that changed since the previous pane for a key to "
+            + "detectors; SourceLoginFailure, SourceLoginFailureDist, CustomsAccountCreation, "
+            + "CustomsAccountCreationDist, CustomsPasswordResetAbuse")
+    @Default.Boolean(false)
+    Boolean getEnableIncrementalFeatureEvaluation();
+
+    void setEnableIncrementalFeatureEvaluation(Boolean value);
+
+    @Description(
+        "Keep working copy of per-UID state in Beam keyed state, using the state backend as a "
+            + "durable store only; CustomsVelocity, PrivateRelayForward")
+    @Default.Boolean(false)
+    Boolean getEnableKeyedStateCache();
+
+    void setEnableKeyedStateCache(Boolean value);
+
+    @Description("Maximum time modified keyed state is held before being flushed to the backend")
+    @Default.Integer(60)
+    Integer getKeyedStateFlushSeconds();
+
+    void setKeyedStateFlushSeconds(Integer value);
+
+    @Description("Time after which idle keys are evicted from keyed state; seconds")
+    @Default.Integer(1800)
+    Integer getKeyedStateExpirySeconds();
+
+    void setKeyedStateExpirySeconds(Integer value);
+
     @Description("Enable status account enumeration detection; CustomsAccountEnumeration")
     @Default.Boolean(false)
     Boolean getEnableAccountEnumerationDetector();
@@ -559,21 +605,44 @@ public class Customs implements Serializable {
               .apply("fixed ten domain features", new CustomsFeaturesCombiner());
     }
 
+    // Detectors that depend only on the feature set can skip panes that are unchanged from the
+    // previous pane for a key; account enumeration also uses a side input and always consumes
+    // every pane
+    PCollection<KV<String, CustomsFeatures>> sourceDelta = sourceWindowed;
+    if (options.getEnableIncrementalFeatureEvaluation()) {
+      if (sourceWindowed != null) {
+        sourceDelta =
+            sourceWindowed.apply(
+                "fixed ten source address delta",
+                new CustomsFeaturesDelta("customs_features_source"));
+      }
+      if (emailWindowed != null) {
+        emailWindowed =
+            emailWindowed.apply(
+                "fixed ten email delta", new CustomsFeaturesDelta("customs_features_email"));
+      }
+      if (domainWindowed != null) {
+        domainWindowed =
+            domainWindowed.apply(
+                "fixed ten domain delta", new CustomsFeaturesDelta("customs_features_domain"));
+      }
+    }
+
     if (options.getEnablePasswordResetAbuseDetector()) {
       ret =
           ret.and(
-              sourceWindowed.apply("password reset abuse", new CustomsPasswordResetAbuse(options)));
+              sourceDelta.apply("password reset abuse", new CustomsPasswordResetAbuse(options)));
     }
     if (options.getEnableSourceLoginFailureDetector()) {
       ret =
-          ret.and(sourceWindowed.apply("source login failure", new SourceLoginFailure(options)))
+          ret.and(sourceDelta.apply("source login failure", new SourceLoginFailure(options)))
               .and(
                   emailWindowed.apply(
                       "source login failure distributed", new SourceLoginFailureDist(options)));
     }
     if (options.getEnableAccountCreationAbuseDetector()) {
       ret =
-          ret.and(sourceWindowed.apply("account creation", new CustomsAccountCreation(options)))
+          ret.and(sourceDelta.apply("account creation", new CustomsAccountCreation(options)))
               .and(
                   domainWindowed.apply(
                       "account creation distributed", new CustomsAccountCreationDist(options)));
@@ -708,16 +777,15 @@ public class Customs implements Serializable {
         p.apply("input", Input.compositeInputAdapter(options, buildConfigurationTick(options)));
     PCollection<Alert> alerts = executePipeline(p, input, options);
 
-    PCollection<String> fmt =
-        alerts
-            .apply("alert formatter", ParDo.of(new AlertFormatter(options)))
-            .apply("alert conversion", MapElements.via(new AlertFormatter.AlertToString()));
-    fmt.apply("output", OutputOptions.compositeOutput(options));
+    PCollection<Alert> fmt =
+        alerts.apply("alert formatter", ParDo.of(new AlertFormatter(options)));
+    fmt.apply("output", OutputOptions.compositeAlertOutput(options));
 
     // If the customs notification topic is set, wire the alerts up to this output transform
     // as well.
     if (options.getCustomsNotificationTopic() != null) {
-      fmt.apply("customs notification", new CustomsNotification(options));
+      fmt.apply("alert conversion", MapElements.via(new AlertFormatter.AlertToString()))
+          .apply("customs notification", new CustomsNotification(options));
     }
 
     p.run();
@@ -0,0 +1,79 @@
+package com.mozilla.secops.customs;
+
+import org.apache.beam.sdk.coders.VarIntCoder;
+import org.apache.beam.sdk.state.StateSpec;
+import org.apache.beam.sdk.state.StateSpecs;
+import org.apache.beam.sdk.state.ValueState;
+import org.apache.beam.sdk.transforms.DoFn;
+import org.apache.beam.sdk.transforms.PTransform;
+import org.apache.beam.sdk.transforms.ParDo;
+import org.apache.beam.sdk.values.KV;
+import org.apache.beam.sdk.values.PCollection;
+
+/**
+ * Filter repeated panes of unchanged {@link CustomsFeatures}
+ *
+ * <p>The fixed windows used for feature extraction fire early with accumulating panes, so every
+ * pane for a key contains the complete feature set for the window so far. Detectors that are a pure
+ * function of the feature set produce the same result when evaluated against a pane that is
+ * unchanged from the previous pane for the key, which occurs for example with the on time pane
+ * following an early firing.
+ *
+ * <p>This transform tracks the total event count last forwarded for each key and window in keyed
+ * state, and only forwards a pane if the feature set has grown since. Since every event added to a
+ * feature set increments the total event count, an unchanged count means all counters and retained
+ * events are unchanged. State is scoped to the window, and is released when the window expires.
+ *
+ * <p>This should not be applied ahead of transforms that also depend on side inputs, as a change in
+ * the side input could alter the result for an unchanged feature set.
+ */
+public class CustomsFeaturesDelta
+    extends PTransform<
+        PCollection<KV<String, CustomsFeatures>>, PCollection<KV<String, CustomsFeatures>>> {
+  private static final long serialVersionUID = 1L;
+
+  private final String namespace;
+
+  private static class DeltaFn
+      extends DoFn<KV<String, CustomsFeatures>, KV<String, CustomsFeatures>> {
+    private static final long serialVersionUID = 1L;
+
+    private final CustomsMetrics.FeaturesDeltaMetrics metrics;
+
+    @StateId("evaluated")
+    private final StateSpec<ValueState<Integer>> evaluatedSpec = StateSpecs.value(VarIntCoder.of());
+
+    DeltaFn(String namespace) {
+      metrics = new CustomsMetrics.FeaturesDeltaMetrics(namespace);
+    }
+
+    @ProcessElement
+    public void processElement(
+        ProcessContext c, @StateId("evaluated") ValueState<Integer> evaluated) {
+      int total = c.element().getValue().getTotalEvents();
+      Integer last = evaluated.read();
+      if (last != null && last == total) {
+        metrics.keySkipped();
+        return;
+      }
+      evaluated.write(total);
+      metrics.keyEvaluated();
+      c.output(c.element());
+    }
+  }
+
+  /**
+   * Initialize new {@link CustomsFeaturesDelta}
+   *
+   * @param namespace Metrics namespace
+   */
+  public CustomsFeaturesDelta(String namespace) {
+    this.namespace = namespace;
+  }
+
+  @Override
+  public PCollection<KV<String, CustomsFeatures>> expand(
+      PCollection<KV<String, CustomsFeatures>> input) {
+    return input.apply(ParDo.of(new DeltaFn(namespace)));
+  }
+}
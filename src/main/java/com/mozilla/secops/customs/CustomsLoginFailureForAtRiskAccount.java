@@ -10,6 +10,8 @@ import com.mozilla.secops.state.State;
 import com.mozilla.secops.state.StateCursor;
 import com.mozilla.secops.state.StateException;
 import com.mozilla.secops.window.GlobalTriggers;
+import java.util.Collection;
+import java.util.UUID;
 import org.apache.beam.sdk.transforms.DoFn;
 import org.apache.beam.sdk.transforms.PTransform;
 import org.apache.beam.sdk.transforms.ParDo;
@@ -25,6 +27,11 @@ import org.slf4j.LoggerFactory;
  * Flag failed logins to potentially at risk accounts.
  *
  * <p>Requires Datastore for state.
+ *
+ * <p>Since almost no login failures are for at risk accounts, lookups can optionally be prefiltered
+ * using an {@link AtRiskAccountFilter} that is periodically rebuilt from the keys in state, so only
+ * probable hits result in a Datastore lookup. Accounts added to state on other workers are not
+ * seen by the prefilter until the next rebuild, so it is disabled by default.
  */
 public class CustomsLoginFailureForAtRiskAccount
     extends PTransform<PCollection<Event>, PCollection<Alert>>
@@ -42,6 +49,9 @@ public class CustomsLoginFailureForAtRiskAccount
   public static final String DATASTORE_KIND = "customs_lfara";
 
   private boolean escalate;
+  private final int filterRebuildSeconds;
+  private final double filterFpp;
+  private final String filterId;
 
   /** {@inheritDoc} */
   public String getTransformDocDescription() {
@@ -56,6 +66,29 @@ public class CustomsLoginFailureForAtRiskAccount
    */
   public CustomsLoginFailureForAtRiskAccount(Customs.CustomsOptions options) {
     monitoredResource = options.getMonitoredResourceIndicator();
+    filterRebuildSeconds = options.getLoginFailureAtRiskAccountFilterRebuildSeconds();
+    filterFpp = options.getLoginFailureAtRiskAccountFilterFpp();
+    // All DoFn instances for this transform on a worker share the same filter
+    filterId = UUID.randomUUID().toString();
+  }
+
+  /**
+   * Load all keys present in at risk account state
+   *
+   * <p>Uses a separate state connection from the analysis DoFn instances, as the filter using it is
+   * shared between them and rebuilt on a background thread.
+   *
+   * @return Keys
+   * @throws StateException StateException
+   */
+  private static Collection<String> loadAtRiskKeys() throws StateException {
+    State s = new State(new DatastoreStateInterface(DATASTORE_KIND, DATASTORE_NAMESPACE));
+    s.initialize();
+    try {
+      return s.newCursor(CustomsAtRiskAccountStateModel.ScannedByEntry.class, false).getAllKeys();
+    } finally {
+      s.done();
+    }
   }
 
   @Override
@@ -96,7 +129,11 @@ public class CustomsLoginFailureForAtRiskAccount
                 new DoFn<Event, Alert>() {
                   private static final long serialVersionUID = 1L;
 
+                  private final CustomsMetrics.AtRiskAccountFilterMetrics metrics =
+                      new CustomsMetrics.AtRiskAccountFilterMetrics(
+                          CustomsLoginFailureForAtRiskAccount.class.getName());
                   private State state;
+                  private AtRiskAccountFilter filter;
 
                   @Setup
                   public void setup() throws StateException {
@@ -104,6 +141,14 @@ public class CustomsLoginFailureForAtRiskAccount
                     state =
                         new State(new DatastoreStateInterface(DATASTORE_KIND, DATASTORE_NAMESPACE));
                     state.initialize();
+                    if (filterRebuildSeconds > 0) {
+                      filter =
+                          AtRiskAccountFilter.forId(
+                              filterId,
+                              CustomsLoginFailureForAtRiskAccount::loadAtRiskKeys,
+                              filterRebuildSeconds * 1000L,
+                              filterFpp);
+                    }
                   }
 
                   @ProcessElement
@@ -111,6 +156,10 @@ public class CustomsLoginFailureForAtRiskAccount
                     String ip = CustomsUtil.authGetSourceAddress(c.element());
                     String email = CustomsUtil.authGetEmail(c.element());
 
+                    if (filter != null && !filter.mightContain(email, metrics)) {
+                      return;
+                    }
+
                     CustomsAtRiskAccountStateModel.ScannedByEntry ent = null;
                     try {
                       StateCursor<CustomsAtRiskAccountStateModel.ScannedByEntry> sc =
@@ -123,6 +172,9 @@ public class CustomsLoginFailureForAtRiskAccount
                     }
 
                     if (ent == null) {
+                      if (filter != null) {
+                        filter.reportMiss(metrics);
+                      }
                       return;
                     }
 
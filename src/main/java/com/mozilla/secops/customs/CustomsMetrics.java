@@ -0,0 +1,112 @@
+package com.mozilla.secops.customs;
+
+import java.io.Serializable;
+import org.apache.beam.sdk.metrics.Counter;
+import org.apache.beam.sdk.metrics.Distribution;
+import org.apache.beam.sdk.metrics.Gauge;
+import org.apache.beam.sdk.metrics.Metrics;
+
+/** {@link CustomsMetrics} contains metrics for the {@link Customs} pipeline. */
+public class CustomsMetrics {
+
+  /** Metrics for the {@link AtRiskAccountFilter} */
+  public static class AtRiskAccountFilterMetrics implements Serializable {
+    private static final long serialVersionUID = 1L;
+    static final String REBUILDS = "at_risk_filter_rebuilds";
+    static final String REBUILD_FAILURES = "at_risk_filter_rebuild_failures";
+    static final String REBUILD_MILLIS = "at_risk_filter_rebuild_millis";
+    static final String ENTRIES = "at_risk_filter_entries";
+    static final String LOOKUPS_SKIPPED = "at_risk_lookups_skipped";
+    static final String LOOKUPS_FORWARDED = "at_risk_lookups_forwarded";
+    static final String FALSE_POSITIVES = "at_risk_filter_false_positives";
+
+    private final Counter rebuilds;
+    private final Counter rebuildFailures;
+    private final Distribution rebuildMillis;
+    private final Gauge entries;
+    private final Counter lookupsSkipped;
+    private final Counter lookupsForwarded;
+    private final Counter falsePositives;
+
+    /**
+     * Initializer for {@link AtRiskAccountFilterMetrics}
+     *
+     * @param namespace String to categorize metrics by
+     */
+    public AtRiskAccountFilterMetrics(String namespace) {
+      rebuilds = Metrics.counter(namespace, REBUILDS);
+      rebuildFailures = Metrics.counter(namespace, REBUILD_FAILURES);
+      rebuildMillis = Metrics.distribution(namespace, REBUILD_MILLIS);
+      entries = Metrics.gauge(namespace, ENTRIES);
+      lookupsSkipped = Metrics.counter(namespace, LOOKUPS_SKIPPED);
+      lookupsForwarded = Metrics.counter(namespace, LOOKUPS_FORWARDED);
+      falsePositives = Metrics.counter(namespace, FALSE_POSITIVES);
+    }
+
+    /**
+     * The filter was rebuilt from state
+     *
+     * @param count Number of entries in rebuilt filter
+     * @param millis Time taken to rebuild filter in milliseconds
+     */
+    public void rebuilt(long count, long millis) {
+      rebuilds.inc();
+      entries.set(count);
+      rebuildMillis.update(millis);
+    }
+
+    /** Rebuilding the filter from state failed */
+    public void rebuildFailed() {
+      rebuildFailures.inc();
+    }
+
+    /** A state lookup was avoided because the filter excluded the key */
+    public void lookupSkipped() {
+      lookupsSkipped.inc();
+    }
+
+    /** A state lookup was performed because the filter indicated a probable hit */
+    public void lookupForwarded() {
+      lookupsForwarded.inc();
+    }
+
+    /**
+     * A forwarded state lookup found no entry
+     *
+     * <p>The observed false positive rate is the ratio of this counter to forwarded lookups.
+     */
+    public void falsePositive() {
+      falsePositives.inc();
+    }
+  }
+
+  /** Metrics for {@link CustomsFeaturesDelta} */
+  public static class FeaturesDeltaMetrics implements Serializable {
+    private static final long serialVersionUID = 1L;
+    static final String KEYS_EVALUATED = "features_keys_evaluated";
+    static final String KEYS_SKIPPED = "features_keys_skipped";
+
+    private final Counter keysEvaluated;
+    private final Counter keysSkipped;
+
+    /**
+     * Initializer for {@link FeaturesDeltaMetrics}
+     *
+     * @param namespace String to categorize metrics by
+     */
+    public FeaturesDeltaMetrics(String namespace) {
+      keysEvaluated = Metrics.counter(namespace, KEYS_EVALUATED);
+      keysSkipped = Metrics.counter(namespace, KEYS_SKIPPED);
+    }
+
+    /** A key was forwarded to detectors as its features changed since the last pane */
+    public void keyEvaluated() {
+      keysEvaluated.inc();
+    }
+
+    /** A key was not forwarded to detectors as its features were unchanged */
+    public void keySkipped() {
+      keysSkipped.inc();
+    }
+  }
+}
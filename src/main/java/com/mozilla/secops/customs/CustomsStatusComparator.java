@@ -160,6 +160,7 @@ public class CustomsStatusComparator extends PTransform<PCollection<Event>, PCol
                       CustomsAtRiskAccountStateModel.ScannedByEntry ent =
                           new CustomsAtRiskAccountStateModel.ScannedByEntry(e.address);
                       curs.set(e.email, ent);
+                      AtRiskAccountFilter.recordAddition(e.email);
                     } catch (StateException exc) {
                       log.error("error saving comparator state: {}", exc.getMessage());
                     }
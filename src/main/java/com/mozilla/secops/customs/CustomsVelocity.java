@@ -8,11 +8,13 @@ import com.mozilla.secops.authstate.PruningStrategyLatest;
 import com.mozilla.secops.parser.Event;
 import com.mozilla.secops.parser.FxaAuth;
 import com.mozilla.secops.parser.GeoIP;
+import com.mozilla.secops.state.CachedStateDoFn;
 import com.mozilla.secops.state.DatastoreStateInterface;
 import com.mozilla.secops.state.MemcachedStateInterface;
 import com.mozilla.secops.state.State;
 import com.mozilla.secops.state.StateCursor;
 import com.mozilla.secops.state.StateException;
+import com.mozilla.secops.state.StateInterface;
 import com.mozilla.secops.window.GlobalTriggers;
 import java.util.ArrayList;
 import org.apache.beam.sdk.transforms.DoFn;
@@ -20,6 +22,7 @@ import org.apache.beam.sdk.transforms.GroupByKey;
 import org.apache.beam.sdk.transforms.PTransform;
 import org.apache.beam.sdk.transforms.ParDo;
 import org.apache.beam.sdk.transforms.windowing.FixedWindows;
+import org.apache.beam.sdk.transforms.windowing.GlobalWindows;
 import org.apache.beam.sdk.transforms.windowing.Window;
 import org.apache.beam.sdk.values.KV;
 import org.apache.beam.sdk.values.PCollection;
@@ -52,6 +55,10 @@ public class CustomsVelocity extends PTransform<PCollection<Event>, PCollection<
   private boolean escalate;
   private boolean checkExperimentalParam;
 
+  private final boolean keyedStateCache;
+  private final long keyedStateFlushSeconds;
+  private final long keyedStateExpirySeconds;
+
   /** {@inheritDoc} */
   public String getTransformDocDescription() {
     String checkExp = "";
@@ -87,47 +94,138 @@ public class CustomsVelocity extends PTransform<PCollection<Event>, PCollection<
     maxmindIspDbPath = options.getMaxmindIspDbPath();
 
     escalate = options.getEscalateVelocity();
+
+    keyedStateCache = options.getEnableKeyedStateCache();
+    keyedStateFlushSeconds = options.getKeyedStateFlushSeconds();
+    keyedStateExpirySeconds = options.getKeyedStateExpirySeconds();
+  }
+
+  private StateInterface createStateInterface() {
+    if (memcachedHost != null && memcachedPort != null) {
+      log.info("using memcached for state management");
+      return new MemcachedStateInterface(memcachedHost, memcachedPort);
+    } else if (datastoreNamespace != null) {
+      log.info("using datastore for state management");
+      return new DatastoreStateInterface(VELOCITY_KIND, datastoreNamespace);
+    }
+    throw new IllegalArgumentException("could not find valid state parameters in options");
   }
 
   @Override
   public PCollection<Alert> expand(PCollection<Event> col) {
-    return col.apply(
-            "velocity filter events",
-            ParDo.of(
-                new DoFn<Event, KV<String, Event>>() {
-                  private static final long serialVersionUID = 1L;
+    PCollection<KV<String, Iterable<Event>>> grouped =
+        col.apply(
+                "velocity filter events",
+                ParDo.of(
+                    new DoFn<Event, KV<String, Event>>() {
+                      private static final long serialVersionUID = 1L;
+
+                      @ProcessElement
+                      public void processElement(ProcessContext c) {
+                        Event e = c.element();
+
+                        FxaAuth.EventSummary sum = CustomsUtil.authGetEventSummary(e);
+                        // Only look at login success here for now
+                        if (!(sum == FxaAuth.EventSummary.LOGIN_SUCCESS)) {
+                          return;
+                        }
 
-                  @ProcessElement
-                  public void processElement(ProcessContext c) {
-                    Event e = c.element();
+                        // If no path was present in the request, also filter that here
+                        if (CustomsUtil.authGetPath(e) == null) {
+                          return;
+                        }
 
-                    FxaAuth.EventSummary sum = CustomsUtil.authGetEventSummary(e);
-                    // Only look at login success here for now
-                    if (!(sum == FxaAuth.EventSummary.LOGIN_SUCCESS)) {
-                      return;
-                    }
+                        // Consider anything that has both a UID and a source address
+                        String uid = CustomsUtil.authGetUid(e);
+                        if (uid == null) {
+                          return;
+                        }
+                        if (CustomsUtil.authGetSourceAddress(e) == null) {
+                          return;
+                        }
 
-                    // If no path was present in the request, also filter that here
-                    if (CustomsUtil.authGetPath(e) == null) {
-                      return;
+                        c.output(KV.of(uid, e));
+                      }
+                    }))
+            .apply(
+                "velocity window",
+                Window.<KV<String, Event>>into(FixedWindows.of(Duration.standardMinutes(5))))
+            .apply("velocity gbk", GroupByKey.<String, Event>create());
+
+    if (keyedStateCache) {
+      return grouped
+          .apply(
+              "velocity keyed state window",
+              Window.<KV<String, Iterable<Event>>>into(new GlobalWindows()))
+          .apply(
+              "velocity analyze keyed",
+              ParDo.of(
+                  new CachedStateDoFn<Iterable<Event>, Alert, AuthStateModel>(
+                      AuthStateModel.class,
+                      keyedStateFlushSeconds,
+                      keyedStateExpirySeconds,
+                      VELOCITY_KIND,
+                      // Datastore writes are transactional, as in the per-event path
+                      memcachedHost == null || memcachedPort == null) {
+                    private static final long serialVersionUID = 1L;
+
+                    private GeoIP geoip;
+
+                    @Override
+                    protected StateInterface createStateInterface() {
+                      return CustomsVelocity.this.createStateInterface();
                     }
 
-                    // Consider anything that has both a UID and a source address
-                    String uid = CustomsUtil.authGetUid(e);
-                    if (uid == null) {
-                      return;
+                    @Override
+                    protected void initialize() {
+                      geoip = new GeoIP(maxmindCityDbPath, maxmindIspDbPath);
                     }
-                    if (CustomsUtil.authGetSourceAddress(e) == null) {
-                      return;
+
+                    @Override
+                    protected AuthStateModel process(
+                        ProcessContext c, String uid, AuthStateModel sm) {
+                      if (sm == null) {
+                        sm = new AuthStateModel(uid);
+                      } else {
+                        new PruningStrategyLatest().pruneState(sm);
+                      }
+
+                      ArrayList<String> seenAddr = new ArrayList<>();
+                      boolean modified = false;
+
+                      for (Event e : c.element().getValue()) {
+                        String remoteAddress = CustomsUtil.authGetSourceAddress(e);
+                        String email = CustomsUtil.authGetEmail(e);
+                        Double longitude = CustomsUtil.authGetSourceAddressLongitude(e);
+                        Double latitude = CustomsUtil.authGetSourceAddressLatitude(e);
+                        if ((remoteAddress == null)
+                            || (latitude == null)
+                            || (longitude == null)
+                            || (email == null)) {
+                          continue;
+                        }
+
+                        // Just process each address once per window
+                        if (seenAddr.contains(remoteAddress)) {
+                          continue;
+                        }
+                        seenAddr.add(remoteAddress);
+
+                        for (Alert a :
+                            analyzeEvent(
+                                uid, sm, e, remoteAddress, email, latitude, longitude, geoip)) {
+                          c.output(a);
+                        }
+                        new PruningStrategyLatest().pruneState(sm);
+                        modified = true;
+                      }
+                      return modified ? sm : null;
                     }
+                  }))
+          .apply("velocity global windows", new GlobalTriggers<Alert>(5));
+    }
 
-                    c.output(KV.of(uid, e));
-                  }
-                }))
-        .apply(
-            "velocity window",
-            Window.<KV<String, Event>>into(FixedWindows.of(Duration.standardMinutes(5))))
-        .apply("velocity gbk", GroupByKey.<String, Event>create())
+    return grouped
         .apply(
             "velocity analyze",
             ParDo.of(
@@ -139,17 +237,7 @@ public class CustomsVelocity extends PTransform<PCollection<Event>, PCollection<
 
                   @Setup
                   public void setup() throws StateException {
-                    if (memcachedHost != null && memcachedPort != null) {
-                      log.info("using memcached for state management");
-                      state = new State(new MemcachedStateInterface(memcachedHost, memcachedPort));
-                    } else if (datastoreNamespace != null) {
-                      log.info("using datastore for state management");
-                      state =
-                          new State(new DatastoreStateInterface(VELOCITY_KIND, datastoreNamespace));
-                    } else {
-                      throw new IllegalArgumentException(
-                          "could not find valid state parameters in options");
-                    }
+                    state = new State(createStateInterface());
                     state.initialize();
                     geoip = new GeoIP(maxmindCityDbPath, maxmindIspDbPath);
                   }
@@ -207,138 +295,11 @@ public class CustomsVelocity extends PTransform<PCollection<Event>, PCollection<
                         return;
                       }
 
-                      // Update the state entry; we want to use the timestamp on the event here
-                      AuthStateModel.ModelEntryUpdate uRequest =
-                          new AuthStateModel.ModelEntryUpdate();
-                      uRequest.ipAddress = remoteAddress;
-                      uRequest.timestamp = e.getTimestamp();
-                      uRequest.latitude = latitude;
-                      uRequest.longitude = longitude;
-                      uRequest.userAgent = CustomsUtil.authGetUserAgent(e);
-                      if (!sm.updateEntry(uRequest)) {
-                        // Address was already seen, so just update the state and continue
-                        try {
-                          sm.set(cur, new PruningStrategyLatest());
-                        } catch (StateException exc) {
-                          log.info("error updating state: {}", exc.getMessage());
-                          return;
-                        }
-                        continue;
-                      }
-
-                      AuthStateModel.GeoVelocityResponse geoResp =
-                          sm.geoVelocityAnalyzeLatest(maxKilometersPerSecond);
-
-                      if (geoResp != null) {
-                        log.info(
-                            "{}: new location is {}km away from last location within {}s",
-                            uid,
-                            geoResp.getKmDistance(),
-                            geoResp.getTimeDifference());
-
-                        boolean minDistanceMet = true;
-                        if (minimumDistanceForAlert != null) {
-                          if (geoResp.getKmDistance() < minimumDistanceForAlert) {
-                            log.info("{}: will skip alert as minimum distance was not met", uid);
-                            minDistanceMet = false;
-                          }
-                        }
-
-                        if (geoResp.getMaxKmPerSecondExceeded() && minDistanceMet) {
-                          log.info("{}: creating velocity alert", uid);
-                          Alert alert = new Alert();
-                          alert.setCategory("customs");
-                          alert.setSubcategory(Customs.CATEGORY_VELOCITY);
-                          alert.setTimestamp(e.getTimestamp());
-                          alert.setNotifyMergeKey(Customs.CATEGORY_VELOCITY);
-                          alert.addMetadata(AlertMeta.Key.SOURCEADDRESS, remoteAddress);
-                          alert.addMetadata(
-                              AlertMeta.Key.SOURCEADDRESS_PREVIOUS, geoResp.getPreviousSource());
-                          alert.addMetadata(
-                              AlertMeta.Key.TIME_DELTA_SECONDS,
-                              geoResp.getTimeDifference().toString());
-                          alert.addMetadata(
-                              AlertMeta.Key.KM_DISTANCE,
-                              String.format("%.2f", geoResp.getKmDistance()));
-                          alert.addMetadata(AlertMeta.Key.UID, uid);
-                          alert.addMetadata(AlertMeta.Key.EMAIL, email);
-                          alert.setSummary(
-                              String.format(
-                                  "%s %s velocity exceeded, %.2f km in %d seconds",
-                                  monitoredResource,
-                                  uid,
-                                  geoResp.getKmDistance(),
-                                  geoResp.getTimeDifference()));
-
-                          // It's possible the AlertFormatter DoFn could add this for us later, but
-                          // since it is important information as part of this transform make sure
-                          // it will be present by leveraging the formatters GeoIP method here.
-                          AlertFormatter.addGeoIPData(alert, geoip);
-
-                          c.output(alert);
-                        }
-
-                        // for monitoring smaller velocity jumps than we escalate for
-                        if (checkExperimentalParam) {
-                          AuthStateModel.GeoVelocityResponse geoRespMO =
-                              sm.geoVelocityAnalyzeLatest(maxKilometersPerSecondMonitorOnly);
-
-                          if (geoRespMO != null) {
-                            log.info(
-                                "{}: new location is {}km away from last location within {}s (monitor only)",
-                                uid,
-                                geoRespMO.getKmDistance(),
-                                geoRespMO.getTimeDifference());
-
-                            boolean minDistanceMetMO = true;
-                            if (minimumDistanceForAlertMonitorOnly != null) {
-                              if (geoRespMO.getKmDistance() < minimumDistanceForAlertMonitorOnly) {
-                                log.info(
-                                    "{}: will skip alert as minimum distance was not met (monitor only)",
-                                    uid);
-                                minDistanceMetMO = false;
-                              }
-                            }
-
-                            if (geoRespMO.getMaxKmPerSecondExceeded() && minDistanceMetMO) {
-                              log.info("{}: creating velocity monitor only alert", uid);
-                              Alert alertMO = new Alert();
-                              alertMO.setCategory("customs");
-                              alertMO.setSubcategory(Customs.CATEGORY_VELOCITY_MONITOR_ONLY);
-                              alertMO.setTimestamp(e.getTimestamp());
-                              alertMO.setNotifyMergeKey(Customs.CATEGORY_VELOCITY_MONITOR_ONLY);
-                              alertMO.addMetadata(AlertMeta.Key.SOURCEADDRESS, remoteAddress);
-                              alertMO.addMetadata(
-                                  AlertMeta.Key.SOURCEADDRESS_PREVIOUS,
-                                  geoRespMO.getPreviousSource());
-                              alertMO.addMetadata(
-                                  AlertMeta.Key.TIME_DELTA_SECONDS,
-                                  geoRespMO.getTimeDifference().toString());
-                              alertMO.addMetadata(
-                                  AlertMeta.Key.KM_DISTANCE,
-                                  String.format("%.2f", geoRespMO.getKmDistance()));
-                              alertMO.addMetadata(AlertMeta.Key.UID, uid);
-                              alertMO.addMetadata(AlertMeta.Key.EMAIL, email);
-                              alertMO.setSummary(
-                                  String.format(
-                                      "%s %s velocity exceeded, %.2f km in %d seconds (monitor only)",
-                                      monitoredResource,
-                                      uid,
-                                      geoRespMO.getKmDistance(),
-                                      geoRespMO.getTimeDifference()));
-
-                              // It's possible the AlertFormatter DoFn could add this for us later,
-                              // but
-                              // since it is important information as part of this transform make
-                              // sure
-                              // it will be present by leveraging the formatters GeoIP method here.
-                              AlertFormatter.addGeoIPData(alertMO, geoip);
-                              c.output(alertMO);
-                            }
-                          }
-                        }
+                      for (Alert a :
+                          analyzeEvent(
+                              uid, sm, e, remoteAddress, email, latitude, longitude, geoip)) {
+                        c.output(a);
                       }
-
                       try {
                         sm.set(cur, new PruningStrategyLatest());
                       } catch (StateException exc) {
@@ -350,6 +311,146 @@ public class CustomsVelocity extends PTransform<PCollection<Event>, PCollection<
         .apply("velocity global windows", new GlobalTriggers<Alert>(5));
   }
 
+  /**
+   * Update model with a login event and perform velocity analysis
+   *
+   * @param uid User ID
+   * @param sm State model for user, updated with the new entry
+   * @param e Event
+   * @param remoteAddress Source address of event
+   * @param email Email address of user
+   * @param latitude Source address latitude
+   * @param longitude Source address longitude
+   * @param geoip GeoIP instance used to enrich alerts
+   * @return Alerts generated for the event, empty if none
+   */
+  private ArrayList<Alert> analyzeEvent(
+      String uid,
+      AuthStateModel sm,
+      Event e,
+      String remoteAddress,
+      String email,
+      Double latitude,
+      Double longitude,
+      GeoIP geoip) {
+    ArrayList<Alert> ret = new ArrayList<>();
+
+    // Update the state entry; we want to use the timestamp on the event here
+    AuthStateModel.ModelEntryUpdate uRequest = new AuthStateModel.ModelEntryUpdate();
+    uRequest.ipAddress = remoteAddress;
+    uRequest.timestamp = e.getTimestamp();
+    uRequest.latitude = latitude;
+    uRequest.longitude = longitude;
+    uRequest.userAgent = CustomsUtil.authGetUserAgent(e);
+    if (!sm.updateEntry(uRequest)) {
+      // Address was already seen, so only the state needs to be updated
+      return ret;
+    }
+
+    AuthStateModel.GeoVelocityResponse geoResp =
+        sm.geoVelocityAnalyzeLatest(maxKilometersPerSecond);
+
+    if (geoResp != null) {
+      log.info(
+          "{}: new location is {}km away from last location within {}s",
+          uid,
+          geoResp.getKmDistance(),
+          geoResp.getTimeDifference());
+
+      boolean minDistanceMet = true;
+      if (minimumDistanceForAlert != null) {
+        if (geoResp.getKmDistance() < minimumDistanceForAlert) {
+          log.info("{}: will skip alert as minimum distance was not met", uid);
+          minDistanceMet = false;
+        }
+      }
+
+      if (geoResp.getMaxKmPerSecondExceeded() && minDistanceMet) {
+        log.info("{}: creating velocity alert", uid);
+        Alert alert = new Alert();
+        alert.setCategory("customs");
+        alert.setSubcategory(Customs.CATEGORY_VELOCITY);
+        alert.setTimestamp(e.getTimestamp());
+        alert.setNotifyMergeKey(Customs.CATEGORY_VELOCITY);
+        alert.addMetadata(AlertMeta.Key.SOURCEADDRESS, remoteAddress);
+        alert.addMetadata(AlertMeta.Key.SOURCEADDRESS_PREVIOUS, geoResp.getPreviousSource());
+        alert.addMetadata(AlertMeta.Key.TIME_DELTA_SECONDS, geoResp.getTimeDifference().toString());
+        alert.addMetadata(
+            AlertMeta.Key.KM_DISTANCE, String.format("%.2f", geoResp.getKmDistance()));
+        alert.addMetadata(AlertMeta.Key.UID, uid);
+        alert.addMetadata(AlertMeta.Key.EMAIL, email);
+        alert.setSummary(
+            String.format(
+                "%s %s velocity exceeded, %.2f km in %d seconds",
+                monitoredResource,
+                uid,
+                geoResp.getKmDistance(),
+                geoResp.getTimeDifference()));
+
+        // It's possible the AlertFormatter DoFn could add this for us later, but since it is
+        // important information as part of this transform make sure it will be present by
+        // leveraging the formatters GeoIP method here.
+        AlertFormatter.addGeoIPData(alert, geoip);
+
+        ret.add(alert);
+      }
+
+      // for monitoring smaller velocity jumps than we escalate for
+      if (checkExperimentalParam) {
+        AuthStateModel.GeoVelocityResponse geoRespMO =
+            sm.geoVelocityAnalyzeLatest(maxKilometersPerSecondMonitorOnly);
+
+        if (geoRespMO != null) {
+          log.info(
+              "{}: new location is {}km away from last location within {}s (monitor only)",
+              uid,
+              geoRespMO.getKmDistance(),
+              geoRespMO.getTimeDifference());
+
+          boolean minDistanceMetMO = true;
+          if (minimumDistanceForAlertMonitorOnly != null) {
+            if (geoRespMO.getKmDistance() < minimumDistanceForAlertMonitorOnly) {
+              log.info("{}: will skip alert as minimum distance was not met (monitor only)", uid);
+              minDistanceMetMO = false;
+            }
+          }
+
+          if (geoRespMO.getMaxKmPerSecondExceeded() && minDistanceMetMO) {
+            log.info("{}: creating velocity monitor only alert", uid);
+            Alert alertMO = new Alert();
+            alertMO.setCategory("customs");
+            alertMO.setSubcategory(Customs.CATEGORY_VELOCITY_MONITOR_ONLY);
+            alertMO.setTimestamp(e.getTimestamp());
+            alertMO.setNotifyMergeKey(Customs.CATEGORY_VELOCITY_MONITOR_ONLY);
+            alertMO.addMetadata(AlertMeta.Key.SOURCEADDRESS, remoteAddress);
+            alertMO.addMetadata(
+                AlertMeta.Key.SOURCEADDRESS_PREVIOUS, geoRespMO.getPreviousSource());
+            alertMO.addMetadata(
+                AlertMeta.Key.TIME_DELTA_SECONDS, geoRespMO.getTimeDifference().toString());
+            alertMO.addMetadata(
+                AlertMeta.Key.KM_DISTANCE, String.format("%.2f", geoRespMO.getKmDistance()));
+            alertMO.addMetadata(AlertMeta.Key.UID, uid);
+            alertMO.addMetadata(AlertMeta.Key.EMAIL, email);
+            alertMO.setSummary(
+                String.format(
+                    "%s %s velocity exceeded, %.2f km in %d seconds (monitor only)",
+                    monitoredResource,
+                    uid,
+                    geoRespMO.getKmDistance(),
+                    geoRespMO.getTimeDifference()));
+
+            // It's possible the AlertFormatter DoFn could add this for us later, but since it is
+            // important information as part of this transform make sure it will be present by
+            // leveraging the formatters GeoIP method here.
+            AlertFormatter.addGeoIPData(alertMO, geoip);
+            ret.add(alertMO);
+          }
+        }
+      }
+    }
+    return ret;
+  }
+
   public boolean isExperimental() {
     return !escalate;
   }
@@ -7,13 +7,16 @@ import com.mozilla.secops.alert.AlertMeta;
 import com.mozilla.secops.parser.Event;
 import com.mozilla.secops.parser.Payload;
 import com.mozilla.secops.parser.PrivateRelay;
+import com.mozilla.secops.state.CachedStateDoFn;
 import com.mozilla.secops.state.DatastoreStateInterface;
 import com.mozilla.secops.state.State;
 import com.mozilla.secops.state.StateCursor;
 import com.mozilla.secops.state.StateException;
+import com.mozilla.secops.state.StateInterface;
 import com.mozilla.secops.window.GlobalTriggers;
 import java.io.IOException;
 import java.util.List;
+import java.util.Objects;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
 import org.apache.beam.sdk.transforms.DoFn;
@@ -21,6 +24,7 @@ import org.apache.beam.sdk.transforms.GroupByKey;
 import org.apache.beam.sdk.transforms.PTransform;
 import org.apache.beam.sdk.transforms.ParDo;
 import org.apache.beam.sdk.transforms.windowing.FixedWindows;
+import org.apache.beam.sdk.transforms.windowing.GlobalWindows;
 import org.apache.beam.sdk.transforms.windowing.Window;
 import org.apache.beam.sdk.values.KV;
 import org.apache.beam.sdk.values.PCollection;
@@ -49,6 +53,9 @@ public class PrivateRelayForward extends PTransform<PCollection<Event>, PCollect
   public static final String DATASTORE_KIND = "private_relay_forward";
 
   private final String monitoredResource;
+  private final boolean keyedStateCache;
+  private final long keyedStateFlushSeconds;
+  private final long keyedStateExpirySeconds;
   private final Logger log = LoggerFactory.getLogger(PrivateRelayForward.class);
 
   /** PrivateRelayForwardState describes the format of individual state entries */
@@ -109,40 +116,102 @@ public class PrivateRelayForward extends PTransform<PCollection<Event>, PCollect
    */
   public PrivateRelayForward(Customs.CustomsOptions options) {
     monitoredResource = options.getMonitoredResourceIndicator();
+    keyedStateCache = options.getEnableKeyedStateCache();
+    keyedStateFlushSeconds = options.getKeyedStateFlushSeconds();
+    keyedStateExpirySeconds = options.getKeyedStateExpirySeconds();
+  }
+
+  private static StateInterface createStateInterface() {
+    return new DatastoreStateInterface(
+        PrivateRelayForward.DATASTORE_KIND, PrivateRelayForward.DATASTORE_NAMESPACE);
+  }
+
+  private static List<Event> sortEvents(Iterable<Event> events) {
+    return StreamSupport.stream(events.spliterator(), false)
+        .sorted((e1, e2) -> e1.getTimestamp().compareTo(e2.getTimestamp()))
+        .collect(Collectors.toList());
   }
 
   @Override
   public PCollection<Alert> expand(PCollection<Event> col) {
-    return col.apply(
-            "private relay filter events",
-            ParDo.of(
-                new DoFn<Event, KV<String, Event>>() {
-                  private static final long serialVersionUID = 1L;
+    PCollection<KV<String, Iterable<Event>>> grouped =
+        col.apply(
+                "private relay filter events",
+                ParDo.of(
+                    new DoFn<Event, KV<String, Event>>() {
+                      private static final long serialVersionUID = 1L;
 
-                  @ProcessElement
-                  public void processElement(ProcessContext c) {
-                    Event e = c.element();
+                      @ProcessElement
+                      public void processElement(ProcessContext c) {
+                        Event e = c.element();
 
-                    if (!e.getPayloadType().equals(Payload.PayloadType.PRIVATE_RELAY)) {
-                      return;
-                    }
-                    PrivateRelay d = e.getPayload();
-                    if ((d.getEventType() == null)
-                        || (!d.getEventType().equals(PrivateRelay.EventType.EMAIL_RELAY)
-                            && !d.getEventType().equals(PrivateRelay.EventType.FXA_RP_EVENT))) {
-                      return;
+                        if (!e.getPayloadType().equals(Payload.PayloadType.PRIVATE_RELAY)) {
+                          return;
+                        }
+                        PrivateRelay d = e.getPayload();
+                        if ((d.getEventType() == null)
+                            || (!d.getEventType().equals(PrivateRelay.EventType.EMAIL_RELAY)
+                                && !d.getEventType()
+                                    .equals(PrivateRelay.EventType.FXA_RP_EVENT))) {
+                          return;
+                        }
+                        // We need to have a UID to proceed with the event
+                        if (d.getUid() == null) {
+                          return;
+                        }
+                        c.output(KV.of(d.getUid(), e));
+                      }
+                    }))
+            .apply(
+                "private relay window",
+                Window.<KV<String, Event>>into(FixedWindows.of(Duration.standardMinutes(1))))
+            .apply("private relay gbk", GroupByKey.<String, Event>create());
+
+    if (keyedStateCache) {
+      return grouped
+          .apply(
+              "private relay keyed state window",
+              Window.<KV<String, Iterable<Event>>>into(new GlobalWindows()))
+          .apply(
+              "private relay analyze keyed",
+              ParDo.of(
+                  new CachedStateDoFn<Iterable<Event>, Alert, PrivateRelayForwardState>(
+                      PrivateRelayForwardState.class,
+                      keyedStateFlushSeconds,
+                      keyedStateExpirySeconds,
+                      DATASTORE_KIND) {
+                    private static final long serialVersionUID = 1L;
+
+                    @Override
+                    protected StateInterface createStateInterface() {
+                      return PrivateRelayForward.createStateInterface();
                     }
-                    // We need to have a UID to proceed with the event
-                    if (d.getUid() == null) {
-                      return;
+
+                    @Override
+                    protected PrivateRelayForwardState process(
+                        ProcessContext c, String uid, PrivateRelayForwardState prfs) {
+                      if (prfs == null) {
+                        prfs = new PrivateRelayForwardState();
+                        prfs.setUid(uid);
+                      }
+                      boolean modified = false;
+                      for (Event e : sortEvents(c.element().getValue())) {
+                        String prev = prfs.getRealAddress();
+                        Alert a = analyzeEvent(uid, prfs, e);
+                        if (a != null) {
+                          c.output(a);
+                        }
+                        if (!Objects.equals(prev, prfs.getRealAddress())) {
+                          modified = true;
+                        }
+                      }
+                      return modified ? prfs : null;
                     }
-                    c.output(KV.of(d.getUid(), e));
-                  }
-                }))
-        .apply(
-            "private relay window",
-            Window.<KV<String, Event>>into(FixedWindows.of(Duration.standardMinutes(1))))
-        .apply("private relay gbk", GroupByKey.<String, Event>create())
+                  }))
+          .apply("private relay global windows", new GlobalTriggers<Alert>(5));
+    }
+
+    return grouped
         .apply(
             "private relay analyze",
             ParDo.of(
@@ -154,11 +223,7 @@ public class PrivateRelayForward extends PTransform<PCollection<Event>, PCollect
                   @Setup
                   public void setup() throws IOException, StateException {
                     log.info("using datastore for state management");
-                    state =
-                        new State(
-                            new DatastoreStateInterface(
-                                PrivateRelayForward.DATASTORE_KIND,
-                                PrivateRelayForward.DATASTORE_NAMESPACE));
+                    state = new State(createStateInterface());
                     state.initialize();
                   }
 
@@ -166,10 +231,7 @@ public class PrivateRelayForward extends PTransform<PCollection<Event>, PCollect
                   public void processElement(ProcessContext c) {
                     String uid = c.element().getKey();
                     // Sort our input by timestamp
-                    List<Event> events =
-                        StreamSupport.stream(c.element().getValue().spliterator(), false)
-                            .sorted((e1, e2) -> e1.getTimestamp().compareTo(e2.getTimestamp()))
-                            .collect(Collectors.toList());
+                    List<Event> events = sortEvents(c.element().getValue());
 
                     StateCursor<PrivateRelayForwardState> curs;
                     try {
@@ -198,62 +260,16 @@ public class PrivateRelayForward extends PTransform<PCollection<Event>, PCollect
                         prfs.setUid(uid);
                       }
 
-                      PrivateRelay d = e.getPayload();
-
-                      // If this is an RP event, we simply need to update the existing state with
-                      // a new real address value
-                      if (d.getEventType().equals(PrivateRelay.EventType.FXA_RP_EVENT)) {
-                        prfs.setRealAddress(d.getRealAddress());
-                        log.info("updating real_address for {} using rp event", uid);
+                      String prev = prfs.getRealAddress();
+                      Alert a = analyzeEvent(uid, prfs, e);
+                      if (!Objects.equals(prev, prfs.getRealAddress())) {
                         try {
                           curs.set(uid, prfs);
                         } catch (StateException exc) {
-                          log.error(
-                              "error updating state for {} on rp event: {}", uid, exc.getMessage());
+                          log.error("error updating state for {}: {}", uid, exc.getMessage());
                         }
-                        continue;
                       }
-
-                      // Otherwise, this is a forward event. Make sure the real address value
-                      // matches the value pulled from state. If the state is new (it did
-                      // not exist) we will set the real address value in state based on
-                      // the value in the forward event.
-                      if (prfs.getRealAddress() == null) {
-                        log.info("updating real_address for {} using relay event", uid);
-                        prfs.setRealAddress(d.getRealAddress());
-                        try {
-                          curs.set(uid, prfs);
-                        } catch (StateException exc) {
-                          log.error(
-                              "error updating state for {} on forward event (new): {}",
-                              uid,
-                              exc.getMessage());
-                        }
-                      } else if (!prfs.getRealAddress().equals(d.getRealAddress())) {
-                        log.info("real address hash mismatch for {}", uid);
-                        Alert a = new Alert();
-                        a.setCategory("customs");
-                        a.setNotifyMergeKey(Customs.CATEGORY_PRIVATE_RELAY_FORWARD);
-                        a.setSubcategory(Customs.CATEGORY_PRIVATE_RELAY_FORWARD);
-                        a.addMetadata(AlertMeta.Key.UID, uid);
-                        a.addMetadata(AlertMeta.Key.REAL_ADDRESS_HASH_ACTUAL, d.getRealAddress());
-                        a.addMetadata(
-                            AlertMeta.Key.REAL_ADDRESS_HASH_EXPECTED, prfs.getRealAddress());
-                        a.setSummary(
-                            String.format(
-                                "%s private relay address hash mismatch for %s",
-                                monitoredResource, uid));
-
-                        prfs.setRealAddress(d.getRealAddress());
-                        try {
-                          curs.set(uid, prfs);
-                        } catch (StateException exc) {
-                          log.error(
-                              "error updating state for {} on forward event (mismatch): {}",
-                              uid,
-                              exc.getMessage());
-                        }
-
+                      if (a != null) {
                         c.output(a);
                       }
                     }
@@ -262,6 +278,54 @@ public class PrivateRelayForward extends PTransform<PCollection<Event>, PCollect
         .apply("private relay global windows", new GlobalTriggers<Alert>(5));
   }
 
+  /**
+   * Apply a relay event to the state for a UID
+   *
+   * <p>The real address in the supplied state is updated in place if required.
+   *
+   * @param uid UID
+   * @param prfs Current state for UID, real address will be null for new state
+   * @param e Event
+   * @return Alert if a real address mismatch was identified, otherwise null
+   */
+  private Alert analyzeEvent(String uid, PrivateRelayForwardState prfs, Event e) {
+    PrivateRelay d = e.getPayload();
+
+    // If this is an RP event, we simply need to update the existing state with
+    // a new real address value
+    if (d.getEventType().equals(PrivateRelay.EventType.FXA_RP_EVENT)) {
+      prfs.setRealAddress(d.getRealAddress());
+      log.info("updating real_address for {} using rp event", uid);
+      return null;
+    }
+
+    // Otherwise, this is a forward event. Make sure the real address value
+    // matches the value pulled from state. If the state is new (it did
+    // not exist) we will set the real address value in state based on
+    // the value in the forward event.
+    if (prfs.getRealAddress() == null) {
+      log.info("updating real_address for {} using relay event", uid);
+      prfs.setRealAddress(d.getRealAddress());
+      return null;
+    } else if (prfs.getRealAddress().equals(d.getRealAddress())) {
+      return null;
+    }
+
+    log.info("real address hash mismatch for {}", uid);
+    Alert a = new Alert();
+    a.setCategory("customs");
+    a.setNotifyMergeKey(Customs.CATEGORY_PRIVATE_RELAY_FORWARD);
+    a.setSubcategory(Customs.CATEGORY_PRIVATE_RELAY_FORWARD);
+    a.addMetadata(AlertMeta.Key.UID, uid);
+    a.addMetadata(AlertMeta.Key.REAL_ADDRESS_HASH_ACTUAL, d.getRealAddress());
+    a.addMetadata(AlertMeta.Key.REAL_ADDRESS_HASH_EXPECTED, prfs.getRealAddress());
+    a.setSummary(
+        String.format("%s private relay address hash mismatch for %s", monitoredResource, uid));
+
+    prfs.setRealAddress(d.getRealAddress());
+    return a;
+  }
+
   /** {@inheritDoc} */
   public boolean isExperimental() {
     // This transform doesn't escalate to FxA, but return false here so we don't end up
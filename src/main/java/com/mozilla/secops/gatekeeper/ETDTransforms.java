@@ -2,6 +2,7 @@ package com.mozilla.secops.gatekeeper;
 
 import com.mozilla.secops.DocumentingTransform;
 import com.mozilla.secops.IOOptions;
+import com.mozilla.secops.MultiPatternMatcher;
 import com.mozilla.secops.alert.Alert;
 import com.mozilla.secops.alert.AlertMeta;
 import com.mozilla.secops.alert.AlertSuppressor;
@@ -14,9 +15,6 @@ import com.mozilla.secops.parser.models.etd.Properties;
 import com.mozilla.secops.parser.models.etd.SourceId;
 import java.io.IOException;
 import java.io.Serializable;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.regex.Pattern;
 import org.apache.beam.sdk.options.Default;
 import org.apache.beam.sdk.options.Description;
 import org.apache.beam.sdk.options.PipelineOptions;
@@ -56,7 +54,7 @@ public class ETDTransforms implements Serializable {
   public static class ExtractFindings extends PTransform<PCollection<Event>, PCollection<Event>> {
     private static final long serialVersionUID = 1L;
 
-    private List<Pattern> exclude;
+    private MultiPatternMatcher exclude;
 
     /**
      * static initializer for filter
@@ -65,12 +63,7 @@ public class ETDTransforms implements Serializable {
      */
     public ExtractFindings(Options opts) {
       String[] ignoreRegexes = opts.getIgnoreETDFindingRuleRegex();
-      exclude = new ArrayList<Pattern>();
-      if (ignoreRegexes != null) {
-        for (String s : ignoreRegexes) {
-          exclude.add(Pattern.compile(s));
-        }
-      }
+      exclude = new MultiPatternMatcher(ignoreRegexes != null ? ignoreRegexes : new String[0]);
     }
 
     @Override
@@ -96,10 +89,8 @@ public class ETDTransforms implements Serializable {
                       || f.getDetectionCategory().getRuleName() == null) {
                     return;
                   }
-                  for (Pattern p : exclude) {
-                    if (p.matcher(f.getDetectionCategory().getRuleName()).matches()) {
-                      return;
-                    }
+                  if (exclude.matchesAny(f.getDetectionCategory().getRuleName())) {
+                    return;
                   }
                   c.output(e);
                 }
@@ -114,7 +105,7 @@ public class ETDTransforms implements Serializable {
 
     private static final String alertCategory = "gatekeeper:gcp";
 
-    private List<Pattern> highPatterns;
+    private MultiPatternMatcher highPatterns;
     private String critNotifyEmail;
 
     private Logger log;
@@ -130,12 +121,7 @@ public class ETDTransforms implements Serializable {
       critNotifyEmail = opts.getCriticalNotificationEmail();
       String[] highRegexes = opts.getHighETDFindingRuleRegex();
 
-      highPatterns = new ArrayList<Pattern>();
-      if (highRegexes != null) {
-        for (String s : highRegexes) {
-          highPatterns.add(Pattern.compile(s));
-        }
-      }
+      highPatterns = new MultiPatternMatcher(highRegexes != null ? highRegexes : new String[0]);
     }
 
     /** {@inheritDoc} */
@@ -190,14 +176,12 @@ public class ETDTransforms implements Serializable {
       if (dc == null || dc.getRuleName() == null) {
         return;
       }
-      for (Pattern p : highPatterns) {
-        if (p.matcher(dc.getRuleName()).matches()) {
-          a.addMetadata(AlertMeta.Key.ALERT_HANDLING_SEVERITY, "high");
-          if (critNotifyEmail != null) {
-            a.addMetadata(AlertMeta.Key.NOTIFY_EMAIL_DIRECT, critNotifyEmail);
-          }
-          return;
+      if (highPatterns.matchesAny(dc.getRuleName())) {
+        a.addMetadata(AlertMeta.Key.ALERT_HANDLING_SEVERITY, "high");
+        if (critNotifyEmail != null) {
+          a.addMetadata(AlertMeta.Key.NOTIFY_EMAIL_DIRECT, critNotifyEmail);
         }
+        return;
       }
       a.addMetadata(AlertMeta.Key.ALERT_HANDLING_SEVERITY, "low");
     }
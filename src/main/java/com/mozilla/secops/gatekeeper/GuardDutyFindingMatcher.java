@@ -79,22 +79,41 @@ public class GuardDutyFindingMatcher implements Serializable {
    * @return boolean
    */
   public boolean matches(Finding f) {
-    boolean ftMatches = false;
-    boolean idMatches = false;
-    boolean tagMatches = false;
-    boolean domainMatches = false;
-
     // Check finding type
     if (findingType != null) {
       if (f.getType() == null) {
         return false;
       }
-      if (findingTypeMatcher.matcher(f.getType()).matches()) {
-        ftMatches = true;
+      if (!findingTypeMatcher.matcher(f.getType()).matches()) {
+        return false;
       }
-    } else {
-      ftMatches = true;
     }
+    return matchesExcludingType(f);
+  }
+
+  /**
+   * Get the finding type regular expression
+   *
+   * @return Finding type regex, or null if unset
+   */
+  @JsonProperty("finding_type")
+  public String getFindingType() {
+    return findingType;
+  }
+
+  /**
+   * Checks if a Finding matches this matcher, without considering finding type
+   *
+   * <p>Used by {@link GuardDutyFindingMatcherSet}, which evaluates finding types for all matchers
+   * in a set at once.
+   *
+   * @param f Guardduty {@link Finding}
+   * @return boolean
+   */
+  boolean matchesExcludingType(Finding f) {
+    boolean idMatches = false;
+    boolean tagMatches = false;
+    boolean domainMatches = false;
 
     // Check account id
     if (accountId != null) {
@@ -148,6 +167,6 @@ public class GuardDutyFindingMatcher implements Serializable {
       domainMatches = true;
     }
 
-    return ftMatches && idMatches && tagMatches && domainMatches;
+    return idMatches && tagMatches && domainMatches;
   }
 }
@@ -0,0 +1,69 @@
+package com.mozilla.secops.gatekeeper;
+
+import com.amazonaws.services.guardduty.model.Finding;
+import com.mozilla.secops.MultiPatternMatcher;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Evaluate a list of {@link GuardDutyFindingMatcher} against findings
+ *
+ * <p>Finding type expressions for all matchers in the set are combined into a single {@link
+ * MultiPatternMatcher}, so the finding type is evaluated once per finding rather than once per
+ * matcher. Remaining criteria are only checked for matchers whose finding type matched.
+ */
+public class GuardDutyFindingMatcherSet implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  private final GuardDutyFindingMatcher[] typed;
+  private final GuardDutyFindingMatcher[] untyped;
+  private final MultiPatternMatcher types;
+
+  /**
+   * Return true if any matcher in the set matches the finding
+   *
+   * @param f Guardduty {@link Finding}
+   * @return boolean
+   */
+  public boolean matches(Finding f) {
+    for (GuardDutyFindingMatcher m : untyped) {
+      if (m.matchesExcludingType(f)) {
+        return true;
+      }
+    }
+    if (f.getType() == null) {
+      return false;
+    }
+    for (int i : types.allMatches(f.getType())) {
+      if (typed[i].matchesExcludingType(f)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Initialize new {@link GuardDutyFindingMatcherSet}
+   *
+   * @param matchers List of matchers
+   */
+  public GuardDutyFindingMatcherSet(List<GuardDutyFindingMatcher> matchers) {
+    ArrayList<GuardDutyFindingMatcher> t = new ArrayList<>();
+    ArrayList<GuardDutyFindingMatcher> u = new ArrayList<>();
+    ArrayList<String> p = new ArrayList<>();
+    if (matchers != null) {
+      for (GuardDutyFindingMatcher m : matchers) {
+        if (m.getFindingType() == null) {
+          u.add(m);
+        } else {
+          t.add(m);
+          p.add(m.getFindingType());
+        }
+      }
+    }
+    typed = t.toArray(new GuardDutyFindingMatcher[0]);
+    untyped = u.toArray(new GuardDutyFindingMatcher[0]);
+    types = new MultiPatternMatcher(p);
+  }
+}
@@ -12,7 +12,6 @@ import com.mozilla.secops.parser.GuardDuty;
 import com.mozilla.secops.parser.Payload;
 import java.io.IOException;
 import java.io.Serializable;
-import java.util.List;
 import java.util.Map;
 import org.apache.beam.sdk.options.Default;
 import org.apache.beam.sdk.options.Description;
@@ -47,7 +46,7 @@ public class GuardDutyTransforms implements Serializable {
   public static class ExtractFindings extends PTransform<PCollection<Event>, PCollection<Event>> {
     private static final long serialVersionUID = 1L;
 
-    private List<GuardDutyFindingMatcher> ignoreMatchers;
+    private GuardDutyFindingMatcherSet ignoreMatchers;
 
     /**
      * static initializer for filter
@@ -57,7 +56,7 @@ public class GuardDutyTransforms implements Serializable {
     public ExtractFindings(Options opts) {
       try {
         GuardDutyConfig gdc = GuardDutyConfig.load(opts.getGuarddutyConfigPath());
-        ignoreMatchers = gdc.getIgnoreMatchers();
+        ignoreMatchers = new GuardDutyFindingMatcherSet(gdc.getIgnoreMatchers());
       } catch (IOException exc) {
         throw new RuntimeException(exc.getMessage());
       }
@@ -84,10 +83,8 @@ public class GuardDutyTransforms implements Serializable {
                   if (f == null) {
                     return;
                   }
-                  for (GuardDutyFindingMatcher matcher : ignoreMatchers) {
-                    if (matcher.matches(f)) {
-                      return;
-                    }
+                  if (ignoreMatchers.matches(f)) {
+                    return;
                   }
                   c.output(e);
                 }
@@ -102,7 +99,7 @@ public class GuardDutyTransforms implements Serializable {
 
     private static final String alertCategory = "gatekeeper:aws";
 
-    private List<GuardDutyFindingMatcher> highMatchers;
+    private GuardDutyFindingMatcherSet highMatchers;
     private final String critNotifyEmail;
     private final String identityMgrPath;
 
@@ -120,7 +117,7 @@ public class GuardDutyTransforms implements Serializable {
       identityMgrPath = opts.getIdentityManagerPath();
       try {
         GuardDutyConfig gdc = GuardDutyConfig.load(opts.getGuarddutyConfigPath());
-        highMatchers = gdc.getHighSeverityMatchers();
+        highMatchers = new GuardDutyFindingMatcherSet(gdc.getHighSeverityMatchers());
       } catch (IOException exc) {
         throw new RuntimeException(exc.getMessage());
       }
@@ -190,14 +187,12 @@ public class GuardDutyTransforms implements Serializable {
     }
 
     private void addFindingSeverity(Alert a, Finding f) {
-      for (GuardDutyFindingMatcher matcher : highMatchers) {
-        if (matcher.matches(f)) {
-          a.addMetadata(AlertMeta.Key.ALERT_HANDLING_SEVERITY, "high");
-          if (critNotifyEmail != null) {
-            a.addMetadata(AlertMeta.Key.NOTIFY_EMAIL_DIRECT, critNotifyEmail);
-          }
-          return;
+      if (highMatchers.matches(f)) {
+        a.addMetadata(AlertMeta.Key.ALERT_HANDLING_SEVERITY, "high");
+        if (critNotifyEmail != null) {
+          a.addMetadata(AlertMeta.Key.NOTIFY_EMAIL_DIRECT, critNotifyEmail);
         }
+        return;
       }
       a.addMetadata(AlertMeta.Key.ALERT_HANDLING_SEVERITY, "low");
     }
@@ -2,9 +2,10 @@ package com.mozilla.secops.httprequest;
 
 import com.mozilla.secops.DetectNat;
 import com.mozilla.secops.DocumentingTransform;
-import com.mozilla.secops.FileUtil;
+import com.mozilla.secops.HeavyHitters;
 import com.mozilla.secops.IOOptions;
 import com.mozilla.secops.IprepdIO;
+import com.mozilla.secops.MultiPatternMatcher;
 import com.mozilla.secops.OutputOptions;
 import com.mozilla.secops.SourceCorrelation;
 import com.mozilla.secops.Stats;
@@ -37,13 +38,14 @@ import org.apache.beam.sdk.options.Default;
 import org.apache.beam.sdk.options.Description;
 import org.apache.beam.sdk.options.PipelineOptions;
 import org.apache.beam.sdk.options.PipelineOptionsFactory;
+import org.apache.beam.sdk.transforms.Combine;
+import org.apache.beam.sdk.transforms.Combine.CombineFn;
 import org.apache.beam.sdk.transforms.Count;
 import org.apache.beam.sdk.transforms.Distinct;
 import org.apache.beam.sdk.transforms.DoFn;
 import org.apache.beam.sdk.transforms.Filter;
 import org.apache.beam.sdk.transforms.Flatten;
 import org.apache.beam.sdk.transforms.GroupByKey;
-import org.apache.beam.sdk.transforms.MapElements;
 import org.apache.beam.sdk.transforms.PTransform;
 import org.apache.beam.sdk.transforms.ParDo;
 import org.apache.beam.sdk.transforms.SerializableFunction;
@@ -90,6 +92,37 @@ public class HTTPRequest implements Serializable {
     toggleCache.put(name, entry);
   }
 
+  /**
+   * Create count based alert suppressor
+   *
+   * @param expiry Suppression duration in seconds
+   * @param timerGranularity Timer granularity in seconds, null for default suppression
+   * @param approximateMembership With compact suppression, use approximate membership filter
+   * @return AlertSuppressorCount
+   */
+  private static AlertSuppressorCount countSuppressor(
+      Long expiry, Long timerGranularity, Boolean approximateMembership) {
+    if (timerGranularity == null) {
+      return new AlertSuppressorCount(expiry);
+    }
+    return new AlertSuppressorCount(
+        expiry, timerGranularity, approximateMembership != null && approximateMembership);
+  }
+
+  /**
+   * Return heavy hitter sketch width if heavy hitter counting is enabled
+   *
+   * @param toggles {@link HTTPRequestToggles}
+   * @return Sketch width, or null if heavy hitter counting is disabled
+   */
+  private static Integer heavyHitterSketchWidth(HTTPRequestToggles toggles) {
+    Boolean enabled = toggles.getEnableHeavyHitterCounting();
+    if (enabled == null || !enabled) {
+      return null;
+    }
+    return toggles.getHeavyHitterSketchWidth();
+  }
+
   /** Window events into fixed one minute windows */
   public static class WindowForFixed extends PTransform<PCollection<Event>, PCollection<Event>> {
     private static final long serialVersionUID = 1L;
@@ -185,6 +218,8 @@ public class HTTPRequest implements Serializable {
     private final String monitoredResource;
     private final Boolean enableIprepdDatastoreExemptions;
     private final String iprepdDatastoreExemptionsProject;
+    private final Integer heavyHitterSketchWidth;
+    private final HotKeyFanout hotKeyFanout;
 
     private Logger log;
 
@@ -203,6 +238,8 @@ public class HTTPRequest implements Serializable {
       monitoredResource = toggles.getMonitoredResource();
       this.enableIprepdDatastoreExemptions = enableIprepdDatastoreExemptions;
       this.iprepdDatastoreExemptionsProject = iprepdDatastoreExemptionsProject;
+      heavyHitterSketchWidth = heavyHitterSketchWidth(toggles);
+      hotKeyFanout = HotKeyFanout.fromToggles(toggles, ErrorRateAnalysis.class.getName());
       log = LoggerFactory.getLogger(ErrorRateAnalysis.class);
     }
 
@@ -216,8 +253,8 @@ public class HTTPRequest implements Serializable {
 
     @Override
     public PCollection<Alert> expand(PCollection<Event> input) {
-      return input
-          .apply(
+      PCollection<String> clientErrors =
+          input.apply(
               "isolate client errors",
               ParDo.of(
                   new DoFn<Event, String>() {
@@ -237,9 +274,25 @@ public class HTTPRequest implements Serializable {
                         c.output(n.getSourceAddress());
                       }
                     }
-                  }))
-          .apply(Count.<String>perElement())
-          .apply(
+                  }));
+      PCollection<KV<String, Long>> counts;
+      if (heavyHitterSketchWidth != null) {
+        counts =
+            clientErrors.apply(
+                "per-client error heavy hitters",
+                new HeavyHitters(
+                    maxErrorRate,
+                    heavyHitterSketchWidth,
+                    HeavyHitters.DEFAULT_DEPTH,
+                    ErrorRateAnalysis.class.getName()));
+      } else if (hotKeyFanout != null) {
+        counts =
+            clientErrors.apply(
+                "per-client error count", new HotKeyFanout.CountPerElement(hotKeyFanout));
+      } else {
+        counts = clientErrors.apply(Count.<String>perElement());
+      }
+      return counts.apply(
               "per-client error rate analysis",
               ParDo.of(
                   new DoFn<KV<String, Long>, Alert>() {
@@ -295,6 +348,8 @@ public class HTTPRequest implements Serializable {
     private final String iprepdDatastoreExemptionsProject;
     private PCollectionView<Map<String, Boolean>> natView = null;
     private final HeuristicMetrics metrics;
+    private final Integer heavyHitterSketchWidth;
+    private final HotKeyFanout hotKeyFanout;
 
     private Logger log;
 
@@ -313,6 +368,8 @@ public class HTTPRequest implements Serializable {
         PCollectionView<Map<String, Boolean>> natView) {
       maxCount = toggles.getHardLimitRequestCount();
       monitoredResource = toggles.getMonitoredResource();
+      heavyHitterSketchWidth = heavyHitterSketchWidth(toggles);
+      hotKeyFanout = HotKeyFanout.fromToggles(toggles, HardLimitAnalysis.class.getName());
       this.enableIprepdDatastoreExemptions = enableIprepdDatastoreExemptions;
       this.iprepdDatastoreExemptionsProject = iprepdDatastoreExemptionsProject;
       this.natView = natView;
@@ -351,8 +408,8 @@ public class HTTPRequest implements Serializable {
         // If natView was not set then we just create an empty view for use as the side input
         natView = DetectNat.getEmptyView(input.getPipeline());
       }
-      return input
-          .apply(
+      PCollection<String> clients =
+          input.apply(
               "extract client ip",
               ParDo.of(
                   new DoFn<Event, String>() {
@@ -366,8 +423,25 @@ public class HTTPRequest implements Serializable {
                       }
                       c.output(n.getSourceAddress());
                     }
-                  }))
-          .apply("hard limit per client count", Count.<String>perElement())
+                  }));
+      PCollection<KV<String, Long>> counts;
+      if (heavyHitterSketchWidth != null) {
+        counts =
+            clients.apply(
+                "hard limit heavy hitters",
+                new HeavyHitters(
+                    maxCount,
+                    heavyHitterSketchWidth,
+                    HeavyHitters.DEFAULT_DEPTH,
+                    HardLimitAnalysis.class.getName()));
+      } else if (hotKeyFanout != null) {
+        counts =
+            clients.apply(
+                "hard limit per client count", new HotKeyFanout.CountPerElement(hotKeyFanout));
+      } else {
+        counts = clients.apply("hard limit per client count", Count.<String>perElement());
+      }
+      return counts
           .apply("filter clients above limit", Filter.by(new HasCountGreaterThan()))
           // Reshuffle to prevent fusion of steps with large input that do not need side input
           // with low volume step that needs side input
@@ -506,17 +580,16 @@ public class HTTPRequest implements Serializable {
                   new DoFn<KV<String, String>, KV<String, String>>() {
                     private static final long serialVersionUID = 1L;
 
-                    private Pattern uaRegex;
+                    private MultiPatternMatcher uaRegex;
 
                     @Setup
                     public void setup() throws IOException {
-                      ArrayList<String> in = FileUtil.fileReadLines(uaBlocklistPath);
-                      uaRegex = Pattern.compile(String.join("|", in));
+                      uaRegex = MultiPatternMatcher.fromPath(uaBlocklistPath);
                     }
 
                     @ProcessElement
                     public void processElement(ProcessContext c) {
-                      if (uaRegex.matcher(c.element().getValue()).matches()) {
+                      if (uaRegex.matchesAny(c.element().getValue())) {
                         c.output(c.element());
                       }
                     }
@@ -605,6 +678,8 @@ public class HTTPRequest implements Serializable {
     private final Integer suppressRecovery;
     private final Long sessionGapDurationMinutes;
     private final Long alertSuppressionDurationSeconds;
+    private final Long alertSuppressionTimerGranularitySeconds;
+    private final Boolean alertSuppressionApproximateMembership;
 
     /** Internal class for configured endpoints in EPA */
     public static class EndpointAbuseEndpointInfo implements Serializable {
@@ -630,6 +705,96 @@ public class HTTPRequest implements Serializable {
       public Instant timestamp;
     }
 
+    /**
+     * Per-client aggregate of requests in a session
+     *
+     * <p>Contains everything the analysis requires from the requests in a session, so requests can
+     * be combined ahead of the shuffle rather than grouped.
+     */
+    public static class EndpointAbuseAggregate implements Serializable {
+      private static final long serialVersionUID = 1L;
+
+      /** Request count per monitored endpoint */
+      public int[] endpointCounts;
+      /** Request made to an unmonitored endpoint */
+      public boolean basicVariance;
+      /** Request made for supporting content */
+      public boolean extendedVariance;
+      /** Timestamp of latest request to a monitored endpoint */
+      public Instant latestRequest;
+      /** User agent of latest request to a monitored endpoint */
+      public String userAgent;
+    }
+
+    /** Combine requests for a client into an {@link EndpointAbuseAggregate} */
+    private class EndpointAbuseCombineFn
+        extends CombineFn<ArrayList<String>, EndpointAbuseAggregate, EndpointAbuseAggregate> {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      public EndpointAbuseAggregate createAccumulator() {
+        EndpointAbuseAggregate ret = new EndpointAbuseAggregate();
+        ret.endpointCounts = new int[endpoints.length];
+        return ret;
+      }
+
+      @Override
+      public EndpointAbuseAggregate addInput(EndpointAbuseAggregate agg, ArrayList<String> i) {
+        // Count the number of requests in-window for this source that map to monitored
+        // endpoints. Set a basic variance flag if we see a request that was made to something
+        // that is not monitored.
+        Integer abIdx = indexEndpoint(i.get(1), i.get(0));
+        if (abIdx == null) {
+          if (customVarianceSubstrings != null) {
+            for (String s : customVarianceSubstrings) {
+              if (i.get(4).contains(s)) {
+                agg.basicVariance = true;
+                agg.extendedVariance = true;
+              }
+            }
+          }
+          agg.basicVariance = true;
+          if (considerSupporting(i.get(1))) {
+            agg.extendedVariance = true;
+          }
+          return agg;
+        }
+        // Track the latest applicable EPA request, so we can use it as the alert timestamp and
+        // source of the user agent if we need to generate an alert.
+        Instant t = Instant.parse(i.get(3));
+        if (agg.latestRequest == null || t.getMillis() > agg.latestRequest.getMillis()) {
+          agg.latestRequest = t;
+          agg.userAgent = i.get(2);
+        }
+        agg.endpointCounts[abIdx]++;
+        return agg;
+      }
+
+      @Override
+      public EndpointAbuseAggregate mergeAccumulators(Iterable<EndpointAbuseAggregate> aggs) {
+        EndpointAbuseAggregate ret = createAccumulator();
+        for (EndpointAbuseAggregate a : aggs) {
+          for (int i = 0; i < ret.endpointCounts.length; i++) {
+            ret.endpointCounts[i] += a.endpointCounts[i];
+          }
+          ret.basicVariance |= a.basicVariance;
+          ret.extendedVariance |= a.extendedVariance;
+          if (a.latestRequest != null
+              && (ret.latestRequest == null
+                  || a.latestRequest.getMillis() > ret.latestRequest.getMillis())) {
+            ret.latestRequest = a.latestRequest;
+            ret.userAgent = a.userAgent;
+          }
+        }
+        return ret;
+      }
+
+      @Override
+      public EndpointAbuseAggregate extractOutput(EndpointAbuseAggregate agg) {
+        return agg;
+      }
+    }
+
     /**
      * Static initializer for {@link EndpointAbuseAnalysis}
      *
@@ -651,6 +816,9 @@ public class HTTPRequest implements Serializable {
       customVarianceSubstrings = toggles.getEndpointAbuseCustomVarianceSubstrings();
       sessionGapDurationMinutes = toggles.getSessionGapDurationMinutes();
       alertSuppressionDurationSeconds = toggles.getAlertSuppressionDurationSeconds();
+      alertSuppressionTimerGranularitySeconds =
+          toggles.getAlertSuppressionTimerGranularitySeconds();
+      alertSuppressionApproximateMembership = toggles.getAlertSuppressionApproximateMembership();
 
       String[] cfgEndpoints = toggles.getEndpointAbusePath();
       endpoints = new EndpointAbuseEndpointInfo[cfgEndpoints.length];
@@ -692,60 +860,28 @@ public class HTTPRequest implements Serializable {
 
     @Override
     public PCollection<Alert> expand(PCollection<KV<String, ArrayList<String>>> input) {
+      // Hot key fanout is not used here; with early firings the intermediate combine produces
+      // panes containing partial results, which would be emitted as additional alerts
       return input
-          .apply(GroupByKey.<String, ArrayList<String>>create())
+          .apply(
+              "aggregate per-client",
+              Combine.<String, ArrayList<String>, EndpointAbuseAggregate>perKey(
+                  new EndpointAbuseCombineFn()))
           .apply(
               "analyze per-client",
               ParDo.of(
-                  new DoFn<KV<String, Iterable<ArrayList<String>>>, KV<String, Alert>>() {
+                  new DoFn<KV<String, EndpointAbuseAggregate>, KV<String, Alert>>() {
                     private static final long serialVersionUID = 1L;
 
                     @ProcessElement
                     public void processElement(ProcessContext c, BoundedWindow w) {
                       String remoteAddress = c.element().getKey();
-                      Iterable<ArrayList<String>> paths = c.element().getValue();
-                      int[] endCounter = new int[endpoints.length];
-                      String userAgent = null;
-                      boolean basicVariance = false;
-                      boolean extendedVariance = false;
-
-                      // Used to track the latest applicable EPA request, so we can use it as the
-                      // alert timestamp if we need to generate an alert.
-                      Instant latestEpaRequest = null;
-
-                      // Count the number of requests in-window for this source that map to
-                      // monitored endpoints. Set a basic variance flag if we see a request
-                      // that was made to something that is not monitored.
-                      for (ArrayList<String> i : paths) {
-                        Integer abIdx = indexEndpoint(i.get(1), i.get(0));
-                        if (abIdx == null) {
-                          if (customVarianceSubstrings != null) {
-                            for (String s : customVarianceSubstrings) {
-                              if (i.get(4).contains(s)) {
-                                basicVariance = true;
-                                extendedVariance = true;
-                              }
-                            }
-                          }
-                          basicVariance = true;
-                          if (considerSupporting(i.get(1))) {
-                            extendedVariance = true;
-                          }
-                          continue;
-                        }
-                        Instant t = Instant.parse(i.get(3));
-                        if (latestEpaRequest == null) {
-                          latestEpaRequest = t;
-                        } else if (t.getMillis() > latestEpaRequest.getMillis()) {
-                          latestEpaRequest = t;
-                        }
-                        // XXX Just pick up the user agent here; with agent variance this could
-                        // result in a different agent being included in the alert than the one
-                        // that was actually associated with the threshold violation, and should
-                        // be fixed.
-                        userAgent = i.get(2);
-                        endCounter[abIdx]++;
-                      }
+                      EndpointAbuseAggregate agg = c.element().getValue();
+                      int[] endCounter = agg.endpointCounts;
+                      String userAgent = agg.userAgent;
+                      boolean basicVariance = agg.basicVariance;
+                      boolean extendedVariance = agg.extendedVariance;
+                      Instant latestEpaRequest = agg.latestRequest;
 
                       // If extended object variance is enabled, only consider variance if this
                       // flag has been set. Otherwise we by default consider basic variance to be
@@ -834,7 +970,12 @@ public class HTTPRequest implements Serializable {
           //
           // See also https://issues.apache.org/jira/browse/BEAM-2507
           .apply("endpoint abuse analysis global", new GlobalTriggers<KV<String, Alert>>(5))
-          .apply(ParDo.of(new AlertSuppressorCount(alertSuppressionDurationSeconds)));
+          .apply(
+              ParDo.of(
+                  countSuppressor(
+                      alertSuppressionDurationSeconds,
+                      alertSuppressionTimerGranularitySeconds,
+                      alertSuppressionApproximateMembership)));
     }
 
     private Boolean considerSupporting(String path) {
@@ -876,6 +1017,7 @@ public class HTTPRequest implements Serializable {
     private final Boolean enableIprepdDatastoreExemptions;
     private final String iprepdDatastoreExemptionsProject;
     private PCollectionView<Map<String, Boolean>> natView = null;
+    private final HotKeyFanout hotKeyFanout;
 
     private final HeuristicMetrics metrics;
     private Logger log;
@@ -903,6 +1045,7 @@ public class HTTPRequest implements Serializable {
       this.iprepdDatastoreExemptionsProject = iprepdDatastoreExemptionsProject;
       this.natView = natView;
       this.metrics = new HeuristicMetrics(ThresholdAnalysis.class.getName());
+      hotKeyFanout = HotKeyFanout.fromToggles(toggles, ThresholdAnalysis.class.getName());
       log = LoggerFactory.getLogger(ThresholdAnalysis.class);
     }
 
@@ -922,23 +1065,29 @@ public class HTTPRequest implements Serializable {
       }
 
       // Count per source address
-      PCollection<KV<String, Long>> clientCounts =
+      PCollection<String> clients =
           col.apply(
-                  "calculate per client count",
-                  ParDo.of(
-                      new DoFn<Event, String>() {
-                        private static final long serialVersionUID = 1L;
+              "calculate per client count",
+              ParDo.of(
+                  new DoFn<Event, String>() {
+                    private static final long serialVersionUID = 1L;
 
-                        @ProcessElement
-                        public void processElement(ProcessContext c) {
-                          Normalized n = c.element().getNormalized();
-                          if (n.getSourceAddress() == null) {
-                            return;
-                          }
-                          c.output(n.getSourceAddress());
-                        }
-                      }))
-              .apply(Count.<String>perElement());
+                    @ProcessElement
+                    public void processElement(ProcessContext c) {
+                      Normalized n = c.element().getNormalized();
+                      if (n.getSourceAddress() == null) {
+                        return;
+                      }
+                      c.output(n.getSourceAddress());
+                    }
+                  }));
+      PCollection<KV<String, Long>> clientCounts;
+      if (hotKeyFanout != null) {
+        clientCounts =
+            clients.apply("per client count", new HotKeyFanout.CountPerElement(hotKeyFanout));
+      } else {
+        clientCounts = clients.apply(Count.<String>perElement());
+      }
 
       // For each client, extract the request count
       PCollection<Long> counts = clientCounts.apply("extract counts", Values.<Long>create());
@@ -1061,6 +1210,25 @@ public class HTTPRequest implements Serializable {
     private PCollectionView<Map<String, Boolean>> natView = null;
     private final HeuristicMetrics metrics;
 
+    /**
+     * Request fields used in sequence analysis
+     *
+     * <p>Requests are reduced to these fields prior to grouping by client, so the full event is not
+     * included in the shuffle.
+     */
+    public static class SequenceRequest implements Serializable {
+      private static final long serialVersionUID = 1L;
+
+      /** Request timestamp */
+      public Instant timestamp;
+      /** Request method */
+      public String method;
+      /** Request path */
+      public String path;
+      /** User agent */
+      public String userAgent;
+    }
+
     /** Internal class for configured endpoints in EPA */
     public static class EndpointSequenceAbuseTimingInfo implements Serializable {
       private static final long serialVersionUID = 1L;
@@ -1161,7 +1329,7 @@ public class HTTPRequest implements Serializable {
           .apply(
               "filter events and key by ip",
               ParDo.of(
-                  new DoFn<Event, KV<String, Event>>() {
+                  new DoFn<Event, KV<String, SequenceRequest>>() {
                     private static final long serialVersionUID = 1L;
 
                     @ProcessElement
@@ -1176,27 +1344,31 @@ public class HTTPRequest implements Serializable {
                       }
                       // only output events if they belong to one of our sequences
                       if (belongsToSequence(method, path)) {
-                        c.output(KV.of(sourceAddress, event));
+                        SequenceRequest r = new SequenceRequest();
+                        r.timestamp = new Instant(event.getTimestamp().getMillis());
+                        r.method = method;
+                        r.path = path;
+                        r.userAgent = n.getUserAgent();
+                        c.output(KV.of(sourceAddress, r));
                       }
                     }
                   }))
-          .apply(GroupByKey.<String, Event>create())
+          .apply(GroupByKey.<String, SequenceRequest>create())
           .apply(
               "analyze per-client",
               ParDo.of(
-                      new DoFn<KV<String, Iterable<Event>>, Alert>() {
+                      new DoFn<KV<String, Iterable<SequenceRequest>>, Alert>() {
                         private static final long serialVersionUID = 1L;
 
                         @ProcessElement
                         public void processElement(ProcessContext c, BoundedWindow w) {
                           String remoteAddress = c.element().getKey();
-                          Iterable<Event> events = c.element().getValue();
+                          Iterable<SequenceRequest> events = c.element().getValue();
 
                           // sort events by timestamp
-                          List<Event> eventList =
+                          List<SequenceRequest> eventList =
                               StreamSupport.stream(events.spliterator(), false)
-                                  .sorted(
-                                      (e1, e2) -> e1.getTimestamp().compareTo(e2.getTimestamp()))
+                                  .sorted((e1, e2) -> e1.timestamp.compareTo(e2.timestamp))
                                   .collect(Collectors.toList());
 
                           int[] violationsCounter = new int[endpointPatterns.length];
@@ -1208,33 +1380,29 @@ public class HTTPRequest implements Serializable {
                           Instant[] lastFirstRequest = new Instant[endpointPatterns.length];
 
                           // for each path
-                          for (Event event : eventList) {
-                            Normalized n = event.getNormalized();
-
+                          for (SequenceRequest event : eventList) {
                             // check if its a first item in an endpoint sequence
                             ArrayList<Integer> indices =
-                                findFirstHalfPatternMatches(
-                                    n.getRequestMethod(), n.getUrlRequestPath());
+                                findFirstHalfPatternMatches(event.method, event.path);
 
                             // for any sequence its a part of update the latest timestamp for it
                             for (Integer m : indices) {
-                              lastFirstRequest[m] = Instant.parse(event.getTimestamp().toString());
+                              lastFirstRequest[m] = event.timestamp;
                             }
 
                             // check if its a second item in an endpoint sequence
                             ArrayList<Integer> secondIndices =
-                                findSecondHalfPatternMatches(
-                                    n.getRequestMethod(), n.getUrlRequestPath());
+                                findSecondHalfPatternMatches(event.method, event.path);
 
                             // for any sequence its the second part of, check the delta and increase
                             // count if it is
                             for (Integer m : secondIndices) {
-                              Instant ts = Instant.parse(event.getTimestamp().toString());
+                              Instant ts = event.timestamp;
                               if (lastFirstRequest[m] != null) {
                                 if (ts.isBefore(
                                     lastFirstRequest[m].plus(endpointPatterns[m].deltaMs))) {
                                   lastViolationUserAgent[m] =
-                                      n.getUserAgent() == null ? "" : n.getUserAgent();
+                                      event.userAgent == null ? "" : event.userAgent;
                                   lastViolationTimestamp[m] = ts;
                                   violationsCounter[m]++;
                                 }
@@ -1400,6 +1568,8 @@ public class HTTPRequest implements Serializable {
     private final Integer suppressRecovery;
     private final Long sessionGapDurationMinutes;
     private final Long alertSuppressionDurationSeconds;
+    private final Long alertSuppressionTimerGranularitySeconds;
+    private final Boolean alertSuppressionApproximateMembership;
 
     /**
      * Initializer for {@link PerEndpointErrorRateAnalysis}
@@ -1421,6 +1591,9 @@ public class HTTPRequest implements Serializable {
       this.sessionGapDurationMinutes = toggles.getErrorSessionGapDurationMinutes();
       this.alertSuppressionDurationSeconds =
           toggles.getPerEndpointErrorRateAlertSuppressionDurationSeconds();
+      alertSuppressionTimerGranularitySeconds =
+          toggles.getAlertSuppressionTimerGranularitySeconds();
+      alertSuppressionApproximateMembership = toggles.getAlertSuppressionApproximateMembership();
 
       String[] cfgEndpoints = toggles.getPerEndpointErrorRatePaths();
 
@@ -1600,7 +1773,12 @@ public class HTTPRequest implements Serializable {
                     }
                   }))
           .apply("per endpoint error analysis global", new GlobalTriggers<KV<String, Alert>>(5))
-          .apply(ParDo.of(new AlertSuppressorCount(alertSuppressionDurationSeconds)));
+          .apply(
+              ParDo.of(
+                  countSuppressor(
+                      alertSuppressionDurationSeconds,
+                      alertSuppressionTimerGranularitySeconds,
+                      alertSuppressionApproximateMembership)));
     }
   }
 
@@ -1844,6 +2022,33 @@ public class HTTPRequest implements Serializable {
 
     void setHardLimitRequestCount(Long value);
 
+    @Description(
+        "Prefilter clients using a count-min sketch in hard limit and error rate analysis, "
+            + "counting only candidate clients exactly")
+    @Default.Boolean(false)
+    Boolean getEnableHeavyHitterCounting();
+
+    void setEnableHeavyHitterCounting(Boolean value);
+
+    @Description("Count-min sketch width used with heavy hitter counting")
+    @Default.Integer(65536)
+    Integer getHeavyHitterSketchWidth();
+
+    void setHeavyHitterSketchWidth(Integer value);
+
+    @Description(
+        "Fanout used for intermediate combining of hot source address keys in per-client "
+            + "aggregation; disabled if unset")
+    Integer getHotKeyFanout();
+
+    void setHotKeyFanout(Integer value);
+
+    @Description("Elements per minute for a key on a worker after which the key is considered hot")
+    @Default.Long(10000L)
+    Long getHotKeyThreshold();
+
+    void setHotKeyThreshold(Long value);
+
     @Description("Analysis threshold modifier")
     @Default.Double(75.0)
     Double getAnalysisThresholdModifier();
@@ -1984,6 +2189,21 @@ public class HTTPRequest implements Serializable {
 
     void setAlertSuppressionDurationSeconds(Long value);
 
+    @Description(
+        "Enable compact alert suppression with expiry timer updates coalesced to granularity; "
+            + "seconds")
+    Long getAlertSuppressionTimerGranularitySeconds();
+
+    void setAlertSuppressionTimerGranularitySeconds(Long value);
+
+    @Description(
+        "With compact alert suppression, use approximate membership filter to skip state reads "
+            + "for keys not recently seen")
+    @Default.Boolean(false)
+    Boolean getAlertSuppressionApproximateMembership();
+
+    void setAlertSuppressionApproximateMembership(Boolean value);
+
     @Description("Ignore requests from major cloud providers (GCP, AWS)")
     @Default.Boolean(true)
     Boolean getIgnoreCloudProviderRequests();
@@ -2001,6 +2221,14 @@ public class HTTPRequest implements Serializable {
 
     void setPipelineMultimodeConfiguration(String value);
 
+    @Description(
+        "Analyze all monitored resources in a single fused pass; threshold, hard limit, error rate"
+            + " and user agent blocklist analysis only")
+    @Default.Boolean(false)
+    Boolean getEnableFusedMultimodeAnalysis();
+
+    void setEnableFusedMultimodeAnalysis(Boolean value);
+
     @Description("Enable source correlator")
     @Default.Boolean(false)
     Boolean getEnableSourceCorrelator();
@@ -2249,19 +2477,39 @@ public class HTTPRequest implements Serializable {
     return resultsList.apply("flatten all output", Flatten.<Alert>pCollections());
   }
 
+  /**
+   * Read from a configured {@link Input} object and execute fused analysis for all elements
+   *
+   * <p>In contrast to {@link #expandInputMap}, the resulting pipeline graph does not grow with the
+   * number of monitored resources. See {@link HTTPRequestFusedAnalysis}.
+   *
+   * @param p Pipeline
+   * @param input Configured {@link Input} object
+   * @param options Pipeline options
+   * @return Alerts in the global window
+   */
+  public static PCollection<Alert> expandFused(
+      Pipeline p, Input input, HTTPRequestOptions options) {
+    return p.apply("input", input.multiplexRead())
+        .apply("fused analysis", new HTTPRequestFusedAnalysis(options, toggleCache));
+  }
+
   private static void standardOutput(PCollection<Alert> alerts, HTTPRequestOptions options) {
     alerts
         .apply("output format", ParDo.of(new AlertFormatter(options)))
-        .apply("output convert", MapElements.via(new AlertFormatter.AlertToString()))
-        .apply("output", OutputOptions.compositeOutput(options));
+        .apply("output", OutputOptions.compositeAlertOutput(options));
   }
 
   private static void runHTTPRequest(HTTPRequestOptions options) throws IOException {
     Pipeline p = Pipeline.create(options);
 
     Input input = getInput(p, options);
-    PCollectionTuple inputMap = readInput(p, input, options);
-    standardOutput(expandInputMap(p, inputMap, options), options);
+    if (options.getEnableFusedMultimodeAnalysis()) {
+      standardOutput(expandFused(p, input, options), options);
+    } else {
+      PCollectionTuple inputMap = readInput(p, input, options);
+      standardOutput(expandInputMap(p, inputMap, options), options);
+    }
 
     p.run();
   }
@@ -15,8 +15,7 @@ import org.apache.beam.sdk.values.PCollection;
 public class HTTPRequestElementFilter extends PTransform<PCollection<Event>, PCollection<Event>> {
   private static final long serialVersionUID = 1L;
 
-  private final Boolean ignoreCp;
-  private final Boolean ignoreInternal;
+  private final int exclmask;
   private final String cidrExclusionList;
 
   /**
@@ -25,23 +24,32 @@ public class HTTPRequestElementFilter extends PTransform<PCollection<Event>, PCo
    * @param toggles Per-element toggles
    */
   public HTTPRequestElementFilter(HTTPRequestToggles toggles) {
-    ignoreCp = toggles.getIgnoreCloudProviderRequests();
-    ignoreInternal = toggles.getIgnoreInternalRequests();
+    exclmask = exclusionMask(toggles);
     cidrExclusionList = toggles.getCidrExclusionList();
   }
 
-  @Override
-  public PCollection<Event> expand(PCollection<Event> col) {
+  /**
+   * Return the {@link CidrUtil} exclusion bitmask indicated by a set of toggles
+   *
+   * @param toggles Per-element toggles
+   * @return Exclusion bitmask, 0 if no exclusion should be performed
+   */
+  public static int exclusionMask(HTTPRequestToggles toggles) {
     int exclmask = 0;
-    if (cidrExclusionList != null) {
+    if (toggles.getCidrExclusionList() != null) {
       exclmask |= CidrUtil.CIDRUTIL_FILE;
     }
-    if (ignoreCp) {
+    if (toggles.getIgnoreCloudProviderRequests()) {
       exclmask |= CidrUtil.CIDRUTIL_CLOUDPROVIDERS;
     }
-    if (ignoreInternal) {
+    if (toggles.getIgnoreInternalRequests()) {
       exclmask |= CidrUtil.CIDRUTIL_INTERNAL;
     }
+    return exclmask;
+  }
+
+  @Override
+  public PCollection<Event> expand(PCollection<Event> col) {
     if (exclmask != 0) {
       return col.apply(
           "cidr exclusion",
@@ -0,0 +1,571 @@
+package com.mozilla.secops.httprequest;
+
+import com.mozilla.secops.CidrUtil;
+import com.mozilla.secops.DetectNat;
+import com.mozilla.secops.IprepdIO;
+import com.mozilla.secops.MultiPatternMatcher;
+import com.mozilla.secops.Stats;
+import com.mozilla.secops.alert.Alert;
+import com.mozilla.secops.alert.AlertFormatter;
+import com.mozilla.secops.alert.AlertMeta;
+import com.mozilla.secops.httprequest.HTTPRequestMetrics.HeuristicMetrics;
+import com.mozilla.secops.metrics.CfgTickProcessor;
+import com.mozilla.secops.parser.Event;
+import com.mozilla.secops.parser.Normalized;
+import com.mozilla.secops.window.GlobalTriggers;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import org.apache.beam.sdk.transforms.Combine;
+import org.apache.beam.sdk.transforms.Combine.CombineFn;
+import org.apache.beam.sdk.transforms.DoFn;
+import org.apache.beam.sdk.transforms.Flatten;
+import org.apache.beam.sdk.transforms.PTransform;
+import org.apache.beam.sdk.transforms.ParDo;
+import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
+import org.apache.beam.sdk.transforms.windowing.FixedWindows;
+import org.apache.beam.sdk.transforms.windowing.Window;
+import org.apache.beam.sdk.values.KV;
+import org.apache.beam.sdk.values.PCollection;
+import org.apache.beam.sdk.values.PCollectionList;
+import org.apache.beam.sdk.values.PCollectionView;
+import org.joda.time.DateTime;
+import org.joda.time.Duration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Fused single-pass analysis for HTTPRequest multimode
+ *
+ * <p>Rather than expanding a separate analysis graph for each monitored resource, events from all
+ * resources are keyed by resource and source address and aggregated in a single combine step. The
+ * threshold, hard limit, error rate and user agent blocklist heuristics are then evaluated against
+ * the aggregated features, with per-resource parameters looked up from the toggles at runtime.
+ *
+ * <p>NAT detection is performed using the distinct user agents collected in the same aggregation,
+ * so no additional side input is required for it. Threshold analysis statistics are calculated per
+ * resource and supplied as a single keyed side input.
+ *
+ * <p>Adding a monitored resource does not add any stages to the pipeline. Only the heuristics
+ * listed above are supported; configurations that enable other heuristics must use the standard
+ * multimode expansion.
+ */
+public class HTTPRequestFusedAnalysis
+    extends PTransform<PCollection<KV<String, Event>>, PCollection<Alert>> {
+  private static final long serialVersionUID = 1L;
+
+  /** Number of distinct user agents at which a source address is considered a possible NAT */
+  private static final int NAT_AGENT_COUNT = 2;
+
+  private final HashMap<String, HTTPRequestToggles> toggles;
+  private final Boolean enableIprepdDatastoreExemptions;
+  private final String iprepdDatastoreExemptionsProject;
+  private final String maxmindCityDbPath;
+  private final String maxmindIspDbPath;
+
+  /** Per-client features aggregated within a window for a given monitored resource */
+  public static class ClientFeatures implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /** Request count */
+    public long requests;
+    /** Client error (4xx) count */
+    public long clientErrors;
+    /** True if any request was made using a user agent present in the blocklist */
+    public boolean blocklistedAgent;
+    /** Distinct user agents, bounded to the number needed for NAT detection */
+    public HashSet<String> userAgents;
+
+    /**
+     * Add a user agent to the distinct user agent set
+     *
+     * @param ua User agent
+     */
+    public void addUserAgent(String ua) {
+      if (userAgents.size() < NAT_AGENT_COUNT) {
+        userAgents.add(ua);
+      }
+    }
+
+    /**
+     * Merge another set of features into this one
+     *
+     * @param f Features to merge
+     */
+    public void merge(ClientFeatures f) {
+      requests += f.requests;
+      clientErrors += f.clientErrors;
+      blocklistedAgent |= f.blocklistedAgent;
+      for (String ua : f.userAgents) {
+        addUserAgent(ua);
+      }
+    }
+
+    /** Initialize new empty {@link ClientFeatures} */
+    public ClientFeatures() {
+      userAgents = new HashSet<>();
+    }
+  }
+
+  /** {@link CombineFn} for aggregation of {@link ClientFeatures} */
+  public static class ClientFeaturesCombineFn
+      extends CombineFn<ClientFeatures, ClientFeatures, ClientFeatures> {
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    public ClientFeatures createAccumulator() {
+      return new ClientFeatures();
+    }
+
+    @Override
+    public ClientFeatures addInput(ClientFeatures acc, ClientFeatures input) {
+      acc.merge(input);
+      return acc;
+    }
+
+    @Override
+    public ClientFeatures mergeAccumulators(Iterable<ClientFeatures> accs) {
+      ClientFeatures ret = new ClientFeatures();
+      for (ClientFeatures i : accs) {
+        ret.merge(i);
+      }
+      return ret;
+    }
+
+    @Override
+    public ClientFeatures extractOutput(ClientFeatures acc) {
+      return acc;
+    }
+  }
+
+  /**
+   * Return true if the fused analysis supports the configuration in the supplied toggles
+   *
+   * @param t Toggles
+   * @return True if all enabled heuristics are supported in fused mode
+   */
+  public static boolean supports(HTTPRequestToggles t) {
+    return !(t.getEnableEndpointAbuseAnalysis()
+        || t.getEnableEndpointSequenceAbuseAnalysis()
+        || t.getEnablePerEndpointErrorRateAnalysis()
+        || t.getEnableSourceCorrelator());
+  }
+
+  /**
+   * Initialize new {@link HTTPRequestFusedAnalysis}
+   *
+   * @param options Pipeline options
+   * @param toggles Map of monitored resource name to toggles
+   */
+  public HTTPRequestFusedAnalysis(
+      HTTPRequest.HTTPRequestOptions options, Map<String, HTTPRequestToggles> toggles) {
+    for (Map.Entry<String, HTTPRequestToggles> entry : toggles.entrySet()) {
+      if (!supports(entry.getValue())) {
+        throw new IllegalArgumentException(
+            String.format(
+                "%s enables heuristics not supported by fused multimode analysis",
+                entry.getKey()));
+      }
+    }
+    this.toggles = new HashMap<>(toggles);
+    enableIprepdDatastoreExemptions = options.getOutputIprepdEnableDatastoreExemptions();
+    iprepdDatastoreExemptionsProject = options.getOutputIprepdDatastoreExemptionsProject();
+    maxmindCityDbPath = options.getMaxmindCityDbPath();
+    maxmindIspDbPath = options.getMaxmindIspDbPath();
+  }
+
+  /** Filter events and key by monitored resource and source address */
+  private static class KeyForAnalysis
+      extends DoFn<KV<String, Event>, KV<KV<String, String>, ClientFeatures>> {
+    private static final long serialVersionUID = 1L;
+
+    private final HashMap<String, HTTPRequestToggles> toggles;
+
+    private HashMap<String, CidrUtil> exclusions;
+    private HashMap<String, MultiPatternMatcher> uaBlocklists;
+
+    KeyForAnalysis(HashMap<String, HTTPRequestToggles> toggles) {
+      this.toggles = toggles;
+    }
+
+    @Setup
+    public void setup() throws IOException {
+      // Resources will frequently share exclusion and blocklist configuration, so only load each
+      // distinct configuration once
+      HashMap<String, CidrUtil> cidrCache = new HashMap<>();
+      HashMap<String, MultiPatternMatcher> uaCache = new HashMap<>();
+      exclusions = new HashMap<>();
+      uaBlocklists = new HashMap<>();
+
+      for (Map.Entry<String, HTTPRequestToggles> entry : toggles.entrySet()) {
+        HTTPRequestToggles t = entry.getValue();
+
+        int exclmask = HTTPRequestElementFilter.exclusionMask(t);
+        if (exclmask != 0) {
+          String ck = String.format("%d:%s", exclmask, t.getCidrExclusionList());
+          CidrUtil c = cidrCache.get(ck);
+          if (c == null) {
+            c = CidrUtil.fromExclusionFlags(exclmask, t.getCidrExclusionList());
+            cidrCache.put(ck, c);
+          }
+          exclusions.put(entry.getKey(), c);
+        }
+
+        if (t.getEnableUserAgentBlocklistAnalysis()) {
+          String path = t.getUserAgentBlocklistPath();
+          MultiPatternMatcher p = uaCache.get(path);
+          if (p == null) {
+            p = MultiPatternMatcher.fromPath(path);
+            uaCache.put(path, p);
+          }
+          uaBlocklists.put(entry.getKey(), p);
+        }
+      }
+    }
+
+    @ProcessElement
+    public void processElement(ProcessContext c) {
+      String resource = c.element().getKey();
+      HTTPRequestToggles t = toggles.get(resource);
+      if (t == null) {
+        return;
+      }
+      Normalized n = c.element().getValue().getNormalized();
+      if (n == null) {
+        return;
+      }
+      String sourceAddress = n.getSourceAddress();
+      if (sourceAddress == null) {
+        return;
+      }
+      CidrUtil excl = exclusions.get(resource);
+      if (excl != null && excl.contains(sourceAddress)) {
+        return;
+      }
+
+      ClientFeatures f = new ClientFeatures();
+      f.requests = 1;
+      Integer status = n.getRequestStatus();
+      if (status != null && status >= 400 && status < 500) {
+        f.clientErrors = 1;
+      }
+      String ua = n.getUserAgent();
+      if (ua != null) {
+        if (t.getEnableNatDetection()) {
+          f.addUserAgent(ua);
+        }
+        MultiPatternMatcher p = uaBlocklists.get(resource);
+        // As an optimization, anything resembling a Firefox user agent we will just exclude
+        // from blocklist analysis
+        if (p != null && !ua.contains("Firefox/") && p.matchesAny(ua)) {
+          f.blocklistedAgent = true;
+        }
+      }
+      c.output(KV.of(KV.of(resource, sourceAddress), f));
+    }
+  }
+
+  /** Apply all enabled heuristics to aggregated per-client features */
+  private static class AnalyzeClients
+      extends DoFn<KV<KV<String, String>, ClientFeatures>, Alert> {
+    private static final long serialVersionUID = 1L;
+
+    private final HashMap<String, HTTPRequestToggles> toggles;
+    private final Boolean enableIprepdDatastoreExemptions;
+    private final String iprepdDatastoreExemptionsProject;
+    private final PCollectionView<Map<String, Stats.StatsOutput>> statsView;
+
+    private final HeuristicMetrics thresholdMetrics;
+    private final HeuristicMetrics hardLimitMetrics;
+    private final HeuristicMetrics uaBlocklistMetrics;
+
+    private Logger log;
+    private HashMap<String, Map<String, Boolean>> knownGateways;
+
+    AnalyzeClients(
+        HashMap<String, HTTPRequestToggles> toggles,
+        Boolean enableIprepdDatastoreExemptions,
+        String iprepdDatastoreExemptionsProject,
+        PCollectionView<Map<String, Stats.StatsOutput>> statsView) {
+      this.toggles = toggles;
+      this.enableIprepdDatastoreExemptions = enableIprepdDatastoreExemptions;
+      this.iprepdDatastoreExemptionsProject = iprepdDatastoreExemptionsProject;
+      this.statsView = statsView;
+
+      // Use the same metric namespaces as the standard analysis transforms
+      thresholdMetrics = new HeuristicMetrics(HTTPRequest.ThresholdAnalysis.class.getName());
+      hardLimitMetrics = new HeuristicMetrics(HTTPRequest.HardLimitAnalysis.class.getName());
+      uaBlocklistMetrics =
+          new HeuristicMetrics(HTTPRequest.UserAgentBlocklistAnalysis.class.getName());
+    }
+
+    @Setup
+    public void setup() {
+      log = LoggerFactory.getLogger(AnalyzeClients.class);
+      knownGateways = new HashMap<>();
+      for (Map.Entry<String, HTTPRequestToggles> entry : toggles.entrySet()) {
+        HTTPRequestToggles t = entry.getValue();
+        if (t.getEnableNatDetection() && t.getKnownGatewaysPath() != null) {
+          knownGateways.put(entry.getKey(), DetectNat.loadGatewayList(t.getKnownGatewaysPath()));
+        }
+      }
+    }
+
+    private boolean isNat(
+        HTTPRequestToggles t, String resource, String sourceAddress, ClientFeatures f) {
+      if (!t.getEnableNatDetection()) {
+        return false;
+      }
+      if (f.userAgents.size() >= NAT_AGENT_COUNT) {
+        return true;
+      }
+      Map<String, Boolean> kg = knownGateways.get(resource);
+      return kg != null && kg.getOrDefault(sourceAddress, false);
+    }
+
+    private Alert newAlert(String resource, String subcategory, String sourceAddress) {
+      Alert a = new Alert();
+      a.setCategory("httprequest");
+      a.setSubcategory(subcategory);
+      a.addMetadata(AlertMeta.Key.MONITORED_RESOURCE, resource);
+      a.addMetadata(AlertMeta.Key.SOURCEADDRESS, sourceAddress);
+
+      try {
+        if (enableIprepdDatastoreExemptions) {
+          IprepdIO.addMetadataIfIpIsExempt(sourceAddress, a, iprepdDatastoreExemptionsProject);
+        }
+      } catch (IOException exc) {
+        log.error("error checking iprepd exemptions: {}", exc.getMessage());
+        return null;
+      }
+      return a;
+    }
+
+    private void emit(ProcessContext c, BoundedWindow w, Alert a) {
+      a.addMetadata(AlertMeta.Key.WINDOW_TIMESTAMP, (new DateTime(w.maxTimestamp())).toString());
+      if (!a.hasCorrectFields()) {
+        throw new IllegalArgumentException("alert has invalid field configuration");
+      }
+      c.output(a);
+    }
+
+    private void thresholdAnalysis(
+        ProcessContext c,
+        BoundedWindow w,
+        HTTPRequestToggles t,
+        String resource,
+        String saddr,
+        ClientFeatures f) {
+      if (f.requests < t.getRequiredMinimumRequestsPerClient()) {
+        return;
+      }
+      Stats.StatsOutput sOutput = c.sideInput(statsView).get(resource);
+      if (sOutput == null) {
+        return;
+      }
+      Double cMean = sOutput.getMean();
+      if (sOutput.getTotalElements() < t.getRequiredMinimumClients()) {
+        return;
+      }
+      if (cMean < t.getRequiredMinimumAverage()) {
+        return;
+      }
+      if ((t.getClampThresholdMaximum() != null) && (cMean > t.getClampThresholdMaximum())) {
+        cMean = t.getClampThresholdMaximum();
+      }
+      if (f.requests < (cMean * t.getAnalysisThresholdModifier())) {
+        return;
+      }
+      if (isNat(t, resource, saddr, f)) {
+        log.info("{}: detectnat: skipping result emission for {}", w.toString(), saddr);
+        thresholdMetrics.natDetected();
+        return;
+      }
+      log.info("{}: emitting alert for {}", w.toString(), saddr);
+      Alert a = newAlert(resource, "threshold_analysis", saddr);
+      if (a == null) {
+        return;
+      }
+      a.setSummary(
+          String.format("%s httprequest threshold_analysis %s %d", resource, saddr, f.requests));
+      a.addMetadata(AlertMeta.Key.MEAN, sOutput.getMean().toString());
+      a.addMetadata(AlertMeta.Key.COUNT, Long.toString(f.requests));
+      a.addMetadata(
+          AlertMeta.Key.THRESHOLD_MODIFIER, t.getAnalysisThresholdModifier().toString());
+      a.setNotifyMergeKey(String.format("%s threshold_analysis", resource));
+      emit(c, w, a);
+    }
+
+    private void hardLimitAnalysis(
+        ProcessContext c,
+        BoundedWindow w,
+        HTTPRequestToggles t,
+        String resource,
+        String saddr,
+        ClientFeatures f) {
+      if (f.requests <= t.getHardLimitRequestCount()) {
+        return;
+      }
+      if (isNat(t, resource, saddr, f)) {
+        log.info("{}: detectnat: skipping result emission for {}", w.toString(), saddr);
+        hardLimitMetrics.natDetected();
+        return;
+      }
+      Alert a = newAlert(resource, "hard_limit", saddr);
+      if (a == null) {
+        return;
+      }
+      a.setSummary(String.format("%s httprequest hard_limit %s %d", resource, saddr, f.requests));
+      a.addMetadata(AlertMeta.Key.COUNT, Long.toString(f.requests));
+      a.addMetadata(AlertMeta.Key.REQUEST_THRESHOLD, t.getHardLimitRequestCount().toString());
+      a.setNotifyMergeKey(String.format("%s hard_limit_count", resource));
+      emit(c, w, a);
+    }
+
+    private void errorRateAnalysis(
+        ProcessContext c,
+        BoundedWindow w,
+        HTTPRequestToggles t,
+        String resource,
+        String saddr,
+        ClientFeatures f) {
+      if (f.clientErrors <= t.getMaxClientErrorRate()) {
+        return;
+      }
+      Alert a = newAlert(resource, "error_rate", saddr);
+      if (a == null) {
+        return;
+      }
+      a.setSummary(
+          String.format("%s httprequest error_rate %s %d", resource, saddr, f.clientErrors));
+      a.addMetadata(AlertMeta.Key.ERROR_COUNT, Long.toString(f.clientErrors));
+      a.addMetadata(AlertMeta.Key.ERROR_THRESHOLD, t.getMaxClientErrorRate().toString());
+      a.setNotifyMergeKey(String.format("%s error_count", resource));
+      emit(c, w, a);
+    }
+
+    private void userAgentBlocklistAnalysis(
+        ProcessContext c,
+        BoundedWindow w,
+        HTTPRequestToggles t,
+        String resource,
+        String saddr,
+        ClientFeatures f) {
+      if (!f.blocklistedAgent) {
+        return;
+      }
+      if (isNat(t, resource, saddr, f)) {
+        log.info("{}: detectnat: skipping result emission for {}", w.toString(), saddr);
+        uaBlocklistMetrics.natDetected();
+        return;
+      }
+      Alert a = newAlert(resource, "useragent_blocklist", saddr);
+      if (a == null) {
+        return;
+      }
+      a.setSummary(String.format("%s httprequest useragent_blocklist %s", resource, saddr));
+      a.setNotifyMergeKey(String.format("%s useragent_blocklist", resource));
+      emit(c, w, a);
+    }
+
+    @ProcessElement
+    public void processElement(ProcessContext c, BoundedWindow w) {
+      String resource = c.element().getKey().getKey();
+      String saddr = c.element().getKey().getValue();
+      ClientFeatures f = c.element().getValue();
+      HTTPRequestToggles t = toggles.get(resource);
+      if (t == null) {
+        return;
+      }
+
+      if (t.getEnableThresholdAnalysis()) {
+        thresholdAnalysis(c, w, t, resource, saddr, f);
+      }
+      if (t.getEnableHardLimitAnalysis()) {
+        hardLimitAnalysis(c, w, t, resource, saddr, f);
+      }
+      if (t.getEnableErrorRateAnalysis()) {
+        errorRateAnalysis(c, w, t, resource, saddr, f);
+      }
+      if (t.getEnableUserAgentBlocklistAnalysis()) {
+        userAgentBlocklistAnalysis(c, w, t, resource, saddr, f);
+      }
+    }
+  }
+
+  @Override
+  public PCollection<Alert> expand(PCollection<KV<String, Event>> input) {
+    PCollection<KV<KV<String, String>, ClientFeatures>> features =
+        input
+            .apply("fused key for analysis", ParDo.of(new KeyForAnalysis(toggles)))
+            .apply(
+                "fused window for fixed",
+                Window.<KV<KV<String, String>, ClientFeatures>>into(
+                    FixedWindows.of(Duration.standardMinutes(1))))
+            .apply(
+                "fused client features",
+                Combine.<KV<String, String>, ClientFeatures, ClientFeatures>perKey(
+                    new ClientFeaturesCombineFn()));
+
+    // Threshold analysis requires statistics on the client population of each resource
+    final PCollectionView<Map<String, Stats.StatsOutput>> statsView =
+        Stats.getPerKeyView(
+            features.apply(
+                "fused extract counts",
+                ParDo.of(
+                    new DoFn<KV<KV<String, String>, ClientFeatures>, KV<String, Long>>() {
+                      private static final long serialVersionUID = 1L;
+
+                      @ProcessElement
+                      public void processElement(ProcessContext c) {
+                        c.output(
+                            KV.of(
+                                c.element().getKey().getKey(), c.element().getValue().requests));
+                      }
+                    })));
+
+    PCollection<Alert> alerts =
+        features
+            .apply(
+                "fused analysis",
+                ParDo.of(
+                        new AnalyzeClients(
+                            toggles,
+                            enableIprepdDatastoreExemptions,
+                            iprepdDatastoreExemptionsProject,
+                            statsView))
+                    .withSideInputs(statsView))
+            .apply("fused analysis global triggers", new GlobalTriggers<Alert>(5))
+            .apply(
+                "fused output format",
+                ParDo.of(new AlertFormatter(null, maxmindCityDbPath, maxmindIspDbPath)));
+
+    PCollection<Alert> cfgTicks =
+        input
+            .apply(
+                "fused cfgtick process",
+                ParDo.of(
+                    new DoFn<KV<String, Event>, Alert>() {
+                      private static final long serialVersionUID = 1L;
+
+                      @ProcessElement
+                      public void processElement(ProcessContext c) {
+                        Alert a =
+                            CfgTickProcessor.toAlert(
+                                c.element().getValue(), "httprequest-cfgtick");
+                        if (a == null) {
+                          return;
+                        }
+                        a.addMetadata(AlertMeta.Key.MONITORED_RESOURCE, c.element().getKey());
+                        c.output(a);
+                      }
+                    }))
+            .apply("fused cfgtick globaltriggers", new GlobalTriggers<Alert>(5));
+
+    return PCollectionList.of(alerts)
+        .and(cfgTicks)
+        .apply("fused flatten output", Flatten.<Alert>pCollections());
+  }
+}
@@ -11,7 +11,9 @@ public class HTTPRequestMetrics {
   public static class HeuristicMetrics implements Serializable {
     private static final long serialVersionUID = 1L;
     static final String NAT_DETECTED = "alert_skipped_nat_detected";
+    static final String HOT_KEY_DETECTED = "hot_key_detected";
     private final Counter natDetected;
+    private final Counter hotKeyDetected;
 
     /**
      * Initializer for {@link HeuristicMetrics}
@@ -20,11 +22,17 @@ public class HTTPRequestMetrics {
      */
     public HeuristicMetrics(String namespace) {
       natDetected = Metrics.counter(namespace, NAT_DETECTED);
+      hotKeyDetected = Metrics.counter(namespace, HOT_KEY_DETECTED);
     }
 
     /** A heuristic was triggered but it is from an ip believed to be a NAT */
     public void natDetected() {
       natDetected.inc();
     }
+
+    /** A key exceeded the hot key threshold and was combined with fanout */
+    public void hotKeyDetected() {
+      hotKeyDetected.inc();
+    }
   }
 }
@@ -10,10 +10,13 @@ import com.mozilla.secops.parser.EventFilterPayload;
 import com.mozilla.secops.parser.EventFilterPayloadOr;
 import com.mozilla.secops.parser.EventFilterRule;
 import com.mozilla.secops.parser.Normalized;
+import java.io.Serializable;
 
 /** Configuration toggles for HTTPRequest pipeline analysis */
 @JsonInclude(Include.NON_EMPTY)
-public class HTTPRequestToggles {
+public class HTTPRequestToggles implements Serializable {
+  private static final long serialVersionUID = 1L;
+
   // Mode toggles
   private Boolean enableThresholdAnalysis;
   private Boolean enableErrorRateAnalysis;
@@ -30,6 +33,10 @@ public class HTTPRequestToggles {
 
   // Hard limit settings
   private Long hardLimitRequestCount;
+  private Boolean enableHeavyHitterCounting;
+  private Integer heavyHitterSketchWidth;
+  private Integer hotKeyFanout;
+  private Long hotKeyThreshold;
 
   // Threshold analysis settings
   private Double analysisThresholdModifier;
@@ -54,6 +61,10 @@ public class HTTPRequestToggles {
   private Long sessionGapDurationMinutes;
   private Long alertSuppressionDurationSeconds;
 
+  // Alert suppression settings
+  private Long alertSuppressionTimerGranularitySeconds;
+  private Boolean alertSuppressionApproximateMembership;
+
   // Error Session Windowing settings
   private Long errorSessionGapDurationMinutes;
 
@@ -403,6 +414,44 @@ public class HTTPRequestToggles {
     return alertSuppressionDurationSeconds;
   }
 
+  /**
+   * Set alert suppression timer granularity, enabling compact alert suppression
+   *
+   * @param value Long, null to use default alert suppression
+   */
+  @JsonProperty("alert_suppression_timer_granularity_seconds")
+  public void setAlertSuppressionTimerGranularitySeconds(Long value) {
+    alertSuppressionTimerGranularitySeconds = value;
+  }
+
+  /**
+   * Get alert suppression timer granularity
+   *
+   * @return Long, null if compact alert suppression is not enabled
+   */
+  public Long getAlertSuppressionTimerGranularitySeconds() {
+    return alertSuppressionTimerGranularitySeconds;
+  }
+
+  /**
+   * Set use of approximate membership filter in compact alert suppression
+   *
+   * @param value Boolean
+   */
+  @JsonProperty("alert_suppression_approximate_membership")
+  public void setAlertSuppressionApproximateMembership(Boolean value) {
+    alertSuppressionApproximateMembership = value;
+  }
+
+  /**
+   * Get use of approximate membership filter in compact alert suppression
+   *
+   * @return Boolean
+   */
+  public Boolean getAlertSuppressionApproximateMembership() {
+    return alertSuppressionApproximateMembership;
+  }
+
   /**
    * Set endpoint sequence abuse analysis
    *
@@ -498,6 +547,82 @@ public class HTTPRequestToggles {
     return hardLimitRequestCount;
   }
 
+  /**
+   * Set heavy hitter counting in hard limit and error rate analysis
+   *
+   * @param value Boolean
+   */
+  @JsonProperty("enable_heavy_hitter_counting")
+  public void setEnableHeavyHitterCounting(Boolean value) {
+    enableHeavyHitterCounting = value;
+  }
+
+  /**
+   * Get heavy hitter counting in hard limit and error rate analysis
+   *
+   * @return Boolean
+   */
+  public Boolean getEnableHeavyHitterCounting() {
+    return enableHeavyHitterCounting;
+  }
+
+  /**
+   * Set heavy hitter sketch width
+   *
+   * @param value Integer
+   */
+  @JsonProperty("heavy_hitter_sketch_width")
+  public void setHeavyHitterSketchWidth(Integer value) {
+    heavyHitterSketchWidth = value;
+  }
+
+  /**
+   * Get heavy hitter sketch width
+   *
+   * @return Integer
+   */
+  public Integer getHeavyHitterSketchWidth() {
+    return heavyHitterSketchWidth;
+  }
+
+  /**
+   * Set hot key fanout for per-client aggregation
+   *
+   * @param value Integer, null to disable
+   */
+  @JsonProperty("hot_key_fanout")
+  public void setHotKeyFanout(Integer value) {
+    hotKeyFanout = value;
+  }
+
+  /**
+   * Get hot key fanout for per-client aggregation
+   *
+   * @return Integer, null if disabled
+   */
+  public Integer getHotKeyFanout() {
+    return hotKeyFanout;
+  }
+
+  /**
+   * Set per-worker element count per minute after which a key is considered hot
+   *
+   * @param value Long
+   */
+  @JsonProperty("hot_key_threshold")
+  public void setHotKeyThreshold(Long value) {
+    hotKeyThreshold = value;
+  }
+
+  /**
+   * Get per-worker element count per minute after which a key is considered hot
+   *
+   * @return Long
+   */
+  public Long getHotKeyThreshold() {
+    return hotKeyThreshold;
+  }
+
   /**
    * Set user agent blocklist analysis setting
    *
@@ -893,6 +1018,10 @@ public class HTTPRequestToggles {
     ret.setKnownGatewaysPath(o.getKnownGatewaysPath());
 
     ret.setHardLimitRequestCount(o.getHardLimitRequestCount());
+    ret.setEnableHeavyHitterCounting(o.getEnableHeavyHitterCounting());
+    ret.setHeavyHitterSketchWidth(o.getHeavyHitterSketchWidth());
+    ret.setHotKeyFanout(o.getHotKeyFanout());
+    ret.setHotKeyThreshold(o.getHotKeyThreshold());
 
     ret.setAnalysisThresholdModifier(o.getAnalysisThresholdModifier());
     ret.setRequiredMinimumAverage(o.getRequiredMinimumAverage());
@@ -911,6 +1040,8 @@ public class HTTPRequestToggles {
 
     ret.setSessionGapDurationMinutes(o.getSessionGapDurationMinutes());
     ret.setAlertSuppressionDurationSeconds(o.getAlertSuppressionDurationSeconds());
+    ret.setAlertSuppressionTimerGranularitySeconds(o.getAlertSuppressionTimerGranularitySeconds());
+    ret.setAlertSuppressionApproximateMembership(o.getAlertSuppressionApproximateMembership());
 
     ret.setEndpointSequenceAbuseSuppressRecovery(o.getEndpointSequenceAbuseSuppressRecovery());
     ret.setEndpointSequenceAbusePattern(o.getEndpointSequenceAbusePatterns());
@@ -947,6 +1078,9 @@ public class HTTPRequestToggles {
     enableNatDetection = false;
 
     hardLimitRequestCount = 100L;
+    enableHeavyHitterCounting = false;
+    heavyHitterSketchWidth = 65536;
+    hotKeyThreshold = 10000L;
 
     analysisThresholdModifier = 75.0;
     requiredMinimumAverage = 5.0;
@@ -958,6 +1092,7 @@ public class HTTPRequestToggles {
     endpointAbuseExtendedVariance = false;
     sessionGapDurationMinutes = 45L;
     alertSuppressionDurationSeconds = 600L;
+    alertSuppressionApproximateMembership = false;
 
     ignoreCloudProviderRequests = true;
     ignoreInternalRequests = true;
@@ -0,0 +1,130 @@
+package com.mozilla.secops.httprequest;
+
+import com.mozilla.secops.httprequest.HTTPRequestMetrics.HeuristicMetrics;
+import java.util.HashMap;
+import org.apache.beam.sdk.transforms.Combine;
+import org.apache.beam.sdk.transforms.DoFn;
+import org.apache.beam.sdk.transforms.PTransform;
+import org.apache.beam.sdk.transforms.ParDo;
+import org.apache.beam.sdk.transforms.SerializableFunction;
+import org.apache.beam.sdk.transforms.Sum;
+import org.apache.beam.sdk.values.KV;
+import org.apache.beam.sdk.values.PCollection;
+
+/**
+ * Hot key detection for use with {@link Combine.PerKey#withHotKeyFanout(SerializableFunction)}
+ *
+ * <p>Analysis in {@link HTTPRequest} is keyed by source address, so a single high volume address
+ * such as a NAT gateway results in one worker combining every element for that key. When used as
+ * the fanout function for a per-key combine, this tracks the number of elements seen for each key
+ * on the worker within a one minute interval. Keys exceeding the configured threshold within the
+ * interval are considered hot, and are spread over the configured fanout for intermediate
+ * combining. Other keys are combined directly.
+ *
+ * <p>Whether a key is hot only affects how the combine is executed, not the result, so per-worker
+ * tracking is sufficient. Each time a key is identified as hot within an interval it is reported
+ * through {@link HeuristicMetrics#hotKeyDetected()}.
+ *
+ * <p>This should be used with the default trigger. With early firings the intermediate combine can
+ * produce additional panes containing partial results.
+ */
+public class HotKeyFanout implements SerializableFunction<String, Integer> {
+  private static final long serialVersionUID = 1L;
+
+  private static final long INTERVAL_MILLIS = 60000L;
+  private static final int MAX_TRACKED_KEYS = 100000;
+
+  private final int fanout;
+  private final long threshold;
+  private final HeuristicMetrics metrics;
+
+  private transient HashMap<String, long[]> counts;
+  private transient long intervalStart;
+
+  /** Count occurrences of each element, applying hot key fanout */
+  public static class CountPerElement
+      extends PTransform<PCollection<String>, PCollection<KV<String, Long>>> {
+    private static final long serialVersionUID = 1L;
+
+    private final HotKeyFanout fanout;
+
+    /**
+     * Initialize new {@link CountPerElement}
+     *
+     * @param fanout {@link HotKeyFanout}
+     */
+    public CountPerElement(HotKeyFanout fanout) {
+      this.fanout = fanout;
+    }
+
+    @Override
+    public PCollection<KV<String, Long>> expand(PCollection<String> input) {
+      return input
+          .apply(
+              "key elements for count",
+              ParDo.of(
+                  new DoFn<String, KV<String, Long>>() {
+                    private static final long serialVersionUID = 1L;
+
+                    @ProcessElement
+                    public void processElement(ProcessContext c) {
+                      c.output(KV.of(c.element(), 1L));
+                    }
+                  }))
+          .apply(
+              "count per element",
+              Combine.<String, Long, Long>perKey(Sum.ofLongs()).withHotKeyFanout(fanout));
+    }
+  }
+
+  @Override
+  public synchronized Integer apply(String key) {
+    long now = System.currentTimeMillis();
+    if (counts == null || now - intervalStart >= INTERVAL_MILLIS) {
+      counts = new HashMap<>();
+      intervalStart = now;
+    } else if (counts.size() >= MAX_TRACKED_KEYS && !counts.containsKey(key)) {
+      // Bound memory use under high cardinality; hot keys are detected again quickly
+      counts.clear();
+    }
+    long[] c = counts.computeIfAbsent(key, k -> new long[1]);
+    if (++c[0] < threshold) {
+      return 1;
+    }
+    if (c[0] == threshold) {
+      metrics.hotKeyDetected();
+    }
+    return fanout;
+  }
+
+  /**
+   * Return hot key fanout configured in toggles
+   *
+   * @param toggles {@link HTTPRequestToggles}
+   * @param namespace Metrics namespace
+   * @return HotKeyFanout, or null if hot key fanout is not enabled
+   */
+  public static HotKeyFanout fromToggles(HTTPRequestToggles toggles, String namespace) {
+    Integer fanout = toggles.getHotKeyFanout();
+    if (fanout == null || fanout <= 1) {
+      return null;
+    }
+    return new HotKeyFanout(fanout, toggles.getHotKeyThreshold(), namespace);
+  }
+
+  /**
+   * Initialize new {@link HotKeyFanout}
+   *
+   * @param fanout Fanout to apply to hot keys
+   * @param threshold Elements per key within an interval after which a key is hot
+   * @param namespace Metrics namespace
+   */
+  public HotKeyFanout(int fanout, long threshold, String namespace) {
+    if (fanout <= 1 || threshold <= 0) {
+      throw new IllegalArgumentException("hot key fanout must exceed 1 and threshold be positive");
+    }
+    this.fanout = fanout;
+    this.threshold = threshold;
+    metrics = new HeuristicMetrics(namespace);
+  }
+}
@@ -2,10 +2,10 @@ package com.mozilla.secops.identity;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.mozilla.secops.CidrUtil;
 import com.mozilla.secops.FileUtil;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -21,6 +21,9 @@ public class IdentityManager {
   private Map<String, String> awsAccountMap;
   private Map<String, String> namedSubnets;
 
+  private volatile HashMap<String, String> aliasIndex;
+  private volatile NamedSubnetTrie subnetIndex;
+
   /**
    * Load identity manager configuration from a resource file
    *
@@ -31,7 +34,32 @@ public class IdentityManager {
   public static IdentityManager load(String path) throws IOException {
     InputStream in = FileUtil.getStreamFromPath(path);
     ObjectMapper mapper = new ObjectMapper();
-    return mapper.readValue(in, IdentityManager.class);
+    IdentityManager ret = mapper.readValue(in, IdentityManager.class);
+    ret.buildIndexes();
+    return ret;
+  }
+
+  /**
+   * Build lookup indexes from the loaded configuration
+   *
+   * <p>Called automatically on load. Indexes are otherwise built on first lookup, and should be
+   * rebuilt by calling this method again if identities or subnets are modified after lookups have
+   * been performed.
+   */
+  public void buildIndexes() {
+    HashMap<String, String> a = new HashMap<>();
+    for (Map.Entry<String, Identity> entry : identities.entrySet()) {
+      ArrayList<String> aliases = entry.getValue().getAliases();
+      if (aliases == null) {
+        continue;
+      }
+      for (String alias : aliases) {
+        // Retain the first identity an alias is found in, as a sequential search would
+        a.putIfAbsent(alias, entry.getKey());
+      }
+    }
+    aliasIndex = a;
+    subnetIndex = namedSubnets != null ? NamedSubnetTrie.fromMap(namedSubnets) : null;
   }
 
   /**
@@ -98,15 +126,12 @@ public class IdentityManager {
       return username;
     }
 
-    for (Map.Entry<String, Identity> entry : identities.entrySet()) {
-      Identity ival = entry.getValue();
-      for (String alias : ival.getAliases()) {
-        if (alias.equals(username)) {
-          return entry.getKey();
-        }
-      }
+    HashMap<String, String> a = aliasIndex;
+    if (a == null) {
+      buildIndexes();
+      a = aliasIndex;
     }
-    return null;
+    return a.get(username);
   }
 
   /**
@@ -119,12 +144,12 @@ public class IdentityManager {
     if (namedSubnets == null || address == null) {
       return null;
     }
-    for (Map.Entry<String, String> namedSubnet : namedSubnets.entrySet()) {
-      if (CidrUtil.addressInCidr(address, namedSubnet.getValue())) {
-        return namedSubnet.getKey();
-      }
+    NamedSubnetTrie t = subnetIndex;
+    if (t == null) {
+      buildIndexes();
+      t = subnetIndex;
     }
-    return null;
+    return t.lookup(address);
   }
 
   /** Create new empty {@link IdentityManager} */
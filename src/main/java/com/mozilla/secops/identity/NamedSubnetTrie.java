@@ -0,0 +1,108 @@
+package com.mozilla.secops.identity;
+
+import com.google.common.net.InetAddresses;
+import java.util.Map;
+
+/**
+ * Binary prefix trie used to resolve addresses to named subnets
+ *
+ * <p>Supports both IPv4 and IPv6 subnets. If an address falls within more than one configured
+ * subnet, the subnet that was inserted first is returned, consistent with evaluating the subnets in
+ * configuration order.
+ */
+class NamedSubnetTrie {
+  private static class Node {
+    private Node zero;
+    private Node one;
+    private int index = -1;
+    private String name;
+  }
+
+  private final Node root4 = new Node();
+  private final Node root6 = new Node();
+  private int count;
+
+  /**
+   * Insert a subnet
+   *
+   * @param name Subnet name
+   * @param cidr Subnet in CIDR notation, or a single address
+   */
+  void insert(String name, String cidr) {
+    String addr = cidr;
+    int bits = -1;
+    int idx = cidr.indexOf('/');
+    if (idx != -1) {
+      addr = cidr.substring(0, idx);
+      bits = Integer.parseInt(cidr.substring(idx + 1));
+    }
+    byte[] b = InetAddresses.forString(addr).getAddress();
+    if (bits == -1) {
+      bits = b.length * 8;
+    }
+    if (bits < 0 || bits > b.length * 8) {
+      throw new IllegalArgumentException(String.format("invalid mask length in %s", cidr));
+    }
+    Node n = b.length == 4 ? root4 : root6;
+    for (int i = 0; i < bits; i++) {
+      if (bit(b, i)) {
+        if (n.one == null) {
+          n.one = new Node();
+        }
+        n = n.one;
+      } else {
+        if (n.zero == null) {
+          n.zero = new Node();
+        }
+        n = n.zero;
+      }
+    }
+    if (n.index == -1) {
+      n.index = count;
+      n.name = name;
+    }
+    count++;
+  }
+
+  /**
+   * Return name of subnet containing address
+   *
+   * @param address IP address
+   * @return Subnet name, or null if no subnet contains the address
+   * @throws IllegalArgumentException If address is not a valid IP address
+   */
+  String lookup(String address) {
+    byte[] b = InetAddresses.forString(address).getAddress();
+    Node n = b.length == 4 ? root4 : root6;
+    Node best = null;
+    int len = b.length * 8;
+    for (int i = 0; n != null; i++) {
+      if (n.index != -1 && (best == null || n.index < best.index)) {
+        best = n;
+      }
+      if (i == len) {
+        break;
+      }
+      n = bit(b, i) ? n.one : n.zero;
+    }
+    return best == null ? null : best.name;
+  }
+
+  private static boolean bit(byte[] b, int i) {
+    return (b[i >> 3] & (0x80 >> (i & 7))) != 0;
+  }
+
+  /**
+   * Build trie from map of names to subnets, in map iteration order
+   *
+   * @param subnets Map of names to subnets
+   * @return NamedSubnetTrie
+   */
+  static NamedSubnetTrie fromMap(Map<String, String> subnets) {
+    NamedSubnetTrie ret = new NamedSubnetTrie();
+    for (Map.Entry<String, String> entry : subnets.entrySet()) {
+      ret.insert(entry.getKey(), entry.getValue());
+    }
+    return ret;
+  }
+}
@@ -31,6 +31,25 @@ public class InputCollectionCache {
     return ret;
   }
 
+  /**
+   * Request file input in replay mode
+   *
+   * @param begin Pipeline begin
+   * @param name File input path
+   * @param timestampField Top level JSON field containing event timestamp
+   * @param speed Replay speed multiplier, 0 for no limit
+   * @return PCollection
+   */
+  public PCollection<String> replayFileInput(
+      PBegin begin, String name, String timestampField, double speed) {
+    if (fileInputs.containsKey(name)) {
+      return fileInputs.get(name);
+    }
+    PCollection<String> ret = begin.apply(name, new ReplayInput(name, timestampField, speed));
+    fileInputs.put(name, ret);
+    return ret;
+  }
+
   /**
    * Request Pubsub input
    *
@@ -39,6 +39,9 @@ public class InputElement implements Serializable {
   private transient ArrayList<String> pubsubInputs;
   private transient ArrayList<String> kinesisInputs;
 
+  private transient String replayTimestampField;
+  private transient double replaySpeed;
+
   private ParserCfg parserCfg;
   private EventFilter filter;
 
@@ -73,6 +76,15 @@ public class InputElement implements Serializable {
       }
     }
 
+    if (options.getInputFileReplay()) {
+      element.setFileReplay(
+          options.getInputFileReplayTimestampField(), options.getInputFileReplaySpeed());
+    }
+
+    if (options.getInputSynthetic() != null) {
+      element.addWiredStream(TrafficGenerator.fromSpec(options.getInputSynthetic()));
+    }
+
     if (options.getInputPubsub() != null) {
       for (String buf : options.getInputPubsub()) {
         element.addPubsubInput(buf);
@@ -119,7 +131,13 @@ public class InputElement implements Serializable {
     }
 
     for (String i : fileInputs) {
-      list = list.and(parent.getCache().fileInput(begin, i));
+      if (replayTimestampField != null) {
+        list =
+            list.and(
+                parent.getCache().replayFileInput(begin, i, replayTimestampField, replaySpeed));
+      } else {
+        list = list.and(parent.getCache().fileInput(begin, i));
+      }
     }
     for (String i : pubsubInputs) {
       list = list.and(parent.getCache().pubsubInput(begin, i));
@@ -257,6 +275,21 @@ public class InputElement implements Serializable {
     return this;
   }
 
+  /**
+   * Read file inputs in replay mode
+   *
+   * <p>In replay mode, file inputs are read using {@link ReplayInput}.
+   *
+   * @param timestampField Top level JSON field containing event timestamp
+   * @param speed Replay speed multiplier, 0 for no limit
+   * @return this for chaining
+   */
+  public InputElement setFileReplay(String timestampField, double speed) {
+    replayTimestampField = timestampField;
+    replaySpeed = speed;
+    return this;
+  }
+
   /**
    * Set file inputs
    *
@@ -3,23 +3,198 @@ package com.mozilla.secops.input;
 import com.amazonaws.regions.Regions;
 import com.amazonaws.services.kinesis.clientlibrary.lib.worker.InitialPositionInStream;
 import com.mozilla.secops.crypto.RuntimeSecrets;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
 import org.apache.beam.sdk.io.kinesis.KinesisIO;
 import org.apache.beam.sdk.io.kinesis.KinesisRecord;
+import org.apache.beam.sdk.metrics.Counter;
+import org.apache.beam.sdk.metrics.Metrics;
 import org.apache.beam.sdk.transforms.DoFn;
 import org.apache.beam.sdk.transforms.ParDo;
 import org.apache.beam.sdk.values.PBegin;
 import org.apache.beam.sdk.values.PCollection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /** Configuration for a single Kinesis input */
 public class KinesisInput implements Serializable {
   private static final long serialVersionUID = 1L;
 
+  /** Metrics namespace */
+  public static final String METRICS_NAMESPACE = "KinesisInput";
+
+  /** Counter name for records that could not be decompressed */
+  public static final String DECOMPRESS_ERROR_METRIC = "kinesis_decompress_error";
+
+  private static final int INFLATE_BUFFER_SIZE = 65536;
+
   private String streamName;
   private String region;
   private String id;
   private String secret;
+  private boolean arrivalTimestamp;
+
+  /**
+   * Split newline delimited lines from byte content
+   *
+   * <p>Lines are decoded as UTF-8 directly from the content, without an intermediate copy. Lines
+   * may end with LF or CRLF. Empty lines are preserved, except trailing empty lines at the end of
+   * the content which are discarded.
+   */
+  private static class LineFramer {
+    private final Consumer<String> out;
+    private int pendingEmpty;
+
+    /**
+     * Emit complete lines in buffer
+     *
+     * @param buf Buffer
+     * @param start Start of first line
+     * @param scan Offset to begin scanning for newlines, bytes before this contain no newline
+     * @param end End of content in buffer
+     * @return Start of incomplete line at end of buffer
+     */
+    int frame(byte[] buf, int start, int scan, int end) {
+      for (int i = scan; i < end; i++) {
+        if (buf[i] == '\n') {
+          emit(buf, start, (i > start && buf[i - 1] == '\r') ? i - 1 : i);
+          start = i + 1;
+        }
+      }
+      return start;
+    }
+
+    /**
+     * Emit final line in buffer, which is not newline terminated
+     *
+     * @param buf Buffer
+     * @param start Start of line
+     * @param end End of content in buffer
+     */
+    void finish(byte[] buf, int start, int end) {
+      if (end > start) {
+        emit(buf, start, end);
+      }
+    }
+
+    private void emit(byte[] buf, int start, int end) {
+      if (end == start) {
+        // Defer empty lines until a following line is seen, so trailing empty lines are dropped
+        pendingEmpty++;
+        return;
+      }
+      for (; pendingEmpty > 0; pendingEmpty--) {
+        out.accept("");
+      }
+      out.accept(new String(buf, start, end - start, StandardCharsets.UTF_8));
+    }
+
+    LineFramer(Consumer<String> out) {
+      this.out = out;
+    }
+  }
+
+  /**
+   * Split Kinesis record content into newline delimited lines
+   *
+   * <p>If the content is gzip compressed, which is the case for CloudWatch Logs subscription
+   * records, it is detected using the gzip header and inflated in fixed size chunks, with lines
+   * emitted as each chunk is inflated.
+   *
+   * @param data Record content
+   * @param out Consumer for each line
+   * @throws IOException If compressed content could not be inflated; lines inflated prior to the
+   *     error will already have been emitted
+   */
+  public static void frame(ByteBuffer data, Consumer<String> out) throws IOException {
+    byte[] buf;
+    int off;
+    int len = data.remaining();
+    if (data.hasArray()) {
+      buf = data.array();
+      off = data.arrayOffset() + data.position();
+    } else {
+      buf = new byte[len];
+      data.duplicate().get(buf);
+      off = 0;
+    }
+
+    LineFramer framer = new LineFramer(out);
+    if (len < 2 || buf[off] != (byte) 0x1f || buf[off + 1] != (byte) 0x8b) {
+      framer.finish(buf, framer.frame(buf, off, off, off + len), off + len);
+      return;
+    }
+
+    byte[] ibuf = new byte[INFLATE_BUFFER_SIZE];
+    int ilen = 0;
+    try (GZIPInputStream in =
+        new GZIPInputStream(new ByteArrayInputStream(buf, off, len), INFLATE_BUFFER_SIZE)) {
+      int n;
+      while ((n = in.read(ibuf, ilen, ibuf.length - ilen)) != -1) {
+        int consumed = framer.frame(ibuf, 0, ilen, ilen + n);
+        ilen += n - consumed;
+        System.arraycopy(ibuf, consumed, ibuf, 0, ilen);
+        if (ilen == ibuf.length) {
+          // Single line exceeds the buffer
+          ibuf = Arrays.copyOf(ibuf, ibuf.length * 2);
+        }
+      }
+    }
+    framer.finish(ibuf, 0, ilen);
+  }
+
+  /**
+   * {@link DoFn} splitting Kinesis records into newline delimited lines
+   *
+   * <p>See {@link KinesisInput#frame}. Records that fail to decompress are logged and counted
+   * using the {@link #DECOMPRESS_ERROR_METRIC} counter.
+   */
+  public static class FrameRecordsFn extends DoFn<KinesisRecord, String> {
+    private static final long serialVersionUID = 1L;
+
+    private static final Logger log = LoggerFactory.getLogger(FrameRecordsFn.class);
+
+    private final boolean arrivalTimestamp;
+    private final Counter decompressError =
+        Metrics.counter(METRICS_NAMESPACE, DECOMPRESS_ERROR_METRIC);
+
+    /**
+     * Initialize new {@link FrameRecordsFn}
+     *
+     * @param arrivalTimestamp If true, explicitly emit lines with the approximate arrival
+     *     timestamp of the record
+     */
+    public FrameRecordsFn(boolean arrivalTimestamp) {
+      this.arrivalTimestamp = arrivalTimestamp;
+    }
+
+    @ProcessElement
+    public void processElement(ProcessContext c) {
+      KinesisRecord r = c.element();
+      Consumer<String> out;
+      if (arrivalTimestamp) {
+        out = line -> c.outputWithTimestamp(line, r.getApproximateArrivalTimestamp());
+      } else {
+        out = c::output;
+      }
+      try {
+        frame(r.getData(), out);
+      } catch (IOException exc) {
+        decompressError.inc();
+        log.error(
+            "failed to decompress record {} from {}: {}",
+            r.getSequenceNumber(),
+            r.getStreamName(),
+            exc.getMessage());
+      }
+    }
+  }
 
   private void setStreamName(String streamName) {
     this.streamName = streamName;
@@ -37,11 +212,27 @@ public class KinesisInput implements Serializable {
     this.secret = secret;
   }
 
+  /**
+   * Emit lines with the approximate arrival timestamp of the Kinesis record
+   *
+   * <p>{@link KinesisIO} already assigns the approximate arrival timestamp to records it reads, so
+   * lines inherit it without this setting. Enabling it makes the assignment explicit, and applies
+   * it even if record timestamps have been modified between the read and the split.
+   *
+   * @param arrivalTimestamp True to emit lines with the arrival timestamp
+   * @return this for chaining
+   */
+  public KinesisInput withArrivalTimestamp(boolean arrivalTimestamp) {
+    this.arrivalTimestamp = arrivalTimestamp;
+    return this;
+  }
+
   /**
    * Apply {@link KinesisIO} using configuration set in object
    *
    * <p>When executed, will apply the KinesisIO transform in addition to a ParDo which splits
-   * individual elements by new line, returning raw strings read from the stream.
+   * individual records by new line using {@link FrameRecordsFn}, returning raw strings read from
+   * the stream. Gzip compressed records are inflated before being split.
    *
    * @param begin Pipeline begin
    * @return Collection of strings
@@ -54,24 +245,7 @@ public class KinesisInput implements Serializable {
                 .withStreamName(streamName)
                 .withInitialPositionInStream(InitialPositionInStream.LATEST)
                 .withAWSClientsProvider(id, secret, Regions.fromName(region)))
-        .apply(
-            ParDo.of(
-                new DoFn<KinesisRecord, String>() {
-                  private static final long serialVersionUID = 1L;
-
-                  @ProcessElement
-                  public void processElement(ProcessContext c) {
-                    // Assume for now our Kinesis record contains newline delimited
-                    // elements. Split these up and send them individually.
-                    //
-                    // This may need to be configurable depending on the input
-                    // stream at some point.
-                    String[] e = new String(c.element().getDataAsBytes()).split("\\r?\\n");
-                    for (String i : e) {
-                      c.output(i);
-                    }
-                  }
-                }));
+        .apply(ParDo.of(new FrameRecordsFn(arrivalTimestamp)));
   }
 
   /**
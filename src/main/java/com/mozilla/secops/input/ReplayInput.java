@@ -0,0 +1,178 @@
+package com.mozilla.secops.input;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import java.io.IOException;
+import org.apache.beam.sdk.io.FileIO;
+import org.apache.beam.sdk.io.TextIO;
+import org.apache.beam.sdk.metrics.Counter;
+import org.apache.beam.sdk.metrics.Metrics;
+import org.apache.beam.sdk.transforms.DoFn;
+import org.apache.beam.sdk.transforms.PTransform;
+import org.apache.beam.sdk.transforms.ParDo;
+import org.apache.beam.sdk.values.PBegin;
+import org.apache.beam.sdk.values.PCollection;
+import org.joda.time.DateTime;
+import org.joda.time.Instant;
+
+/**
+ * Replay archived newline delimited logs from files
+ *
+ * <p>All files matching the file pattern are read in parallel. Uncompressed files are split into
+ * ranges that are read in parallel, and compressed files (detected using the file extension) are
+ * read by one worker per file.
+ *
+ * <p>As each line is read, the event timestamp is extracted from the configured top level field of
+ * the line if it is a JSON object. The field may contain an ISO 8601 string, or a number of seconds
+ * or milliseconds since the epoch. The line is emitted with the extracted timestamp, so windowing
+ * downstream operates on event time rather than on the time the archive was read. Lines without a
+ * timestamp are emitted unchanged.
+ *
+ * <p>If a replay speed is set, each worker paces output so event time advances at the given
+ * multiple of wall clock time, based on the first event it reads. Pacing is approximate, and
+ * applies independently to each worker.
+ */
+public class ReplayInput extends PTransform<PBegin, PCollection<String>> {
+  private static final long serialVersionUID = 1L;
+
+  /** Metrics namespace */
+  public static final String METRICS_NAMESPACE = "ReplayInput";
+
+  /** Counter name for lines with no extracted timestamp */
+  public static final String NO_TIMESTAMP_METRIC = "replay_no_timestamp";
+
+  private final String filePattern;
+  private final String timestampField;
+  private final double speed;
+
+  /** Extract event timestamp from lines and emit lines with the extracted timestamp */
+  public static class TimestampFn extends DoFn<String, String> {
+    private static final long serialVersionUID = 1L;
+
+    private static final JsonFactory factory = new JsonFactory();
+
+    private final String timestampField;
+    private final Counter noTimestamp = Metrics.counter(METRICS_NAMESPACE, NO_TIMESTAMP_METRIC);
+
+    /**
+     * Initialize new {@link TimestampFn}
+     *
+     * @param timestampField Top level field containing the event timestamp
+     */
+    public TimestampFn(String timestampField) {
+      this.timestampField = timestampField;
+    }
+
+    /**
+     * Extract timestamp from line
+     *
+     * @param line Line
+     * @param timestampField Top level field containing the event timestamp
+     * @return Timestamp, or null if no timestamp could be extracted
+     */
+    public static Instant extractTimestamp(String line, String timestampField) {
+      if (line.isEmpty() || line.charAt(0) != '{') {
+        return null;
+      }
+      try (JsonParser p = factory.createParser(line)) {
+        if (p.nextToken() != JsonToken.START_OBJECT) {
+          return null;
+        }
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+          String name = p.getCurrentName();
+          JsonToken t = p.nextToken();
+          if (!name.equals(timestampField)) {
+            p.skipChildren();
+            continue;
+          }
+          if (t == JsonToken.VALUE_STRING) {
+            return new DateTime(p.getText()).toInstant();
+          } else if (t == JsonToken.VALUE_NUMBER_INT || t == JsonToken.VALUE_NUMBER_FLOAT) {
+            double v = p.getDoubleValue();
+            // Values below 1e11 can only be seconds for dates after 1973
+            return new Instant((long) (v < 1e11 ? v * 1000 : v));
+          }
+          return null;
+        }
+      } catch (IOException | IllegalArgumentException exc) {
+        // Not JSON or not a valid timestamp
+      }
+      return null;
+    }
+
+    @ProcessElement
+    public void processElement(ProcessContext c) {
+      Instant ts = extractTimestamp(c.element(), timestampField);
+      if (ts == null) {
+        noTimestamp.inc();
+        c.output(c.element());
+        return;
+      }
+      c.outputWithTimestamp(c.element(), ts);
+    }
+  }
+
+  /** Pace output so event time advances at a multiple of wall clock time */
+  public static class PaceFn extends DoFn<String, String> {
+    private static final long serialVersionUID = 1L;
+
+    private final double speed;
+
+    private transient Long firstEvent;
+    private transient long firstWall;
+
+    /**
+     * Initialize new {@link PaceFn}
+     *
+     * @param speed Event time advanced per unit of wall clock time
+     */
+    public PaceFn(double speed) {
+      this.speed = speed;
+    }
+
+    @ProcessElement
+    public void processElement(ProcessContext c) throws InterruptedException {
+      long ts = c.timestamp().getMillis();
+      if (firstEvent == null) {
+        firstEvent = ts;
+        firstWall = System.currentTimeMillis();
+      }
+      long wait = firstWall + (long) ((ts - firstEvent) / speed) - System.currentTimeMillis();
+      if (wait > 0) {
+        Thread.sleep(wait);
+      }
+      c.output(c.element());
+    }
+  }
+
+  /**
+   * Initialize new {@link ReplayInput}
+   *
+   * @param filePattern File pattern, local path or GCS URL
+   * @param timestampField Top level JSON field containing the event timestamp
+   * @param speed Replay speed multiplier relative to event time, 0 to read as fast as possible
+   */
+  public ReplayInput(String filePattern, String timestampField, double speed) {
+    if (speed < 0) {
+      throw new IllegalArgumentException("replay speed must not be negative");
+    }
+    this.filePattern = filePattern;
+    this.timestampField = timestampField;
+    this.speed = speed;
+  }
+
+  @Override
+  public PCollection<String> expand(PBegin begin) {
+    PCollection<String> ret =
+        begin
+            .apply("match replay files", FileIO.match().filepattern(filePattern))
+            .apply("read replay matches", FileIO.readMatches())
+            .apply("read replay lines", TextIO.readFiles())
+            .apply("replay timestamps", ParDo.of(new TimestampFn(timestampField)));
+    if (speed > 0) {
+      ret = ret.apply("replay pacing", ParDo.of(new PaceFn(speed)));
+    }
+    return ret;
+  }
+}
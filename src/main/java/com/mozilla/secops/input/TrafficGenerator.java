@@ -0,0 +1,82 @@
+package com.mozilla.secops.input;
+
+import org.apache.beam.sdk.io.Read;
+import org.apache.beam.sdk.io.Read.Unbounded;
+import org.apache.beam.sdk.transforms.PTransform;
+import org.apache.beam.sdk.values.PBegin;
+import org.apache.beam.sdk.values.PCollection;
+
+/**
+ * Generate synthetic log events at a target rate
+ *
+ * <p>Intended for load testing pipelines locally; events are generated using a {@link
+ * TrafficModel}. The source is unbounded, and the rate is divided between the splits requested by
+ * the runner.
+ */
+public class TrafficGenerator extends PTransform<PBegin, PCollection<String>> {
+  private static final long serialVersionUID = 1L;
+
+  private final TrafficModel model;
+  private final double rate;
+  private final long maxNumRecords;
+
+  /**
+   * Return generator from specification
+   *
+   * <p>The specification format is format:rate[:max], where format is one of glb, nginx, fxaauth,
+   * or cloudtrail, rate is the number of events per second, and the optional max is the number of
+   * events to generate before stopping. For example, "glb:50000" or "glb:50000:1000000".
+   *
+   * @param spec Specification
+   * @return TrafficGenerator
+   */
+  public static TrafficGenerator fromSpec(String spec) {
+    String[] parts = spec.split(":");
+    if (parts.length != 2 && parts.length != 3) {
+      throw new IllegalArgumentException(
+          "synthetic input specification must be format:rate[:max]");
+    }
+    try {
+      return new TrafficGenerator(
+          new TrafficModel(TrafficModel.Format.valueOf(parts[0].toUpperCase())),
+          Double.parseDouble(parts[1]),
+          parts.length == 3 ? Long.parseLong(parts[2]) : -1);
+    } catch (IllegalArgumentException exc) {
+      throw new IllegalArgumentException(
+          String.format("invalid synthetic input specification %s", spec));
+    }
+  }
+
+  /**
+   * Initialize new {@link TrafficGenerator}
+   *
+   * <p>The maxNumRecords parameter places an upper limit on the number of records generated for
+   * testing purposes; under normal circumstances this parameter should be set to -1.
+   *
+   * @param model Traffic model
+   * @param rate Events per second
+   * @param maxNumRecords Only generate specified number of records and stop
+   */
+  public TrafficGenerator(TrafficModel model, double rate, long maxNumRecords) {
+    if (rate <= 0) {
+      throw new IllegalArgumentException("rate must be > 0");
+    }
+    this.model = model;
+    this.rate = rate;
+    this.maxNumRecords = maxNumRecords;
+  }
+
+  @Override
+  public PCollection<String> expand(PBegin begin) {
+    Unbounded<String> unbounded = Read.from(new TrafficGeneratorSource(model, rate, 0L));
+
+    PTransform<PBegin, PCollection<String>> transform;
+    if (maxNumRecords <= 0) {
+      transform = unbounded;
+    } else {
+      transform = unbounded.withMaxNumRecords(maxNumRecords);
+    }
+
+    return begin.getPipeline().apply(transform);
+  }
+}
@@ -0,0 +1,90 @@
+package com.mozilla.secops.input;
+
+import java.util.NoSuchElementException;
+import java.util.Random;
+import org.apache.beam.sdk.io.UnboundedSource;
+import org.apache.beam.sdk.io.UnboundedSource.CheckpointMark;
+import org.apache.beam.sdk.io.UnboundedSource.CheckpointMark.NoopCheckpointMark;
+import org.joda.time.Instant;
+
+/**
+ * Unbounded reader for use with {@link TrafficGenerator}
+ *
+ * <p>Events are generated as long as the number generated since the reader started is below the
+ * number expected at the configured rate, so the reader catches up if it is not polled often
+ * enough. Events are timestamped with the time they are generated, and the watermark is the current
+ * time.
+ */
+class TrafficGeneratorReader extends UnboundedSource.UnboundedReader<String> {
+  private final TrafficGeneratorSource source;
+  private final Random random;
+  private long startMillis;
+  private long generated;
+  private String current;
+  private Instant currentTimestamp;
+
+  /**
+   * Initialize new {@link TrafficGeneratorReader}
+   *
+   * @param source Source for reader
+   */
+  public TrafficGeneratorReader(TrafficGeneratorSource source) {
+    if (source.getRate() <= 0) {
+      throw new IllegalArgumentException("rate must be > 0");
+    }
+    this.source = source;
+    random = new Random(source.getSeed());
+  }
+
+  @Override
+  public String getCurrent() throws NoSuchElementException {
+    if (current == null) {
+      throw new NoSuchElementException();
+    }
+    return current;
+  }
+
+  @Override
+  public Instant getCurrentTimestamp() throws NoSuchElementException {
+    if (current == null) {
+      throw new NoSuchElementException();
+    }
+    return currentTimestamp;
+  }
+
+  @Override
+  public boolean start() {
+    startMillis = System.currentTimeMillis();
+    return advance();
+  }
+
+  @Override
+  public void close() {}
+
+  @Override
+  public boolean advance() {
+    long now = System.currentTimeMillis();
+    if (generated >= (long) ((now - startMillis) * source.getRate() / 1000.0) + 1) {
+      return false;
+    }
+    currentTimestamp = new Instant(now);
+    current = source.getModel().generate(random, currentTimestamp);
+    generated++;
+    return true;
+  }
+
+  @Override
+  public Instant getWatermark() {
+    return new Instant();
+  }
+
+  @Override
+  public CheckpointMark getCheckpointMark() {
+    return new NoopCheckpointMark();
+  }
+
+  @Override
+  public TrafficGeneratorSource getCurrentSource() {
+    return source;
+  }
+}
@@ -0,0 +1,106 @@
+package com.mozilla.secops.input;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.io.UnboundedSource;
+import org.apache.beam.sdk.io.UnboundedSource.CheckpointMark;
+import org.apache.beam.sdk.options.PipelineOptions;
+
+/** Unbounded source for use with {@link TrafficGenerator} */
+class TrafficGeneratorSource extends UnboundedSource<String, CheckpointMark> {
+  private static final long serialVersionUID = 1L;
+
+  private final TrafficModel model;
+  private final double rate;
+  private final long seed;
+
+  /**
+   * Initialize new {@link TrafficGeneratorSource}
+   *
+   * @param model Traffic model
+   * @param rate Events per second
+   * @param seed Random seed
+   */
+  public TrafficGeneratorSource(TrafficModel model, double rate, long seed) {
+    this.model = model;
+    this.rate = rate;
+    this.seed = seed;
+  }
+
+  /**
+   * Get traffic model
+   *
+   * @return TrafficModel
+   */
+  public TrafficModel getModel() {
+    return model;
+  }
+
+  /**
+   * Get events per second for this source
+   *
+   * @return Rate
+   */
+  public double getRate() {
+    return rate;
+  }
+
+  /**
+   * Get random seed for this source
+   *
+   * @return Seed
+   */
+  public long getSeed() {
+    return seed;
+  }
+
+  @Override
+  public Coder<CheckpointMark> getCheckpointMarkCoder() {
+    return null;
+  }
+
+  @Override
+  public Coder<String> getOutputCoder() {
+    return StringUtf8Coder.of();
+  }
+
+  @Override
+  public List<? extends UnboundedSource<String, CheckpointMark>> split(
+      int desired, PipelineOptions options) {
+    // Divide the rate evenly between splits, each with a distinct seed
+    int n = Math.max(desired, 1);
+    ArrayList<TrafficGeneratorSource> ret = new ArrayList<>();
+    for (int i = 0; i < n; i++) {
+      ret.add(new TrafficGeneratorSource(model, rate / n, seed * 31 + i));
+    }
+    return ret;
+  }
+
+  @Override
+  public boolean requiresDeduping() {
+    return false;
+  }
+
+  @Override
+  public UnboundedSource.UnboundedReader<String> createReader(
+      PipelineOptions options, CheckpointMark checkpointMark) {
+    return new TrafficGeneratorReader(this);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (!(o instanceof TrafficGeneratorSource)) {
+      return false;
+    }
+    TrafficGeneratorSource t = (TrafficGeneratorSource) o;
+    return seed == t.seed && rate == t.rate && model.getFormat() == t.model.getFormat();
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(seed, rate, model.getFormat());
+  }
+}
@@ -0,0 +1,301 @@
+package com.mozilla.secops.input;
+
+import java.io.Serializable;
+import java.util.Random;
+import org.joda.time.Instant;
+
+/**
+ * Model of a client population used to generate synthetic log events
+ *
+ * <p>Clients belong to one of four classes. Benign clients make up most of the population, each
+ * sending a small share of requests with a consistent user agent. Heavy hitters are a small number
+ * of benign clients that send a large share of requests. NAT gateways send a large share of
+ * requests with many different user agents. Attackers send requests that fail, such as requests
+ * for missing paths or failed logins.
+ *
+ * <p>Client addresses are allocated from the 198.18.0.0/15 benchmarking range, with benign clients
+ * in 198.18.0.0/16 and the remaining classes in separate /24 networks in 198.19.0.0/16.
+ */
+public class TrafficModel implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  private static final String[] USER_AGENTS =
+      new String[] {
+        "Mozilla/5.0 (Windows NT 10.0; Win64; x64; rv:82.0) Gecko/20100101 Firefox/82.0",
+        "Mozilla/5.0 (Macintosh; Intel Mac OS X 10.15; rv:82.0) Gecko/20100101 Firefox/82.0",
+        "Mozilla/5.0 (X11; Linux x86_64; rv:82.0) Gecko/20100101 Firefox/82.0",
+        "Mozilla/5.0 (Android 10; Mobile; rv:82.0) Gecko/82.0 Firefox/82.0",
+        "Mozilla/5.0 (iPhone; CPU iPhone OS 14_0 like Mac OS X) AppleWebKit/605.1.15"
+      };
+  private static final String[] PATHS =
+      new String[] {"/", "/index.html", "/static/app.js", "/static/app.css", "/api/v1/status"};
+  private static final String[] ATTACK_PATHS =
+      new String[] {"/wp-login.php", "/.env", "/admin/config.php", "/phpmyadmin/index.php"};
+
+  /** Format of generated events */
+  public enum Format {
+    /** Google load balancer request log */
+    GLB,
+    /** Stackdriver encapsulated nginx log */
+    NGINX,
+    /** FxA authentication server request summary */
+    FXAAUTH,
+    /** Cloudtrail console login */
+    CLOUDTRAIL
+  }
+
+  /** Class of client an event was generated for */
+  public enum ClientClass {
+    /** Benign client */
+    BENIGN,
+    /** Benign client with high request volume */
+    HEAVY_HITTER,
+    /** NAT gateway for many clients */
+    NAT_GATEWAY,
+    /** Attacker */
+    ATTACKER
+  }
+
+  private final Format format;
+  private int benignClients = 10000;
+  private int heavyHitters = 10;
+  private double heavyHitterShare = 0.2;
+  private int natGateways = 5;
+  private double natGatewayShare = 0.1;
+  private int attackers = 3;
+  private double attackerShare = 0.05;
+
+  /**
+   * Set number of benign clients
+   *
+   * @param count Number of clients, at most 65536
+   * @return this for chaining
+   */
+  public TrafficModel withBenignClients(int count) {
+    if (count <= 0 || count > 65536) {
+      throw new IllegalArgumentException("benign clients must be between 1 and 65536");
+    }
+    benignClients = count;
+    return this;
+  }
+
+  /**
+   * Set heavy hitter population
+   *
+   * @param count Number of heavy hitters, at most 254
+   * @param share Share of all events sent by heavy hitters
+   * @return this for chaining
+   */
+  public TrafficModel withHeavyHitters(int count, double share) {
+    heavyHitters = checkClass(count, share);
+    heavyHitterShare = share;
+    return this;
+  }
+
+  /**
+   * Set NAT gateway population
+   *
+   * @param count Number of NAT gateways, at most 254
+   * @param share Share of all events sent by NAT gateways
+   * @return this for chaining
+   */
+  public TrafficModel withNatGateways(int count, double share) {
+    natGateways = checkClass(count, share);
+    natGatewayShare = share;
+    return this;
+  }
+
+  /**
+   * Set attacker population
+   *
+   * @param count Number of attackers, at most 254
+   * @param share Share of all events sent by attackers
+   * @return this for chaining
+   */
+  public TrafficModel withAttackers(int count, double share) {
+    attackers = checkClass(count, share);
+    attackerShare = share;
+    return this;
+  }
+
+  private static int checkClass(int count, double share) {
+    if (count < 0 || count > 254 || share < 0 || share > 1) {
+      throw new IllegalArgumentException("invalid client class count or share");
+    }
+    return count;
+  }
+
+  /**
+   * Get event format
+   *
+   * @return Format
+   */
+  public Format getFormat() {
+    return format;
+  }
+
+  /**
+   * Select class of client for next event
+   *
+   * @param r Random
+   * @return Client class
+   */
+  public ClientClass nextClientClass(Random r) {
+    double v = r.nextDouble();
+    if (attackers > 0 && (v -= attackerShare) < 0) {
+      return ClientClass.ATTACKER;
+    }
+    if (natGateways > 0 && (v -= natGatewayShare) < 0) {
+      return ClientClass.NAT_GATEWAY;
+    }
+    if (heavyHitters > 0 && (v -= heavyHitterShare) < 0) {
+      return ClientClass.HEAVY_HITTER;
+    }
+    return ClientClass.BENIGN;
+  }
+
+  /**
+   * Return address for client index within class
+   *
+   * @param c Client class
+   * @param n Client index
+   * @return Address
+   */
+  public static String clientAddress(ClientClass c, int n) {
+    switch (c) {
+      case HEAVY_HITTER:
+        return "198.19.0." + (n + 1);
+      case NAT_GATEWAY:
+        return "198.19.1." + (n + 1);
+      case ATTACKER:
+        return "198.19.2." + (n + 1);
+      default:
+        return "198.18." + (n >> 8) + "." + (n & 0xff);
+    }
+  }
+
+  /**
+   * Generate an event
+   *
+   * @param r Random
+   * @param timestamp Event timestamp
+   * @return Event
+   */
+  public String generate(Random r, Instant timestamp) {
+    ClientClass c = nextClientClass(r);
+    int n;
+    switch (c) {
+      case HEAVY_HITTER:
+        n = r.nextInt(heavyHitters);
+        break;
+      case NAT_GATEWAY:
+        n = r.nextInt(natGateways);
+        break;
+      case ATTACKER:
+        n = r.nextInt(attackers);
+        break;
+      default:
+        n = r.nextInt(benignClients);
+    }
+    String addr = clientAddress(c, n);
+    // Benign clients always use the same agent, clients behind NAT gateways use any agent
+    String ua =
+        USER_AGENTS[c == ClientClass.NAT_GATEWAY ? r.nextInt(USER_AGENTS.length) : n % 5];
+    boolean attack = c == ClientClass.ATTACKER;
+    switch (format) {
+      case NGINX:
+        return nginx(r, timestamp, addr, ua, attack);
+      case FXAAUTH:
+        return fxaAuth(r, timestamp, addr, ua, n, attack);
+      case CLOUDTRAIL:
+        return cloudtrail(r, timestamp, addr, ua, n, attack);
+      default:
+        return glb(r, timestamp, addr, ua, attack);
+    }
+  }
+
+  private static String path(Random r, boolean attack) {
+    return attack ? ATTACK_PATHS[r.nextInt(ATTACK_PATHS.length)] : PATHS[r.nextInt(PATHS.length)];
+  }
+
+  private static String glb(Random r, Instant ts, String addr, String ua, boolean attack) {
+    return String.format(
+        "{\"httpRequest\":{\"remoteIp\":\"%s\",\"requestMethod\":\"GET\",\"requestSize\":\"43\","
+            + "\"requestUrl\":\"https://www.example.com%s\",\"responseSize\":\"2692\","
+            + "\"serverIp\":\"10.8.0.3\",\"status\":%d,\"userAgent\":\"%s\"},"
+            + "\"insertId\":\"%08x\",\"jsonPayload\":{\"@type\":\"type.googleapis.com/google.cloud"
+            + ".loadbalancing.type.LoadBalancerLogEntry\",\"statusDetails\":"
+            + "\"response_sent_by_backend\"},\"logName\":\"projects/synthetic/logs/requests\","
+            + "\"resource\":{\"labels\":{\"forwarding_rule_name\":\"synthetic\",\"project_id\":"
+            + "\"synthetic\",\"zone\":\"global\"},\"type\":\"http_load_balancer\"},"
+            + "\"severity\":\"INFO\",\"timestamp\":\"%s\"}",
+        addr, path(r, attack), attack ? 404 : 200, ua, r.nextInt(), ts);
+  }
+
+  private static String nginx(Random r, Instant ts, String addr, String ua, boolean attack) {
+    return String.format(
+        "{\"insertId\":\"%08x\",\"jsonPayload\":{\"agent\":\"%s\",\"bytes_sent\":\"97\","
+            + "\"code\":\"%d\",\"referrer\":\"-\",\"remote_ip\":\"%s\",\"req_time\":\"0.136\","
+            + "\"request\":\"GET %s HTTP/1.1\",\"res_time\":\"0.136\"},\"labels\":{\"application\":"
+            + "\"synthetic\",\"env\":\"test\",\"stack\":\"app\",\"type\":\"app\"},\"logName\":"
+            + "\"projects/synthetic/logs/nginx\",\"resource\":{\"labels\":{\"project_id\":"
+            + "\"synthetic\"},\"type\":\"aws_ec2_instance\"},\"timestamp\":\"%s\"}",
+        r.nextInt(), ua, attack ? 404 : 200, addr, path(r, attack), ts);
+  }
+
+  private static String fxaAuth(
+      Random r, Instant ts, String addr, String ua, int n, boolean attack) {
+    // Attackers attempt logins against many accounts, others log in to their own account
+    String email = String.format("user%d@example.com", attack ? r.nextInt(1000000) : n);
+    return String.format(
+        "{\"insertId\":\"%08x\",\"jsonPayload\":{\"EnvVersion\":\"2.0\",\"Fields\":{\"agent\":"
+            + "\"%s\",\"email\":\"%s\",\"errno\":%d,\"keys\":true,\"lang\":\"en-US\",\"method\":"
+            + "\"post\",\"op\":\"request.summary\",\"path\":\"/v1/account/login\",\"reason\":"
+            + "\"signin\",\"remoteAddressChain\":\"[\\\"%s\\\",\\\"127.0.0.1\\\"]\",\"service\":"
+            + "\"sync\",\"status\":%d,\"t\":191,\"uid\":\"%d\"},\"Logger\":\"fxa-auth-server\","
+            + "\"Pid\":1,\"Severity\":6,\"Timestamp\":%d,\"Type\":\"request.summary\"},"
+            + "\"labels\":{\"application\":\"fxa\",\"env\":\"prod\",\"stack\":\"default\","
+            + "\"type\":\"auth_server\"},\"logName\":\"projects/synthetic/logs/docker.fxa-auth\","
+            + "\"resource\":{\"labels\":{\"project_id\":\"synthetic\"},\"type\":\"gce_instance\"},"
+            + "\"timestamp\":\"%s\"}",
+        r.nextInt(),
+        ua,
+        email,
+        attack ? 103 : 0,
+        addr,
+        attack ? 400 : 200,
+        n,
+        ts.getMillis() * 1000000L,
+        ts);
+  }
+
+  private static String cloudtrail(
+      Random r, Instant ts, String addr, String ua, int n, boolean attack) {
+    return String.format(
+        "{\"eventVersion\":\"1.05\",\"userIdentity\":{\"type\":\"IAMUser\",\"principalId\":"
+            + "\"AIDA%08X\",\"arn\":\"arn:aws:iam::123456789012:user/user%d\",\"accountId\":"
+            + "\"123456789012\",\"userName\":\"user%d\"},\"eventTime\":\"%s\",\"eventSource\":"
+            + "\"signin.amazonaws.com\",\"eventName\":\"ConsoleLogin\",\"awsRegion\":"
+            + "\"us-east-1\",\"sourceIPAddress\":\"%s\",\"userAgent\":\"%s\","
+            + "\"requestParameters\":null,\"responseElements\":{\"ConsoleLogin\":\"%s\"},"
+            + "\"additionalEventData\":{\"MFAUsed\":\"Yes\"},\"eventID\":\"%08x\",\"eventType\":"
+            + "\"AwsConsoleSignIn\",\"recipientAccountId\":\"123456789012\"}",
+        n,
+        n,
+        n,
+        ts,
+        addr,
+        ua,
+        attack ? "Failure" : "Success",
+        r.nextInt());
+  }
+
+  /**
+   * Initialize new {@link TrafficModel} with the default client population
+   *
+   * @param format Format of generated events
+   */
+  public TrafficModel(Format format) {
+    this.format = format;
+  }
+}
@@ -23,19 +23,24 @@ public class CfgTickProcessor extends DoFn<Event, Alert> {
     this.category = category;
   }
 
-  @ProcessElement
-  public void processElement(ProcessContext c) {
-    Event e = c.element();
+  /**
+   * Convert a configuration tick event into an alert
+   *
+   * @param e Event
+   * @param category Category field to set on alert
+   * @return Alert, or null if the event was not a valid configuration tick
+   */
+  public static Alert toAlert(Event e, String category) {
     if (!(e.getPayloadType().equals(Payload.PayloadType.CFGTICK))) {
-      return;
+      return null;
     }
     CfgTick ct = e.getPayload();
     if (ct == null) {
-      return;
+      return null;
     }
     Map<String, String> configMap = ct.getConfigurationMap();
     if (configMap == null) {
-      return;
+      return null;
     }
 
     Alert a = new Alert();
@@ -47,6 +52,14 @@ public class CfgTickProcessor extends DoFn<Event, Alert> {
       // We need to use custom metadata here since we are adding arbitrary keys
       a.addCustomMetadata(entry.getKey(), entry.getValue());
     }
-    c.output(a);
+    return a;
+  }
+
+  @ProcessElement
+  public void processElement(ProcessContext c) {
+    Alert a = toAlert(c.element(), category);
+    if (a != null) {
+      c.output(a);
+    }
   }
 }
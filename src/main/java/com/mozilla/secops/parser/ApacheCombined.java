@@ -8,10 +8,10 @@ import java.util.regex.Pattern;
 public class ApacheCombined extends SourcePayloadBase implements Serializable {
   private static final long serialVersionUID = 1L;
 
-  private final String matchRe =
-      "^\"([^\"]+)\" - (\\S+) \\[(\\d{1,2}/\\S{3}/\\d{4}:\\d{1,2}:\\d{1,2}:\\d{1,2} "
-          + "[^\\]]+)\\] \"([^\"]+)\" (\\d+) (\\d+|-) \"([^\"]+)\" \"([^\"]+)\"$";
-  private Pattern pattRe;
+  private static final Pattern pattRe =
+      Pattern.compile(
+          "^\"([^\"]+)\" - (\\S+) \\[(\\d{1,2}/\\S{3}/\\d{4}:\\d{1,2}:\\d{1,2}:\\d{1,2} "
+              + "[^\\]]+)\\] \"([^\"]+)\" (\\d+) (\\d+|-) \"([^\"]+)\" \"([^\"]+)\"$");
 
   private String userAgent;
   private String referrer;
@@ -39,9 +39,7 @@ public class ApacheCombined extends SourcePayloadBase implements Serializable {
   }
 
   /** Construct matcher object. */
-  public ApacheCombined() {
-    pattRe = Pattern.compile(matchRe);
-  }
+  public ApacheCombined() {}
 
   /**
    * Construct parser object.
@@ -51,7 +49,6 @@ public class ApacheCombined extends SourcePayloadBase implements Serializable {
    * @param state State
    */
   public ApacheCombined(String input, Event e, ParserState state) {
-    pattRe = Pattern.compile(matchRe);
     Matcher mat = pattRe.matcher(input);
     if (!mat.matches()) {
       return;
@@ -94,19 +91,11 @@ public class ApacheCombined extends SourcePayloadBase implements Serializable {
     }
 
     if (request != null) {
-      String[] parts = request.split(" ");
-      if (parts.length == 3) {
-        requestMethod = parts[0];
-        requestUrl = parts[1];
-      }
-    }
-
-    if (requestUrl != null) {
-      String[] parts = requestUrl.split("\\?");
-      if (parts.length > 1) {
-        requestPath = parts[0];
-      } else {
-        requestPath = requestUrl;
+      RequestLine rl = RequestLine.parse(request);
+      if (rl != null) {
+        requestMethod = rl.getMethod();
+        requestUrl = rl.getTarget();
+        requestPath = rl.getPath();
       }
     }
 
@@ -29,7 +29,8 @@ public class ETDBeta extends PayloadBase implements Serializable {
     //
     // It is included as an effort to maintain consistent behavior across the parsers
     try {
-      EventThreatDetectionFinding f = mapper.readValue(input, EventThreatDetectionFinding.class);
+      EventThreatDetectionFinding f =
+          state.getModel(input, EventThreatDetectionFinding.class, mapper);
       return ((f != null) && (f.getDetectionPriority() != null) && (f.getEventTime() != null));
     } catch (IOException exc) {
       return false;
@@ -78,7 +79,7 @@ public class ETDBeta extends PayloadBase implements Serializable {
 
     // try to parse raw input
     try {
-      etdf = mapper.readValue(input, EventThreatDetectionFinding.class);
+      etdf = s.getModel(input, EventThreatDetectionFinding.class, mapper);
       return;
     } catch (IOException exc) {
       // pass
@@ -6,9 +6,11 @@ import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
@@ -54,7 +56,18 @@ public class EventFilterPayload implements EventFilterPayloadInterface, Serializ
     FXAAUTH_ACCOUNTID,
     FXAAUTH_SMSRECIPIENT,
     FXAAUTH_EMAILRECIPIENT,
-    FXAAUTH_UID
+    FXAAUTH_UID;
+
+    private final boolean normalized = name().startsWith("NORMALIZED_");
+
+    /**
+     * Return true if the property is obtained from normalized event data
+     *
+     * @return boolean
+     */
+    public boolean isNormalized() {
+      return normalized;
+    }
   }
 
   /** Properties match integers from various payload event types */
@@ -63,7 +76,18 @@ public class EventFilterPayload implements EventFilterPayloadInterface, Serializ
 
     GLB_STATUS,
 
-    NGINX_STATUS
+    NGINX_STATUS;
+
+    private final boolean normalized = name().startsWith("NORMALIZED_");
+
+    /**
+     * Return true if the property is obtained from normalized event data
+     *
+     * @return boolean
+     */
+    public boolean isNormalized() {
+      return normalized;
+    }
   }
 
   private Class<? extends PayloadBase> ptype;
@@ -72,89 +96,200 @@ public class EventFilterPayload implements EventFilterPayloadInterface, Serializ
   private Map<IntegerProperty, Integer> integerMatchers;
   private Map<IntegerProperty, EventFilterPayloadRange<Integer>> integerRangeMatchers;
 
+  private transient Criterion[] compiled;
+
+  private transient int modCount;
+
   /**
-   * Return true if payload criteria matches
+   * Return modification count for this filter
    *
-   * @param e Input event
-   * @return True on match
+   * <p>The value is incremented whenever the filter is modified, and is used by filters holding
+   * state derived from this filter (see {@link EventFilterPayloadOr}) to detect changes.
+   *
+   * @return Modification count
    */
-  public Boolean matches(Event e) {
-    if (ptype != null && !(ptype.isInstance(e.getPayload()))) {
-      return false;
+  int modCount() {
+    return modCount;
+  }
+
+  private void modified() {
+    compiled = null;
+    modCount++;
+  }
+
+  /** Single compiled match criterion, pairing a typed field accessor with a predicate */
+  private abstract static class Criterion {
+    /** Relative evaluation cost, lower values are evaluated first */
+    abstract int cost();
+
+    abstract boolean test(Event e);
+  }
+
+  private abstract static class StringCriterion extends Criterion {
+    private final StringProperty property;
+
+    StringCriterion(StringProperty property) {
+      this.property = property;
     }
-    for (Map.Entry<StringProperty, String> entry : stringMatchers.entrySet()) {
-      String value = null;
-      if (entry.getKey().name().startsWith("NORMALIZED_")) {
-        Normalized n = e.getNormalized();
-        if (n != null) {
-          value = n.eventStringValue(entry.getKey());
-        }
-      } else {
-        value = e.getPayload().eventStringValue(entry.getKey());
-      }
-      if (value == null) {
-        return false;
-      }
-      if (!(value.equals(entry.getValue()))) {
-        return false;
-      }
+
+    String value(Event e) {
+      return stringValue(e, property);
     }
-    for (Map.Entry<StringProperty, Pattern> entry : stringRegexMatchers.entrySet()) {
-      String value = null;
-      if (entry.getKey().name().startsWith("NORMALIZED_")) {
+  }
+
+  private abstract static class IntegerCriterion extends Criterion {
+    private final IntegerProperty property;
+
+    IntegerCriterion(IntegerProperty property) {
+      this.property = property;
+    }
+
+    Integer value(Event e) {
+      if (property.isNormalized()) {
         Normalized n = e.getNormalized();
-        if (n != null) {
-          value = n.eventStringValue(entry.getKey());
-        }
-      } else {
-        value = e.getPayload().eventStringValue(entry.getKey());
-      }
-      if (value == null) {
-        return false;
-      }
-      Matcher mat = entry.getValue().matcher(value);
-      if (!(mat.matches())) {
-        return false;
+        return n == null ? null : n.eventIntegerValue(property);
       }
+      return e.getPayload().eventIntegerValue(property);
+    }
+  }
+
+  /**
+   * Extract a string property value from an event
+   *
+   * @param e Event
+   * @param property Property to extract
+   * @return Value, or null if not present
+   */
+  static String stringValue(Event e, StringProperty property) {
+    if (property.isNormalized()) {
+      Normalized n = e.getNormalized();
+      return n == null ? null : n.eventStringValue(property);
     }
+    return e.getPayload().eventStringValue(property);
+  }
+
+  /**
+   * Compile configured matchers into an ordered criteria array
+   *
+   * <p>Integer comparisons are cheapest and are evaluated first, followed by exact string
+   * comparisons and finally regular expressions. Within a given cost, exact matches are ordered
+   * ahead of range matches since they are generally more selective.
+   */
+  private Criterion[] compile() {
+    ArrayList<Criterion> ret = new ArrayList<>();
     for (Map.Entry<IntegerProperty, Integer> entry : integerMatchers.entrySet()) {
-      Integer value = null;
-      if (entry.getKey().name().startsWith("NORMALIZED_")) {
-        Normalized n = e.getNormalized();
-        if (n != null) {
-          value = n.eventIntegerValue(entry.getKey());
-        }
-      } else {
-        value = e.getPayload().eventIntegerValue(entry.getKey());
-      }
-      if (value == null) {
-        return false;
-      }
-      if (!(value.equals(entry.getValue()))) {
-        return false;
-      }
+      final Integer want = entry.getValue();
+      ret.add(
+          new IntegerCriterion(entry.getKey()) {
+            int cost() {
+              return 0;
+            }
+
+            boolean test(Event e) {
+              Integer v = value(e);
+              return v != null && v.equals(want);
+            }
+          });
     }
     for (Map.Entry<IntegerProperty, EventFilterPayloadRange<Integer>> entry :
         integerRangeMatchers.entrySet()) {
-      Integer value = null;
-      if (entry.getKey().name().startsWith("NORMALIZED_")) {
-        Normalized n = e.getNormalized();
-        if (n != null) {
-          value = n.eventIntegerValue(entry.getKey());
-        }
-      } else {
-        value = e.getPayload().eventIntegerValue(entry.getKey());
-      }
-      if (value == null) {
-        return false;
-      }
-      if (!entry.getValue().inRange(value)) {
+      final EventFilterPayloadRange<Integer> want = entry.getValue();
+      ret.add(
+          new IntegerCriterion(entry.getKey()) {
+            int cost() {
+              return 1;
+            }
+
+            boolean test(Event e) {
+              Integer v = value(e);
+              return v != null && want.inRange(v);
+            }
+          });
+    }
+    for (Map.Entry<StringProperty, String> entry : stringMatchers.entrySet()) {
+      final String want = entry.getValue();
+      ret.add(
+          new StringCriterion(entry.getKey()) {
+            int cost() {
+              return 2;
+            }
+
+            boolean test(Event e) {
+              String v = value(e);
+              return v != null && v.equals(want);
+            }
+          });
+    }
+    for (Map.Entry<StringProperty, Pattern> entry : stringRegexMatchers.entrySet()) {
+      final Pattern want = entry.getValue();
+      ret.add(
+          new StringCriterion(entry.getKey()) {
+            int cost() {
+              return 3;
+            }
+
+            boolean test(Event e) {
+              String v = value(e);
+              return v != null && want.matcher(v).matches();
+            }
+          });
+    }
+    ret.sort(Comparator.comparingInt(Criterion::cost));
+    return ret.toArray(new Criterion[0]);
+  }
+
+  /**
+   * Return true if payload criteria matches
+   *
+   * <p>Criteria are compiled on first use into an ordered set of typed accessors and predicates.
+   *
+   * @param e Input event
+   * @return True on match
+   */
+  public Boolean matches(Event e) {
+    if (ptype != null && !(ptype.isInstance(e.getPayload()))) {
+      return false;
+    }
+    Criterion[] c = compiled;
+    if (c == null) {
+      c = compile();
+      compiled = c;
+    }
+    for (int i = 0; i < c.length; i++) {
+      if (!c[i].test(e)) {
         return false;
       }
     }
     return true;
   }
 
+  /**
+   * If this filter consists of a single exact string match and nothing else, return the property
+   *
+   * <p>Used by {@link EventFilterPayloadOr} to convert sets of exact matches on the same property
+   * into hash lookups.
+   *
+   * @return Property, or null if filter is not a single exact string match
+   */
+  StringProperty singleStringMatchProperty() {
+    if (stringMatchers.size() != 1
+        || !stringRegexMatchers.isEmpty()
+        || !integerMatchers.isEmpty()
+        || !integerRangeMatchers.isEmpty()) {
+      return null;
+    }
+    return stringMatchers.keySet().iterator().next();
+  }
+
+  /**
+   * Return payload class filter is restricted to
+   *
+   * @return Payload class, or null if unset
+   */
+  Class<? extends PayloadBase> getPayloadClass() {
+    return ptype;
+  }
+
   /**
    * Add a new string regex match to the payload filter
    *
@@ -165,6 +300,7 @@ public class EventFilterPayload implements EventFilterPayloadInterface, Serializ
   public EventFilterPayload withStringRegexMatch(StringProperty property, String s)
       throws PatternSyntaxException {
     stringRegexMatchers.put(property, Pattern.compile(s));
+    modified();
     return this;
   }
 
@@ -182,6 +318,7 @@ public class EventFilterPayload implements EventFilterPayloadInterface, Serializ
       buf.put(entry.getKey(), Pattern.compile(entry.getValue()));
     }
     this.stringRegexMatchers = buf;
+    modified();
   }
 
   /**
@@ -206,6 +343,7 @@ public class EventFilterPayload implements EventFilterPayloadInterface, Serializ
    */
   public EventFilterPayload withStringMatch(StringProperty property, String s) {
     stringMatchers.put(property, s);
+    modified();
     return this;
   }
 
@@ -217,15 +355,18 @@ public class EventFilterPayload implements EventFilterPayloadInterface, Serializ
   @JsonProperty("string_match")
   public void setStringMatchers(Map<StringProperty, String> stringMatchers) {
     this.stringMatchers = stringMatchers;
+    modified();
   }
 
   /**
    * Get configured string matchers
    *
+   * <p>The returned map cannot be modified; use the corresponding with or set method.
+   *
    * @return Map of key/value pairs
    */
   public Map<StringProperty, String> getStringMatchers() {
-    return stringMatchers;
+    return Collections.unmodifiableMap(stringMatchers);
   }
 
   /**
@@ -237,6 +378,7 @@ public class EventFilterPayload implements EventFilterPayloadInterface, Serializ
    */
   public EventFilterPayload withIntegerMatch(IntegerProperty property, Integer i) {
     integerMatchers.put(property, i);
+    modified();
     return this;
   }
 
@@ -248,15 +390,18 @@ public class EventFilterPayload implements EventFilterPayloadInterface, Serializ
   @JsonProperty("integer_match")
   public void setIntegerMatchers(Map<IntegerProperty, Integer> integerMatchers) {
     this.integerMatchers = integerMatchers;
+    modified();
   }
 
   /**
    * Get configured integer matchers
    *
+   * <p>The returned map cannot be modified; use the corresponding with or set method.
+   *
    * @return Map of key/value pairs
    */
   public Map<IntegerProperty, Integer> getIntegerMatchers() {
-    return integerMatchers;
+    return Collections.unmodifiableMap(integerMatchers);
   }
 
   /**
@@ -271,6 +416,7 @@ public class EventFilterPayload implements EventFilterPayloadInterface, Serializ
    */
   public EventFilterPayload withIntegerRangeMatch(IntegerProperty property, int low, int high) {
     integerRangeMatchers.put(property, new EventFilterPayloadRange<Integer>(low, high));
+    modified();
     return this;
   }
 
@@ -283,15 +429,18 @@ public class EventFilterPayload implements EventFilterPayloadInterface, Serializ
   public void setIntegerRangeMatchers(
       Map<IntegerProperty, EventFilterPayloadRange<Integer>> integerRangeMatchers) {
     this.integerRangeMatchers = integerRangeMatchers;
+    modified();
   }
 
   /**
    * Get configured integer range matchers
    *
+   * <p>The returned map cannot be modified; use the corresponding with or set method.
+   *
    * @return Map of key/value pairs
    */
   public Map<IntegerProperty, EventFilterPayloadRange<Integer>> getIntegerRangeMatchers() {
-    return integerRangeMatchers;
+    return Collections.unmodifiableMap(integerRangeMatchers);
   }
 
   /**
@@ -314,6 +463,7 @@ public class EventFilterPayload implements EventFilterPayloadInterface, Serializ
     }
     if (PayloadBase.class.isAssignableFrom(c)) {
       ptype = (Class<? extends PayloadBase>) c;
+      modified();
     } else {
       throw new IllegalArgumentException(
           "invalid class for payload type, does not extend PayloadBase");
@@ -7,11 +7,22 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Objects;
 
 /**
  * A special class of payload filter that supports applying OR logic to matching.
  *
  * <p>If any payload filter added to an OR filter matches, the matches function will return true.
+ *
+ * <p>On first use, child filters that consist only of a single exact string match are grouped by
+ * payload type and property, and each group is evaluated using a single hash lookup rather than
+ * testing each child in turn. Remaining child filters are evaluated in order. The grouping is
+ * rebuilt on the next match if this filter or any of its child payload filters is modified after
+ * use.
  */
 @JsonInclude(Include.NON_NULL)
 @JsonDeserialize(as = EventFilterPayloadOr.class)
@@ -20,6 +31,80 @@ public class EventFilterPayloadOr implements EventFilterPayloadInterface, Serial
 
   private ArrayList<EventFilterPayloadInterface> payloadFilters;
 
+  private transient Compiled compiled;
+
+  /** Set of exact string matches sharing a payload type and property */
+  private static class ExactMatchGroup {
+    private final Class<? extends PayloadBase> ptype;
+    private final EventFilterPayload.StringProperty property;
+    private final HashSet<String> values = new HashSet<>();
+
+    ExactMatchGroup(
+        Class<? extends PayloadBase> ptype, EventFilterPayload.StringProperty property) {
+      this.ptype = ptype;
+      this.property = property;
+    }
+
+    boolean matches(Event e) {
+      if (ptype != null && !(ptype.isInstance(e.getPayload()))) {
+        return false;
+      }
+      String value = EventFilterPayload.stringValue(e, property);
+      return value != null && values.contains(value);
+    }
+  }
+
+  /** Compiled form of the configured child filters */
+  private static class Compiled {
+    private final long modCount;
+    private final ExactMatchGroup[] groups;
+    private final EventFilterPayloadInterface[] remaining;
+
+    Compiled(ArrayList<EventFilterPayloadInterface> payloadFilters, long modCount) {
+      this.modCount = modCount;
+      LinkedHashMap<String, ExactMatchGroup> g = new LinkedHashMap<>();
+      ArrayList<EventFilterPayloadInterface> r = new ArrayList<>();
+      for (EventFilterPayloadInterface p : payloadFilters) {
+        if (p instanceof EventFilterPayload) {
+          EventFilterPayload fp = (EventFilterPayload) p;
+          EventFilterPayload.StringProperty prop = fp.singleStringMatchProperty();
+          if (prop != null) {
+            Class<? extends PayloadBase> ptype = fp.getPayloadClass();
+            String key = Objects.toString(ptype) + ":" + prop.name();
+            ExactMatchGroup grp = g.get(key);
+            if (grp == null) {
+              grp = new ExactMatchGroup(ptype, prop);
+              g.put(key, grp);
+            }
+            grp.values.add(fp.getStringMatchers().get(prop));
+            continue;
+          }
+        }
+        r.add(p);
+      }
+      groups = g.values().toArray(new ExactMatchGroup[0]);
+      remaining = r.toArray(new EventFilterPayloadInterface[0]);
+    }
+  }
+
+  /**
+   * Return combined modification count of child payload filters
+   *
+   * <p>Modification counts only increase, so the sum changes whenever any child is modified.
+   *
+   * @return Combined modification count
+   */
+  private long childModCount() {
+    long ret = 0;
+    for (int i = 0; i < payloadFilters.size(); i++) {
+      EventFilterPayloadInterface p = payloadFilters.get(i);
+      if (p instanceof EventFilterPayload) {
+        ret += ((EventFilterPayload) p).modCount();
+      }
+    }
+    return ret;
+  }
+
   /**
    * Return true if payload criteria matches
    *
@@ -27,8 +112,21 @@ public class EventFilterPayloadOr implements EventFilterPayloadInterface, Serial
    * @return True on match
    */
   public Boolean matches(Event e) {
-    for (EventFilterPayloadInterface p : payloadFilters) {
-      if (p.matches(e)) {
+    // Read the modification count before grouping, so a child modified while grouping is in
+    // progress causes the grouping to be rebuilt on the next match
+    long mc = childModCount();
+    Compiled c = compiled;
+    if (c == null || c.modCount != mc) {
+      c = new Compiled(payloadFilters, mc);
+      compiled = c;
+    }
+    for (int i = 0; i < c.groups.length; i++) {
+      if (c.groups[i].matches(e)) {
+        return true;
+      }
+    }
+    for (int i = 0; i < c.remaining.length; i++) {
+      if (c.remaining[i].matches(e)) {
         return true;
       }
     }
@@ -43,6 +141,7 @@ public class EventFilterPayloadOr implements EventFilterPayloadInterface, Serial
    */
   public EventFilterPayloadOr addPayloadFilter(EventFilterPayloadInterface p) {
     payloadFilters.add(p);
+    compiled = null;
     return this;
   }
 
@@ -54,15 +153,19 @@ public class EventFilterPayloadOr implements EventFilterPayloadInterface, Serial
   @JsonProperty("payload_or_filters")
   public void setPayloadFilters(ArrayList<EventFilterPayloadInterface> payloadFilters) {
     this.payloadFilters = payloadFilters;
+    compiled = null;
   }
 
   /**
    * Get configured payload filters
    *
-   * @return Array of payload filters
+   * <p>The returned list cannot be modified, use {@link #addPayloadFilter} or {@link
+   * #setPayloadFilters} to change the configured filters.
+   *
+   * @return Unmodifiable list of payload filters
    */
-  public ArrayList<EventFilterPayloadInterface> getPayloadFilters() {
-    return payloadFilters;
+  public List<EventFilterPayloadInterface> getPayloadFilters() {
+    return Collections.unmodifiableList(payloadFilters);
   }
 
   /** Create new empty payload OR filter */
@@ -122,27 +122,21 @@ public class FxaAuth extends SourcePayloadBase implements Serializable {
 
   @Override
   public Boolean matcher(String input, ParserState state) {
-    com.mozilla.secops.parser.models.fxaauth.FxaAuth d;
-    try {
-      d =
-          state
-              .getObjectMapper()
-              .readValue(input, com.mozilla.secops.parser.models.fxaauth.FxaAuth.class);
-    } catch (IOException exc) {
-      return false;
-    }
+    // Test the hint first, so other Mozlog events are not deserialized here
     Mozlog m = state.getMozlogHint();
     if (m == null) {
       return false;
     }
     String logger = m.getLogger();
-    if (logger == null) {
+    if (logger == null || !logger.equals("fxa-auth-server")) {
       return false;
     }
-    if (logger.equals("fxa-auth-server")) {
-      return true;
+    try {
+      state.getModel(input, com.mozilla.secops.parser.models.fxaauth.FxaAuth.class);
+    } catch (IOException exc) {
+      return false;
     }
-    return false;
+    return true;
   }
 
   @Override
@@ -428,9 +422,7 @@ public class FxaAuth extends SourcePayloadBase implements Serializable {
     ObjectMapper mapper = state.getObjectMapper();
     try {
       fxaAuthData =
-          state
-              .getObjectMapper()
-              .readValue(input, com.mozilla.secops.parser.models.fxaauth.FxaAuth.class);
+          state.getModel(input, com.mozilla.secops.parser.models.fxaauth.FxaAuth.class);
       if (fxaAuthData == null) {
         return;
       }
@@ -101,9 +101,7 @@ public class FxaContent extends SourcePayloadBase {
     ObjectMapper mapper = state.getObjectMapper();
     try {
       fxaContentData =
-          state
-              .getObjectMapper()
-              .readValue(input, com.mozilla.secops.parser.models.fxacontent.FxaContent.class);
+          state.getModel(input, com.mozilla.secops.parser.models.fxacontent.FxaContent.class);
       if (fxaContentData == null) {
         return;
       }
@@ -20,7 +20,8 @@ public class GLB extends SourcePayloadBase implements Serializable {
   private String userAgent;
   private String requestUrl;
   private Integer status;
-  private URL parsedUrl;
+  private String requestPath;
+  private String requestHost;
 
   @Override
   public Boolean matcher(String input, ParserState state) {
@@ -93,11 +94,18 @@ public class GLB extends SourcePayloadBase implements Serializable {
     requestMethod = h.getRequestMethod();
     status = h.getStatus();
 
-    if (h.getRequestUrl() != null) {
-      try {
-        parsedUrl = new URL(h.getRequestUrl());
-      } catch (MalformedURLException exc) {
-        // pass
+    if (requestUrl != null) {
+      RequestLine rl = RequestLine.parseUrl(requestUrl);
+      if (rl != null) {
+        requestPath = rl.getPath();
+        requestHost = rl.getHost();
+      } else {
+        // Not an http or https URL, use the general URL parser
+        URL u = getParsedUrl();
+        if (u != null) {
+          requestPath = u.getPath();
+          requestHost = u.getHost();
+        }
       }
     }
 
@@ -108,10 +116,8 @@ public class GLB extends SourcePayloadBase implements Serializable {
     n.setRequestMethod(requestMethod);
     n.setRequestStatus(status);
     n.setRequestUrl(requestUrl);
-    if (parsedUrl != null) {
-      n.setUrlRequestPath(parsedUrl.getPath());
-      n.setUrlRequestHost(parsedUrl.getHost());
-    }
+    n.setUrlRequestPath(requestPath);
+    n.setUrlRequestHost(requestHost);
   }
 
   @Override
@@ -120,10 +126,7 @@ public class GLB extends SourcePayloadBase implements Serializable {
       case GLB_REQUESTMETHOD:
         return requestMethod;
       case GLB_URLREQUESTPATH:
-        if (parsedUrl == null) {
-          return null;
-        }
-        return parsedUrl.getPath();
+        return requestPath;
     }
     return null;
   }
@@ -140,10 +143,38 @@ public class GLB extends SourcePayloadBase implements Serializable {
   /**
    * Get parsed URL object
    *
-   * @return URL
+   * <p>The URL is parsed on each call; use {@link #getRequestPath} and {@link #getRequestHost} for
+   * the path and host components.
+   *
+   * @return URL, or null if the request URL is unset or could not be parsed
    */
   public URL getParsedUrl() {
-    return parsedUrl;
+    if (requestUrl == null) {
+      return null;
+    }
+    try {
+      return new URL(requestUrl);
+    } catch (MalformedURLException exc) {
+      return null;
+    }
+  }
+
+  /**
+   * Get path component of request URL
+   *
+   * @return Path, or null if the request URL could not be parsed
+   */
+  public String getRequestPath() {
+    return requestPath;
+  }
+
+  /**
+   * Get host component of request URL
+   *
+   * @return Host, or null if the request URL could not be parsed
+   */
+  public String getRequestHost() {
+    return requestHost;
   }
 
   /**
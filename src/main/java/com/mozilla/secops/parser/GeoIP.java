@@ -6,9 +6,9 @@ import com.maxmind.geoip2.DatabaseReader;
 import com.maxmind.geoip2.exception.GeoIp2Exception;
 import com.maxmind.geoip2.model.CityResponse;
 import com.maxmind.geoip2.model.IspResponse;
-import com.mozilla.secops.FileUtil;
+import com.mozilla.secops.ResourceRegistry;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.Serializable;
 import java.net.InetAddress;
 import java.util.concurrent.TimeUnit;
@@ -305,8 +305,11 @@ public class GeoIP {
     if (path == null) {
       return null;
     }
-    InputStream in = FileUtil.getStreamFromPath(path);
-    return new DatabaseReader.Builder(in).build();
+    // Use the registry so the database content is not retained after the reader is built
+    return ResourceRegistry.getParsed(
+        path,
+        DatabaseReader.class.getName(),
+        buf -> new DatabaseReader.Builder(new ByteArrayInputStream(buf)).build());
   }
 
   private static synchronized void initialize(String cityPath, String ispPath) throws IOException {
@@ -32,7 +32,7 @@ public class GuardDuty extends PayloadBase implements Serializable {
     //
     // It is included as an effort to maintain consistent behavior across the parsers
     try {
-      Finding f = mapper.readValue(input, Finding.class);
+      Finding f = state.getModel(input, Finding.class, mapper);
       // the AWS GD Finding JSON model does not have -ANY- mandatory JSON fields, and thus we
       // check that the finding has certain GuardDuty-specific fields set.
       // Not doing so results in a generic JSON payload successfully being read onto a Finding.
@@ -75,7 +75,7 @@ public class GuardDuty extends PayloadBase implements Serializable {
    */
   public GuardDuty(String input, Event e, ParserState s) {
     try {
-      gdf = mapper.readValue(input, Finding.class);
+      gdf = s.getModel(input, Finding.class, mapper);
     } catch (IOException exc) {
       // pass
     }
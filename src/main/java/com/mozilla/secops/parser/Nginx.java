@@ -217,19 +217,11 @@ public class Nginx extends SourcePayloadBase implements Serializable {
     }
 
     if (request != null) {
-      String[] parts = request.split(" ");
-      if (parts.length == 3) {
-        requestMethod = parts[0];
-        requestUrl = parts[1];
-      }
-    }
-
-    if (requestUrl != null) {
-      String[] parts = requestUrl.split("\\?");
-      if (parts.length > 1) {
-        requestPath = parts[0];
-      } else {
-        requestPath = requestUrl;
+      RequestLine rl = RequestLine.parse(request);
+      if (rl != null) {
+        requestMethod = rl.getMethod();
+        requestUrl = rl.getTarget();
+        requestPath = rl.getPath();
       }
     }
 
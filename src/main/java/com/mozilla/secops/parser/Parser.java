@@ -60,6 +60,12 @@ public class Parser {
       new String[] {"type.googleapis.com/google.cloud.loadbalancing.type.LoadBalancerLogEntry"};
 
   private static final DateTimeFormatter isoFormatter = ISODateTimeFormat.dateTimeParser();
+  private static final DateTimeFormatter syslogFormatter =
+      DateTimeFormat.forPattern("MMM dd HH:mm:ss");
+  private static final DateTimeFormatter syslogShortDayFormatter =
+      DateTimeFormat.forPattern("MMM  d HH:mm:ss");
+  private static final DateTimeFormatter apacheFormatter =
+      DateTimeFormat.forPattern("dd/MMM/yyyy:HH:mm:ss Z");
 
   private IdentityManager idmanager;
 
@@ -100,17 +106,23 @@ public class Parser {
   /**
    * Parse syslog timestamp date time string and return a {@link DateTime} object.
    *
+   * <p>Common forms are parsed using {@link TimestampParser}, falling back to Joda for others.
+   *
    * @param in Input string
    * @return Parsed {@link DateTime}, null if string could not be parsed
    */
   public static DateTime parseSyslogTs(String in) {
+    long ts = TimestampParser.parseSyslog(in);
+    if (ts != TimestampParser.UNSUPPORTED) {
+      return new DateTime(ts);
+    }
     try {
       // "Apr 13 xx:xx:xx"
-      return DateTime.parse(in, DateTimeFormat.forPattern("MMM dd HH:mm:ss"));
+      return DateTime.parse(in, syslogFormatter);
     } catch (IllegalArgumentException e) {
       // "Feb  8 xx:xx:xx"
       try {
-        return DateTime.parse(in, DateTimeFormat.forPattern("MMM  d HH:mm:ss"));
+        return DateTime.parse(in, syslogShortDayFormatter);
       } catch (IllegalArgumentException exc) {
         return null;
       }
@@ -141,10 +153,16 @@ public class Parser {
   /**
    * Parse an ISO8601 date string and return a {@link DateTime} object.
    *
+   * <p>Common forms are parsed using {@link TimestampParser}, falling back to Joda for others.
+   *
    * @param in Input string
    * @return Parsed {@link DateTime}, null if string could not be parsed
    */
   public static DateTime parseISO8601(String in) {
+    long ts = TimestampParser.parseISO8601(in);
+    if (ts != TimestampParser.UNSUPPORTED) {
+      return new DateTime(ts);
+    }
     try {
       return isoFormatter.parseDateTime(in);
     } catch (IllegalArgumentException exc) {
@@ -152,6 +170,27 @@ public class Parser {
     }
   }
 
+  /**
+   * Parse an Apache/Nginx access log timestamp (e.g., 10/Oct/2000:13:55:36 -0700) and return a
+   * {@link DateTime} object.
+   *
+   * <p>Common forms are parsed using {@link TimestampParser}, falling back to Joda for others.
+   *
+   * @param in Input string
+   * @return Parsed {@link DateTime}, null if string could not be parsed
+   */
+  public static DateTime parseApacheTs(String in) {
+    long ts = TimestampParser.parseApache(in);
+    if (ts != TimestampParser.UNSUPPORTED) {
+      return new DateTime(ts);
+    }
+    try {
+      return apacheFormatter.parseDateTime(in);
+    } catch (IllegalArgumentException exc) {
+      return null;
+    }
+  }
+
   /**
    * Apply any configured XFF address selector to the specified input string
    *
@@ -79,12 +79,14 @@ public class ParserDoFn extends DoFn<String, Event> {
   @ProcessElement
   public void processElement(ProcessContext c) {
     Event e;
+    long start = System.nanoTime();
     try {
       e = ep.parse(c.element());
     } catch (Parser.EventTooOldException exc) {
       metrics.eventTooOld();
       return;
     }
+    metrics.eventParsed(start, e);
     if (e != null) {
       // If a common input filter has been configured, apply that first
       if (commonInputFilter != null) {
@@ -2,6 +2,7 @@ package com.mozilla.secops.parser;
 
 import java.io.Serializable;
 import org.apache.beam.sdk.metrics.Counter;
+import org.apache.beam.sdk.metrics.Distribution;
 import org.apache.beam.sdk.metrics.Metrics;
 
 /** Beam metrics generated by various parser functions */
@@ -14,7 +15,15 @@ public class ParserMetrics implements Serializable {
   /** Custom metric name for event too old errors */
   public static final String METRIC_EVENT_TOO_OLD = "event_too_old";
 
+  /** Distribution name for time taken to parse an event, in microseconds */
+  public static final String METRIC_PARSE_TIME = "parse_time_us";
+
+  /** Distribution name for delay between event timestamp and parsing, in milliseconds */
+  public static final String METRIC_EVENT_LAG = "event_to_parse_ms";
+
   private final Counter metricEventTooOld;
+  private final Distribution metricParseTime;
+  private final Distribution metricEventLag;
   private final String namespace;
 
   /** Event was too old */
@@ -22,6 +31,19 @@ public class ParserMetrics implements Serializable {
     metricEventTooOld.inc();
   }
 
+  /**
+   * Record parse time and event lag for a parsed event
+   *
+   * @param startNanos Value of {@link System#nanoTime()} before parsing started
+   * @param e Parsed event, or null if the input could not be parsed
+   */
+  public void eventParsed(long startNanos, Event e) {
+    metricParseTime.update((System.nanoTime() - startNanos) / 1000);
+    if (e != null && e.getTimestamp() != null) {
+      metricEventLag.update(System.currentTimeMillis() - e.getTimestamp().getMillis());
+    }
+  }
+
   /**
    * Create new ParserMetrics
    *
@@ -35,5 +57,7 @@ public class ParserMetrics implements Serializable {
       namespace = NAMESPACE_PREFIX + namespacePostfix;
     }
     metricEventTooOld = Metrics.counter(namespace, METRIC_EVENT_TOO_OLD);
+    metricParseTime = Metrics.distribution(namespace, METRIC_PARSE_TIME);
+    metricEventLag = Metrics.distribution(namespace, METRIC_EVENT_LAG);
   }
 }
@@ -102,12 +102,14 @@ public class ParserMultiDoFn extends DoFn<KV<String, String>, KV<String, Event>>
     ParserMetrics metric = metrics.get(raw.getKey());
 
     Event e;
+    long start = System.nanoTime();
     try {
       e = p.parse(raw.getValue());
     } catch (Parser.EventTooOldException exc) {
       metric.eventTooOld();
       return;
     }
+    metric.eventParsed(start, e);
     if (e == null) {
       return;
     }
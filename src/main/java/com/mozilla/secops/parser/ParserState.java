@@ -3,6 +3,8 @@ package com.mozilla.secops.parser;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.api.services.logging.v2.model.LogEntry;
 import com.mozilla.secops.parser.models.cloudwatch.CloudWatchEvent;
+import java.io.IOException;
+import java.util.HashMap;
 
 /** Stores per-event state of parser */
 class ParserState {
@@ -18,6 +20,76 @@ class ParserState {
   private String maxmindCityDbPath;
   private String maxmindIspDbPath;
 
+  // Models deserialized from the current input, shared between payload matchers and constructors
+  private String modelInput;
+  private HashMap<Class<?>, Object> models;
+  private HashMap<Class<?>, IOException> modelFailures;
+
+  /**
+   * Deserialize input into a model class, reusing a previous result for the same input
+   *
+   * <p>Payload matchers commonly deserialize the input to determine if it is a candidate, and the
+   * payload constructor then deserializes the same input again. This method caches the result
+   * (including a failure) for each model class, so a given input is only deserialized once per
+   * class regardless of how many matchers or constructors request it. The cache is reset if
+   * called with a different input string instance.
+   *
+   * <p>The returned model is shared and should be treated as read only by matchers. Callers
+   * requesting the same model class should use an equivalently configured mapper.
+   *
+   * @param input Input string
+   * @param cls Model class
+   * @param mapper ObjectMapper to use if the model has not been cached
+   * @param <T> Model type
+   * @return Deserialized model, may be null if the input is the JSON literal null
+   * @throws IOException IOException
+   */
+  public <T> T getModel(String input, Class<T> cls, ObjectMapper mapper) throws IOException {
+    if (input != modelInput) {
+      modelInput = input;
+      models = null;
+      modelFailures = null;
+    }
+    if (models != null && models.containsKey(cls)) {
+      return cls.cast(models.get(cls));
+    }
+    if (modelFailures != null) {
+      IOException exc = modelFailures.get(cls);
+      if (exc != null) {
+        throw exc;
+      }
+    }
+    T ret;
+    try {
+      ret = mapper.readValue(input, cls);
+    } catch (IOException exc) {
+      if (modelFailures == null) {
+        modelFailures = new HashMap<>();
+      }
+      modelFailures.put(cls, exc);
+      throw exc;
+    }
+    if (models == null) {
+      models = new HashMap<>();
+    }
+    models.put(cls, ret);
+    return ret;
+  }
+
+  /**
+   * Deserialize input into a model class using the state {@link ObjectMapper}
+   *
+   * @see #getModel(String, Class, ObjectMapper)
+   * @param input Input string
+   * @param cls Model class
+   * @param <T> Model type
+   * @return Deserialized model
+   * @throws IOException IOException
+   */
+  public <T> T getModel(String input, Class<T> cls) throws IOException {
+    return getModel(input, cls, mapper);
+  }
+
   /**
    * Indicate in state if geo-ip resolution should be deferred
    *
@@ -0,0 +1,242 @@
+package com.mozilla.secops.parser;
+
+/**
+ * Offsets of the components of an HTTP request line or request URL
+ *
+ * <p>Parsing only records offsets into the source string, and components are only extracted when
+ * requested. Common method and protocol values are returned as shared constants rather than new
+ * substrings.
+ *
+ * <p>{@link #parse} splits a request line such as "GET /path?query HTTP/1.1" into method, target
+ * and protocol, splitting the target into path and query at the first "?". {@link #parseUrl}
+ * splits an absolute http or https URL into host, path and query, with the same results as the
+ * corresponding {@link java.net.URL} methods.
+ */
+public final class RequestLine {
+  private static final String[] METHODS =
+      new String[] {"GET", "POST", "HEAD", "PUT", "DELETE", "OPTIONS", "PATCH", "CONNECT", "TRACE"};
+  private static final String[] PROTOCOLS =
+      new String[] {"HTTP/1.1", "HTTP/1.0", "HTTP/2.0", "HTTP/2", "HTTP/3"};
+
+  private final String source;
+  private final int methodEnd;
+  private final int hostStart;
+  private final int hostEnd;
+  private final int targetStart;
+  private final int pathEnd;
+  private final int queryEnd;
+  private final int targetEnd;
+  private final int protocolStart;
+  private final int protocolEnd;
+
+  private static String shared(String[] values, String source, int start, int end) {
+    int len = end - start;
+    for (String v : values) {
+      if (v.length() == len && source.startsWith(v, start)) {
+        return v;
+      }
+    }
+    return source.substring(start, end);
+  }
+
+  private static String substring(String source, int start, int end) {
+    if (start == 0 && end == source.length()) {
+      return source;
+    }
+    return source.substring(start, end);
+  }
+
+  /**
+   * Parse HTTP request line
+   *
+   * <p>The request line must consist of exactly three space separated fields, ignoring trailing
+   * spaces. The method and target fields may be empty.
+   *
+   * @param line Request line
+   * @return RequestLine, or null if the request line did not contain three fields
+   */
+  public static RequestLine parse(String line) {
+    int end = line.length();
+    while (end > 0 && line.charAt(end - 1) == ' ') {
+      end--;
+    }
+    int sp1 = line.indexOf(' ');
+    if (sp1 < 0 || sp1 >= end) {
+      return null;
+    }
+    int sp2 = line.indexOf(' ', sp1 + 1);
+    if (sp2 < 0 || sp2 >= end) {
+      return null;
+    }
+    int sp3 = line.indexOf(' ', sp2 + 1);
+    if (sp3 >= 0 && sp3 < end) {
+      return null;
+    }
+    int query = line.indexOf('?', sp1 + 1);
+    int pathEnd = (query < 0 || query > sp2) ? sp2 : query;
+    return new RequestLine(line, sp1, -1, -1, sp1 + 1, pathEnd, sp2, sp2, sp2 + 1, end);
+  }
+
+  /**
+   * Parse absolute http or https URL
+   *
+   * <p>The path ends at the first "?" or "#", and the query at the first "#". The host excludes any
+   * user information and port.
+   *
+   * @param url URL
+   * @return RequestLine, or null if the URL is not an absolute http or https URL
+   */
+  public static RequestLine parseUrl(String url) {
+    int authority;
+    if (url.regionMatches(true, 0, "https://", 0, 8)) {
+      authority = 8;
+    } else if (url.regionMatches(true, 0, "http://", 0, 7)) {
+      authority = 7;
+    } else {
+      return null;
+    }
+    int end = url.length();
+    int authorityEnd = authority;
+    while (authorityEnd < end) {
+      char c = url.charAt(authorityEnd);
+      if (c == '/' || c == '?' || c == '#') {
+        break;
+      }
+      authorityEnd++;
+    }
+    int hostStart = url.lastIndexOf('@', authorityEnd - 1);
+    hostStart = hostStart < authority ? authority : hostStart + 1;
+    int hostEnd = authorityEnd;
+    if (hostStart < authorityEnd && url.charAt(hostStart) == '[') {
+      // IPv6 literal, the host includes the brackets
+      int close = url.indexOf(']', hostStart);
+      if (close < 0 || close >= authorityEnd) {
+        return null;
+      }
+      hostEnd = close + 1;
+    } else {
+      int port = url.indexOf(':', hostStart);
+      if (port >= 0 && port < authorityEnd) {
+        hostEnd = port;
+      }
+    }
+
+    int pathEnd = authorityEnd;
+    while (pathEnd < end && url.charAt(pathEnd) != '?' && url.charAt(pathEnd) != '#') {
+      pathEnd++;
+    }
+    int queryEnd = pathEnd;
+    if (pathEnd < end && url.charAt(pathEnd) == '?') {
+      queryEnd = url.indexOf('#', pathEnd);
+      if (queryEnd < 0) {
+        queryEnd = end;
+      }
+    }
+    return new RequestLine(
+        url, -1, hostStart, hostEnd, authorityEnd, pathEnd, queryEnd, end, -1, -1);
+  }
+
+  /**
+   * Get request method
+   *
+   * @return Method, or null if not parsed from a request line
+   */
+  public String getMethod() {
+    if (methodEnd < 0) {
+      return null;
+    }
+    return shared(METHODS, source, 0, methodEnd);
+  }
+
+  /**
+   * Get request target
+   *
+   * <p>For a request line this is the complete request target, and for a URL it is the complete
+   * URL.
+   *
+   * @return Target
+   */
+  public String getTarget() {
+    if (methodEnd < 0) {
+      return source;
+    }
+    return substring(source, targetStart, targetEnd);
+  }
+
+  /**
+   * Get path component of request target
+   *
+   * @return Path
+   */
+  public String getPath() {
+    return substring(source, targetStart, pathEnd);
+  }
+
+  /**
+   * Get query component of request target, excluding the "?"
+   *
+   * @return Query, or null if the target has no query
+   */
+  public String getQuery() {
+    if (pathEnd >= queryEnd) {
+      return null;
+    }
+    return source.substring(pathEnd + 1, queryEnd);
+  }
+
+  /**
+   * Return true if the request target has a query component
+   *
+   * @return Boolean
+   */
+  public boolean hasQuery() {
+    return pathEnd < queryEnd;
+  }
+
+  /**
+   * Get host component of URL
+   *
+   * @return Host, or null if not parsed from a URL
+   */
+  public String getHost() {
+    if (hostStart < 0) {
+      return null;
+    }
+    return source.substring(hostStart, hostEnd);
+  }
+
+  /**
+   * Get request protocol
+   *
+   * @return Protocol, or null if not parsed from a request line
+   */
+  public String getProtocol() {
+    if (protocolStart < 0) {
+      return null;
+    }
+    return shared(PROTOCOLS, source, protocolStart, protocolEnd);
+  }
+
+  private RequestLine(
+      String source,
+      int methodEnd,
+      int hostStart,
+      int hostEnd,
+      int targetStart,
+      int pathEnd,
+      int queryEnd,
+      int targetEnd,
+      int protocolStart,
+      int protocolEnd) {
+    this.source = source;
+    this.methodEnd = methodEnd;
+    this.hostStart = hostStart;
+    this.hostEnd = hostEnd;
+    this.targetStart = targetStart;
+    this.pathEnd = pathEnd;
+    this.queryEnd = queryEnd;
+    this.targetEnd = targetEnd;
+    this.protocolStart = protocolStart;
+    this.protocolEnd = protocolEnd;
+  }
+}
@@ -0,0 +1,299 @@
+package com.mozilla.secops.parser;
+
+import org.joda.time.DateTimeZone;
+
+/**
+ * Allocation-light parsers for common timestamp formats
+ *
+ * <p>Parses the common forms of ISO 8601/RFC 3339, syslog and Apache/Nginx access log timestamps
+ * directly from the input string, returning milliseconds since the epoch. Events in a stream
+ * mostly share the same second, so the result for the date and time up to the second is cached
+ * per thread in a small table indexed by the last digit of the second. A cache hit only needs the
+ * prefix compared with the cached prefix, and the fraction and offset parsed.
+ *
+ * <p>Only a subset of each format is supported. Methods return {@link #UNSUPPORTED} for input
+ * outside the subset, including invalid input, and callers should fall back to a general parser
+ * such as Joda in this case so the result matches the general parser. Timestamps without an offset
+ * are only supported if the default time zone is a fixed offset, such as UTC.
+ */
+public final class TimestampParser {
+  /** Returned if input is not in the supported subset of the format */
+  public static final long UNSUPPORTED = Long.MIN_VALUE;
+
+  private static final String MONTHS = "JanFebMarAprMayJunJulAugSepOctNovDec";
+
+  /** Syslog timestamps have no year, and are parsed in year 2000 as Joda does */
+  private static final int SYSLOG_YEAR = 2000;
+
+  private static final class SecondCache {
+    private final String[] prefixes = new String[10];
+    private final long[] values = new long[10];
+
+    private long get(String in, int secondUnits, int len) {
+      String p = prefixes[secondUnits];
+      if (p != null && p.length() == len && in.startsWith(p)) {
+        return values[secondUnits];
+      }
+      return UNSUPPORTED;
+    }
+
+    private void put(String in, int secondUnits, int len, long value) {
+      prefixes[secondUnits] = in.substring(0, len);
+      values[secondUnits] = value;
+    }
+  }
+
+  private static final class Caches {
+    private final SecondCache iso = new SecondCache();
+    private final SecondCache syslog = new SecondCache();
+    private final SecondCache apache = new SecondCache();
+  }
+
+  private static final ThreadLocal<Caches> caches = ThreadLocal.withInitial(Caches::new);
+
+  private static int digits(String in, int off, int len) {
+    int ret = 0;
+    for (int i = off; i < off + len; i++) {
+      int d = in.charAt(i) - '0';
+      if (d < 0 || d > 9) {
+        return -1;
+      }
+      ret = ret * 10 + d;
+    }
+    return ret;
+  }
+
+  private static int month(String in, int off) {
+    for (int i = 0; i < 12; i++) {
+      if (in.regionMatches(off, MONTHS, i * 3, 3)) {
+        return i + 1;
+      }
+    }
+    return -1;
+  }
+
+  private static int daysInMonth(int year, int month) {
+    if (month == 2) {
+      return ((year % 4 == 0 && year % 100 != 0) || year % 400 == 0) ? 29 : 28;
+    }
+    return (month == 4 || month == 6 || month == 9 || month == 11) ? 30 : 31;
+  }
+
+  /**
+   * Return milliseconds since the epoch for a UTC date and time
+   *
+   * @return Milliseconds, or {@link #UNSUPPORTED} if any field is out of range
+   */
+  private static long utcMillis(int year, int month, int day, int hour, int minute, int second) {
+    if (year < 0
+        || month < 1
+        || month > 12
+        || day < 1
+        || day > daysInMonth(year, month)
+        || hour < 0
+        || hour > 23
+        || minute < 0
+        || minute > 59
+        || second < 0
+        || second > 59) {
+      return UNSUPPORTED;
+    }
+    // Days from civil date, using a year starting in March so the leap day is last
+    int y = month <= 2 ? year - 1 : year;
+    int era = y / 400;
+    int yoe = y - era * 400;
+    int doy = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+    int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+    long days = era * 146097L + doe - 719468L;
+    return ((days * 24 + hour) * 60 + minute) * 60000L + second * 1000L;
+  }
+
+  /**
+   * Convert local time in the default time zone to milliseconds since the epoch
+   *
+   * @return Milliseconds, or {@link #UNSUPPORTED} if the default zone is not a fixed offset
+   */
+  private static long fromDefaultZone(long local) {
+    DateTimeZone zone = DateTimeZone.getDefault();
+    if (!zone.isFixed()) {
+      return UNSUPPORTED;
+    }
+    return local - zone.getOffset(local);
+  }
+
+  /**
+   * Parse ISO 8601 timestamp
+   *
+   * <p>Supports timestamps of the form yyyy-MM-ddTHH:mm:ss, with an optional fraction of up to nine
+   * digits, and an optional offset of Z or +HH:mm. Fraction digits beyond milliseconds are
+   * truncated.
+   *
+   * @param in Input string
+   * @return Milliseconds since the epoch, or {@link #UNSUPPORTED}
+   */
+  public static long parseISO8601(String in) {
+    int n = in.length();
+    if (n < 19
+        || in.charAt(4) != '-'
+        || in.charAt(7) != '-'
+        || in.charAt(10) != 'T'
+        || in.charAt(13) != ':'
+        || in.charAt(16) != ':') {
+      return UNSUPPORTED;
+    }
+    int secondUnits = in.charAt(18) - '0';
+    if (secondUnits < 0 || secondUnits > 9) {
+      return UNSUPPORTED;
+    }
+    SecondCache cache = caches.get().iso;
+    long ret = cache.get(in, secondUnits, 19);
+    if (ret == UNSUPPORTED) {
+      ret =
+          utcMillis(
+              digits(in, 0, 4),
+              digits(in, 5, 2),
+              digits(in, 8, 2),
+              digits(in, 11, 2),
+              digits(in, 14, 2),
+              digits(in, 17, 2));
+      if (ret == UNSUPPORTED) {
+        return UNSUPPORTED;
+      }
+      cache.put(in, secondUnits, 19, ret);
+    }
+
+    int i = 19;
+    if (i < n && in.charAt(i) == '.') {
+      int start = ++i;
+      int millis = 0;
+      for (; i < n; i++) {
+        int d = in.charAt(i) - '0';
+        if (d < 0 || d > 9) {
+          break;
+        }
+        if (i - start < 3) {
+          millis = millis * 10 + d;
+        }
+      }
+      int count = i - start;
+      if (count == 0 || count > 9) {
+        return UNSUPPORTED;
+      }
+      for (; count < 3; count++) {
+        millis *= 10;
+      }
+      ret += millis;
+    }
+
+    if (i == n) {
+      return fromDefaultZone(ret);
+    }
+    char c = in.charAt(i);
+    if (c == 'Z' && i + 1 == n) {
+      return ret;
+    }
+    if ((c == '+' || c == '-') && n - i == 6 && in.charAt(i + 3) == ':') {
+      int h = digits(in, i + 1, 2);
+      int m = digits(in, i + 4, 2);
+      if (h < 0 || h > 23 || m < 0 || m > 59) {
+        return UNSUPPORTED;
+      }
+      long offset = (h * 60L + m) * 60000L;
+      return c == '+' ? ret - offset : ret + offset;
+    }
+    return UNSUPPORTED;
+  }
+
+  /**
+   * Parse syslog timestamp
+   *
+   * <p>Supports timestamps of the form "MMM dd HH:mm:ss" or "MMM  d HH:mm:ss". Syslog timestamps
+   * contain no year, and are returned in the year 2000.
+   *
+   * @param in Input string
+   * @return Milliseconds since the epoch, or {@link #UNSUPPORTED}
+   */
+  public static long parseSyslog(String in) {
+    if (in.length() != 15
+        || in.charAt(3) != ' '
+        || in.charAt(6) != ' '
+        || in.charAt(9) != ':'
+        || in.charAt(12) != ':') {
+      return UNSUPPORTED;
+    }
+    int secondUnits = in.charAt(14) - '0';
+    if (secondUnits < 0 || secondUnits > 9) {
+      return UNSUPPORTED;
+    }
+    SecondCache cache = caches.get().syslog;
+    long ret = cache.get(in, secondUnits, 15);
+    if (ret != UNSUPPORTED) {
+      return fromDefaultZone(ret);
+    }
+    int day = in.charAt(4) == ' ' ? digits(in, 5, 1) : digits(in, 4, 2);
+    ret =
+        utcMillis(
+            SYSLOG_YEAR,
+            month(in, 0),
+            day,
+            digits(in, 7, 2),
+            digits(in, 10, 2),
+            digits(in, 13, 2));
+    if (ret == UNSUPPORTED) {
+      return UNSUPPORTED;
+    }
+    cache.put(in, secondUnits, 15, ret);
+    return fromDefaultZone(ret);
+  }
+
+  /**
+   * Parse Apache/Nginx access log timestamp
+   *
+   * <p>Supports timestamps of the form "dd/MMM/yyyy:HH:mm:ss +hhmm", as used in the common and
+   * combined log formats.
+   *
+   * @param in Input string
+   * @return Milliseconds since the epoch, or {@link #UNSUPPORTED}
+   */
+  public static long parseApache(String in) {
+    if (in.length() != 26
+        || in.charAt(2) != '/'
+        || in.charAt(6) != '/'
+        || in.charAt(11) != ':'
+        || in.charAt(14) != ':'
+        || in.charAt(17) != ':'
+        || in.charAt(20) != ' ') {
+      return UNSUPPORTED;
+    }
+    int secondUnits = in.charAt(19) - '0';
+    if (secondUnits < 0 || secondUnits > 9) {
+      return UNSUPPORTED;
+    }
+    SecondCache cache = caches.get().apache;
+    long ret = cache.get(in, secondUnits, 20);
+    if (ret == UNSUPPORTED) {
+      ret =
+          utcMillis(
+              digits(in, 7, 4),
+              month(in, 3),
+              digits(in, 0, 2),
+              digits(in, 12, 2),
+              digits(in, 15, 2),
+              digits(in, 18, 2));
+      if (ret == UNSUPPORTED) {
+        return UNSUPPORTED;
+      }
+      cache.put(in, secondUnits, 20, ret);
+    }
+    char c = in.charAt(21);
+    int h = digits(in, 22, 2);
+    int m = digits(in, 24, 2);
+    if ((c != '+' && c != '-') || h < 0 || h > 23 || m < 0 || m > 59) {
+      return UNSUPPORTED;
+    }
+    long offset = (h * 60L + m) * 60000L;
+    return c == '+' ? ret - offset : ret + offset;
+  }
+
+  private TimestampParser() {}
+}
@@ -0,0 +1,280 @@
+package com.mozilla.secops.state;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.joda.JodaModule;
+import java.io.IOException;
+import org.apache.beam.sdk.coders.BooleanCoder;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.metrics.Counter;
+import org.apache.beam.sdk.metrics.Metrics;
+import org.apache.beam.sdk.state.StateSpec;
+import org.apache.beam.sdk.state.StateSpecs;
+import org.apache.beam.sdk.state.TimeDomain;
+import org.apache.beam.sdk.state.Timer;
+import org.apache.beam.sdk.state.TimerSpec;
+import org.apache.beam.sdk.state.TimerSpecs;
+import org.apache.beam.sdk.state.ValueState;
+import org.apache.beam.sdk.transforms.DoFn;
+import org.apache.beam.sdk.values.KV;
+import org.joda.time.Duration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keep a working copy of per-key state in Beam keyed state, backed by a {@link StateInterface}
+ *
+ * <p>Intended for transforms that would otherwise read and write the same key in a {@link State}
+ * backend (e.g., Datastore) for every element. The first time a key is seen, the value is loaded
+ * from the backend and cached in Beam {@link ValueState}. Subsequent elements for the key use the
+ * cached copy. Modified values are written back to the backend when a processing time flush timer
+ * fires, so a key that is updated many times within the flush interval results in a single write.
+ * Keys that have not been seen for the expiry interval are flushed if required and evicted from
+ * keyed state. If a write to the backend fails, the modified value is retained in keyed state and
+ * the write is retried after another flush interval, and the key is not evicted until the write
+ * has succeeded.
+ *
+ * <p>Writes to the backend can optionally be made in a transaction, for backends that support
+ * them. The value written is the cached copy, so the read and the write are never in the same
+ * transaction; concurrent updates for a key are instead prevented by Beam keyed state, which
+ * processes each key serially. Writes made to the backend for a cached key outside of the pipeline
+ * will be overwritten by the next flush.
+ *
+ * <p>Since keyed state is scoped to a window, the input should be in the global window.
+ *
+ * <p>Cached values are stored in keyed state as JSON, using the same encoding used by {@link
+ * StateCursor} implementations.
+ *
+ * @param <InputT> Input value type
+ * @param <OutputT> Output type
+ * @param <StateT> State value type
+ */
+public abstract class CachedStateDoFn<InputT, OutputT, StateT>
+    extends DoFn<KV<String, InputT>, OutputT> {
+  private static final long serialVersionUID = 1L;
+
+  static final String CACHE_HITS = "state_cache_hits";
+  static final String BACKEND_READS = "state_backend_reads";
+  static final String BACKEND_WRITES = "state_backend_writes";
+
+  private final Class<StateT> stateClass;
+  private final long flushMillis;
+  private final long expiryMillis;
+  private final boolean transaction;
+  private final Counter cacheHits;
+  private final Counter backendReads;
+  private final Counter backendWrites;
+
+  private transient ObjectMapper mapper;
+  private transient State state;
+  private transient Logger log;
+
+  @StateId("key")
+  private final StateSpec<ValueState<String>> keySpec = StateSpecs.value(StringUtf8Coder.of());
+
+  @StateId("value")
+  private final StateSpec<ValueState<String>> valueSpec = StateSpecs.value(StringUtf8Coder.of());
+
+  @StateId("dirty")
+  private final StateSpec<ValueState<Boolean>> dirtySpec = StateSpecs.value(BooleanCoder.of());
+
+  @TimerId("flush")
+  private final TimerSpec flushSpec = TimerSpecs.timer(TimeDomain.PROCESSING_TIME);
+
+  @TimerId("expiry")
+  private final TimerSpec expirySpec = TimerSpecs.timer(TimeDomain.PROCESSING_TIME);
+
+  /**
+   * Return the state interface to use as the backing store
+   *
+   * <p>Called once per DoFn instance during setup.
+   *
+   * @return StateInterface
+   */
+  protected abstract StateInterface createStateInterface();
+
+  /**
+   * Process an element using cached state
+   *
+   * @param c ProcessContext
+   * @param key Element key
+   * @param current Current state value for key, null if no state exists
+   * @return Updated state value if state was modified, null if state was not modified
+   */
+  protected abstract StateT process(ProcessContext c, String key, StateT current);
+
+  /**
+   * Optional additional setup performed after the backing store has been initialized
+   *
+   * @throws Exception Exception
+   */
+  protected void initialize() throws Exception {}
+
+  @Setup
+  public void setup() throws Exception {
+    log = LoggerFactory.getLogger(getClass());
+    mapper = new ObjectMapper();
+    mapper.registerModule(new JodaModule());
+    mapper.configure(
+        com.fasterxml.jackson.databind.SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, false);
+    state = new State(createStateInterface());
+    state.initialize();
+    initialize();
+  }
+
+  @Teardown
+  public void teardown() {
+    if (state != null) {
+      state.done();
+    }
+  }
+
+  @ProcessElement
+  public void processElement(
+      ProcessContext c,
+      @StateId("key") ValueState<String> keyState,
+      @StateId("value") ValueState<String> valueState,
+      @StateId("dirty") ValueState<Boolean> dirtyState,
+      @TimerId("flush") Timer flushTimer,
+      @TimerId("expiry") Timer expiryTimer) {
+    String key = c.element().getKey();
+
+    StateT current;
+    String buf = valueState.read();
+    try {
+      if (buf == null) {
+        backendReads.inc();
+        current = state.newCursor(stateClass, false).get(key);
+        keyState.write(key);
+      } else {
+        cacheHits.inc();
+        current = mapper.readValue(buf, stateClass);
+      }
+    } catch (StateException | IOException exc) {
+      log.error("error reading state for {}: {}", key, exc.getMessage());
+      return;
+    }
+
+    StateT updated = process(c, key, current);
+    try {
+      if (updated != null) {
+        valueState.write(mapper.writeValueAsString(updated));
+        Boolean dirty = dirtyState.read();
+        if (dirty == null || !dirty) {
+          dirtyState.write(true);
+          flushTimer.offset(Duration.millis(flushMillis)).setRelative();
+        }
+      } else if (buf == null) {
+        // Cache the loaded value, including a missing value so the backend is not queried again
+        valueState.write(mapper.writeValueAsString(current));
+      }
+    } catch (IOException exc) {
+      log.error("error caching state for {}: {}", key, exc.getMessage());
+      return;
+    }
+    expiryTimer.offset(Duration.millis(expiryMillis)).setRelative();
+  }
+
+  /**
+   * Write a modified value to the backend
+   *
+   * @return False if the value is modified and could not be written, otherwise true
+   */
+  private boolean flush(
+      ValueState<String> keyState, ValueState<String> valueState, ValueState<Boolean> dirtyState) {
+    Boolean dirty = dirtyState.read();
+    if (dirty == null || !dirty) {
+      return true;
+    }
+    String key = keyState.read();
+    String buf = valueState.read();
+    if (key == null || buf == null) {
+      return true;
+    }
+    try {
+      StateCursor<StateT> cur = state.newCursor(stateClass, transaction);
+      cur.set(key, mapper.readValue(buf, stateClass));
+      if (transaction) {
+        cur.commit();
+      }
+      backendWrites.inc();
+    } catch (StateException | IOException exc) {
+      log.error("error flushing state for {}: {}", key, exc.getMessage());
+      return false;
+    }
+    dirtyState.write(false);
+    return true;
+  }
+
+  @OnTimer("flush")
+  public void onFlush(
+      OnTimerContext c,
+      @StateId("key") ValueState<String> keyState,
+      @StateId("value") ValueState<String> valueState,
+      @StateId("dirty") ValueState<Boolean> dirtyState,
+      @TimerId("flush") Timer flushTimer) {
+    if (!flush(keyState, valueState, dirtyState)) {
+      // Retry the write after another flush interval
+      flushTimer.offset(Duration.millis(flushMillis)).setRelative();
+    }
+  }
+
+  @OnTimer("expiry")
+  public void onExpiry(
+      OnTimerContext c,
+      @StateId("key") ValueState<String> keyState,
+      @StateId("value") ValueState<String> valueState,
+      @StateId("dirty") ValueState<Boolean> dirtyState,
+      @TimerId("flush") Timer flushTimer,
+      @TimerId("expiry") Timer expiryTimer) {
+    if (!flush(keyState, valueState, dirtyState)) {
+      // Keep the modified value cached until it has been written, retrying the write after
+      // another flush interval
+      flushTimer.offset(Duration.millis(flushMillis)).setRelative();
+      expiryTimer.offset(Duration.millis(expiryMillis)).setRelative();
+      return;
+    }
+    keyState.clear();
+    valueState.clear();
+    dirtyState.clear();
+  }
+
+  /**
+   * Initialize new {@link CachedStateDoFn}
+   *
+   * @param stateClass Class used in state storage
+   * @param flushSeconds Maximum time a modified value is held before it is written to the backend
+   * @param expirySeconds Time after which an idle key is evicted from keyed state
+   * @param namespace Metrics namespace
+   * @param transaction If true, write to the backend using a transaction
+   */
+  public CachedStateDoFn(
+      Class<StateT> stateClass,
+      long flushSeconds,
+      long expirySeconds,
+      String namespace,
+      boolean transaction) {
+    if (flushSeconds <= 0 || expirySeconds <= 0) {
+      throw new IllegalArgumentException("flush and expiry intervals must be positive");
+    }
+    this.stateClass = stateClass;
+    flushMillis = flushSeconds * 1000L;
+    expiryMillis = expirySeconds * 1000L;
+    this.transaction = transaction;
+    cacheHits = Metrics.counter(namespace, CACHE_HITS);
+    backendReads = Metrics.counter(namespace, BACKEND_READS);
+    backendWrites = Metrics.counter(namespace, BACKEND_WRITES);
+  }
+
+  /**
+   * Initialize new {@link CachedStateDoFn} writing to the backend without a transaction
+   *
+   * @param stateClass Class used in state storage
+   * @param flushSeconds Maximum time a modified value is held before it is written to the backend
+   * @param expirySeconds Time after which an idle key is evicted from keyed state
+   * @param namespace Metrics namespace
+   */
+  public CachedStateDoFn(
+      Class<StateT> stateClass, long flushSeconds, long expirySeconds, String namespace) {
+    this(stateClass, flushSeconds, expirySeconds, namespace, false);
+  }
+}
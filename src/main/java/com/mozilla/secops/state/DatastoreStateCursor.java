@@ -53,6 +53,7 @@ public class DatastoreStateCursor<T> extends StateCursor<T> {
     ArrayList<Entity> setParam = new ArrayList<>();
 
     ArrayList<StateOperation<T>> getAllOperations = new ArrayList<>();
+    ArrayList<StateOperation<T>> getAllKeysOperations = new ArrayList<>();
 
     // Batch the various operations based on the type
     for (StateOperation<T> o : operations) {
@@ -79,6 +80,9 @@ public class DatastoreStateCursor<T> extends StateCursor<T> {
         case GET_ALL:
           getAllOperations.add(o);
           break;
+        case GET_ALL_KEYS:
+          getAllKeysOperations.add(o);
+          break;
         default:
           throw new RuntimeException("unknown operation type");
       }
@@ -113,6 +117,21 @@ public class DatastoreStateCursor<T> extends StateCursor<T> {
       completedOperations.put(o.getId(), o);
     }
 
+    for (StateOperation<T> o : getAllKeysOperations) {
+      ArrayList<String> klist = new ArrayList<>();
+      Query<Key> query = Query.newKeyQueryBuilder().setNamespace(namespace).setKind(kind).build();
+      try {
+        QueryResults<Key> results = rw.run(query);
+        while (results.hasNext()) {
+          klist.add(results.next().getName());
+        }
+      } catch (DatastoreException exc) {
+        throw new StateException(exc.getMessage());
+      }
+      o.setResultKeys(klist);
+      completedOperations.put(o.getId(), o);
+    }
+
     // Assemble the get results as completed operations
     ArrayList<String> foundKeys = new ArrayList<>();
     while (getResults.hasNext()) {
@@ -41,6 +41,8 @@ public class MemcachedStateCursor<T> extends StateCursor<T> {
           break;
         case GET_ALL:
           throw new RuntimeException("GET_ALL not implemented for MemcachedStateCursor");
+        case GET_ALL_KEYS:
+          throw new RuntimeException("GET_ALL_KEYS not implemented for MemcachedStateCursor");
         case SET:
           try {
             String writebuf = mapper.writeValueAsString(o.getValue());
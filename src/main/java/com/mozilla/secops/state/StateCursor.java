@@ -24,8 +24,9 @@ public abstract class StateCursor<T> {
    * @throws StateException StateException
    */
   public StateCursor<T> withOperation(StateOperation<T> operation) throws StateException {
-    // A key is required for everything but GET_ALL
+    // A key is required for everything but GET_ALL and GET_ALL_KEYS
     if (operation.getOperationType() != StateOperation.OperationType.GET_ALL
+        && operation.getOperationType() != StateOperation.OperationType.GET_ALL_KEYS
         && !validKey(operation.getKey())) {
       throw new StateException("invalid key name");
     }
@@ -65,6 +66,22 @@ public abstract class StateCursor<T> {
     return completedOperations.get(id).getResultValues();
   }
 
+  /**
+   * Fetch a set of result keys from a completed operation
+   *
+   * <p>Only applicable for GET_ALL_KEYS related operations.
+   *
+   * @param id Operation ID
+   * @return ArrayList
+   * @throws StateException StateException
+   */
+  public ArrayList<String> getResultKeysForId(UUID id) throws StateException {
+    if (!completedOperations.containsKey(id)) {
+      throw new StateException("requested operation id was unknown or not yet completed");
+    }
+    return completedOperations.get(id).getResultKeys();
+  }
+
   /**
    * Commit transaction
    *
@@ -142,6 +159,21 @@ public abstract class StateCursor<T> {
     return getResultValuesForId(o.getId());
   }
 
+  /**
+   * Get all keys from state
+   *
+   * <p>This is a convenience method that will add a single GET_ALL_KEYS operation and call execute.
+   *
+   * @return ArrayList
+   * @throws StateException StateException
+   */
+  public ArrayList<String> getAllKeys() throws StateException {
+    StateOperation<T> o = new StateOperation<T>().getAllKeys();
+    withOperation(o);
+    execute();
+    return getResultKeysForId(o.getId());
+  }
+
   private static Boolean validKey(String k) {
     if ((k == null) || (k.isEmpty())) {
       return false;
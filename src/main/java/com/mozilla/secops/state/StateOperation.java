@@ -14,12 +14,14 @@ public class StateOperation<T> {
   private T value;
   private T resultValue;
   private ArrayList<T> resultValues;
+  private ArrayList<String> resultKeys;
   private OperationType operationType;
 
   /** Available state operation types */
   public enum OperationType {
     GET,
     GET_ALL,
+    GET_ALL_KEYS,
     SET
   }
 
@@ -92,6 +94,26 @@ public class StateOperation<T> {
     return resultValues;
   }
 
+  /**
+   * Set result keys
+   *
+   * @param resultKeys Result keys
+   */
+  public void setResultKeys(ArrayList<String> resultKeys) {
+    this.resultKeys = resultKeys;
+  }
+
+  /**
+   * Get result keys
+   *
+   * <p>Return the keys returned by a get all keys operation.
+   *
+   * @return ArrayList
+   */
+  public ArrayList<String> getResultKeys() {
+    return resultKeys;
+  }
+
   /**
    * Get operation type
    *
@@ -123,6 +145,18 @@ public class StateOperation<T> {
     return this;
   }
 
+  /**
+   * Configure as a get all keys operation
+   *
+   * <p>Only the keys of stored entities are returned, values are not fetched.
+   *
+   * @return This for chaining
+   */
+  public StateOperation<T> getAllKeys() {
+    operationType = OperationType.GET_ALL_KEYS;
+    return this;
+  }
+
   /**
    * Configure as a set operation
    *
@@ -1,40 +1,195 @@
 package com.mozilla.secops.window;
 
+import org.apache.beam.sdk.metrics.Distribution;
+import org.apache.beam.sdk.metrics.Metrics;
+import org.apache.beam.sdk.transforms.DoFn;
 import org.apache.beam.sdk.transforms.PTransform;
+import org.apache.beam.sdk.transforms.windowing.AfterFirst;
+import org.apache.beam.sdk.transforms.windowing.AfterPane;
 import org.apache.beam.sdk.transforms.windowing.AfterProcessingTime;
+import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
+import org.apache.beam.sdk.transforms.windowing.GlobalWindow;
 import org.apache.beam.sdk.transforms.windowing.GlobalWindows;
 import org.apache.beam.sdk.transforms.windowing.Repeatedly;
+import org.apache.beam.sdk.transforms.windowing.TimestampCombiner;
+import org.apache.beam.sdk.transforms.windowing.Trigger;
 import org.apache.beam.sdk.transforms.windowing.Window;
+import org.apache.beam.sdk.values.KV;
 import org.apache.beam.sdk.values.PCollection;
 import org.joda.time.Duration;
 
 /**
  * Window input type into global windows, triggering at a specific interval and discarding fired
  * panes.
+ *
+ * <p>If an element count is set, panes also fire as soon as they contain that many elements, so
+ * bursts of input are emitted in bounded panes without waiting for the delay. The element count
+ * can be set for all instances in a pipeline using {@link GlobalTriggersOptions}. The delay can be
+ * overridden in pipeline options only for instances given a stage name using {@link #withStage},
+ * so instances relying on a specific delay are not affected. Values set on an instance using {@link
+ * #withElementCount} or {@link #withDelaySeconds} take precedence over the pipeline options.
  */
 public class GlobalTriggers<T> extends PTransform<PCollection<T>, PCollection<T>> {
   private static final long serialVersionUID = 1L;
 
-  private final int tseconds;
+  /** Metrics namespace */
+  public static final String METRICS_NAMESPACE = "global_triggers";
+
+  private int tseconds;
+  private boolean fixedDelay;
+  private Integer elementCount;
+  private String stage;
+  private TimestampCombiner timestampCombiner;
+
+  /**
+   * Record size and delay of fired panes following a grouping operation
+   *
+   * <p>Distributions are recorded in the {@link GlobalTriggers#METRICS_NAMESPACE} namespace, named
+   * using the stage name with suffixes _pane_elements and _pane_delay_ms. The delay is the time
+   * from the timestamp of the pane to the pane being emitted.
+   *
+   * <p>The delay is only meaningful if the {@link GlobalTriggers} instance preceding the grouping
+   * uses {@link TimestampCombiner#EARLIEST}, set using {@link #withTimestampCombiner}. The
+   * timestamp of a grouped pane is then that of the earliest element in it, so the delay is the
+   * longest time an element in the pane waited to be emitted, including any lag before it was
+   * windowed. With the default combiner the pane timestamp is the end of the global window, and no
+   * delay is recorded.
+   */
+  public static class PaneMetricsFn<K, V> extends DoFn<KV<K, Iterable<V>>, KV<K, Iterable<V>>> {
+    private static final long serialVersionUID = 1L;
+
+    private final Distribution paneElements;
+    private final Distribution paneDelay;
+
+    /**
+     * Initialize new {@link PaneMetricsFn}
+     *
+     * @param stage Stage name used as prefix for metric names
+     */
+    public PaneMetricsFn(String stage) {
+      paneElements = Metrics.distribution(METRICS_NAMESPACE, stage + "_pane_elements");
+      paneDelay = Metrics.distribution(METRICS_NAMESPACE, stage + "_pane_delay_ms");
+    }
+
+    @ProcessElement
+    public void processElement(ProcessContext c) {
+      long n = 0;
+      Iterable<V> values = c.element().getValue();
+      if (values != null) {
+        for (V v : values) {
+          n++;
+        }
+      }
+      paneElements.update(n);
+      if (c.timestamp().isAfter(BoundedWindow.TIMESTAMP_MIN_VALUE)
+          && c.timestamp().isBefore(GlobalWindow.INSTANCE.maxTimestamp())) {
+        paneDelay.update(System.currentTimeMillis() - c.timestamp().getMillis());
+      }
+      c.output(c.element());
+    }
+  }
 
   /**
    * Initialize new {@link GlobalTriggers}
    *
-   * @param tseconds Trigger every specified seconds
+   * @param tseconds Trigger every specified seconds, unless overridden in pipeline options
    */
   public GlobalTriggers(int tseconds) {
     this.tseconds = tseconds;
   }
 
+  /**
+   * Set stage name for this instance
+   *
+   * <p>The trigger delay of a named instance can be overridden in pipeline options using {@link
+   * GlobalTriggersOptions#getGlobalTriggerDelaySeconds}.
+   *
+   * @param stage Stage name
+   * @return this for chaining
+   */
+  public GlobalTriggers<T> withStage(String stage) {
+    this.stage = stage;
+    return this;
+  }
+
+  /**
+   * Set timestamp combiner used for output of grouping operations following this instance
+   *
+   * <p>If unset, the default combiner is used, which sets grouped output to the end of the global
+   * window.
+   *
+   * @param timestampCombiner Timestamp combiner
+   * @return this for chaining
+   */
+  public GlobalTriggers<T> withTimestampCombiner(TimestampCombiner timestampCombiner) {
+    this.timestampCombiner = timestampCombiner;
+    return this;
+  }
+
+  /**
+   * Set trigger delay for this instance, ignoring any delay set in pipeline options
+   *
+   * @param tseconds Trigger every specified seconds
+   * @return this for chaining
+   */
+  public GlobalTriggers<T> withDelaySeconds(int tseconds) {
+    if (tseconds <= 0) {
+      throw new IllegalArgumentException("global trigger delay must be positive");
+    }
+    this.tseconds = tseconds;
+    fixedDelay = true;
+    return this;
+  }
+
+  /**
+   * Set element count for this instance, ignoring any element count set in pipeline options
+   *
+   * @param elementCount Fire panes once they contain this many elements, 0 to fire on delay only
+   * @return this for chaining
+   */
+  public GlobalTriggers<T> withElementCount(int elementCount) {
+    if (elementCount < 0) {
+      throw new IllegalArgumentException("global trigger element count must not be negative");
+    }
+    this.elementCount = elementCount;
+    return this;
+  }
+
   @Override
   public PCollection<T> expand(PCollection<T> input) {
-    return input.apply(
-        "global triggers",
+    GlobalTriggersOptions options =
+        input.getPipeline().getOptions().as(GlobalTriggersOptions.class);
+    int delay = tseconds;
+    if (options.getGlobalTriggerDelaySeconds() != null) {
+      for (String entry : options.getGlobalTriggerDelaySeconds()) {
+        String[] parts = entry.split(":");
+        if (parts.length != 2) {
+          throw new IllegalArgumentException(
+              "invalid format for global trigger delay, must be <stage>:<seconds>");
+        }
+        int value = Integer.parseInt(parts[1]);
+        if (value <= 0) {
+          throw new IllegalArgumentException("global trigger delay must be positive");
+        }
+        if (!fixedDelay && parts[0].equals(stage)) {
+          delay = value;
+        }
+      }
+    }
+    int count = elementCount != null ? elementCount : options.getGlobalTriggerElementCount();
+
+    Trigger.OnceTrigger trigger =
+        AfterProcessingTime.pastFirstElementInPane().plusDelayOf(Duration.standardSeconds(delay));
+    if (count > 0) {
+      trigger = AfterFirst.of(AfterPane.elementCountAtLeast(count), trigger);
+    }
+    Window<T> window =
         Window.<T>into(new GlobalWindows())
-            .triggering(
-                Repeatedly.forever(
-                    AfterProcessingTime.pastFirstElementInPane()
-                        .plusDelayOf(Duration.standardSeconds(tseconds))))
-            .discardingFiredPanes());
+            .triggering(Repeatedly.forever(trigger))
+            .discardingFiredPanes();
+    if (timestampCombiner != null) {
+      window = window.withTimestampCombiner(timestampCombiner);
+    }
+    return input.apply("global triggers", window);
   }
 }
@@ -0,0 +1,23 @@
+package com.mozilla.secops.window;
+
+import org.apache.beam.sdk.options.Default;
+import org.apache.beam.sdk.options.Description;
+import org.apache.beam.sdk.options.PipelineOptions;
+
+/** Options controlling the trigger policy used by {@link GlobalTriggers} in a pipeline */
+public interface GlobalTriggersOptions extends PipelineOptions {
+  @Description(
+      "Fire global trigger panes once they contain this many elements, or after the trigger delay,"
+          + " whichever comes first; 0 to fire on delay only")
+  @Default.Integer(0)
+  Integer getGlobalTriggerElementCount();
+
+  void setGlobalTriggerElementCount(Integer value);
+
+  @Description(
+      "Override delay of global triggers with the given stage name; multiple allowed;"
+          + " stage:seconds")
+  String[] getGlobalTriggerDelaySeconds();
+
+  void setGlobalTriggerDelaySeconds(String[] value);
+}
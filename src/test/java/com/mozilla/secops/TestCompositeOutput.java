@@ -0,0 +1,108 @@
+package com.mozilla.secops;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.api.services.bigquery.model.TableRow;
+import com.google.gson.Gson;
+import com.mozilla.secops.alert.Alert;
+import com.mozilla.secops.alert.AlertMeta;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.zip.GZIPInputStream;
+import org.apache.beam.sdk.testing.PAssert;
+import org.apache.beam.sdk.testing.TestPipeline;
+import org.apache.beam.sdk.transforms.Create;
+import org.apache.beam.sdk.transforms.ParDo;
+import org.apache.beam.sdk.values.PCollection;
+import org.apache.beam.sdk.values.TimestampedValue;
+import org.joda.time.DateTime;
+import org.joda.time.Duration;
+import org.joda.time.Instant;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TestCompositeOutput {
+  @Rule public final transient TestPipeline p = TestPipeline.create();
+  @Rule public final transient TemporaryFolder tmp = new TemporaryFolder();
+
+  public TestCompositeOutput() {}
+
+  @Test
+  public void alertToTableRowTest() throws Exception {
+    Alert a = new Alert();
+    a.setSummary("test alert");
+    a.setCategory("httprequest");
+    a.setSeverity(Alert.AlertSeverity.WARNING);
+    a.setTimestamp(new DateTime(1577836800000L));
+    a.addMetadata(AlertMeta.Key.SOURCEADDRESS, "127.0.0.1");
+    a.addMetadata(AlertMeta.Key.COUNT, "50");
+
+    // Rows must match those produced from the JSON representation of the alert
+    final String json = a.toJSON();
+
+    PCollection<TableRow> rows =
+        p.apply(Create.of(a)).apply(ParDo.of(new CompositeOutput.AlertToTableRow()));
+    PAssert.that(rows)
+        .satisfies(
+            x -> {
+              TableRow expected = new Gson().fromJson(json, TableRow.class);
+              int cnt = 0;
+              for (TableRow r : x) {
+                assertEquals(expected, r);
+                cnt++;
+              }
+              assertEquals(1, cnt);
+              return null;
+            });
+
+    p.run().waitUntilFinish();
+  }
+
+  @Test
+  public void fileSinkTest() throws Exception {
+    ArrayList<TimestampedValue<String>> input = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      // Two one minute windows
+      input.add(TimestampedValue.of(String.format("line%d", i), new Instant((i % 2) * 60000L)));
+    }
+    String prefix = tmp.getRoot().getAbsolutePath() + "/out";
+
+    p.apply(Create.timestamped(input))
+        .apply(
+            new CompositeOutput.FileSink(
+                prefix,
+                2,
+                CompositeOutput.FileSink.compressionFromName("gzip"),
+                Duration.standardMinutes(1)));
+    p.run().waitUntilFinish();
+
+    File[] files = tmp.getRoot().listFiles((d, n) -> n.startsWith("out"));
+    assertEquals(4, files.length);
+    HashSet<String> lines = new HashSet<>();
+    for (File f : files) {
+      assertTrue(f.getName().endsWith(".gz"));
+      try (BufferedReader r =
+          new BufferedReader(
+              new InputStreamReader(
+                  new GZIPInputStream(new FileInputStream(f)), StandardCharsets.UTF_8))) {
+        String l;
+        while ((l = r.readLine()) != null) {
+          lines.add(l);
+        }
+      }
+    }
+    assertEquals(100, lines.size());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void fileSinkCompressionTest() throws Exception {
+    CompositeOutput.FileSink.compressionFromName("auto");
+  }
+}
@@ -0,0 +1,161 @@
+package com.mozilla.secops;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.net.InetAddresses;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.After;
+import org.junit.Test;
+
+public class TestDnsVerifier {
+  public TestDnsVerifier() {}
+
+  private static class StaticResolver implements DnsVerifier.Resolver {
+    private final HashMap<String, String> ptr = new HashMap<>();
+    private final HashMap<String, String[]> a = new HashMap<>();
+    private final AtomicInteger reverseCalls = new AtomicInteger();
+
+    StaticResolver() {
+      ptr.put("10.0.0.1", "host1.google.com");
+      a.put("host1.google.com", new String[] {"10.0.0.2", "10.0.0.1"});
+      // Reverse resolves but the forward record does not confirm the address
+      ptr.put("10.0.0.3", "spoofed.google.com");
+      a.put("spoofed.google.com", new String[] {"10.0.0.4"});
+      ptr.put("10.0.0.5", "host5.example.com");
+      a.put("host5.example.com", new String[] {"10.0.0.5"});
+    }
+
+    public String reverse(InetAddress addr) {
+      reverseCalls.incrementAndGet();
+      return ptr.get(addr.getHostAddress());
+    }
+
+    public InetAddress[] forward(String hostname) throws UnknownHostException {
+      String[] r = a.get(hostname);
+      if (r == null) {
+        throw new UnknownHostException(hostname);
+      }
+      return Arrays.stream(r).map(InetAddresses::forString).toArray(InetAddress[]::new);
+    }
+  }
+
+  @After
+  public void tearDown() {
+    DnsVerifier.setDefault(null);
+  }
+
+  @Test
+  public void verifyTest() throws Exception {
+    StaticResolver r = new StaticResolver();
+    DnsVerifier v = new DnsVerifier(r);
+
+    assertTrue(v.hostMatches("10.0.0.1", ".*\\.google\\.com$"));
+    assertFalse(v.hostMatches("10.0.0.1", ".*\\.example\\.com$"));
+    assertFalse(v.hostMatches("10.0.0.3", ".*\\.google\\.com$"));
+    assertTrue(v.hostMatches("10.0.0.5", ".*\\.example\\.com$"));
+    assertFalse(v.hostMatches("10.0.0.99", ".*"));
+    assertFalse(v.hostMatches("not an address", ".*"));
+    assertFalse(v.hostMatches(null, ".*"));
+    assertEquals(DnsVerifier.Result.VERIFIED, v.verify("10.0.0.1", ".*\\.google\\.com$"));
+    assertEquals(DnsVerifier.Result.NOT_VERIFIED, v.verify("10.0.0.3", ".*\\.google\\.com$"));
+    assertEquals("host1.google.com", v.verifiedHostname("10.0.0.1"));
+    assertNull(v.verifiedHostname("10.0.0.3"));
+    v.shutdown();
+  }
+
+  @Test
+  public void cacheTest() throws Exception {
+    StaticResolver r = new StaticResolver();
+    AtomicLong now = new AtomicLong(0);
+    DnsVerifier v = new DnsVerifier(r, 1000L, 100L, 1000L, 2);
+    v.setClock(now::get);
+
+    // Positive and negative results are cached
+    assertTrue(v.hostMatches("10.0.0.1", ".*\\.google\\.com$"));
+    assertTrue(v.hostMatches("10.0.0.1", ".*\\.google\\.com$"));
+    assertFalse(v.hostMatches("10.0.0.99", ".*"));
+    assertFalse(v.hostMatches("10.0.0.99", ".*"));
+    assertEquals(2, r.reverseCalls.get());
+
+    // Negative entry expires first
+    now.set(500L);
+    assertFalse(v.hostMatches("10.0.0.99", ".*"));
+    assertTrue(v.hostMatches("10.0.0.1", ".*\\.google\\.com$"));
+    assertEquals(3, r.reverseCalls.get());
+
+    now.set(1500L);
+    assertTrue(v.hostMatches("10.0.0.1", ".*\\.google\\.com$"));
+    assertEquals(4, r.reverseCalls.get());
+    v.shutdown();
+  }
+
+  @Test
+  public void timeoutTest() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    DnsVerifier.Resolver slow =
+        new DnsVerifier.Resolver() {
+          public String reverse(InetAddress addr) {
+            try {
+              release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException exc) {
+              return null;
+            }
+            return "slow.google.com";
+          }
+
+          public InetAddress[] forward(String hostname) {
+            return new InetAddress[] {InetAddresses.forString("10.0.0.1")};
+          }
+        };
+    DnsVerifier v = new DnsVerifier(slow, 1000L, 1000L, 50L, 4);
+    DnsVerifier.setDefault(v);
+
+    // Lookup does not complete within the query timeout, so the result is unknown rather than a
+    // failed verification
+    long start = System.currentTimeMillis();
+    assertEquals(DnsVerifier.Result.UNKNOWN, v.verify("10.0.0.1", ".*\\.google\\.com$"));
+    assertNull(v.verifiedHostname("10.0.0.1"));
+    assertTrue(System.currentTimeMillis() - start < 5000L);
+
+    // hostMatches is bounded by the same timeout
+    start = System.currentTimeMillis();
+    assertFalse(v.hostMatches("10.0.0.1", ".*\\.google\\.com$"));
+    assertFalse(CidrUtil.resolvedCanonicalHostMatches("10.0.0.1", ".*"));
+    assertTrue(System.currentTimeMillis() - start < 5000L);
+
+    // The lookup was not cancelled, and once complete populates the cache
+    release.countDown();
+    for (int i = 0; i < 100; i++) {
+      if (v.verify("10.0.0.1", ".*") != DnsVerifier.Result.UNKNOWN) {
+        break;
+      }
+    }
+    assertTrue(v.hostMatches("10.0.0.1", ".*\\.google\\.com$"));
+    assertEquals(DnsVerifier.Result.VERIFIED, v.verify("10.0.0.1", ".*\\.google\\.com$"));
+    assertEquals("slow.google.com", v.verifiedHostname("10.0.0.1"));
+    v.shutdown();
+  }
+
+  @Test
+  public void prefetchTest() throws Exception {
+    StaticResolver r = new StaticResolver();
+    DnsVerifier v = new DnsVerifier(r);
+    DnsVerifier.setDefault(v);
+
+    v.prefetch(Arrays.asList("10.0.0.1", "10.0.0.3", "10.0.0.5", null));
+    assertTrue(CidrUtil.resolvedCanonicalHostMatches("10.0.0.1", ".*\\.google\\.com$"));
+    assertFalse(CidrUtil.resolvedCanonicalHostMatches("10.0.0.3", ".*\\.google\\.com$"));
+    assertTrue(CidrUtil.resolvedCanonicalHostMatches("10.0.0.5", ".*\\.example\\.com$"));
+    assertEquals(3, r.reverseCalls.get());
+  }
+}
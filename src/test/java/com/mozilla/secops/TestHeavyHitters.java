@@ -0,0 +1,70 @@
+package com.mozilla.secops;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import org.apache.beam.sdk.testing.PAssert;
+import org.apache.beam.sdk.testing.TestPipeline;
+import org.apache.beam.sdk.transforms.Create;
+import org.apache.beam.sdk.util.CoderUtils;
+import org.apache.beam.sdk.values.KV;
+import org.apache.beam.sdk.values.PCollection;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class TestHeavyHitters {
+  public TestHeavyHitters() {}
+
+  @Rule public final transient TestPipeline pipeline = TestPipeline.create();
+
+  @Test
+  public void sketchTest() throws Exception {
+    HeavyHitters.CountMinSketch s = new HeavyHitters.CountMinSketch(1024, 4);
+    for (int i = 0; i < 50; i++) {
+      s.add("a");
+    }
+    for (int i = 0; i < 500; i++) {
+      s.add(Integer.toString(i));
+    }
+    assertTrue(s.estimate("a") >= 50L);
+    assertTrue(s.estimate("10") >= 1L);
+
+    HeavyHitters.CountMinSketch m = new HeavyHitters.CountMinSketch(1024, 4);
+    m.add("a");
+    m.merge(s);
+    assertTrue(m.estimate("a") >= 51L);
+
+    HeavyHitters.CountMinSketchCoder coder = HeavyHitters.CountMinSketchCoder.of();
+    HeavyHitters.CountMinSketch d =
+        CoderUtils.decodeFromByteArray(coder, CoderUtils.encodeToByteArray(coder, m));
+    assertEquals(m.estimate("a"), d.estimate("a"));
+    assertEquals(m.estimate("10"), d.estimate("10"));
+    assertEquals(0L, new HeavyHitters.CountMinSketch(1024, 4).estimate("a"));
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void heavyHittersTest() throws Exception {
+    ArrayList<String> in = new ArrayList<>();
+    for (int i = 0; i < 12; i++) {
+      in.add("a");
+    }
+    for (int i = 0; i < 11; i++) {
+      in.add("b");
+    }
+    for (int i = 0; i < 10; i++) {
+      in.add("c");
+    }
+    for (int i = 0; i < 200; i++) {
+      in.add(Integer.toString(i));
+    }
+
+    // Narrow sketch results in collisions, but the output must still be exact
+    PCollection<KV<String, Long>> results =
+        pipeline.apply(Create.of(in)).apply(new HeavyHitters(10L, 16, 2, "test"));
+    PAssert.that(results).containsInAnyOrder(KV.of("a", 12L), KV.of("b", 11L));
+
+    pipeline.run().waitUntilFinish();
+  }
+}
@@ -0,0 +1,102 @@
+package com.mozilla.secops;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.regex.Pattern;
+import org.junit.Test;
+
+public class TestMultiPatternMatcher {
+  public TestMultiPatternMatcher() {}
+
+  @Test
+  public void requiredLiteralTest() throws Exception {
+    assertEquals("@example.com", MultiPatternMatcher.requiredLiteral(".*@example\\.com"));
+    assertEquals("riskyuser", MultiPatternMatcher.requiredLiteral("^riskyuser(\\+.*)?@.*"));
+    assertEquals("testing", MultiPatternMatcher.requiredLiteral("testing[0-9]+\\.xpi"));
+    assertEquals("Mozilla/5.0 ", MultiPatternMatcher.requiredLiteral("Mozilla/5\\.0 .*curl.*"));
+    assertEquals("abc", MultiPatternMatcher.requiredLiteral("abcd?"));
+    assertEquals("abcd", MultiPatternMatcher.requiredLiteral("abcd+e"));
+    assertEquals("Recon:EC2/", MultiPatternMatcher.requiredLiteral("Recon:EC2/.*"));
+    assertNull(MultiPatternMatcher.requiredLiteral("a|b"));
+    assertNull(MultiPatternMatcher.requiredLiteral("(?i)test"));
+    assertNull(MultiPatternMatcher.requiredLiteral("\\Qtest\\E"));
+    assertNull(MultiPatternMatcher.requiredLiteral("\\x41\\x42\\x43"));
+    assertNull(MultiPatternMatcher.requiredLiteral(".*"));
+    assertNull(MultiPatternMatcher.requiredLiteral("a.b.c"));
+  }
+
+  @Test
+  public void matchTest() throws Exception {
+    String[] patterns =
+        new String[] {
+          ".*@example\\.com",
+          "^riskyuser(\\+.*)?@.*",
+          "(?i).*@EXAMPLE\\.NET",
+          "user[0-9]+@test\\.com",
+          ".*@.*\\.com",
+          "a|b"
+        };
+    MultiPatternMatcher m = new MultiPatternMatcher(patterns);
+    assertEquals(6, m.size());
+    assertEquals(2, m.unfilteredCount());
+    assertEquals(".*@example\\.com", m.getPattern(0));
+
+    String[] inputs =
+        new String[] {
+          "user@example.com",
+          "riskyuser+1@test.com",
+          "riskyuser@test.org",
+          "someone@example.net",
+          "user12@test.com",
+          "user@test.org",
+          "a",
+          "b",
+          "ab",
+          "",
+          "example.com"
+        };
+    for (String i : inputs) {
+      ArrayList<Integer> expect = new ArrayList<>();
+      for (int j = 0; j < patterns.length; j++) {
+        if (Pattern.compile(patterns[j]).matcher(i).matches()) {
+          expect.add(j);
+        }
+      }
+      int[] e = expect.stream().mapToInt(Integer::intValue).toArray();
+      assertArrayEquals(i, e, m.allMatches(i));
+      assertEquals(i, e.length > 0 ? e[0] : -1, m.firstMatch(i));
+      assertEquals(i, e.length > 0, m.matchesAny(i));
+    }
+    assertFalse(m.matchesAny(null));
+  }
+
+  @Test
+  public void overlappingLiteralsTest() throws Exception {
+    // Literals that are suffixes or substrings of other literals must be reported through
+    // failure links
+    MultiPatternMatcher m =
+        new MultiPatternMatcher(new String[] {"x*abcde", "bcd.*", ".*cd", "zzz.*de"});
+    assertEquals(0, m.unfilteredCount());
+    assertArrayEquals(new int[] {2}, m.allMatches("abcd"));
+    assertArrayEquals(new int[] {1, 2}, m.allMatches("bcd"));
+    assertArrayEquals(new int[] {0}, m.allMatches("xxabcde"));
+    assertArrayEquals(new int[] {1}, m.allMatches("bcdxx"));
+    assertArrayEquals(new int[] {2}, m.allMatches("xxbcd"));
+    assertArrayEquals(new int[] {3}, m.allMatches("zzzabcde"));
+    assertTrue(m.matchesAny("abcde"));
+    assertFalse(m.matchesAny("abce"));
+  }
+
+  @Test
+  public void emptyTest() throws Exception {
+    MultiPatternMatcher m = new MultiPatternMatcher(new String[0]);
+    assertEquals(0, m.size());
+    assertFalse(m.matchesAny("test"));
+    assertEquals(-1, m.firstMatch("test"));
+  }
+}
@@ -0,0 +1,73 @@
+package com.mozilla.secops;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.google.common.io.ByteStreams;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestResourceRegistry {
+  public TestResourceRegistry() {}
+
+  @Before
+  public void setUp() {
+    ResourceRegistry.clear();
+  }
+
+  @Test
+  public void fetchTest() throws Exception {
+    ResourceRegistry.prefetch(
+        Arrays.asList(
+            "/testdata/detectnatlist1.txt",
+            "/testdata/detectnatlist2.txt",
+            "/testdata/detectnatlist1.txt",
+            null,
+            "/testdata/nonexistent"));
+    assertEquals(2, ResourceRegistry.getLoadTimings().size());
+    assertTrue(ResourceRegistry.getLoadTimings().containsKey("/testdata/detectnatlist1.txt"));
+
+    byte[] buf = ResourceRegistry.fetch("/testdata/detectnatlist1.txt");
+    assertSame(buf, ResourceRegistry.fetch("/testdata/detectnatlist1.txt"));
+    assertArrayEquals(
+        ByteStreams.toByteArray(
+            TestResourceRegistry.class.getResourceAsStream("/testdata/detectnatlist1.txt")),
+        buf);
+
+    try {
+      ResourceRegistry.fetch("/testdata/nonexistent");
+      fail("fetch of nonexistent path should fail");
+    } catch (IOException exc) {
+      assertEquals("failed to read file from path /testdata/nonexistent", exc.getMessage());
+    }
+  }
+
+  @Test
+  public void parsedTest() throws Exception {
+    AtomicInteger parses = new AtomicInteger();
+    ResourceRegistry.ContentParser<ArrayList<String>> parser =
+        buf -> {
+          parses.incrementAndGet();
+          return FileUtil.readLines(buf);
+        };
+
+    ArrayList<String> a =
+        ResourceRegistry.getParsed("/testdata/detectnatlist1.txt", "test", parser);
+    assertSame(a, ResourceRegistry.getParsed("/testdata/detectnatlist1.txt", "test", parser));
+    assertEquals(1, parses.get());
+    assertEquals(FileUtil.fileReadLines("/testdata/detectnatlist1.txt"), a);
+
+    // Different content results in a new parse, a different parser identifier also does
+    assertNotSame(a, ResourceRegistry.getParsed("/testdata/detectnatlist2.txt", "test", parser));
+    assertNotSame(a, ResourceRegistry.getParsed("/testdata/detectnatlist1.txt", "other", parser));
+    assertEquals(3, parses.get());
+  }
+}
@@ -10,8 +10,11 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import com.mozilla.secops.Violation;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
 import java.util.ArrayList;
 import java.util.UUID;
+import org.apache.beam.sdk.util.SerializableUtils;
 import org.joda.time.DateTime;
 import org.junit.Test;
 
@@ -575,4 +578,92 @@ public class TestAlert {
     assertFalse(new Alert().setMetadataValue(AlertMeta.Key.EMAIL, null));
     assertFalse(new Alert().setMetadataValue(AlertMeta.Key.EMAIL, "a@mozilla.com,,b@mozilla.com"));
   }
+
+  @Test
+  public void metadataOrderTest() throws Exception {
+    Alert a = new Alert();
+    a.setSummary("test");
+    a.setAlertId(UUID.fromString("d9a4e3a9-ba1e-4d17-9fc6-4b4fa1a3e1a5"));
+    a.setTimestamp(new DateTime("2020-01-01T00:00:00.000Z"));
+    a.addMetadata(AlertMeta.Key.SOURCEADDRESS, "10.0.0.1");
+    a.addCustomMetadata("custom", "one");
+    a.addMetadata(AlertMeta.Key.SOURCEADDRESS, "10.0.0.2");
+    a.addCustomMetadata("custom", "two");
+    a.addCustomMetadata("username", "user");
+    a.setMetadataValue(AlertMeta.Key.SOURCEADDRESS, "10.0.0.3");
+    a.setMetadataValue(AlertMeta.Key.COUNT, "5");
+
+    // First value for each key is returned, and set changes the first entry in place
+    assertEquals("10.0.0.3", a.getMetadataValue(AlertMeta.Key.SOURCEADDRESS));
+    assertEquals("one", a.getCustomMetadataValue("custom"));
+    assertEquals("user", a.getMetadataValue(AlertMeta.Key.USERNAME));
+    assertEquals("10.0.0.3", a.getCustomMetadataValue("sourceaddress"));
+    assertNull(a.getMetadataValue(AlertMeta.Key.EMAIL));
+    assertNull(a.getCustomMetadataValue("missing"));
+
+    String expect =
+        "{\"severity\":\"info\",\"id\":\"d9a4e3a9-ba1e-4d17-9fc6-4b4fa1a3e1a5\","
+            + "\"summary\":\"test\",\"timestamp\":\"2020-01-01T00:00:00.000Z\","
+            + "\"metadata\":[{\"key\":\"sourceaddress\",\"value\":\"10.0.0.3\"},"
+            + "{\"key\":\"custom\",\"value\":\"one\"},"
+            + "{\"key\":\"sourceaddress\",\"value\":\"10.0.0.2\"},"
+            + "{\"key\":\"custom\",\"value\":\"two\"},"
+            + "{\"key\":\"username\",\"value\":\"user\"},"
+            + "{\"key\":\"count\",\"value\":\"5\"}]}";
+    assertEquals(expect, a.toJSON());
+    assertEquals(expect, Alert.fromJSON(expect).toJSON());
+    assertEquals(expect, SerializableUtils.clone(a).toJSON());
+
+    // Returned metadata is a copy
+    a.getMetadata().get(0).setValue("10.0.0.4");
+    a.getMetadata().clear();
+    assertEquals(expect, a.toJSON());
+  }
+
+  @Test
+  public void serializedLayoutTest() throws Exception {
+    // Alert serialized by a build that stored metadata as an ArrayList guarded by a lock
+    Alert a;
+    try (InputStream is = TestAlert.class.getResourceAsStream("/testdata/alert_serialized_v1.bin");
+        ObjectInputStream in = new ObjectInputStream(is)) {
+      a = (Alert) in.readObject();
+    }
+    assertEquals("test alert", a.getSummary());
+    assertEquals("test", a.getCategory());
+    assertEquals(Alert.AlertSeverity.CRITICAL, a.getSeverity());
+    assertEquals(UUID.fromString("7c8b0b8e-6a5b-4f0e-9f3a-2b6a1d0c4e11"), a.getAlertId());
+    assertEquals(1577836800000L, a.getTimestamp().getMillis());
+    assertEquals("127.0.0.1", a.getMetadataValue(AlertMeta.Key.SOURCEADDRESS));
+    assertEquals("riker", a.getMetadataValue(AlertMeta.Key.USERNAME));
+    assertEquals(2, a.getMetadata().size());
+
+    Alert b = SerializableUtils.clone(a);
+    assertEquals(a.toJSON(), b.toJSON());
+    b.addMetadata(AlertMeta.Key.EMAIL, "riker@mozilla.com");
+    assertEquals("riker@mozilla.com", b.getMetadataValue(AlertMeta.Key.EMAIL));
+  }
+
+  @Test
+  public void metadataConcurrentTest() throws Exception {
+    Alert a = new Alert();
+    Thread[] threads = new Thread[4];
+    for (int i = 0; i < threads.length; i++) {
+      String key = "key" + i;
+      threads[i] =
+          new Thread(
+              () -> {
+                for (int j = 0; j < 1000; j++) {
+                  a.addCustomMetadata(key, Integer.toString(j));
+                }
+              });
+      threads[i].start();
+    }
+    for (Thread t : threads) {
+      t.join();
+    }
+    assertEquals(4000, a.getMetadata().size());
+    for (int i = 0; i < threads.length; i++) {
+      assertEquals("0", a.getCustomMetadataValue("key" + i));
+    }
+  }
 }
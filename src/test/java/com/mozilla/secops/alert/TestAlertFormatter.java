@@ -3,6 +3,7 @@ package com.mozilla.secops.alert;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 import com.mozilla.secops.IOOptions;
 import com.mozilla.secops.parser.ParserTest;
@@ -14,6 +15,8 @@ import org.apache.beam.sdk.transforms.Create;
 import org.apache.beam.sdk.transforms.MapElements;
 import org.apache.beam.sdk.transforms.ParDo;
 import org.apache.beam.sdk.values.PCollection;
+import org.apache.beam.sdk.values.TimestampedValue;
+import org.joda.time.Instant;
 import org.junit.Rule;
 import org.junit.Test;
 
@@ -75,10 +78,57 @@ public class TestAlertFormatter {
                 assertEquals("US", a.getMetadataValue(AlertMeta.Key.SOURCEADDRESS_COUNTRY));
                 assertEquals(
                     "formatter_test", a.getMetadataValue(AlertMeta.Key.MONITORED_RESOURCE));
+                // Alerts are not modified unless tracing is enabled
+                assertNull(a.getMetadataValue(AlertMeta.Key.TRACE));
               }
               return null;
             });
 
     p.run().waitUntilFinish();
   }
+
+  @Test
+  public void runFormatterTrace() {
+    IOOptions options = PipelineOptionsFactory.as(IOOptions.class);
+    options.setMonitoredResourceIndicator("test");
+    options.setOutputAlertTrace(true);
+
+    Alert testAlert = new Alert();
+    testAlert.addMetadata(AlertMeta.Key.SOURCEADDRESS, "216.160.83.56");
+    PCollection<String> res =
+        p.apply(Create.timestamped(TimestampedValue.of(testAlert, new Instant(1000L))))
+            .apply(ParDo.of(new AlertFormatter(options)))
+            .apply(ParDo.of(new AlertLatency.OutputFn(true)))
+            .apply(MapElements.via(new AlertFormatter.AlertToString()));
+
+    PAssert.that(res)
+        .satisfies(
+            results -> {
+              for (String s : results) {
+                Alert a = Alert.fromJSON(s);
+                assertNotNull(a);
+                assertEquals(1000L, (long) AlertLatency.getStage(a, AlertLatency.STAGE_WINDOW));
+                Long formatted = AlertLatency.getStage(a, AlertLatency.STAGE_FORMATTED);
+                Long output = AlertLatency.getStage(a, AlertLatency.STAGE_OUTPUT);
+                assertNotNull(formatted);
+                assertNotNull(output);
+                assertTrue(output >= formatted);
+                assertNull(AlertLatency.getStage(a, "unknown"));
+              }
+              return null;
+            });
+
+    p.run().waitUntilFinish();
+  }
+
+  @Test
+  public void traceStageTest() {
+    Alert a = new Alert();
+    AlertLatency.addStage(a, AlertLatency.STAGE_WINDOW, 1000L);
+    AlertLatency.addStage(a, AlertLatency.STAGE_FORMATTED, 2000L);
+    // Formatting an alert again replaces the recorded stage
+    AlertLatency.addStage(a, AlertLatency.STAGE_FORMATTED, 3000L);
+    assertEquals("window=1000,formatted=3000", a.getMetadataValue(AlertMeta.Key.TRACE));
+    assertEquals(3000L, (long) AlertLatency.getStage(a, AlertLatency.STAGE_FORMATTED));
+  }
 }
@@ -0,0 +1,174 @@
+package com.mozilla.secops.alert;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.testing.PAssert;
+import org.apache.beam.sdk.testing.TestPipeline;
+import org.apache.beam.sdk.testing.TestStream;
+import org.apache.beam.sdk.transforms.DoFn;
+import org.apache.beam.sdk.transforms.ParDo;
+import org.apache.beam.sdk.util.CoderUtils;
+import org.apache.beam.sdk.values.KV;
+import org.apache.beam.sdk.values.PCollection;
+import org.joda.time.DateTime;
+import org.joda.time.Duration;
+import org.joda.time.Instant;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class TestAlertSuppressor implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  @Rule public final transient TestPipeline p = TestPipeline.create();
+
+  public TestAlertSuppressor() {}
+
+  @Test
+  public void suppressionStateCoderTest() throws Exception {
+    AlertSuppressor.AlertSuppressionStateCoder coder =
+        AlertSuppressor.AlertSuppressionStateCoder.of();
+
+    AlertSuppressor.AlertSuppressionState ss = new AlertSuppressor.AlertSuppressionState();
+    ss.key = "127.0.0.1";
+    ss.timestamp = new Instant(1577836800000L);
+    byte[] buf = CoderUtils.encodeToByteArray(coder, ss);
+    assertTrue(buf.length < 10);
+    AlertSuppressor.AlertSuppressionState nss = CoderUtils.decodeFromByteArray(coder, buf);
+    assertEquals(ss.timestamp, nss.timestamp);
+    assertNull(nss.count);
+    assertNull(nss.timerUpdated);
+    // Key is not encoded, it is restored from the state key
+    assertNull(nss.key);
+
+    ss.count = 50;
+    ss.timerUpdated = 1577836860000L;
+    nss = CoderUtils.decodeFromByteArray(coder, CoderUtils.encodeToByteArray(coder, ss));
+    assertEquals(ss.timestamp, nss.timestamp);
+    assertEquals(50, (int) nss.count);
+    assertEquals(1577836860000L, (long) nss.timerUpdated);
+  }
+
+  @Test
+  public void decayingMembershipFilterTest() throws Exception {
+    AtomicLong now = new AtomicLong(0L);
+    DecayingMembershipFilter f = new DecayingMembershipFilter(60000L, 1000, 0.0001);
+    f.setClock(now::get);
+
+    assertFalse(f.mightContainAndPut("a"));
+    assertTrue(f.mightContainAndPut("a"));
+    now.set(30000L);
+    assertFalse(f.mightContainAndPut("b"));
+
+    // Keys remain present for at least the decay interval after they were added
+    now.set(60000L);
+    assertTrue(f.mightContainAndPut("b"));
+    now.set(120000L);
+    assertTrue(f.mightContainAndPut("b"));
+    assertFalse(f.mightContainAndPut("a"));
+  }
+
+  private PCollection<String> suppress(
+      PCollection<String> input, String name, AlertSuppressor suppressor) {
+    return input
+        .apply(
+            name + " alerts",
+            ParDo.of(
+                new DoFn<String, KV<String, Alert>>() {
+                  private static final long serialVersionUID = 1L;
+
+                  @ProcessElement
+                  public void processElement(ProcessContext c) {
+                    String[] parts = c.element().split(":");
+                    Alert a = new Alert();
+                    a.setTimestamp(new DateTime(Long.parseLong(parts[2])));
+                    a.addMetadata(AlertMeta.Key.COUNT, parts[1]);
+                    c.output(KV.of(parts[0], a));
+                  }
+                }))
+        .apply(name + " suppress", ParDo.of(suppressor))
+        .apply(
+            name + " format",
+            ParDo.of(
+                new DoFn<Alert, String>() {
+                  private static final long serialVersionUID = 1L;
+
+                  @ProcessElement
+                  public void processElement(ProcessContext c) {
+                    c.output(
+                        String.format(
+                            "%s:%d",
+                            c.element().getMetadataValue(AlertMeta.Key.COUNT),
+                            c.element().getTimestamp().getMillis()));
+                  }
+                }));
+  }
+
+  @Test
+  public void compactSuppressionTest() throws Exception {
+    TestStream<String> s =
+        TestStream.create(StringUtf8Coder.of())
+            .advanceWatermarkTo(new Instant(0L))
+            .addElements("a:5:1000", "b:1:1000")
+            .advanceProcessingTime(Duration.standardSeconds(10))
+            .addElements("a:5:2000", "a:5:3000", "b:1:3000")
+            .advanceProcessingTime(Duration.standardSeconds(10))
+            .addElements("a:6:4000", "a:6:5000")
+            .advanceProcessingTime(Duration.standardSeconds(10))
+            // Outside of the suppression interval for the alert timestamps
+            .addElements("b:1:700000")
+            .advanceWatermarkToInfinity();
+
+    PCollection<String> input = p.apply(s);
+    String[] expected = new String[] {"5:1000", "1:1000", "6:4000", "1:700000"};
+    PAssert.that(suppress(input, "default", new AlertSuppressorCount(600L)))
+        .containsInAnyOrder(expected);
+    PAssert.that(suppress(input, "compact", new AlertSuppressorCount(600L, 60L, false)))
+        .containsInAnyOrder(expected);
+    PAssert.that(suppress(input, "membership", new AlertSuppressorCount(600L, 60L, true)))
+        .containsInAnyOrder(expected);
+
+    p.run().waitUntilFinish();
+  }
+
+  @Test
+  public void compactTimerTargetTest() throws Exception {
+    long expiry = 600000L;
+    long granularity = 300000L;
+    // No existing timer
+    assertEquals(900000L, (long) AlertSuppressor.compactTimerTarget(null, 0L, expiry, granularity));
+    // Existing timer set at 0 fires at 900000, which covers updates up to 240000
+    assertNull(AlertSuppressor.compactTimerTarget(0L, 240000L, expiry, granularity));
+    // Later updates require the timer to be reset, even within the granularity of the last one
+    assertEquals(
+        1200000L, (long) AlertSuppressor.compactTimerTarget(0L, 250000L, expiry, granularity));
+  }
+
+  @Test
+  public void compactSuppressionTimerTest() throws Exception {
+    // Advancing processing time past the timer granularity but within the expiry must not clear
+    // suppression state
+    TestStream<String> s =
+        TestStream.create(StringUtf8Coder.of())
+            .advanceWatermarkTo(new Instant(0L))
+            .addElements("a:1:1000")
+            .advanceProcessingTime(Duration.standardSeconds(150))
+            .addElements("a:1:2000")
+            .advanceProcessingTime(Duration.standardSeconds(150))
+            .addElements("a:1:3000")
+            .advanceWatermarkToInfinity();
+
+    PCollection<String> input = p.apply(s);
+    PAssert.that(suppress(input, "compact", new AlertSuppressorCount(600L, 60L, false)))
+        .containsInAnyOrder("1:1000");
+    PAssert.that(suppress(input, "membership", new AlertSuppressorCount(600L, 60L, true)))
+        .containsInAnyOrder("1:1000");
+
+    p.run().waitUntilFinish();
+  }
+}
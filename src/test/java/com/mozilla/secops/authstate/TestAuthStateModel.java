@@ -6,11 +6,18 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.joda.JodaModule;
 import com.mozilla.secops.state.DatastoreStateInterface;
 import com.mozilla.secops.state.State;
 import com.mozilla.secops.state.StateCursor;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.util.AbstractMap;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
 import org.joda.time.DateTime;
 import org.junit.Rule;
 import org.junit.Test;
@@ -48,6 +55,91 @@ public class TestAuthStateModel {
     assertEquals(4L, ret.get(3).getValue().getTimestamp().getMillis());
   }
 
+  @Test
+  public void authStateModelEncodingTest() throws Exception {
+    ObjectMapper mapper = new ObjectMapper();
+    mapper.registerModule(new JodaModule());
+    mapper.configure(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, false);
+
+    // Entries stored using the JSON object form must still be readable
+    String legacy =
+        "{\"subject\":\"riker\",\"entries\":{"
+            + "\"127.0.0.2\":{\"latitude\":null,\"longitude\":null,"
+            + "\"timestamp\":\"2020-01-02T00:00:00.000Z\",\"useragent\":null},"
+            + "\"127.0.0.1\":{\"latitude\":1.5,\"longitude\":-2.5,"
+            + "\"timestamp\":\"2020-01-01T00:00:00.000Z\",\"useragent\":\"Mozilla\"}}}";
+    AuthStateModel sm = mapper.readValue(legacy, AuthStateModel.class);
+    assertEquals("riker", sm.getSubject());
+    assertEquals(2, sm.size());
+    ArrayList<AbstractMap.SimpleEntry<String, AuthStateModel.ModelEntry>> ret =
+        sm.timeSortedEntries();
+    assertEquals("127.0.0.1", ret.get(0).getKey());
+    assertEquals(1.5, ret.get(0).getValue().getLatitude(), 0.0);
+    assertEquals(-2.5, ret.get(0).getValue().getLongitude(), 0.0);
+    assertEquals("Mozilla", ret.get(0).getValue().getUserAgent());
+    assertEquals(1577836800000L, ret.get(0).getValue().getTimestamp().getMillis());
+    assertEquals("127.0.0.2", ret.get(1).getKey());
+    assertNull(ret.get(1).getValue().getLatitude());
+    assertNull(ret.get(1).getValue().getUserAgent());
+
+    // Models are written in the compact form, which is smaller and round trips
+    String buf = mapper.writeValueAsString(sm);
+    assertTrue(buf.startsWith("\""));
+    assertTrue(buf.length() < legacy.length());
+    AuthStateModel nsm = mapper.readValue(buf, AuthStateModel.class);
+    assertEquals(buf, mapper.writeValueAsString(nsm));
+    assertEquals("riker", nsm.getSubject());
+    ret = nsm.timeSortedEntries();
+    assertEquals(2, ret.size());
+    assertEquals("127.0.0.1", ret.get(0).getKey());
+    assertEquals(1.5, ret.get(0).getValue().getLatitude(), 0.0);
+    assertEquals("Mozilla", ret.get(0).getValue().getUserAgent());
+    assertEquals(1577923200000L, ret.get(1).getValue().getTimestamp().getMillis());
+    assertNull(ret.get(1).getValue().getLongitude());
+
+    // Updating an existing address moves it to the latest position
+    assertFalse(nsm.updateEntry("127.0.0.1", new DateTime(1577930000000L), 3.0, 3.0));
+    assertEquals("127.0.0.1", nsm.timeSortedEntries().get(1).getKey());
+    new PruningStrategyLatest().pruneState(nsm);
+    assertEquals(1, nsm.size());
+    assertEquals("127.0.0.1", nsm.timeSortedEntries().get(0).getKey());
+  }
+
+  @Test
+  public void authStateModelEncodingLongStringTest() throws Exception {
+    // Strings longer than 65535 encoded bytes must be supported
+    char[] c = new char[70000];
+    Arrays.fill(c, '\u00e9');
+    String ua = new String(c);
+    AuthStateModel sm = new AuthStateModel("riker");
+    AuthStateModel.ModelEntryUpdate m = new AuthStateModel.ModelEntryUpdate();
+    m.ipAddress = "127.0.0.1";
+    m.timestamp = new DateTime(1L);
+    m.userAgent = ua;
+    sm.updateEntry(m);
+    AuthStateModel nsm = AuthStateModel.fromCompact(sm.toCompact());
+    assertEquals(ua, nsm.timeSortedEntries().get(0).getValue().getUserAgent());
+
+    // Models written using version 1 of the compact form must still be readable
+    ByteArrayOutputStream buf = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(buf)) {
+      out.writeByte(1);
+      out.writeBoolean(true);
+      out.writeUTF("riker");
+      out.writeInt(1);
+      out.writeUTF("127.0.0.2");
+      out.writeLong(2L);
+      out.writeByte(0x02);
+      out.writeUTF("Mozilla");
+    }
+    nsm = AuthStateModel.fromCompact(Base64.getEncoder().encodeToString(buf.toByteArray()));
+    assertEquals("riker", nsm.getSubject());
+    assertEquals(1, nsm.size());
+    assertEquals("127.0.0.2", nsm.timeSortedEntries().get(0).getKey());
+    assertEquals("Mozilla", nsm.timeSortedEntries().get(0).getValue().getUserAgent());
+    assertNull(nsm.timeSortedEntries().get(0).getValue().getLatitude());
+  }
+
   @Test
   public void authStateModelTest() throws Exception {
     testEnv();
@@ -0,0 +1,76 @@
+package com.mozilla.secops.awsbehavior;
+
+import static org.junit.Assert.assertEquals;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mozilla.secops.TestUtil;
+import com.mozilla.secops.parser.Event;
+import com.mozilla.secops.parser.EventFilterRule;
+import com.mozilla.secops.parser.Parser;
+import com.mozilla.secops.parser.ParserCfg;
+import com.mozilla.secops.parser.ParserTest;
+import java.util.ArrayList;
+import org.junit.Test;
+
+public class TestCloudtrailMatcherSet {
+  public TestCloudtrailMatcherSet() {}
+
+  private static final String MATCHERS =
+      "{\"event_matchers\": ["
+          + "{\"description\": \"access key created\", \"resource\": \"requestParameters.userName\","
+          + "\"fields\": [[\"eventName\", \"CreateAccessKey\"]]},"
+          + "{\"description\": \"iam no mfa\", \"fields\": [[\"eventSource\", \"iam.amazonaws.com\"],"
+          + "[\"recipientAccountId\", \"1122334455|123456789\"],"
+          + "[\"userIdentity.invokedBy\", \"signin.amazonaws.com\"],"
+          + "[\"userIdentity.sessionContext.attributes.mfaAuthenticated\", \"false\"]]},"
+          + "{\"description\": \"any create\", \"fields\": [[\"eventName\", \"Create.*\"],"
+          + "[\"eventSource\", \"iam\\\\.amazonaws\\\\.com\"]]},"
+          + "{\"description\": \"any iam\", \"fields\": [[\"eventSource\", \"iam.*\"]]},"
+          + "{\"description\": \"unknown\", \"fields\": [[\"notAField\", \"x\"]]},"
+          + "{\"description\": \"bad regex\", \"fields\": [[\"eventName\", \"(\"]]},"
+          + "{\"description\": \"both names\", \"fields\": [[\"eventName\", \"Create.*\"],"
+          + "[\"eventName\", \".*Key\"]]},"
+          + "{\"description\": \"mfa only\", \"fields\": "
+          + "[[\"userIdentity.sessionContext.attributes.mfaAuthenticated\", \"true\"]]}"
+          + "]}";
+
+  private static ArrayList<CloudtrailMatcher> individualMatches(
+      ArrayList<CloudtrailMatcher> cms, Event e) {
+    ArrayList<CloudtrailMatcher> ret = new ArrayList<>();
+    for (CloudtrailMatcher cm : cms) {
+      EventFilterRule rule;
+      try {
+        rule = cm.toEventFilterRule();
+      } catch (Exception exc) {
+        continue;
+      }
+      if (rule.matches(e)) {
+        ret.add(cm);
+      }
+    }
+    return ret;
+  }
+
+  @Test
+  public void matcherSetEquivalenceTest() throws Exception {
+    ArrayList<CloudtrailMatcher> cms =
+        new ObjectMapper().readValue(MATCHERS, CloudtrailMatcherManager.class).getEventMatchers();
+    CloudtrailMatcherSet set = new CloudtrailMatcherSet(cms);
+    assertEquals(8, set.size());
+
+    ParserCfg cfg = new ParserCfg();
+    cfg.setMaxmindCityDbPath(ParserTest.TEST_GEOIP_DBPATH);
+    Parser p = new Parser(cfg);
+    int total = 0;
+    // Evaluate each event twice so both the index build and cached paths are exercised
+    for (int i = 0; i < 2; i++) {
+      for (String buf : TestUtil.getTestInputArray("/testdata/cloudtrail_buffer1.txt")) {
+        Event e = p.parse(buf);
+        ArrayList<CloudtrailMatcher> expect = individualMatches(cms, e);
+        assertEquals(expect, set.matches(e));
+        total += expect.size();
+      }
+    }
+    assertEquals(22, total);
+  }
+}
@@ -0,0 +1,135 @@
+package com.mozilla.secops.customs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.mozilla.secops.state.StateException;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+
+public class TestAtRiskAccountFilter {
+  private final CustomsMetrics.AtRiskAccountFilterMetrics metrics =
+      new CustomsMetrics.AtRiskAccountFilterMetrics("test");
+
+  public TestAtRiskAccountFilter() {}
+
+  @Test
+  public void filterTest() throws Exception {
+    ArrayList<String> keys = new ArrayList<>();
+    keys.add("riker@mozilla.com");
+    AtomicInteger loads = new AtomicInteger();
+    AtomicLong now = new AtomicLong(0L);
+
+    AtRiskAccountFilter f =
+        new AtRiskAccountFilter(
+            () -> {
+              loads.incrementAndGet();
+              return new ArrayList<>(keys);
+            },
+            60000L,
+            0.0001);
+    f.setClock(now::get);
+    f.setExecutor(Runnable::run);
+
+    assertTrue(f.mightContain("riker@mozilla.com", metrics));
+    int fp = 0;
+    for (int i = 0; i < 1000; i++) {
+      if (f.mightContain(String.format("user%d@mozilla.com", i), metrics)) {
+        fp++;
+      }
+    }
+    assertTrue(fp < 5);
+    assertEquals(1, loads.get());
+
+    // New keys are not visible until the filter is rebuilt
+    keys.add("worf@mozilla.com");
+    now.set(30000L);
+    assertFalse(f.mightContain("worf@mozilla.com", metrics));
+    now.set(60000L);
+    assertTrue(f.mightContain("worf@mozilla.com", metrics));
+    assertEquals(2, loads.get());
+
+    // Unless they are recorded as an addition in this JVM
+    AtRiskAccountFilter.recordAddition("troi@mozilla.com");
+    assertTrue(f.mightContain("troi@mozilla.com", metrics));
+  }
+
+  @Test
+  public void filterLoadFailureTest() throws Exception {
+    AtomicInteger loads = new AtomicInteger();
+    AtomicBoolean fail = new AtomicBoolean(false);
+    ArrayList<String> keys = new ArrayList<>();
+    keys.add("riker@mozilla.com");
+    AtRiskAccountFilter f =
+        new AtRiskAccountFilter(
+            () -> {
+              loads.incrementAndGet();
+              if (fail.get()) {
+                throw new StateException("unavailable");
+              }
+              return new ArrayList<>(keys);
+            },
+            60000L,
+            0.01);
+    AtomicLong now = new AtomicLong(0L);
+    f.setClock(now::get);
+    f.setExecutor(Runnable::run);
+
+    assertFalse(f.mightContain("worf@mozilla.com", metrics));
+    assertEquals(1, loads.get());
+
+    // After a failed rebuild every lookup is forwarded, and the loader is not retried until the
+    // rebuild interval elapses
+    fail.set(true);
+    now.set(60000L);
+    assertTrue(f.mightContain("worf@mozilla.com", metrics));
+    assertTrue(f.mightContain("troi@mozilla.com", metrics));
+    assertEquals(2, loads.get());
+
+    // The filter is used again once a rebuild succeeds
+    fail.set(false);
+    now.set(120000L);
+    assertFalse(f.mightContain("worf@mozilla.com", metrics));
+    assertEquals(3, loads.get());
+  }
+
+  @Test
+  public void filterAsyncTest() throws Exception {
+    ArrayList<Runnable> pending = new ArrayList<>();
+    AtomicLong now = new AtomicLong(0L);
+    ArrayList<String> keys = new ArrayList<>();
+    keys.add("riker@mozilla.com");
+    AtRiskAccountFilter f = new AtRiskAccountFilter(() -> new ArrayList<>(keys), 60000L, 0.01);
+    f.setClock(now::get);
+    f.setExecutor(pending::add);
+
+    // Lookups do not wait for the rebuild, and are forwarded until the filter has been built
+    assertTrue(f.mightContain("worf@mozilla.com", metrics));
+    assertTrue(f.mightContain("worf@mozilla.com", metrics));
+    assertEquals(1, pending.size());
+    pending.remove(0).run();
+    assertFalse(f.mightContain("worf@mozilla.com", metrics));
+
+    // A rebuild that has not completed within twice the interval leaves the filter stale
+    now.set(60000L);
+    assertFalse(f.mightContain("worf@mozilla.com", metrics));
+    assertEquals(1, pending.size());
+    now.set(120000L);
+    assertTrue(f.mightContain("worf@mozilla.com", metrics));
+    assertEquals(1, pending.size());
+    pending.remove(0).run();
+    assertFalse(f.mightContain("worf@mozilla.com", metrics));
+  }
+
+  @Test
+  public void filterSharedTest() throws Exception {
+    AtRiskAccountFilter f =
+        AtRiskAccountFilter.forId("shared", () -> new ArrayList<>(), 60000L, 0.01);
+    assertSame(f, AtRiskAccountFilter.forId("shared", () -> new ArrayList<>(), 60000L, 0.01));
+  }
+}
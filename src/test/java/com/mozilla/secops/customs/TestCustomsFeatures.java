@@ -14,12 +14,17 @@ import com.mozilla.secops.parser.Payload;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
 import org.apache.beam.sdk.testing.PAssert;
 import org.apache.beam.sdk.testing.TestPipeline;
+import org.apache.beam.sdk.testing.TestStream;
 import org.apache.beam.sdk.transforms.DoFn;
+import org.apache.beam.sdk.transforms.PTransform;
 import org.apache.beam.sdk.transforms.ParDo;
 import org.apache.beam.sdk.values.KV;
 import org.apache.beam.sdk.values.PCollection;
+import org.joda.time.Duration;
+import org.joda.time.Instant;
 import org.junit.Rule;
 import org.junit.Test;
 
@@ -208,4 +213,62 @@ public class TestCustomsFeatures implements Serializable {
 
     p.run().waitUntilFinish();
   }
+
+  @Test
+  public void testCustomsFeaturesDelta() throws Exception {
+    TestStream<String> s =
+        TestStream.create(StringUtf8Coder.of())
+            .advanceWatermarkTo(new Instant(0L))
+            .addElements("one", "two", "three")
+            .advanceProcessingTime(Duration.standardSeconds(60))
+            .addElements("four")
+            .advanceProcessingTime(Duration.standardSeconds(60))
+            .advanceWatermarkToInfinity();
+
+    PCollection<KV<String, CustomsFeatures>> features =
+        p.apply(s)
+            .apply(ParDo.of(new ParserDoFn()))
+            .apply(
+                ParDo.of(
+                    new DoFn<Event, KV<String, Event>>() {
+                      private static final long serialVersionUID = 1L;
+
+                      @ProcessElement
+                      public void processElement(ProcessContext c) {
+                        c.output(KV.of("10.0.0.1", c.element()));
+                      }
+                    }))
+            .apply(new CustomsWindow.FixedTenMinutes())
+            .apply(new CustomsFeaturesCombiner());
+
+    // The on time pane is unchanged from the final early pane, so it is only seen without the
+    // delta transform
+    PAssert.that(features.apply("all totals", new FeatureTotals())).containsInAnyOrder(3, 4, 4);
+    PAssert.that(
+            features
+                .apply(new CustomsFeaturesDelta("test"))
+                .apply("delta totals", new FeatureTotals()))
+        .containsInAnyOrder(3, 4);
+
+    p.run().waitUntilFinish();
+  }
+
+  private static class FeatureTotals
+      extends PTransform<PCollection<KV<String, CustomsFeatures>>, PCollection<Integer>> {
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    public PCollection<Integer> expand(PCollection<KV<String, CustomsFeatures>> input) {
+      return input.apply(
+          ParDo.of(
+              new DoFn<KV<String, CustomsFeatures>, Integer>() {
+                private static final long serialVersionUID = 1L;
+
+                @ProcessElement
+                public void processElement(ProcessContext c) {
+                  c.output(c.element().getValue().getTotalEvents());
+                }
+              }));
+    }
+  }
 }
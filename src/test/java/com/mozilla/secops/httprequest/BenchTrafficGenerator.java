@@ -0,0 +1,82 @@
+package com.mozilla.secops.httprequest;
+
+import static org.junit.Assert.*;
+
+import com.carrotsearch.junitbenchmarks.BenchmarkOptions;
+import com.carrotsearch.junitbenchmarks.BenchmarkRule;
+import com.mozilla.secops.alert.Alert;
+import org.apache.beam.sdk.Pipeline;
+import org.apache.beam.sdk.PipelineResult;
+import org.apache.beam.sdk.metrics.DistributionResult;
+import org.apache.beam.sdk.metrics.MetricNameFilter;
+import org.apache.beam.sdk.metrics.MetricResult;
+import org.apache.beam.sdk.metrics.Metrics;
+import org.apache.beam.sdk.metrics.MetricsFilter;
+import org.apache.beam.sdk.options.PipelineOptionsFactory;
+import org.apache.beam.sdk.transforms.DoFn;
+import org.apache.beam.sdk.transforms.ParDo;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestRule;
+
+public class BenchTrafficGenerator {
+  @Rule public TestRule benchmarkRun = new BenchmarkRule();
+
+  private static final long RATE = 5000;
+  private static final long EVENTS = 20000;
+
+  private static class AlertLatencyFn extends DoFn<Alert, Void> {
+    private static final long serialVersionUID = 1L;
+
+    @ProcessElement
+    public void processElement(ProcessContext c) {
+      Metrics.distribution("bench", "alert_latency_ms")
+          .update(System.currentTimeMillis() - c.timestamp().getMillis());
+    }
+  }
+
+  @BenchmarkOptions(benchmarkRounds = 1, warmupRounds = 0)
+  @Test
+  public void benchmarkHardLimit() throws Exception {
+    HTTPRequest.HTTPRequestOptions options =
+        PipelineOptionsFactory.as(HTTPRequest.HTTPRequestOptions.class);
+    options.setInputSynthetic(String.format("glb:%d:%d", RATE, EVENTS));
+    options.setMonitoredResourceIndicator("synthetic");
+    options.setEnableHardLimitAnalysis(true);
+    options.setHardLimitRequestCount(100L);
+
+    Pipeline p = Pipeline.create(options);
+    HTTPRequest.expandInputMap(
+            p, HTTPRequest.readInput(p, HTTPRequest.getInput(p, options), options), options)
+        .apply(ParDo.of(new AlertLatencyFn()));
+
+    long start = System.currentTimeMillis();
+    PipelineResult result = p.run();
+    result.waitUntilFinish();
+    long elapsed = System.currentTimeMillis() - start;
+
+    DistributionResult latency = null;
+    for (MetricResult<DistributionResult> r :
+        result
+            .metrics()
+            .queryMetrics(
+                MetricsFilter.builder()
+                    .addNameFilter(MetricNameFilter.named("bench", "alert_latency_ms"))
+                    .build())
+            .getDistributions()) {
+      latency = r.getAttempted();
+    }
+    assertNotNull(latency);
+    assertTrue(latency.getCount() > 0);
+    System.out.println(
+        String.format(
+            "target %d events/s, sustained %d events/s, %d alerts, latency ms min %d mean %.0f"
+                + " max %d",
+            RATE,
+            EVENTS * 1000L / Math.max(elapsed, 1),
+            latency.getCount(),
+            latency.getMin(),
+            latency.getMean(),
+            latency.getMax()));
+  }
+}
@@ -105,6 +105,27 @@ public class TestErrorRate1 {
     p.run().waitUntilFinish();
   }
 
+  @Test
+  public void errorRateTestHeavyHitters() throws Exception {
+    HTTPRequest.HTTPRequestOptions options = getTestOptions();
+
+    options.setInputFile(new String[] {"./target/test-classes/testdata/httpreq_errorrate1.txt"});
+    options.setEnableErrorRateAnalysis(true);
+    options.setMaxClientErrorRate(30L);
+    options.setIgnoreInternalRequests(false); // Tests use internal subnets
+    options.setEnableHeavyHitterCounting(true);
+    // Use a very small sketch to force collisions, the result should remain exact
+    options.setHeavyHitterSketchWidth(2);
+
+    PCollection<Alert> results =
+        HTTPRequest.expandInputMap(
+            p, HTTPRequest.readInput(p, HTTPRequest.getInput(p, options), options), options);
+
+    runAssertions(results);
+
+    p.run().waitUntilFinish();
+  }
+
   @Test
   public void errorRateTestCfg() throws Exception {
     HTTPRequest.HTTPRequestOptions options = getTestOptions();
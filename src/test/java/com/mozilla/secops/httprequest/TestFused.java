@@ -0,0 +1,172 @@
+package com.mozilla.secops.httprequest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import com.mozilla.secops.alert.Alert;
+import com.mozilla.secops.alert.AlertFormatter;
+import com.mozilla.secops.alert.AlertMeta;
+import com.mozilla.secops.httprequest.HTTPRequest.UserAgentBlocklistAnalysis;
+import java.io.Serializable;
+import java.util.HashMap;
+import org.apache.beam.sdk.PipelineResult;
+import org.apache.beam.sdk.metrics.MetricNameFilter;
+import org.apache.beam.sdk.metrics.MetricResult;
+import org.apache.beam.sdk.metrics.MetricsFilter;
+import org.apache.beam.sdk.options.PipelineOptionsFactory;
+import org.apache.beam.sdk.testing.PAssert;
+import org.apache.beam.sdk.testing.TestPipeline;
+import org.apache.beam.sdk.transforms.Combine;
+import org.apache.beam.sdk.transforms.Count;
+import org.apache.beam.sdk.transforms.ParDo;
+import org.apache.beam.sdk.values.PCollection;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class TestFused implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  public TestFused() {}
+
+  @Rule public final transient TestPipeline p = TestPipeline.create();
+
+  private HTTPRequest.HTTPRequestOptions getTestOptions() {
+    HTTPRequest.HTTPRequestOptions ret =
+        PipelineOptionsFactory.as(HTTPRequest.HTTPRequestOptions.class);
+    ret.setGenerateConfigurationTicksInterval(1);
+    ret.setGenerateConfigurationTicksMaximum(5L);
+    ret.setEnableFusedMultimodeAnalysis(true);
+    return ret;
+  }
+
+  @Test
+  public void testFusedMulti1() throws Exception {
+    HTTPRequest.HTTPRequestOptions options = getTestOptions();
+    options.setPipelineMultimodeConfiguration("/testdata/httpreq_multi1.json");
+
+    PCollection<Alert> results =
+        HTTPRequest.expandFused(p, HTTPRequest.getInput(p, options), options)
+            .apply(ParDo.of(new AlertFormatter(options)));
+
+    PCollection<Long> resultCount =
+        results.apply(Combine.globally(Count.<Alert>combineFn()).withoutDefaults());
+    PAssert.thatSingleton(resultCount)
+        .isEqualTo(12L); // Should have two alerts and 10 configuration events
+
+    PAssert.that(results)
+        .satisfies(
+            i -> {
+              int hlAlerts = 0;
+              int erAlerts = 0;
+
+              int r1Ticks = 0;
+              int r2Ticks = 0;
+              for (Alert a : i) {
+                if (a.getMetadataValue(AlertMeta.Key.ALERT_SUBCATEGORY_FIELD)
+                    .equals("hard_limit")) {
+                  assertEquals("192.168.1.2", a.getMetadataValue(AlertMeta.Key.SOURCEADDRESS));
+                  assertEquals("resource2 httprequest hard_limit 192.168.1.2 11", a.getSummary());
+                  assertEquals(11L, Long.parseLong(a.getMetadataValue(AlertMeta.Key.COUNT)));
+                  assertEquals(
+                      10L, Long.parseLong(a.getMetadataValue(AlertMeta.Key.REQUEST_THRESHOLD)));
+                  assertEquals(
+                      "1970-01-01T00:00:59.999Z",
+                      a.getMetadataValue(AlertMeta.Key.WINDOW_TIMESTAMP));
+                  assertEquals("resource2", a.getMetadataValue(AlertMeta.Key.MONITORED_RESOURCE));
+                  assertEquals(
+                      "resource2 hard_limit_count", a.getMetadataValue(AlertMeta.Key.NOTIFY_MERGE));
+                  hlAlerts++;
+                } else if (a.getMetadataValue(AlertMeta.Key.ALERT_SUBCATEGORY_FIELD)
+                    .equals("error_rate")) {
+                  assertEquals("10.0.0.1", a.getMetadataValue(AlertMeta.Key.SOURCEADDRESS));
+                  assertEquals("resource1 httprequest error_rate 10.0.0.1 35", a.getSummary());
+                  assertEquals(
+                      35L, Long.parseLong(a.getMetadataValue(AlertMeta.Key.ERROR_COUNT), 10));
+                  assertEquals(
+                      30L, Long.parseLong(a.getMetadataValue(AlertMeta.Key.ERROR_THRESHOLD), 10));
+                  assertEquals(
+                      "1970-01-01T00:00:59.999Z",
+                      a.getMetadataValue(AlertMeta.Key.WINDOW_TIMESTAMP));
+                  assertEquals("resource1", a.getMetadataValue(AlertMeta.Key.MONITORED_RESOURCE));
+                  assertEquals(
+                      "resource1 error_count", a.getMetadataValue(AlertMeta.Key.NOTIFY_MERGE));
+                  erAlerts++;
+                } else if (a.getCategory().equals("httprequest-cfgtick")) {
+                  if (a.getMetadataValue(AlertMeta.Key.MONITORED_RESOURCE).equals("resource1")) {
+                    assertNotNull(a.getCustomMetadataValue("heuristic_ErrorRateAnalysis"));
+                    assertNull(a.getCustomMetadataValue("heuristic_HardLimitAnalysis"));
+                    r1Ticks++;
+                  } else if (a.getMetadataValue(AlertMeta.Key.MONITORED_RESOURCE)
+                      .equals("resource2")) {
+                    assertNull(a.getCustomMetadataValue("heuristic_ErrorRateAnalysis"));
+                    assertNotNull(a.getCustomMetadataValue("heuristic_HardLimitAnalysis"));
+                    r2Ticks++;
+                  } else {
+                    fail("bad resource value for configuration tick");
+                  }
+                }
+              }
+              assertEquals(1, hlAlerts);
+              assertEquals(1, erAlerts);
+
+              assertEquals(5, r1Ticks);
+              assertEquals(5, r2Ticks);
+              return null;
+            });
+
+    p.run().waitUntilFinish();
+  }
+
+  @Test
+  public void testFusedUserAgentBlocklistWithNatDetect() throws Exception {
+    HTTPRequest.HTTPRequestOptions options = getTestOptions();
+    options.setGenerateConfigurationTicksInterval(0);
+    options.setUseEventTimestamp(true);
+    options.setUserAgentBlocklistPath("/testdata/uablocklist1.txt");
+    options.setMonitoredResourceIndicator("test");
+    options.setInputFile(new String[] {"./target/test-classes/testdata/httpreq_hardlimit1.txt"});
+    options.setIgnoreInternalRequests(false);
+    options.setEnableUserAgentBlocklistAnalysis(true);
+    options.setNatDetection(true);
+
+    PCollection<Alert> results =
+        HTTPRequest.expandFused(p, HTTPRequest.getInput(p, options), options);
+
+    PAssert.that(results).empty();
+
+    PipelineResult pResult = p.run();
+    pResult.waitUntilFinish();
+
+    Iterable<MetricResult<Long>> vWrites =
+        pResult
+            .metrics()
+            .queryMetrics(
+                MetricsFilter.builder()
+                    .addNameFilter(
+                        MetricNameFilter.named(
+                            UserAgentBlocklistAnalysis.class.getName(),
+                            HTTPRequestMetrics.HeuristicMetrics.NAT_DETECTED))
+                    .build())
+            .getCounters();
+    int cnt = 0;
+    for (MetricResult<Long> x : vWrites) {
+      assertEquals(1L, (long) x.getCommitted());
+      cnt++;
+    }
+    assertEquals(1, cnt);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testFusedUnsupported() throws Exception {
+    HTTPRequest.HTTPRequestOptions options = getTestOptions();
+    options.setMonitoredResourceIndicator("test");
+    options.setEnableEndpointAbuseAnalysis(true);
+    options.setEndpointAbusePath(new String[] {"8:GET:/test"});
+
+    HashMap<String, HTTPRequestToggles> toggles = new HashMap<>();
+    toggles.put("test", HTTPRequestToggles.fromPipelineOptions(options));
+    new HTTPRequestFusedAnalysis(options, toggles);
+  }
+}
@@ -39,8 +39,18 @@ public class TestThresholdAnalysis1 {
 
   @Test
   public void thresholdAnalysisTest() throws Exception {
+    thresholdAnalysisTest(getTestOptions());
+  }
+
+  @Test
+  public void thresholdAnalysisTestHotKeyFanout() throws Exception {
     HTTPRequest.HTTPRequestOptions options = getTestOptions();
+    options.setHotKeyFanout(4);
+    options.setHotKeyThreshold(10L);
+    thresholdAnalysisTest(options);
+  }
 
+  private void thresholdAnalysisTest(HTTPRequest.HTTPRequestOptions options) throws Exception {
     PCollection<Alert> results =
         HTTPRequest.expandInputMap(
             p, HTTPRequest.readInput(p, HTTPRequest.getInput(p, options), options), options);
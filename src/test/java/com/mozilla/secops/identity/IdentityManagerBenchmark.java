@@ -0,0 +1,116 @@
+package com.mozilla.secops.identity;
+
+import static org.junit.Assert.*;
+
+import com.carrotsearch.junitbenchmarks.BenchmarkOptions;
+import com.carrotsearch.junitbenchmarks.BenchmarkRule;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mozilla.secops.CidrUtil;
+import java.util.Map;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestRule;
+
+public class IdentityManagerBenchmark {
+  @Rule public TestRule benchmarkRun = new BenchmarkRule();
+
+  private static final int IDENTITIES = 5000;
+  private static final int SUBNETS = 500;
+
+  private static IdentityManager mgr;
+  private static String[] aliasQueries;
+  private static String[] addressQueries;
+
+  @BeforeClass
+  public static void setup() throws Exception {
+    StringBuilder buf = new StringBuilder();
+    buf.append("{\"identities\":{");
+    for (int i = 0; i < IDENTITIES; i++) {
+      if (i > 0) {
+        buf.append(",");
+      }
+      buf.append(
+          String.format(
+              "\"user%d@mozilla.com\":{\"aliases\":[\"user%d\",\"u%d\",\"User Number %d\"]}",
+              i, i, i, i));
+    }
+    buf.append("},\"aws_account_map\":{\"123456789\":\"test\"},\"named_subnets\":{");
+    for (int i = 0; i < SUBNETS; i++) {
+      if (i > 0) {
+        buf.append(",");
+      }
+      buf.append(String.format("\"subnet%d\":\"10.%d.%d.0/24\"", i, i / 256, i % 256));
+    }
+    buf.append(",\"office\":\"fd00:0:0:0:0:0:0:0/48\"}}");
+    mgr = new ObjectMapper().readValue(buf.toString(), IdentityManager.class);
+
+    aliasQueries = new String[1000];
+    addressQueries = new String[1000];
+    for (int i = 0; i < aliasQueries.length; i++) {
+      // Mix of hits late in the identity list and misses
+      aliasQueries[i] = i % 4 == 0 ? "unknown" + i : "u" + (IDENTITIES - 1 - i);
+      addressQueries[i] =
+          i % 4 == 0 ? "192.168.0." + (i % 256) : String.format("10.1.%d.%d", i % 244, i % 256);
+    }
+  }
+
+  private static String scanAlias(String username) {
+    if (mgr.getIdentities().get(username) != null) {
+      return username;
+    }
+    for (Map.Entry<String, Identity> entry : mgr.getIdentities().entrySet()) {
+      for (String alias : entry.getValue().getAliases()) {
+        if (alias.equals(username)) {
+          return entry.getKey();
+        }
+      }
+    }
+    return null;
+  }
+
+  private static String scanSubnet(String address) {
+    for (Map.Entry<String, String> namedSubnet : mgr.getNamedSubnets().entrySet()) {
+      if (CidrUtil.addressInCidr(address, namedSubnet.getValue())) {
+        return namedSubnet.getKey();
+      }
+    }
+    return null;
+  }
+
+  @BenchmarkOptions(benchmarkRounds = 5, warmupRounds = 1)
+  @Test
+  public void benchmarkAliasScan() throws Exception {
+    for (String s : aliasQueries) {
+      assertEquals(mgr.lookupAlias(s), scanAlias(s));
+    }
+  }
+
+  @BenchmarkOptions(benchmarkRounds = 20, warmupRounds = 5)
+  @Test
+  public void benchmarkAliasIndexed() throws Exception {
+    for (int i = 0; i < 100; i++) {
+      for (String s : aliasQueries) {
+        mgr.lookupAlias(s);
+      }
+    }
+  }
+
+  @BenchmarkOptions(benchmarkRounds = 5, warmupRounds = 1)
+  @Test
+  public void benchmarkNamedSubnetScan() throws Exception {
+    for (String s : addressQueries) {
+      assertEquals(mgr.lookupNamedSubnet(s), scanSubnet(s));
+    }
+  }
+
+  @BenchmarkOptions(benchmarkRounds = 20, warmupRounds = 5)
+  @Test
+  public void benchmarkNamedSubnetTrie() throws Exception {
+    for (int i = 0; i < 100; i++) {
+      for (String s : addressQueries) {
+        mgr.lookupNamedSubnet(s);
+      }
+    }
+  }
+}
@@ -6,6 +6,7 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import java.util.Map;
 import org.junit.Test;
 
@@ -86,6 +87,30 @@ public class TestIdentityManager {
     assertNull(mgr.lookupNamedSubnet(null));
   }
 
+  @Test
+  public void identityManagerNamedSubnetOverlapTest() throws Exception {
+    String buf =
+        "{\"identities\":{\"a@mozilla.com\":{\"aliases\":[\"dup\"]},"
+            + "\"b@mozilla.com\":{\"aliases\":[\"dup\",\"b\"]}},"
+            + "\"named_subnets\":{\"wide\":\"10.0.0.0/8\",\"narrow\":\"10.1.0.0/16\","
+            + "\"host\":\"192.168.1.1\",\"narrow6\":\"fd00:0:0:1:0:0:0:0/64\","
+            + "\"wide6\":\"fd00:0:0:0:0:0:0:0/48\",\"all\":\"0.0.0.0/0\"}}";
+    IdentityManager mgr = new ObjectMapper().readValue(buf, IdentityManager.class);
+    assertNotNull(mgr);
+
+    // Where subnets overlap, the first configured subnet is returned
+    assertEquals("wide", mgr.lookupNamedSubnet("10.1.2.3"));
+    assertEquals("wide", mgr.lookupNamedSubnet("10.255.255.255"));
+    assertEquals("host", mgr.lookupNamedSubnet("192.168.1.1"));
+    assertEquals("all", mgr.lookupNamedSubnet("192.168.1.2"));
+    assertEquals("narrow6", mgr.lookupNamedSubnet("fd00:0:0:1::5"));
+    assertEquals("wide6", mgr.lookupNamedSubnet("fd00:0:0:2::5"));
+    assertNull(mgr.lookupNamedSubnet("fd01::1"));
+
+    assertEquals("a@mozilla.com", mgr.lookupAlias("dup"));
+    assertEquals("b@mozilla.com", mgr.lookupAlias("b"));
+  }
+
   @Test(expected = IllegalArgumentException.class)
   public void identityManagerNamedSubnetInvalidTest() throws Exception {
     IdentityManager mgr = IdentityManager.load("/testdata/identitymanager.json");
@@ -0,0 +1,93 @@
+package com.mozilla.secops.input;
+
+import static org.junit.Assert.*;
+
+import com.carrotsearch.junitbenchmarks.BenchmarkOptions;
+import com.carrotsearch.junitbenchmarks.BenchmarkRule;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+import org.joda.time.Instant;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestRule;
+
+public class BenchKinesisInput {
+  @Rule public TestRule benchmarkRun = new BenchmarkRule();
+
+  private static final int RECORDS = 2000;
+  private static final int LINES_PER_RECORD = 100;
+
+  private static ArrayList<byte[]> plain;
+  private static ArrayList<byte[]> compressed;
+
+  @BeforeClass
+  public static void generate() throws Exception {
+    // Records resembling Kinesis Firehose style batches of load balancer logs
+    TrafficModel model = new TrafficModel(TrafficModel.Format.GLB);
+    Random r = new Random(1);
+    Instant ts = new Instant(1577836800000L);
+    plain = new ArrayList<>();
+    compressed = new ArrayList<>();
+    for (int i = 0; i < RECORDS; i++) {
+      StringBuilder sb = new StringBuilder();
+      for (int j = 0; j < LINES_PER_RECORD; j++) {
+        sb.append(model.generate(r, ts)).append("\n");
+      }
+      byte[] buf = sb.toString().getBytes(StandardCharsets.UTF_8);
+      plain.add(buf);
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      try (GZIPOutputStream gz = new GZIPOutputStream(out)) {
+        gz.write(buf);
+      }
+      compressed.add(out.toByteArray());
+    }
+  }
+
+  private static void report(String name, long lines, long start) {
+    long elapsed = Math.max(System.currentTimeMillis() - start, 1);
+    System.out.println(String.format("%s: %d lines/s", name, lines * 1000L / elapsed));
+  }
+
+  @BenchmarkOptions(benchmarkRounds = 5, warmupRounds = 2)
+  @Test
+  public void benchmarkSplit() throws Exception {
+    long start = System.currentTimeMillis();
+    long n = 0;
+    for (byte[] buf : plain) {
+      for (String i : new String(buf).split("\\r?\\n")) {
+        n += i.length() > 0 ? 1 : 0;
+      }
+    }
+    assertEquals(RECORDS * LINES_PER_RECORD, n);
+    report("split", n, start);
+  }
+
+  @BenchmarkOptions(benchmarkRounds = 5, warmupRounds = 2)
+  @Test
+  public void benchmarkFrame() throws Exception {
+    long start = System.currentTimeMillis();
+    long[] n = new long[1];
+    for (byte[] buf : plain) {
+      KinesisInput.frame(ByteBuffer.wrap(buf), i -> n[0]++);
+    }
+    assertEquals(RECORDS * LINES_PER_RECORD, n[0]);
+    report("frame", n[0], start);
+  }
+
+  @BenchmarkOptions(benchmarkRounds = 5, warmupRounds = 2)
+  @Test
+  public void benchmarkFrameGzip() throws Exception {
+    long start = System.currentTimeMillis();
+    long[] n = new long[1];
+    for (byte[] buf : compressed) {
+      KinesisInput.frame(ByteBuffer.wrap(buf), i -> n[0]++);
+    }
+    assertEquals(RECORDS * LINES_PER_RECORD, n[0]);
+    report("frame gzip", n[0], start);
+  }
+}
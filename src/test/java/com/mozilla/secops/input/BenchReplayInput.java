@@ -0,0 +1,94 @@
+package com.mozilla.secops.input;
+
+import static org.junit.Assert.*;
+
+import com.carrotsearch.junitbenchmarks.BenchmarkOptions;
+import com.carrotsearch.junitbenchmarks.BenchmarkRule;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+import org.apache.beam.sdk.Pipeline;
+import org.apache.beam.sdk.PipelineResult;
+import org.apache.beam.sdk.metrics.MetricNameFilter;
+import org.apache.beam.sdk.metrics.MetricQueryResults;
+import org.apache.beam.sdk.metrics.MetricResult;
+import org.apache.beam.sdk.metrics.MetricsFilter;
+import org.apache.beam.sdk.options.PipelineOptionsFactory;
+import org.apache.beam.sdk.transforms.Count;
+import org.apache.beam.sdk.transforms.DoFn;
+import org.apache.beam.sdk.transforms.ParDo;
+import org.joda.time.Instant;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.rules.TestRule;
+
+public class BenchReplayInput {
+  @Rule public TestRule benchmarkRun = new BenchmarkRule();
+  @ClassRule public static TemporaryFolder tmp = new TemporaryFolder();
+
+  private static final int FILES = 8;
+  private static final int LINES = 50000;
+
+  private static class CheckCountFn extends DoFn<Long, Void> {
+    private static final long serialVersionUID = 1L;
+
+    @ProcessElement
+    public void processElement(ProcessContext c) {
+      assertEquals(FILES * LINES, (long) c.element());
+    }
+  }
+
+  @BeforeClass
+  public static void generate() throws Exception {
+    for (int f = 0; f < FILES; f++) {
+      File out = tmp.newFile(String.format("replay%d.json.gz", f));
+      try (Writer w =
+          new OutputStreamWriter(
+              new GZIPOutputStream(new FileOutputStream(out)), StandardCharsets.UTF_8)) {
+        for (int i = 0; i < LINES; i++) {
+          w.write(
+              String.format(
+                  "{\"httpRequest\":{\"requestMethod\":\"GET\",\"requestUrl\":"
+                      + "\"https://example.com/%d\",\"status\":200,\"remoteIp\":\"10.0.0.%d\"},"
+                      + "\"timestamp\":\"%s\"}\n",
+                  i, i % 254, new Instant(1577836800000L + i * 100L)));
+        }
+      }
+    }
+  }
+
+  @BenchmarkOptions(benchmarkRounds = 3, warmupRounds = 1)
+  @Test
+  public void benchmarkReplay() throws Exception {
+    Pipeline p = Pipeline.create(PipelineOptionsFactory.create());
+    p.apply(new ReplayInput(tmp.getRoot().getAbsolutePath() + "/*.gz", "timestamp", 0))
+        .apply(Count.globally())
+        .apply(ParDo.of(new CheckCountFn()));
+
+    long start = System.currentTimeMillis();
+    PipelineResult result = p.run();
+    result.waitUntilFinish();
+    long elapsed = System.currentTimeMillis() - start;
+
+    MetricQueryResults m =
+        result
+            .metrics()
+            .queryMetrics(
+                MetricsFilter.builder()
+                    .addNameFilter(
+                        MetricNameFilter.named(
+                            ReplayInput.METRICS_NAMESPACE, ReplayInput.NO_TIMESTAMP_METRIC))
+                    .build());
+    for (MetricResult<Long> r : m.getCounters()) {
+      assertEquals(0L, (long) r.getAttempted());
+    }
+    System.out.println(
+        String.format("replayed %d lines/s", FILES * LINES * 1000L / Math.max(elapsed, 1)));
+  }
+}
@@ -0,0 +1,93 @@
+package com.mozilla.secops.input;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.zip.GZIPOutputStream;
+import org.junit.Test;
+
+public class TestKinesisInput {
+  public TestKinesisInput() {}
+
+  private static byte[] gzip(String content) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (GZIPOutputStream gz = new GZIPOutputStream(out)) {
+      gz.write(content.getBytes(StandardCharsets.UTF_8));
+    }
+    return out.toByteArray();
+  }
+
+  private static ArrayList<String> frame(byte[] buf) throws IOException {
+    ArrayList<String> ret = new ArrayList<>();
+    KinesisInput.frame(ByteBuffer.wrap(buf), ret::add);
+    return ret;
+  }
+
+  @Test
+  public void frameMatchesSplitTest() throws Exception {
+    String[] inputs =
+        new String[] {
+          "one", "one\ntwo", "one\r\ntwo\r\n", "one\n\ntwo\n\n\n", "\none", "a\rb\nc\r", "ünï\ncödé"
+        };
+    for (String i : inputs) {
+      assertEquals(
+          Arrays.asList(i.split("\\r?\\n")), frame(i.getBytes(StandardCharsets.UTF_8)));
+      assertEquals(Arrays.asList(i.split("\\r?\\n")), frame(gzip(i)));
+    }
+  }
+
+  @Test
+  public void frameOffsetBufferTest() throws Exception {
+    byte[] buf = "xxone\ntwo\nyy".getBytes(StandardCharsets.UTF_8);
+    ArrayList<String> ret = new ArrayList<>();
+    KinesisInput.frame(ByteBuffer.wrap(buf, 2, 8).slice(), ret::add);
+    assertEquals(Arrays.asList("one", "two"), ret);
+  }
+
+  @Test
+  public void frameGzipLargeTest() throws Exception {
+    // Lines span inflate chunk boundaries, and one line exceeds the inflate buffer
+    StringBuilder sb = new StringBuilder();
+    ArrayList<String> expect = new ArrayList<>();
+    for (int i = 0; i < 20000; i++) {
+      String line = String.format("{\"n\":%d,\"v\":\"%s\"}", i, i % 7 == 0 ? "long" : "");
+      expect.add(line);
+      sb.append(line).append("\n");
+    }
+    char[] big = new char[200000];
+    Arrays.fill(big, 'a');
+    expect.add(new String(big));
+    sb.append(big).append("\r\n");
+    expect.add("last");
+    sb.append("last");
+
+    assertEquals(expect, frame(gzip(sb.toString())));
+  }
+
+  @Test
+  public void frameGzipMultipleMembersTest() throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    out.write(gzip("one\ntwo\n"));
+    out.write(gzip("three\n"));
+    assertEquals(Arrays.asList("one", "two", "three"), frame(out.toByteArray()));
+  }
+
+  @Test
+  public void frameGzipCorruptTest() throws Exception {
+    byte[] buf = gzip("one\ntwo\n");
+    buf = Arrays.copyOf(buf, buf.length - 12);
+    try {
+      frame(buf);
+      fail("corrupt record should not inflate");
+    } catch (IOException exc) {
+      assertTrue(exc.getMessage() != null);
+    }
+  }
+}
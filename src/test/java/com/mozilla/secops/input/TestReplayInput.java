@@ -0,0 +1,113 @@
+package com.mozilla.secops.input;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import com.mozilla.secops.InputOptions;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Serializable;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+import org.apache.beam.sdk.options.PipelineOptionsFactory;
+import org.apache.beam.sdk.testing.PAssert;
+import org.apache.beam.sdk.testing.TestPipeline;
+import org.apache.beam.sdk.transforms.Combine;
+import org.apache.beam.sdk.transforms.Count;
+import org.apache.beam.sdk.transforms.DoFn;
+import org.apache.beam.sdk.transforms.ParDo;
+import org.apache.beam.sdk.transforms.windowing.FixedWindows;
+import org.apache.beam.sdk.transforms.windowing.IntervalWindow;
+import org.apache.beam.sdk.transforms.windowing.Window;
+import org.apache.beam.sdk.values.PCollection;
+import org.joda.time.Duration;
+import org.joda.time.Instant;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TestReplayInput implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  public TestReplayInput() {}
+
+  @Rule public final transient TestPipeline pipeline = TestPipeline.create();
+  @Rule public final transient TemporaryFolder tmp = new TemporaryFolder();
+
+  private void writeLines(File f, int start, int count) throws Exception {
+    OutputStream out = new FileOutputStream(f);
+    if (f.getName().endsWith(".gz")) {
+      out = new GZIPOutputStream(out);
+    }
+    try (Writer w = new OutputStreamWriter(out, StandardCharsets.UTF_8)) {
+      for (int i = start; i < start + count; i++) {
+        // One event per second starting at 2020-01-01T00:00:00Z
+        w.write(
+            String.format(
+                "{\"httpRequest\":{\"status\":200},\"timestamp\":\"%s\",\"n\":%d}\n",
+                new Instant(1577836800000L + i * 1000L), i));
+      }
+      w.write("not json\n");
+    }
+  }
+
+  @Test
+  public void extractTimestampTest() throws Exception {
+    assertEquals(
+        new Instant(1577836800000L),
+        ReplayInput.TimestampFn.extractTimestamp(
+            "{\"a\":{\"timestamp\":1},\"timestamp\":\"2020-01-01T00:00:00Z\"}", "timestamp"));
+    assertEquals(
+        new Instant(1577836800500L),
+        ReplayInput.TimestampFn.extractTimestamp("{\"time\":1577836800.5}", "time"));
+    assertEquals(
+        new Instant(1577836800000L),
+        ReplayInput.TimestampFn.extractTimestamp("{\"time\":1577836800000}", "time"));
+    assertNull(ReplayInput.TimestampFn.extractTimestamp("{\"timestamp\":\"bad\"}", "timestamp"));
+    assertNull(ReplayInput.TimestampFn.extractTimestamp("{\"other\":1}", "timestamp"));
+    assertNull(ReplayInput.TimestampFn.extractTimestamp("plain text", "timestamp"));
+  }
+
+  @Test
+  public void replayInputTest() throws Exception {
+    writeLines(tmp.newFile("a.txt"), 0, 90);
+    writeLines(tmp.newFile("b.txt.gz"), 90, 90);
+
+    InputOptions o = PipelineOptionsFactory.as(InputOptions.class);
+    o.setInputFile(new String[] {tmp.getRoot().getAbsolutePath() + "/*"});
+    o.setInputFileReplay(true);
+
+    PCollection<String> input = pipeline.apply(Input.compositeInputAdapter(o, null));
+    PAssert.thatSingleton(input.apply("count all", Count.globally())).isEqualTo(182L);
+
+    PCollection<String> counts =
+        input
+            .apply(Window.<String>into(FixedWindows.of(Duration.standardMinutes(1))))
+            .apply(Combine.globally(Count.<String>combineFn()).withoutDefaults())
+            .apply(
+                ParDo.of(
+                    new DoFn<Long, String>() {
+                      private static final long serialVersionUID = 1L;
+
+                      @ProcessElement
+                      public void processElement(ProcessContext c, IntervalWindow w) {
+                        // Lines with no timestamp keep the minimum timestamp, ignore them here
+                        if (w.start().getMillis() < 0) {
+                          return;
+                        }
+                        c.output(String.format("%s %d", w.start(), c.element()));
+                      }
+                    }));
+
+    PAssert.that(counts)
+        .containsInAnyOrder(
+            "2020-01-01T00:00:00.000Z 60",
+            "2020-01-01T00:01:00.000Z 60",
+            "2020-01-01T00:02:00.000Z 60");
+
+    pipeline.run().waitUntilFinish();
+  }
+}
@@ -0,0 +1,94 @@
+package com.mozilla.secops.input;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import com.mozilla.secops.parser.Event;
+import com.mozilla.secops.parser.Normalized;
+import com.mozilla.secops.parser.Parser;
+import com.mozilla.secops.parser.Payload;
+import java.util.EnumMap;
+import java.util.Random;
+import org.apache.beam.sdk.testing.PAssert;
+import org.apache.beam.sdk.testing.TestPipeline;
+import org.apache.beam.sdk.transforms.Count;
+import org.joda.time.Instant;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class TestTrafficGenerator {
+  public TestTrafficGenerator() {}
+
+  @Rule public final transient TestPipeline pipeline = TestPipeline.create();
+
+  @Test
+  public void generatedEventsParseTest() throws Exception {
+    Parser p = new Parser();
+    Random r = new Random(0);
+    Instant now = new Instant();
+
+    EnumMap<TrafficModel.Format, Payload.PayloadType> expect =
+        new EnumMap<>(TrafficModel.Format.class);
+    expect.put(TrafficModel.Format.GLB, Payload.PayloadType.GLB);
+    expect.put(TrafficModel.Format.NGINX, Payload.PayloadType.NGINX);
+    expect.put(TrafficModel.Format.FXAAUTH, Payload.PayloadType.FXAAUTH);
+    expect.put(TrafficModel.Format.CLOUDTRAIL, Payload.PayloadType.CLOUDTRAIL);
+
+    for (TrafficModel.Format f : TrafficModel.Format.values()) {
+      TrafficModel m = new TrafficModel(f);
+      for (int i = 0; i < 100; i++) {
+        Event e = p.parse(m.generate(r, now));
+        assertNotNull(e);
+        assertEquals(expect.get(f), e.getPayloadType());
+        assertEquals(now.getMillis(), e.getTimestamp().getMillis());
+      }
+    }
+
+    Event e = p.parse(new TrafficModel(TrafficModel.Format.GLB).generate(r, now));
+    Normalized n = e.getNormalized();
+    assertTrue(n.isOfType(Normalized.Type.HTTP_REQUEST));
+    assertTrue(n.getSourceAddress().startsWith("198.1"));
+  }
+
+  @Test
+  public void clientClassTest() throws Exception {
+    TrafficModel m =
+        new TrafficModel(TrafficModel.Format.GLB)
+            .withHeavyHitters(10, 0.3)
+            .withNatGateways(0, 0.1)
+            .withAttackers(2, 0.1);
+    Random r = new Random(0);
+    EnumMap<TrafficModel.ClientClass, Integer> counts =
+        new EnumMap<>(TrafficModel.ClientClass.class);
+    for (TrafficModel.ClientClass c : TrafficModel.ClientClass.values()) {
+      counts.put(c, 0);
+    }
+    for (int i = 0; i < 100000; i++) {
+      counts.merge(m.nextClientClass(r), 1, Integer::sum);
+    }
+    assertEquals(0, (int) counts.get(TrafficModel.ClientClass.NAT_GATEWAY));
+    assertEquals(10000, counts.get(TrafficModel.ClientClass.ATTACKER), 500);
+    assertEquals(30000, counts.get(TrafficModel.ClientClass.HEAVY_HITTER), 1000);
+    assertEquals(60000, counts.get(TrafficModel.ClientClass.BENIGN), 1000);
+
+    assertEquals("198.18.1.2", TrafficModel.clientAddress(TrafficModel.ClientClass.BENIGN, 258));
+    assertEquals("198.19.2.1", TrafficModel.clientAddress(TrafficModel.ClientClass.ATTACKER, 0));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void generatorSpecTest() throws Exception {
+    TrafficGenerator.fromSpec("unknown:100");
+  }
+
+  @Test
+  public void generatorTest() throws Exception {
+    PAssert.thatSingleton(
+            pipeline
+                .apply(
+                    new TrafficGenerator(new TrafficModel(TrafficModel.Format.GLB), 10000, 2000))
+                .apply(Count.globally()))
+        .isEqualTo(2000L);
+    pipeline.run().waitUntilFinish();
+  }
+}
@@ -0,0 +1,171 @@
+package com.mozilla.secops.parser;
+
+import static org.junit.Assert.*;
+
+import com.carrotsearch.junitbenchmarks.BenchmarkOptions;
+import com.carrotsearch.junitbenchmarks.BenchmarkRule;
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestRule;
+
+public class EventFilterBenchmark {
+  @Rule public TestRule benchmarkRun = new BenchmarkRule();
+
+  private static ArrayList<Event> events;
+
+  // Payload filters as constructed by HTTPRequestToggles.toStandardFilter for a configuration
+  // with several filtered request paths and a URL host include list
+  private static ArrayList<EventFilterPayload> pathFilters;
+  private static EventFilterPayloadOr statusFilter;
+  private static EventFilterPayloadOr hostFilter;
+
+  // Cloudtrail style exact match set on a single property
+  private static EventFilterPayloadOr methodFilter;
+
+  // Reference implementations of the above filters
+  private static ArrayList<InterpretedEventFilterPayload> interpretedPathFilters;
+  private static ArrayList<InterpretedEventFilterPayload> interpretedStatusFilter;
+  private static ArrayList<InterpretedEventFilterPayload> interpretedHostFilter;
+  private static ArrayList<InterpretedEventFilterPayload> interpretedMethodFilter;
+
+  private static ArrayList<InterpretedEventFilterPayload> interpret(EventFilterPayloadOr f) {
+    ArrayList<InterpretedEventFilterPayload> ret = new ArrayList<>();
+    for (EventFilterPayloadInterface p : f.getPayloadFilters()) {
+      ret.add(new InterpretedEventFilterPayload((EventFilterPayload) p));
+    }
+    return ret;
+  }
+
+  @BeforeClass
+  public static void setup() throws Exception {
+    Parser p = new Parser();
+    events = new ArrayList<>();
+    InputStream in =
+        EventFilterBenchmark.class.getResourceAsStream("/testdata/httpreq_errorrate1.txt");
+    BufferedReader r = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+    String buf;
+    while ((buf = r.readLine()) != null) {
+      Event e = p.parse(buf);
+      if (e != null) {
+        events.add(e);
+      }
+    }
+    r.close();
+    assertFalse(events.isEmpty());
+
+    pathFilters = new ArrayList<>();
+    for (String s : new String[] {"/", "/favicon.ico", "/__lbheartbeat__", "/status"}) {
+      pathFilters.add(
+          new EventFilterPayload()
+              .withStringMatch(EventFilterPayload.StringProperty.NORMALIZED_REQUESTMETHOD, "GET")
+              .withStringMatch(EventFilterPayload.StringProperty.NORMALIZED_URLREQUESTPATH, s));
+    }
+    statusFilter =
+        new EventFilterPayloadOr()
+            .addPayloadFilter(
+                new EventFilterPayload()
+                    .withIntegerRangeMatch(
+                        EventFilterPayload.IntegerProperty.NORMALIZED_REQUESTSTATUS, 0, 399))
+            .addPayloadFilter(
+                new EventFilterPayload()
+                    .withIntegerRangeMatch(
+                        EventFilterPayload.IntegerProperty.NORMALIZED_REQUESTSTATUS,
+                        500,
+                        Integer.MAX_VALUE));
+    hostFilter = new EventFilterPayloadOr();
+    for (String s : new String[] {"^send\\..*", "^accounts\\..*", "^.*\\.example\\.com$"}) {
+      hostFilter.addPayloadFilter(
+          new EventFilterPayload()
+              .withStringRegexMatch(EventFilterPayload.StringProperty.NORMALIZED_URLREQUESTHOST, s));
+    }
+    methodFilter = new EventFilterPayloadOr();
+    for (String s : new String[] {"PUT", "DELETE", "PATCH", "OPTIONS", "HEAD", "TRACE", "GET"}) {
+      methodFilter.addPayloadFilter(
+          new EventFilterPayload()
+              .withStringMatch(EventFilterPayload.StringProperty.NORMALIZED_REQUESTMETHOD, s));
+    }
+
+    interpretedPathFilters = new ArrayList<>();
+    for (EventFilterPayload f : pathFilters) {
+      interpretedPathFilters.add(new InterpretedEventFilterPayload(f));
+    }
+    interpretedStatusFilter = interpret(statusFilter);
+    interpretedHostFilter = interpret(hostFilter);
+    interpretedMethodFilter = interpret(methodFilter);
+  }
+
+  private static boolean interpretedOr(ArrayList<InterpretedEventFilterPayload> f, Event e) {
+    for (InterpretedEventFilterPayload p : f) {
+      if (p.matches(e)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static int runInterpreted() {
+    int cnt = 0;
+    for (Event e : events) {
+      for (InterpretedEventFilterPayload f : interpretedPathFilters) {
+        if (f.matches(e)) {
+          cnt++;
+        }
+      }
+      if (interpretedOr(interpretedStatusFilter, e)) {
+        cnt++;
+      }
+      if (interpretedOr(interpretedHostFilter, e)) {
+        cnt++;
+      }
+      if (interpretedOr(interpretedMethodFilter, e)) {
+        cnt++;
+      }
+    }
+    return cnt;
+  }
+
+  private static int runCompiled() {
+    int cnt = 0;
+    for (Event e : events) {
+      for (EventFilterPayload f : pathFilters) {
+        if (f.matches(e)) {
+          cnt++;
+        }
+      }
+      if (statusFilter.matches(e)) {
+        cnt++;
+      }
+      if (hostFilter.matches(e)) {
+        cnt++;
+      }
+      if (methodFilter.matches(e)) {
+        cnt++;
+      }
+    }
+    return cnt;
+  }
+
+  @BenchmarkOptions(benchmarkRounds = 20, warmupRounds = 5)
+  @Test
+  public void benchmarkInterpretedFilter() throws Exception {
+    int expect = runCompiled();
+    for (int i = 0; i < 50; i++) {
+      assertEquals(expect, runInterpreted());
+    }
+  }
+
+  @BenchmarkOptions(benchmarkRounds = 20, warmupRounds = 5)
+  @Test
+  public void benchmarkCompiledFilter() throws Exception {
+    int expect = runInterpreted();
+    for (int i = 0; i < 50; i++) {
+      assertEquals(expect, runCompiled());
+    }
+  }
+}
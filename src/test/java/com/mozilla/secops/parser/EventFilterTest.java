@@ -6,6 +6,7 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.HashMap;
 import org.junit.Test;
 
 public class EventFilterTest {
@@ -513,6 +514,137 @@ public class EventFilterTest {
     assertFalse(reload(filter).matches(e));
   }
 
+  @Test
+  public void testEventFilterPayloadCompiled() throws Exception {
+    String buf =
+        "{\"httpRequest\":{\"referer\":\"https://send.firefox.com/\",\"remoteIp\":"
+            + "\"127.0.0.1\",\"requestMethod\":\"GET\",\"requestSize\":\"43\",\"requestUrl\":\"htt"
+            + "ps://send.firefox.com/public/locales/en-US/send.js?test=test\",\"responseSize\":\"2692\","
+            + "\"serverIp\":\"10.8.0.3\",\"status\":200,\"userAgent\":\"Mozilla/5.0 (Macintosh; Intel M"
+            + "ac OS X 10_13_3)"
+            + "\"},\"insertId\":\"AAAAAAAAAAAAAAA\",\"jsonPayload\":{\"@type\":\"type.googleapis.com/"
+            + "google.cloud.loadbalancing.type.LoadBalancerLogEntry\",\"statusDetails\":\"response_sent"
+            + "_by_backend\"},\"logName\":\"projects/moz/logs/requests\",\"receiveTim"
+            + "estamp\":\"2018-09-28T18:55:12.840306467Z\",\"resource\":{\"labels\":{\"backend_service_"
+            + "name\":\"\",\"forwarding_rule_name\":\"k8s-fws-prod-"
+            + "6cb3697\",\"project_id\":\"test\",\"target_proxy_name\":\"k8s-tps-prod-"
+            + "97\",\"url_map_name\":\"k8s-um-prod"
+            + "-app-1\",\"zone\":\"global\"},\"type\":\"http_load_balancer\"}"
+            + ",\"severity\":\"INFO\",\"spanId\":\"AAAAAAAAAAAAAAAA\",\"timestamp\":\"2018-09-28T18:55:"
+            + "12.469373944Z\",\"trace\":\"projects/moz/traces/AAAAAAAAAAAAAAAAAAAAAA"
+            + "AAAAAAAAAA\"}";
+    Parser p = new Parser();
+    assertNotNull(p);
+    Event e = p.parse(buf);
+    assertNotNull(e);
+    assertEquals(Payload.PayloadType.GLB, e.getPayloadType());
+    Event raw = p.parse("test");
+    assertNotNull(raw);
+
+    EventFilterPayload[] payloads =
+        new EventFilterPayload[] {
+          new EventFilterPayload()
+              .withStringMatch(EventFilterPayload.StringProperty.NORMALIZED_REQUESTMETHOD, "GET")
+              .withStringMatch(
+                  EventFilterPayload.StringProperty.NORMALIZED_URLREQUESTPATH,
+                  "/public/locales/en-US/send.js"),
+          new EventFilterPayload()
+              .withIntegerRangeMatch(
+                  EventFilterPayload.IntegerProperty.NORMALIZED_REQUESTSTATUS, 0, 399),
+          new EventFilterPayload()
+              .withIntegerRangeMatch(
+                  EventFilterPayload.IntegerProperty.NORMALIZED_REQUESTSTATUS,
+                  500,
+                  Integer.MAX_VALUE),
+          new EventFilterPayload()
+              .withStringRegexMatch(
+                  EventFilterPayload.StringProperty.NORMALIZED_URLREQUESTHOST, "^send\\..*"),
+          new EventFilterPayload(GLB.class)
+              .withStringMatch(EventFilterPayload.StringProperty.GLB_REQUESTMETHOD, "GET")
+              .withIntegerMatch(EventFilterPayload.IntegerProperty.GLB_STATUS, 200),
+          new EventFilterPayload(GLB.class)
+              .withStringMatch(EventFilterPayload.StringProperty.GLB_REQUESTMETHOD, "GET")
+              .withIntegerMatch(EventFilterPayload.IntegerProperty.GLB_STATUS, 404),
+          new EventFilterPayload(Raw.class)
+              .withStringMatch(EventFilterPayload.StringProperty.RAW_RAW, "test")
+        };
+    for (EventFilterPayload fp : payloads) {
+      InterpretedEventFilterPayload ifp = new InterpretedEventFilterPayload(fp);
+      assertEquals(ifp.matches(e), fp.matches(e));
+      assertEquals(ifp.matches(raw), fp.matches(raw));
+    }
+
+    // Modification after use should be reflected in subsequent matches
+    EventFilterPayload fp =
+        new EventFilterPayload(GLB.class)
+            .withStringMatch(EventFilterPayload.StringProperty.GLB_REQUESTMETHOD, "GET");
+    assertTrue(fp.matches(e));
+    fp.withIntegerMatch(EventFilterPayload.IntegerProperty.GLB_STATUS, 404);
+    assertFalse(fp.matches(e));
+
+    // Exact match sets in an OR filter are evaluated as hash lookups; mix them with filters that
+    // cannot be grouped and with exact matches restricted to a different payload type
+    EventFilterPayloadOr filterOr = new EventFilterPayloadOr();
+    for (String m : new String[] {"POST", "PUT", "DELETE"}) {
+      filterOr.addPayloadFilter(
+          new EventFilterPayload(GLB.class)
+              .withStringMatch(EventFilterPayload.StringProperty.GLB_REQUESTMETHOD, m));
+    }
+    filterOr.addPayloadFilter(
+        new EventFilterPayload(Nginx.class)
+            .withStringMatch(EventFilterPayload.StringProperty.NGINX_REQUESTMETHOD, "GET"));
+    filterOr.addPayloadFilter(
+        new EventFilterPayload(GLB.class)
+            .withIntegerMatch(EventFilterPayload.IntegerProperty.GLB_STATUS, 404));
+    assertFalse(filterOr.matches(e));
+    assertFalse(filterOr.matches(raw));
+    filterOr.addPayloadFilter(
+        new EventFilterPayload(GLB.class)
+            .withStringMatch(EventFilterPayload.StringProperty.GLB_REQUESTMETHOD, "GET"));
+    assertTrue(filterOr.matches(e));
+    assertFalse(filterOr.matches(raw));
+
+    EventFilterPayloadOr normOr = new EventFilterPayloadOr();
+    for (String path : new String[] {"/a", "/b", "/public/locales/en-US/send.js"}) {
+      normOr.addPayloadFilter(
+          new EventFilterPayload()
+              .withStringMatch(EventFilterPayload.StringProperty.NORMALIZED_URLREQUESTPATH, path));
+    }
+    assertTrue(normOr.matches(e));
+    assertFalse(normOr.matches(raw));
+
+    // Modifying a grouped child filter after use should be reflected in subsequent matches
+    EventFilterPayload child =
+        new EventFilterPayload(GLB.class)
+            .withStringMatch(EventFilterPayload.StringProperty.GLB_REQUESTMETHOD, "GET");
+    EventFilterPayloadOr childOr =
+        new EventFilterPayloadOr()
+            .addPayloadFilter(child)
+            .addPayloadFilter(
+                new EventFilterPayload(GLB.class)
+                    .withStringMatch(EventFilterPayload.StringProperty.GLB_REQUESTMETHOD, "PUT"));
+    assertTrue(childOr.matches(e));
+    child.withStringMatch(EventFilterPayload.StringProperty.GLB_REQUESTMETHOD, "POST");
+    assertFalse(childOr.matches(e));
+    child.withStringMatch(EventFilterPayload.StringProperty.GLB_REQUESTMETHOD, "GET");
+    assertTrue(childOr.matches(e));
+    child.withIntegerMatch(EventFilterPayload.IntegerProperty.GLB_STATUS, 404);
+    assertFalse(childOr.matches(e));
+    child.setPayloadType(Nginx.class.getName());
+    child.setIntegerMatchers(new HashMap<EventFilterPayload.IntegerProperty, Integer>());
+    assertFalse(childOr.matches(e));
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void testEventFilterPayloadOrFiltersUnmodifiable() throws Exception {
+    EventFilterPayloadOr filterOr =
+        new EventFilterPayloadOr()
+            .addPayloadFilter(
+                new EventFilterPayload(GLB.class)
+                    .withStringMatch(EventFilterPayload.StringProperty.GLB_REQUESTMETHOD, "GET"));
+    filterOr.getPayloadFilters().clear();
+  }
+
   @Test
   public void testEventFilterSerialize() throws Exception {
     EventFilter filter = new EventFilter().setWantUTC(true);
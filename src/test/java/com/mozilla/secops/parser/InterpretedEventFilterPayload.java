@@ -0,0 +1,91 @@
+package com.mozilla.secops.parser;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Reference implementation of {@link EventFilterPayload} matching that evaluates each configured
+ * matcher in turn, used to validate and benchmark compiled matching
+ */
+class InterpretedEventFilterPayload {
+  private final Class<? extends PayloadBase> ptype;
+  private final Map<EventFilterPayload.StringProperty, String> stringMatchers;
+  private final Map<EventFilterPayload.StringProperty, Pattern> stringRegexMatchers;
+  private final Map<EventFilterPayload.IntegerProperty, Integer> integerMatchers;
+  private final Map<EventFilterPayload.IntegerProperty, EventFilterPayloadRange<Integer>>
+      integerRangeMatchers;
+
+  private static String stringValue(Event e, EventFilterPayload.StringProperty property) {
+    if (property.name().startsWith("NORMALIZED_")) {
+      Normalized n = e.getNormalized();
+      return n == null ? null : n.eventStringValue(property);
+    }
+    return e.getPayload().eventStringValue(property);
+  }
+
+  private static Integer integerValue(Event e, EventFilterPayload.IntegerProperty property) {
+    if (property.name().startsWith("NORMALIZED_")) {
+      Normalized n = e.getNormalized();
+      return n == null ? null : n.eventIntegerValue(property);
+    }
+    return e.getPayload().eventIntegerValue(property);
+  }
+
+  /**
+   * Return true if payload criteria matches
+   *
+   * @param e Input event
+   * @return True on match
+   */
+  boolean matches(Event e) {
+    if (ptype != null && !(ptype.isInstance(e.getPayload()))) {
+      return false;
+    }
+    for (Map.Entry<EventFilterPayload.StringProperty, String> entry : stringMatchers.entrySet()) {
+      String value = stringValue(e, entry.getKey());
+      if (value == null || !value.equals(entry.getValue())) {
+        return false;
+      }
+    }
+    for (Map.Entry<EventFilterPayload.StringProperty, Pattern> entry :
+        stringRegexMatchers.entrySet()) {
+      String value = stringValue(e, entry.getKey());
+      if (value == null || !entry.getValue().matcher(value).matches()) {
+        return false;
+      }
+    }
+    for (Map.Entry<EventFilterPayload.IntegerProperty, Integer> entry :
+        integerMatchers.entrySet()) {
+      Integer value = integerValue(e, entry.getKey());
+      if (value == null || !value.equals(entry.getValue())) {
+        return false;
+      }
+    }
+    for (Map.Entry<EventFilterPayload.IntegerProperty, EventFilterPayloadRange<Integer>> entry :
+        integerRangeMatchers.entrySet()) {
+      Integer value = integerValue(e, entry.getKey());
+      if (value == null || !entry.getValue().inRange(value)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Initialize new {@link InterpretedEventFilterPayload}
+   *
+   * @param fp Payload filter to take criteria from
+   */
+  InterpretedEventFilterPayload(EventFilterPayload fp) {
+    ptype = fp.getPayloadClass();
+    stringMatchers = new HashMap<>(fp.getStringMatchers());
+    stringRegexMatchers = new HashMap<>();
+    for (Map.Entry<EventFilterPayload.StringProperty, String> entry :
+        fp.getStringRegexMatchers().entrySet()) {
+      stringRegexMatchers.put(entry.getKey(), Pattern.compile(entry.getValue()));
+    }
+    integerMatchers = new HashMap<>(fp.getIntegerMatchers());
+    integerRangeMatchers = new HashMap<>(fp.getIntegerRangeMatchers());
+  }
+}
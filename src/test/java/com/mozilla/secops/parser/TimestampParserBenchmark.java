@@ -0,0 +1,79 @@
+package com.mozilla.secops.parser;
+
+import static org.junit.Assert.*;
+
+import com.carrotsearch.junitbenchmarks.BenchmarkOptions;
+import com.carrotsearch.junitbenchmarks.BenchmarkRule;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+import org.joda.time.format.ISODateTimeFormat;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestRule;
+
+public class TimestampParserBenchmark {
+  @Rule public TestRule benchmarkRun = new BenchmarkRule();
+
+  private static final int COUNT = 200000;
+
+  private static final DateTimeFormatter isoFormatter = ISODateTimeFormat.dateTimeParser();
+
+  private static String[] iso;
+  private static String[] syslog;
+
+  @BeforeClass
+  public static void generate() {
+    // Event stream with about 50 events per second
+    iso = new String[COUNT];
+    syslog = new String[COUNT];
+    long start = 1577836800000L;
+    for (int i = 0; i < COUNT; i++) {
+      DateTime t = new DateTime(start + i * 20L, DateTimeZone.UTC);
+      iso[i] = t.toString("yyyy-MM-dd'T'HH:mm:ss.SSS") + "373944Z";
+      syslog[i] = t.toString("MMM dd HH:mm:ss");
+    }
+  }
+
+  @BenchmarkOptions(benchmarkRounds = 10, warmupRounds = 3)
+  @Test
+  public void benchmarkISO8601Joda() throws Exception {
+    long sum = 0;
+    for (String s : iso) {
+      sum += isoFormatter.parseDateTime(s).getMillis();
+    }
+    assertNotEquals(0, sum);
+  }
+
+  @BenchmarkOptions(benchmarkRounds = 10, warmupRounds = 3)
+  @Test
+  public void benchmarkISO8601() throws Exception {
+    long sum = 0;
+    for (String s : iso) {
+      sum += Parser.parseISO8601(s).getMillis();
+    }
+    assertNotEquals(0, sum);
+  }
+
+  @BenchmarkOptions(benchmarkRounds = 10, warmupRounds = 3)
+  @Test
+  public void benchmarkSyslogJoda() throws Exception {
+    long sum = 0;
+    for (String s : syslog) {
+      sum += DateTime.parse(s, DateTimeFormat.forPattern("MMM dd HH:mm:ss")).getMillis();
+    }
+    assertNotEquals(0, sum);
+  }
+
+  @BenchmarkOptions(benchmarkRounds = 10, warmupRounds = 3)
+  @Test
+  public void benchmarkSyslog() throws Exception {
+    long sum = 0;
+    for (String s : syslog) {
+      sum += Parser.parseSyslogTs(s).getMillis();
+    }
+    assertNotEquals(0, sum);
+  }
+}
@@ -0,0 +1,180 @@
+package com.mozilla.secops.state;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.beam.sdk.coders.KvCoder;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.testing.PAssert;
+import org.apache.beam.sdk.testing.TestPipeline;
+import org.apache.beam.sdk.testing.TestStream;
+import org.apache.beam.sdk.transforms.ParDo;
+import org.apache.beam.sdk.values.KV;
+import org.apache.beam.sdk.values.PCollection;
+import org.joda.time.Duration;
+import org.joda.time.Instant;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class TestCachedStateDoFn {
+  @Rule public final transient TestPipeline p = TestPipeline.create();
+
+  private static final ConcurrentHashMap<String, String> store = new ConcurrentHashMap<>();
+  private static final AtomicInteger reads = new AtomicInteger();
+  private static final AtomicInteger writes = new AtomicInteger();
+  private static final AtomicInteger failWrites = new AtomicInteger();
+
+  /** Simple in-memory state implementation that records backend operations */
+  private static class MemoryStateCursor<T> extends StateCursor<T> {
+    public void commit() throws StateException {}
+
+    @Override
+    public void executeInner() throws StateException {
+      for (StateOperation<T> o : operations) {
+        try {
+          switch (o.getOperationType()) {
+            case GET:
+              reads.incrementAndGet();
+              String buf = store.get(o.getKey());
+              if (buf != null) {
+                o.setResultValue(mapper.readValue(buf, stateClass));
+              }
+              break;
+            case SET:
+              if (failWrites.getAndUpdate(v -> v > 0 ? v - 1 : 0) > 0) {
+                throw new StateException("write failed");
+              }
+              writes.incrementAndGet();
+              store.put(o.getKey(), mapper.writeValueAsString(o.getValue()));
+              break;
+            default:
+              throw new RuntimeException("unsupported operation type");
+          }
+        } catch (IOException exc) {
+          throw new StateException(exc.getMessage());
+        }
+        completedOperations.put(o.getId(), o);
+      }
+    }
+
+    public MemoryStateCursor(Class<T> stateClass) {
+      super(stateClass);
+    }
+  }
+
+  private static class MemoryStateInterface implements StateInterface {
+    public void done() {}
+
+    public void deleteAll() {
+      store.clear();
+    }
+
+    public void initialize() {}
+
+    public <T> StateCursor<T> newCursor(Class<T> stateClass, boolean transaction) {
+      return new MemoryStateCursor<T>(stateClass);
+    }
+  }
+
+  /** Append each element to the stored string, and output the updated value */
+  private static class AppendFn extends CachedStateDoFn<String, String, StateTestClass> {
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    protected StateInterface createStateInterface() {
+      return new MemoryStateInterface();
+    }
+
+    @Override
+    protected StateTestClass process(ProcessContext c, String key, StateTestClass current) {
+      if (current == null) {
+        current = new StateTestClass();
+        current.str = "";
+      }
+      current.str += c.element().getValue();
+      c.output(key + ":" + current.str);
+      return current;
+    }
+
+    public AppendFn() {
+      super(StateTestClass.class, 10L, 100L, "test");
+    }
+  }
+
+  public TestCachedStateDoFn() {}
+
+  @Before
+  public void before() {
+    store.clear();
+    reads.set(0);
+    writes.set(0);
+    failWrites.set(0);
+  }
+
+  @Test
+  public void cachedStateTest() throws Exception {
+    StateTestClass t = new StateTestClass();
+    t.str = "x";
+    new MemoryStateInterface().newCursor(StateTestClass.class, false).set("b", t);
+    writes.set(0);
+
+    Instant base = new Instant(0L);
+    TestStream<KV<String, String>> s =
+        TestStream.create(KvCoder.of(StringUtf8Coder.of(), StringUtf8Coder.of()))
+            .advanceWatermarkTo(base)
+            .addElements(KV.of("a", "1"), KV.of("a", "2"), KV.of("a", "3"), KV.of("b", "1"))
+            .advanceProcessingTime(Duration.standardSeconds(20))
+            .addElements(KV.of("a", "4"), KV.of("a", "5"))
+            .advanceProcessingTime(Duration.standardSeconds(20))
+            // Keys are evicted after the expiry interval, and reloaded from the backend
+            .advanceProcessingTime(Duration.standardSeconds(200))
+            .addElements(KV.of("a", "6"))
+            .advanceProcessingTime(Duration.standardSeconds(20))
+            .advanceWatermarkToInfinity();
+
+    PCollection<String> res = p.apply(s).apply(ParDo.of(new AppendFn()));
+    PAssert.that(res)
+        .containsInAnyOrder("a:1", "a:12", "a:123", "b:x1", "a:1234", "a:12345", "a:123456");
+
+    p.run().waitUntilFinish();
+
+    assertEquals("{\"str\":\"123456\"}", store.get("a"));
+    assertEquals("{\"str\":\"x1\"}", store.get("b"));
+    // One initial load per key, and a reload following expiry
+    assertEquals(3, reads.get());
+    // One write per key per flush interval in which it was modified
+    assertEquals(4, writes.get());
+  }
+
+  @Test
+  public void cachedStateFlushFailureTest() throws Exception {
+    // Fail the initial flush, the retry and the flush on expiry
+    failWrites.set(3);
+
+    Instant base = new Instant(0L);
+    TestStream<KV<String, String>> s =
+        TestStream.create(KvCoder.of(StringUtf8Coder.of(), StringUtf8Coder.of()))
+            .advanceWatermarkTo(base)
+            .addElements(KV.of("a", "1"))
+            .advanceProcessingTime(Duration.standardSeconds(20))
+            // Past the expiry interval, but the key is retained as the value was not written
+            .advanceProcessingTime(Duration.standardSeconds(200))
+            .addElements(KV.of("a", "2"))
+            .advanceProcessingTime(Duration.standardSeconds(20))
+            .advanceProcessingTime(Duration.standardSeconds(200))
+            .advanceWatermarkToInfinity();
+
+    PCollection<String> res = p.apply(s).apply(ParDo.of(new AppendFn()));
+    PAssert.that(res).containsInAnyOrder("a:1", "a:12");
+
+    p.run().waitUntilFinish();
+
+    assertEquals("{\"str\":\"12\"}", store.get("a"));
+    assertEquals(1, reads.get());
+    assertEquals(1, writes.get());
+    assertEquals(0, failWrites.get());
+  }
+}
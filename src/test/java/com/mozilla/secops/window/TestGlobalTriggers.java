@@ -0,0 +1,167 @@
+package com.mozilla.secops.window;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.beam.sdk.PipelineResult;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.metrics.DistributionResult;
+import org.apache.beam.sdk.metrics.MetricNameFilter;
+import org.apache.beam.sdk.metrics.MetricResult;
+import org.apache.beam.sdk.metrics.MetricsFilter;
+import org.apache.beam.sdk.testing.PAssert;
+import org.apache.beam.sdk.testing.TestPipeline;
+import org.apache.beam.sdk.testing.TestStream;
+import org.apache.beam.sdk.transforms.Filter;
+import org.apache.beam.sdk.transforms.GroupByKey;
+import org.apache.beam.sdk.transforms.MapElements;
+import org.apache.beam.sdk.transforms.ParDo;
+import org.apache.beam.sdk.transforms.WithKeys;
+import org.apache.beam.sdk.transforms.windowing.TimestampCombiner;
+import org.apache.beam.sdk.values.PCollection;
+import org.apache.beam.sdk.values.TimestampedValue;
+import org.apache.beam.sdk.values.TypeDescriptors;
+import org.joda.time.Duration;
+import org.joda.time.Instant;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class TestGlobalTriggers {
+  @Rule public final transient TestPipeline p = TestPipeline.create();
+
+  public TestGlobalTriggers() {}
+
+  private PCollection<Integer> paneSizes(GlobalTriggers<String> triggers) {
+    return paneSizes(
+        triggers,
+        TestStream.create(StringUtf8Coder.of())
+            .advanceWatermarkTo(new Instant(0L))
+            .addElements("a")
+            .addElements("b")
+            .addElements("c")
+            .addElements("d")
+            .addElements("e")
+            .advanceProcessingTime(Duration.standardSeconds(10))
+            .advanceWatermarkToInfinity());
+  }
+
+  private PCollection<Integer> delayedPaneSizes(GlobalTriggers<String> triggers) {
+    // Elements arrive 3 seconds apart, so only a delay under 3 seconds splits them into two panes
+    return paneSizes(
+        triggers,
+        TestStream.create(StringUtf8Coder.of())
+            .advanceWatermarkTo(new Instant(0L))
+            .addElements("a")
+            .advanceProcessingTime(Duration.standardSeconds(3))
+            .addElements("b")
+            .advanceProcessingTime(Duration.standardSeconds(10))
+            .advanceWatermarkToInfinity());
+  }
+
+  private PCollection<Integer> paneSizes(GlobalTriggers<String> triggers, TestStream<String> s) {
+    return p.apply(s)
+        .apply(triggers)
+        .apply(WithKeys.of("key"))
+        .apply(GroupByKey.create())
+        .apply(ParDo.of(new GlobalTriggers.PaneMetricsFn<String, String>("test")))
+        .apply(
+            MapElements.into(TypeDescriptors.integers())
+                .via(
+                    kv -> {
+                      int n = 0;
+                      for (String v : kv.getValue()) {
+                        n++;
+                      }
+                      return n;
+                    }))
+        // Discard the empty final pane emitted when the global window expires
+        .apply(Filter.greaterThan(0));
+  }
+
+  @Test
+  public void globalTriggersDelayTest() throws Exception {
+    PAssert.that(paneSizes(new GlobalTriggers<String>(5))).containsInAnyOrder(5);
+    p.run().waitUntilFinish();
+  }
+
+  @Test
+  public void globalTriggersElementCountTest() throws Exception {
+    PAssert.that(paneSizes(new GlobalTriggers<String>(5).withElementCount(2)))
+        .containsInAnyOrder(2, 2, 1);
+    p.run().waitUntilFinish();
+  }
+
+  @Test
+  public void globalTriggersOptionsTest() throws Exception {
+    p.getOptions().as(GlobalTriggersOptions.class).setGlobalTriggerElementCount(3);
+    PAssert.that(paneSizes(new GlobalTriggers<String>(5))).containsInAnyOrder(3, 2);
+    p.run().waitUntilFinish();
+  }
+
+  @Test
+  public void globalTriggersStageDelayTest() throws Exception {
+    p.getOptions()
+        .as(GlobalTriggersOptions.class)
+        .setGlobalTriggerDelaySeconds(new String[] {"other:10", "test:2"});
+    PAssert.that(delayedPaneSizes(new GlobalTriggers<String>(5).withStage("test")))
+        .containsInAnyOrder(1, 1);
+    p.run().waitUntilFinish();
+  }
+
+  @Test
+  public void globalTriggersUnnamedDelayTest() throws Exception {
+    // Delay overrides only apply to instances with a matching stage name
+    p.getOptions()
+        .as(GlobalTriggersOptions.class)
+        .setGlobalTriggerDelaySeconds(new String[] {"test:2"});
+    PAssert.that(delayedPaneSizes(new GlobalTriggers<String>(5))).containsInAnyOrder(2);
+    p.run().waitUntilFinish();
+  }
+
+  private DistributionResult paneDelay(GlobalTriggers<String> triggers) {
+    // Elements are timestamped one and two minutes before the current time
+    long now = System.currentTimeMillis();
+    TestStream<String> s =
+        TestStream.create(StringUtf8Coder.of())
+            .advanceWatermarkTo(new Instant(0L))
+            .addElements(TimestampedValue.of("a", new Instant(now - 60000L)))
+            .addElements(TimestampedValue.of("b", new Instant(now - 120000L)))
+            .advanceProcessingTime(Duration.standardSeconds(10))
+            .advanceWatermarkToInfinity();
+    p.apply(s)
+        .apply(triggers)
+        .apply(WithKeys.of("key"))
+        .apply(GroupByKey.create())
+        .apply(ParDo.of(new GlobalTriggers.PaneMetricsFn<String, String>("test")));
+
+    PipelineResult result = p.run();
+    result.waitUntilFinish();
+    MetricsFilter filter =
+        MetricsFilter.builder()
+            .addNameFilter(
+                MetricNameFilter.named(GlobalTriggers.METRICS_NAMESPACE, "test_pane_delay_ms"))
+            .build();
+    DistributionResult ret = DistributionResult.IDENTITY_ELEMENT;
+    for (MetricResult<DistributionResult> r :
+        result.metrics().queryMetrics(filter).getDistributions()) {
+      ret = r.getAttempted();
+    }
+    return ret;
+  }
+
+  @Test
+  public void globalTriggersPaneDelayTest() throws Exception {
+    DistributionResult d =
+        paneDelay(new GlobalTriggers<String>(5).withTimestampCombiner(TimestampCombiner.EARLIEST));
+    assertEquals(1L, d.getCount());
+    // The pane delay is measured from the earliest element in the pane
+    assertTrue(d.getMin() >= 120000L);
+    assertTrue(d.getMax() < 180000L);
+  }
+
+  @Test
+  public void globalTriggersPaneDelayDefaultCombinerTest() throws Exception {
+    // With the default combiner, panes are timestamped at the end of the global window
+    assertEquals(0L, paneDelay(new GlobalTriggers<String>(5)).getCount());
+  }
+}